@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.content.Context;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class AssetDigestIndexUnitTest {
+    private static Asset createAsset(String name) {
+        return new Asset.Builder(name)
+                .setMimeType("text/plain")
+                .setData("Hello World".getBytes())
+                .build();
+    }
+
+    private static Asset createUploadedAsset(String name) {
+        Asset asset = createAsset(name);
+        asset.name = "uploaded-" + name;
+        asset.url = "http://skygear.dev/files/uploaded-" + name;
+
+        return asset;
+    }
+
+    @Test
+    public void testSaveAndRestore() throws Exception {
+        AssetDigestIndex index = new AssetDigestIndex((Context) null);
+
+        Asset uploadedAsset = createAsset("hello.txt");
+        uploadedAsset.name = "uploaded-hello.txt";
+        uploadedAsset.url = "http://skygear.dev/files/uploaded-hello.txt";
+        index.save("http://skygear.dev/", "digest1", uploadedAsset);
+
+        Asset asset = createAsset("hello.txt");
+        assertTrue(index.restore("http://skygear.dev/", "digest1", asset));
+        assertEquals("uploaded-hello.txt", asset.getName());
+        assertEquals("http://skygear.dev/files/uploaded-hello.txt", asset.getUrl());
+    }
+
+    @Test
+    public void testRestoreNotFound() throws Exception {
+        AssetDigestIndex index = new AssetDigestIndex((Context) null);
+
+        Asset uploadedAsset = createAsset("hello.txt");
+        uploadedAsset.name = "uploaded-hello.txt";
+        uploadedAsset.url = "http://skygear.dev/files/uploaded-hello.txt";
+        index.save("http://skygear.dev/", "digest1", uploadedAsset);
+
+        // the index is separated by endpoint
+        Asset asset = createAsset("hello.txt");
+        assertFalse(index.restore("http://another.skygear.dev/", "digest1", asset));
+        assertFalse(index.restore("http://skygear.dev/", "digest2", asset));
+        assertEquals("hello.txt", asset.getName());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        AssetUploadStateStore store = new AssetUploadStateStore(null);
+        AssetDigestIndex index = new AssetDigestIndex(store, 2);
+
+        index.save("http://skygear.dev/", "digest1", createUploadedAsset("hello1.txt"));
+        index.save("http://skygear.dev/", "digest2", createUploadedAsset("hello2.txt"));
+        assertTrue(index.restore("http://skygear.dev/", "digest1", createAsset("hello.txt")));
+        index.save("http://skygear.dev/", "digest3", createUploadedAsset("hello3.txt"));
+
+        assertTrue(index.restore("http://skygear.dev/", "digest1", createAsset("hello.txt")));
+        assertFalse(index.restore("http://skygear.dev/", "digest2", createAsset("hello.txt")));
+        assertTrue(index.restore("http://skygear.dev/", "digest3", createAsset("hello.txt")));
+
+        // the usage order is kept in the store, as after an app restart
+        AssetDigestIndex restoredIndex = new AssetDigestIndex(store, 2);
+        assertTrue(restoredIndex.restore("http://skygear.dev/", "digest1", createAsset("hello.txt")));
+        restoredIndex.save("http://skygear.dev/", "digest4", createUploadedAsset("hello4.txt"));
+
+        assertTrue(restoredIndex.restore("http://skygear.dev/", "digest1", createAsset("hello.txt")));
+        assertFalse(restoredIndex.restore("http://skygear.dev/", "digest3", createAsset("hello.txt")));
+        assertTrue(restoredIndex.restore("http://skygear.dev/", "digest4", createAsset("hello.txt")));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        AssetDigestIndex index = new AssetDigestIndex((Context) null);
+        index.save("http://skygear.dev/", "digest1", createUploadedAsset("hello.txt"));
+        index.clear();
+
+        assertFalse(index.restore("http://skygear.dev/", "digest1", createAsset("hello.txt")));
+    }
+}
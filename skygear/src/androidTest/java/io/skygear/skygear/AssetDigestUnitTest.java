@@ -0,0 +1,119 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+
+@RunWith(AndroidJUnit4.class)
+public class AssetDigestUnitTest {
+    private static final String HELLO_WORLD_DIGEST
+            = "a591a6d40bf420404a011733cfb7b190d62c65bf0bcda32b57b277d9ad9f146e";
+
+    @Test
+    public void testDigestOfData() throws Exception {
+        Asset asset = new Asset.Builder("hello.txt")
+                .setMimeType("text/plain")
+                .setData("Hello World".getBytes())
+                .build();
+
+        assertEquals(HELLO_WORLD_DIGEST, AssetDigest.compute(asset));
+
+        // the stream is rewound for the upload
+        byte[] data = new byte[11];
+        assertEquals(11, asset.inputStream.read(data));
+        assertEquals("Hello World", new String(data));
+    }
+
+    @Test
+    public void testDigestOfFile() throws Exception {
+        File file = File.createTempFile("skygear-digest", ".txt");
+        file.deleteOnExit();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write("Hello World".getBytes());
+        outputStream.close();
+
+        FileInputStream inputStream = new FileInputStream(file);
+        Asset asset = new Asset("hello.txt", "text/plain", file.length(), inputStream);
+
+        assertEquals(HELLO_WORLD_DIGEST, AssetDigest.compute(asset));
+        assertEquals(0, inputStream.getChannel().position());
+
+        inputStream.close();
+    }
+
+    @Test
+    public void testDigestOfSameContent() throws Exception {
+        Asset asset1 = new Asset.Builder("a.bin")
+                .setMimeType("application/octet-stream")
+                .setData(new byte[]{1, 2, 3})
+                .build();
+        Asset asset2 = new Asset.Builder("b.bin")
+                .setMimeType("application/octet-stream")
+                .setData(new byte[]{1, 2, 3})
+                .build();
+        Asset asset3 = new Asset.Builder("c.bin")
+                .setMimeType("application/octet-stream")
+                .setData(new byte[]{1, 2, 4})
+                .build();
+
+        assertEquals(AssetDigest.compute(asset1), AssetDigest.compute(asset2));
+        assertFalse(AssetDigest.compute(asset1).equals(AssetDigest.compute(asset3)));
+    }
+
+    @Test
+    public void testNoDigestForUnrewindableStream() throws Exception {
+        FilterInputStream inputStream = new FilterInputStream(
+                new ByteArrayInputStream("Hello World".getBytes())
+        ) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+        Asset asset = new Asset("hello.txt", "text/plain", 11, inputStream);
+
+        assertNull(AssetDigest.compute(asset));
+        assertEquals(11, inputStream.available());
+    }
+
+    @Test
+    public void testNoDigestForBufferedStream() throws Exception {
+        // the whole content would have to be buffered to be read again
+        BufferedInputStream inputStream = new BufferedInputStream(
+                new ByteArrayInputStream("Hello World".getBytes())
+        );
+        Asset asset = new Asset("hello.txt", "text/plain", 11, inputStream);
+
+        assertNull(AssetDigest.compute(asset));
+        assertEquals(11, inputStream.available());
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.content.Context;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.volley.NetworkError;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class AssetUploadPipelineUnitTest {
+    static class MockAssetUploadPipeline extends AssetUploadPipeline {
+        final List<AssetPreparePostRequest> prepareRequests = new ArrayList<>();
+        final List<AssetsPreparePostRequest> batchPrepareRequests = new ArrayList<>();
+        final List<AssetPostRequest> postRequests = new ArrayList<>();
+
+        MockAssetUploadPipeline(List<Asset> assets, int maxInFlight, AssetsUploadResponseHandler handler) {
+            this(createDatabase(false), assets, maxInFlight, handler);
+        }
+
+        MockAssetUploadPipeline(
+                Database database,
+                List<Asset> assets,
+                int maxInFlight,
+                AssetsUploadResponseHandler handler
+        ) {
+            super(database, assets, maxInFlight, null, null, handler);
+        }
+
+        MockAssetUploadPipeline(
+                AssetDigestIndex digestIndex,
+                List<Asset> assets,
+                int maxInFlight,
+                AssetsUploadResponseHandler handler
+        ) {
+            super(createDatabase(false), assets, maxInFlight, digestIndex, "http://skygear.dev/", handler);
+        }
+
+        @Override
+        void computeDigests(Runnable callback) {
+            this.computeDigests();
+            callback.run();
+        }
+
+        @Override
+        void sendPrepareRequest(AssetPreparePostRequest request) {
+            this.prepareRequests.add(request);
+        }
+
+        @Override
+        void sendBatchPrepareRequest(AssetsPreparePostRequest request) {
+            this.batchPrepareRequests.add(request);
+        }
+
+        @Override
+        void sendPostRequest(AssetPostRequest request) {
+            this.postRequests.add(request);
+        }
+
+        void respondPrepare(int index) throws Exception {
+            AssetPreparePostRequest request = this.prepareRequests.get(index);
+            String name = (String) request.getData().get("filename");
+            request.onResponse(new JSONObject().put("result", createPrepareResult(name)));
+        }
+
+        void respondBatchPrepare(int index) throws Exception {
+            AssetsPreparePostRequest request = this.batchPrepareRequests.get(index);
+            JSONArray results = new JSONArray();
+            for (Asset perAsset : request.getAssets()) {
+                results.put(createPrepareResult(perAsset.getName()));
+            }
+
+            request.onResponse(new JSONObject().put("result", results));
+        }
+    }
+
+    static Database createDatabase(boolean batchSupported) {
+        Database database = new Database("_public", null);
+        database.assetsPrepareBatchUnsupported = !batchSupported;
+
+        return database;
+    }
+
+    static JSONObject createPrepareResult(String name) throws Exception {
+        return new JSONObject()
+                .put("asset", new JSONObject()
+                        .put("$name", "uploaded-" + name)
+                        .put("$url", "http://skygear.dev/files/uploaded-" + name))
+                .put("post-request", new JSONObject()
+                        .put("action", "http://skygear.dev/files/upload"));
+    }
+
+    static class MockHandler extends AssetsUploadResponseHandler {
+        Asset[] uploadedAssets;
+        Error error;
+        final List<Long> progress = new ArrayList<>();
+
+        @Override
+        public void onUploadSuccess(Asset[] assets) {
+            this.uploadedAssets = assets;
+        }
+
+        @Override
+        public void onUploadFail(Error error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onProgress(long bytesSent, long totalBytes) {
+            this.progress.add(bytesSent);
+        }
+    }
+
+    private static List<Asset> createAssets(int count) {
+        List<Asset> assets = new ArrayList<>();
+        for (int idx = 0; idx < count; idx++) {
+            assets.add(new Asset.Builder("asset" + idx)
+                    .setMimeType("text/plain")
+                    .setData(new byte[100])
+                    .build());
+        }
+
+        return assets;
+    }
+
+    @Test
+    public void testPipelineBoundsUploadsInFlight() throws Exception {
+        List<Asset> assets = createAssets(5);
+        MockHandler handler = new MockHandler();
+        MockAssetUploadPipeline pipeline = new MockAssetUploadPipeline(assets, 2, handler);
+        pipeline.start();
+
+        assertEquals(2, pipeline.prepareRequests.size());
+        assertEquals(0, pipeline.postRequests.size());
+
+        // prepared assets start uploading, and later assets are prepared meanwhile
+        pipeline.respondPrepare(0);
+        pipeline.respondPrepare(1);
+        assertEquals(2, pipeline.postRequests.size());
+        assertEquals(4, pipeline.prepareRequests.size());
+
+        // no more uploads are started until one finishes
+        pipeline.respondPrepare(2);
+        pipeline.respondPrepare(3);
+        assertEquals(2, pipeline.postRequests.size());
+        assertEquals(4, pipeline.prepareRequests.size());
+
+        pipeline.postRequests.get(0).onResponse("");
+        assertEquals(3, pipeline.postRequests.size());
+        assertEquals(5, pipeline.prepareRequests.size());
+
+        pipeline.respondPrepare(4);
+        for (int idx = 1; idx < 5; idx++) {
+            pipeline.postRequests.get(idx).onResponse("");
+        }
+
+        assertNull(handler.error);
+        assertEquals(5, handler.uploadedAssets.length);
+        assertEquals("uploaded-asset0", handler.uploadedAssets[0].getName());
+        assertEquals(Long.valueOf(500), handler.progress.get(handler.progress.size() - 1));
+        assertTrue(pipeline.isFinished());
+    }
+
+    @Test
+    public void testPipelineFailsFast() throws Exception {
+        List<Asset> assets = createAssets(4);
+        MockHandler handler = new MockHandler();
+        MockAssetUploadPipeline pipeline = new MockAssetUploadPipeline(assets, 2, handler);
+        pipeline.start();
+
+        pipeline.respondPrepare(0);
+        pipeline.respondPrepare(1);
+        assertEquals(2, pipeline.postRequests.size());
+
+        pipeline.postRequests.get(0).onErrorResponse(
+                new NetworkError(new IOException("Connection reset"))
+        );
+
+        assertTrue(pipeline.isFinished());
+        assertNotNull(handler.error);
+        assertTrue(pipeline.postRequests.get(1).isCancelled());
+
+        // responses after failure are ignored
+        pipeline.respondPrepare(2);
+        pipeline.postRequests.get(1).onResponse("");
+        assertEquals(2, pipeline.postRequests.size());
+        assertNull(handler.uploadedAssets);
+    }
+
+    @Test
+    public void testPipelineWithoutAssets() throws Exception {
+        MockHandler handler = new MockHandler();
+        new MockAssetUploadPipeline(new ArrayList<Asset>(), 2, handler).start();
+
+        assertEquals(0, handler.uploadedAssets.length);
+    }
+
+    @Test
+    public void testPipelineAggregateProgress() throws Exception {
+        List<Asset> assets = createAssets(2);
+        MockHandler handler = new MockHandler();
+        MockAssetUploadPipeline pipeline = new MockAssetUploadPipeline(assets, 2, handler);
+        pipeline.start();
+        pipeline.respondPrepare(0);
+        pipeline.respondPrepare(1);
+
+        pipeline.postRequests.get(0).onProgress(50, 100);
+        pipeline.postRequests.get(1).onProgress(30, 100);
+        pipeline.postRequests.get(0).onProgress(100, 100);
+
+        assertEquals(Arrays.asList(50L, 80L, 130L), handler.progress);
+    }
+
+    @Test
+    public void testPipelinePreparesAssetsInBatch() throws Exception {
+        List<Asset> assets = createAssets(5);
+        MockHandler handler = new MockHandler();
+        MockAssetUploadPipeline pipeline
+                = new MockAssetUploadPipeline(createDatabase(true), assets, 2, handler);
+        pipeline.start();
+
+        assertEquals(1, pipeline.batchPrepareRequests.size());
+        assertEquals(5, pipeline.batchPrepareRequests.get(0).getAssets().size());
+        assertEquals(0, pipeline.prepareRequests.size());
+
+        pipeline.respondBatchPrepare(0);
+        assertEquals(2, pipeline.postRequests.size());
+
+        for (int idx = 0; idx < 5; idx++) {
+            pipeline.postRequests.get(idx).onResponse("");
+        }
+
+        assertEquals(1, pipeline.batchPrepareRequests.size());
+        assertEquals(0, pipeline.prepareRequests.size());
+        assertNull(handler.error);
+        assertEquals(5, handler.uploadedAssets.length);
+        assertEquals("uploaded-asset4", handler.uploadedAssets[4].getName());
+    }
+
+    @Test
+    public void testPipelineFallsBackWithoutBatchSupport() throws Exception {
+        Database database = createDatabase(true);
+        List<Asset> assets = createAssets(3);
+        MockHandler handler = new MockHandler();
+        MockAssetUploadPipeline pipeline = new MockAssetUploadPipeline(database, assets, 2, handler);
+        pipeline.start();
+
+        assertEquals(1, pipeline.batchPrepareRequests.size());
+        pipeline.batchPrepareRequests.get(0).getResponseHandler().onFailure(
+                new Error(Error.Code.UNDEFINED_OPERATION.getValue(), "Unknown action")
+        );
+
+        assertTrue(database.assetsPrepareBatchUnsupported);
+        assertNull(handler.error);
+        assertEquals(2, pipeline.prepareRequests.size());
+        assertEquals("asset0", pipeline.prepareRequests.get(0).getData().get("filename"));
+
+        pipeline.respondPrepare(0);
+        pipeline.respondPrepare(1);
+        pipeline.postRequests.get(0).onResponse("");
+        pipeline.respondPrepare(2);
+        pipeline.postRequests.get(1).onResponse("");
+        pipeline.postRequests.get(2).onResponse("");
+
+        assertEquals(1, pipeline.batchPrepareRequests.size());
+        assertEquals(3, handler.uploadedAssets.length);
+    }
+
+    @Test
+    public void testPipelineFailsOnBatchPrepareError() throws Exception {
+        Database database = createDatabase(true);
+        MockHandler handler = new MockHandler();
+        MockAssetUploadPipeline pipeline
+                = new MockAssetUploadPipeline(database, createAssets(3), 2, handler);
+        pipeline.start();
+
+        pipeline.batchPrepareRequests.get(0).getResponseHandler().onFailure(
+                new Error("Connection reset")
+        );
+
+        assertFalse(database.assetsPrepareBatchUnsupported);
+        assertNotNull(handler.error);
+        assertEquals(0, pipeline.prepareRequests.size());
+        assertTrue(pipeline.isFinished());
+    }
+
+    @Test
+    public void testPipelineUploadsSameContentOnce() throws Exception {
+        List<Asset> assets = createAssets(3);
+        MockHandler handler = new MockHandler();
+        MockAssetUploadPipeline pipeline = new MockAssetUploadPipeline(
+                new AssetDigestIndex((Context) null),
+                assets,
+                2,
+                handler
+        );
+        pipeline.start();
+
+        assertEquals(1, pipeline.prepareRequests.size());
+        pipeline.respondPrepare(0);
+        assertEquals(1, pipeline.postRequests.size());
+        pipeline.postRequests.get(0).onResponse("");
+
+        assertNull(handler.error);
+        assertEquals(3, handler.uploadedAssets.length);
+        for (Asset perAsset : handler.uploadedAssets) {
+            assertEquals("uploaded-asset0", perAsset.getName());
+            assertEquals("http://skygear.dev/files/uploaded-asset0", perAsset.getUrl());
+        }
+        assertEquals(Long.valueOf(300), handler.progress.get(handler.progress.size() - 1));
+    }
+
+    @Test
+    public void testPipelineSkipsUploadedContent() throws Exception {
+        AssetDigestIndex digestIndex = new AssetDigestIndex((Context) null);
+
+        MockHandler handler1 = new MockHandler();
+        MockAssetUploadPipeline pipeline1
+                = new MockAssetUploadPipeline(digestIndex, createAssets(1), 2, handler1);
+        pipeline1.start();
+        pipeline1.respondPrepare(0);
+        pipeline1.postRequests.get(0).onResponse("");
+        assertEquals(1, handler1.uploadedAssets.length);
+
+        List<Asset> assets = createAssets(1);
+        assets.add(new Asset.Builder("other")
+                .setMimeType("text/plain")
+                .setData("other content".getBytes())
+                .build());
+
+        MockHandler handler2 = new MockHandler();
+        MockAssetUploadPipeline pipeline2
+                = new MockAssetUploadPipeline(digestIndex, assets, 2, handler2);
+        pipeline2.start();
+
+        // only the asset with new content is uploaded
+        assertEquals(1, pipeline2.prepareRequests.size());
+        assertEquals("other", pipeline2.prepareRequests.get(0).getData().get("filename"));
+        assertEquals("uploaded-asset0", assets.get(0).getName());
+
+        pipeline2.respondPrepare(0);
+        pipeline2.postRequests.get(0).onResponse("");
+        assertEquals(2, handler2.uploadedAssets.length);
+        assertEquals("uploaded-other", handler2.uploadedAssets[1].getName());
+    }
+}
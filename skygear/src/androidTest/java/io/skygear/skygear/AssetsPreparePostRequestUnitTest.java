@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+
+import static junit.framework.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class AssetsPreparePostRequestUnitTest {
+    @Test
+    public void testAssetsPreparePostRequestNormalFlow() throws Exception {
+        Asset asset1 = new Asset.Builder("hello.txt")
+                .setMimeType("text/plain")
+                .setData("Hello World".getBytes())
+                .build();
+        Asset asset2 = new Asset.Builder("hello.json")
+                .setMimeType("application/json")
+                .setData("{}".getBytes())
+                .build();
+        AssetsPreparePostRequest request = new AssetsPreparePostRequest(new Asset[]{asset1, asset2});
+
+        assertEquals("asset:put", request.action);
+        assertEquals(2, request.getAssets().size());
+
+        JSONArray assetArray = (JSONArray) request.data.get("assets");
+        assertEquals(2, assetArray.length());
+
+        JSONObject assetObject1 = assetArray.getJSONObject(0);
+        assertEquals("hello.txt", assetObject1.getString("filename"));
+        assertEquals("text/plain", assetObject1.getString("content-type"));
+        assertEquals(11L, assetObject1.getLong("content-size"));
+
+        JSONObject assetObject2 = assetArray.getJSONObject(1);
+        assertEquals("hello.json", assetObject2.getString("filename"));
+        assertEquals("application/json", assetObject2.getString("content-type"));
+        assertEquals(2L, assetObject2.getLong("content-size"));
+
+        request.validate();
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testAssetsPreparePostRequestNotAllowNoAssets() throws Exception {
+        AssetsPreparePostRequest request = new AssetsPreparePostRequest(new ArrayList<Asset>());
+
+        request.validate();
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testAssetsPreparePostRequestNotAllowNoMimeType() throws Exception {
+        // Use deprecated constructor to test request.validate
+        Asset asset1 = new Asset("hello.txt", "text/plain", "Hello World".getBytes());
+        Asset asset2 = new Asset("hello.json", null, "{}".getBytes());
+        AssetsPreparePostRequest request = new AssetsPreparePostRequest(new Asset[]{asset1, asset2});
+
+        request.validate();
+    }
+}
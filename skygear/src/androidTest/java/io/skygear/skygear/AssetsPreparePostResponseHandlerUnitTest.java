@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+
+@RunWith(AndroidJUnit4.class)
+public class AssetsPreparePostResponseHandlerUnitTest {
+    static class MockHandler extends AssetsPreparePostResponseHandler {
+        final List<AssetPostRequest> postRequests = new ArrayList<>();
+        final List<Error> assetErrors = new ArrayList<>();
+        Error error;
+
+        MockHandler(List<Asset> assets) {
+            super(assets);
+        }
+
+        @Override
+        public void onPreparePostSuccess(Asset asset, AssetPostRequest postRequest) {
+            this.postRequests.add(postRequest);
+        }
+
+        @Override
+        public void onPreparePostFail(Asset asset, Error error) {
+            this.assetErrors.add(error);
+        }
+
+        @Override
+        public void onPreparePostsFail(Error error) {
+            this.error = error;
+        }
+    }
+
+    private static List<Asset> createAssets() {
+        return Arrays.asList(
+                new Asset.Builder("hello.txt")
+                        .setMimeType("text/plain")
+                        .setData("hello world".getBytes())
+                        .build(),
+                new Asset.Builder("hello.json")
+                        .setMimeType("application/json")
+                        .setData("{}".getBytes())
+                        .build()
+        );
+    }
+
+    private static JSONObject createAssetResult(String name) throws Exception {
+        return new JSONObject()
+                .put("asset", new JSONObject()
+                        .put("$name", "uploaded-" + name)
+                        .put("$type", "asset")
+                        .put("$url", "http://skygear.dev/asset/uploaded-" + name))
+                .put("post-request", new JSONObject()
+                        .put("action", "http://skygear.dev/asset/uploaded-" + name)
+                        .put("extra-fields", new JSONObject().put("foo", "bar")));
+    }
+
+    @Test
+    public void testAssetsPreparePostResponseHandlerSuccessFlow() throws Exception {
+        List<Asset> assets = createAssets();
+        MockHandler handler = new MockHandler(assets);
+
+        handler.onSuccess(new JSONObject().put("result", new JSONArray()
+                .put(createAssetResult("hello.txt"))
+                .put(createAssetResult("hello.json"))
+        ));
+
+        assertNull(handler.error);
+        assertEquals(0, handler.assetErrors.size());
+        assertEquals(2, handler.postRequests.size());
+
+        assertEquals("uploaded-hello.txt", assets.get(0).getName());
+        assertEquals("http://skygear.dev/asset/uploaded-hello.txt", assets.get(0).getUrl());
+        assertEquals("uploaded-hello.json", assets.get(1).getName());
+
+        AssetPostRequest postRequest = handler.postRequests.get(1);
+        assertEquals(assets.get(1), postRequest.getAsset());
+        assertEquals("http://skygear.dev/asset/uploaded-hello.json", postRequest.getAction());
+        assertEquals("bar", postRequest.getExtraFields().get("foo"));
+    }
+
+    @Test
+    public void testAssetsPreparePostResponseHandlerPerAssetErrorFlow() throws Exception {
+        List<Asset> assets = createAssets();
+        MockHandler handler = new MockHandler(assets);
+
+        handler.onSuccess(new JSONObject().put("result", new JSONArray()
+                .put(createAssetResult("hello.txt"))
+                .put(new JSONObject().put("error", new JSONObject()
+                        .put("code", 129)
+                        .put("name", "AssetSizeTooLarge")
+                        .put("message", "Asset too large")))
+        ));
+
+        assertNull(handler.error);
+        assertEquals(1, handler.postRequests.size());
+        assertEquals(1, handler.assetErrors.size());
+        assertEquals(Error.Code.ASSET_SIZE_TOO_LARGE, handler.assetErrors.get(0).getCode());
+    }
+
+    @Test
+    public void testAssetsPreparePostResponseHandlerNotSupportedFlow() throws Exception {
+        MockHandler handler = new MockHandler(createAssets());
+
+        // a server without batch support replies with a single asset
+        handler.onSuccess(createAssetResult("hello.txt"));
+
+        assertEquals(0, handler.postRequests.size());
+        assertNotNull(handler.error);
+        assertEquals(Error.Code.NOT_SUPPORTED, handler.error.getCode());
+    }
+
+    @Test
+    public void testAssetsPreparePostResponseHandlerErrorFlow() throws Exception {
+        MockHandler handler = new MockHandler(createAssets());
+        handler.onFailure(new Error("Test Error"));
+
+        assertEquals("Test Error", handler.error.getDetailMessage());
+    }
+}
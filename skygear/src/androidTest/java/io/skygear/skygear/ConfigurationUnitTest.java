@@ -66,4 +66,246 @@ public class ConfigurationUnitTest {
                 .endPoint("http://my-endpoint.skygeario.com/")
                 .build();
     }
+
+    @Test
+    public void testConfigurationBuilderRecordCacheSize() throws Exception {
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .recordCacheSize(200)
+                .build();
+
+        assertEquals(200, config.getRecordCacheSize());
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testConfigurationBuilderNotAllowNegativeRecordCacheSize() throws Exception {
+        new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .recordCacheSize(-1);
+    }
+
+    @Test
+    public void testConfigurationBuilderTransportType() throws Exception {
+        Configuration defaultConfig = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .build();
+
+        assertEquals(TransportType.VOLLEY, defaultConfig.getTransportType());
+
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .transportType(TransportType.OKHTTP)
+                .build();
+
+        assertEquals(TransportType.OKHTTP, config.getTransportType());
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testConfigurationBuilderNotAllowNullTransportType() throws Exception {
+        new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .transportType(null);
+    }
+
+    @Test
+    public void testConfigurationBuilderMaxConcurrentAssetUploads() throws Exception {
+        Configuration defaultConfig = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .build();
+
+        assertEquals(
+                Configuration.DEFAULT_MAX_CONCURRENT_ASSET_UPLOADS,
+                defaultConfig.getMaxConcurrentAssetUploads()
+        );
+
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .maxConcurrentAssetUploads(4)
+                .build();
+
+        assertEquals(4, config.getMaxConcurrentAssetUploads());
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testConfigurationBuilderNotAllowZeroConcurrentAssetUploads() throws Exception {
+        new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .maxConcurrentAssetUploads(0);
+    }
+
+    @Test
+    public void testConfigurationBuilderAssetDeduplication() throws Exception {
+        Configuration defaultConfig = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .build();
+
+        assertFalse(defaultConfig.isAssetDeduplication());
+
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .assetDeduplication(true)
+                .build();
+
+        assertTrue(config.isAssetDeduplication());
+    }
+
+    @Test
+    public void testConfigurationBuilderOfflineWriteQueue() throws Exception {
+        Configuration defaultConfig = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .build();
+
+        assertFalse(defaultConfig.isOfflineWriteQueueEnabled());
+
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .offlineWriteQueueEnabled(true)
+                .build();
+
+        assertTrue(config.isOfflineWriteQueueEnabled());
+    }
+
+    @Test
+    public void testConfigurationBuilderDeltaRecordSave() throws Exception {
+        Configuration defaultConfig = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .build();
+
+        assertFalse(defaultConfig.isDeltaRecordSave());
+
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .deltaRecordSave(true)
+                .build();
+
+        assertTrue(config.isDeltaRecordSave());
+    }
+
+    @Test
+    public void testConfigurationBuilderLazyRecordDecoding() throws Exception {
+        Configuration defaultConfig = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .build();
+
+        assertFalse(defaultConfig.isLazyRecordDecoding());
+
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .lazyRecordDecoding(true)
+                .build();
+
+        assertTrue(config.isLazyRecordDecoding());
+    }
+
+    @Test
+    public void testConfigurationBuilderPubsubReconnect() throws Exception {
+        Configuration defaultConfig = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .build();
+
+        assertEquals(
+                Configuration.DEFAULT_PUBSUB_RECONNECT_BASE_DELAY,
+                defaultConfig.getPubsubReconnectBaseDelay()
+        );
+        assertEquals(
+                Configuration.DEFAULT_PUBSUB_RECONNECT_MAX_DELAY,
+                defaultConfig.getPubsubReconnectMaxDelay()
+        );
+        assertEquals(-1, defaultConfig.getPubsubReconnectRetryLimit());
+
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .pubsubReconnectDelay(500, 10000)
+                .pubsubReconnectRetryLimit(5)
+                .build();
+
+        assertEquals(500, config.getPubsubReconnectBaseDelay());
+        assertEquals(10000, config.getPubsubReconnectMaxDelay());
+        assertEquals(5, config.getPubsubReconnectRetryLimit());
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testConfigurationBuilderNotAllowTooShortPubsubReconnectDelay() throws Exception {
+        new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .pubsubReconnectDelay(10, 10000);
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testConfigurationBuilderNotAllowPubsubReconnectMaxDelayLessThanBase() throws Exception {
+        new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .pubsubReconnectDelay(5000, 1000);
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testConfigurationBuilderNotAllowInvalidPubsubReconnectRetryLimit() throws Exception {
+        new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .pubsubReconnectRetryLimit(-2);
+    }
+
+    @Test
+    public void testConfigurationBuilderPubsubOutbox() throws Exception {
+        Configuration defaultConfig = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .build();
+
+        assertEquals(
+                Configuration.DEFAULT_PUBSUB_OUTBOX_CAPACITY,
+                defaultConfig.getPubsubOutboxCapacity()
+        );
+        assertEquals(PubsubOverflowPolicy.DROP_OLDEST, defaultConfig.getPubsubOutboxOverflowPolicy());
+        assertFalse(defaultConfig.isPubsubOutboxPersistent());
+
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .pubsubOutboxCapacity(20)
+                .pubsubOutboxOverflowPolicy(PubsubOverflowPolicy.COALESCE_BY_CHANNEL)
+                .pubsubOutboxPersistent(true)
+                .build();
+
+        assertEquals(20, config.getPubsubOutboxCapacity());
+        assertEquals(PubsubOverflowPolicy.COALESCE_BY_CHANNEL, config.getPubsubOutboxOverflowPolicy());
+        assertTrue(config.isPubsubOutboxPersistent());
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testConfigurationBuilderNotAllowNegativePubsubOutboxCapacity() throws Exception {
+        new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .pubsubOutboxCapacity(-1);
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testConfigurationBuilderNotAllowNullPubsubOverflowPolicy() throws Exception {
+        new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .pubsubOutboxOverflowPolicy(null);
+    }
 }
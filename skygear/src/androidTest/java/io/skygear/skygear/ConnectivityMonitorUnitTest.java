@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ConnectivityMonitorUnitTest {
+    @Test
+    public void testConnectivityChanges() throws Exception {
+        ConnectivityMonitor monitor = new ConnectivityMonitor(null);
+        assertTrue(monitor.isConnected());
+
+        final List<Boolean> changes = new ArrayList<>();
+        ConnectivityMonitor.Listener listener = new ConnectivityMonitor.Listener() {
+            @Override
+            public void onConnectivityChanged(boolean connected) {
+                changes.add(connected);
+            }
+        };
+        monitor.addListener(listener);
+
+        monitor.setConnected(false);
+        monitor.setConnected(false);
+        assertFalse(monitor.isConnected());
+        monitor.setConnected(true);
+
+        monitor.removeListener(listener);
+        monitor.setConnected(false);
+
+        assertEquals(2, changes.size());
+        assertFalse(changes.get(0));
+        assertTrue(changes.get(1));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Date;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Compares the Joda date formatters previously used by the date serializer with the
+ * hand-written ISO 8601 parser and printer, for dates with and without milliseconds.
+ *
+ * Results are written to logcat with tag "Skygear Benchmark".
+ */
+@Benchmark
+@RunWith(AndroidJUnit4.class)
+public class DateSerializationBenchmark {
+    private static final String TAG = "Skygear Benchmark";
+    private static final int WARM_UP_ITERATIONS = 1000;
+    private static final int ITERATIONS = 10000;
+
+    private static final DateTimeFormatter FormatterWithMS
+            = ISODateTimeFormat.dateTime().withZoneUTC();
+    private static final DateTimeFormatter FormatterWithoutMS
+            = ISODateTimeFormat.dateTimeNoMillis().withZoneUTC();
+
+    private interface Operation {
+        Object run(int idx);
+    }
+
+    private static Date jodaDateFromString(String dateString) {
+        try {
+            return FormatterWithMS.parseDateTime(dateString).toDate();
+        } catch (IllegalArgumentException e) {
+            return FormatterWithoutMS.parseDateTime(dateString).toDate();
+        }
+    }
+
+    private static long nanosPerOperation(Operation operation) {
+        for (int idx = 0; idx < WARM_UP_ITERATIONS; idx++) {
+            operation.run(idx);
+        }
+
+        long start = System.nanoTime();
+        for (int idx = 0; idx < ITERATIONS; idx++) {
+            operation.run(idx);
+        }
+
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    private void runParseBenchmark(String format, final String[] dateStrings) {
+        for (String perString : dateStrings) {
+            assertEquals(jodaDateFromString(perString), DateSerializer.dateFromString(perString));
+        }
+
+        long jodaNanos = nanosPerOperation(new Operation() {
+            @Override
+            public Object run(int idx) {
+                return jodaDateFromString(dateStrings[idx % dateStrings.length]);
+            }
+        });
+        long codecNanos = nanosPerOperation(new Operation() {
+            @Override
+            public Object run(int idx) {
+                return DateSerializer.dateFromString(dateStrings[idx % dateStrings.length]);
+            }
+        });
+
+        Log.i(TAG, String.format(
+                "Date parsing, %s: joda %d ns, codec %d ns",
+                format,
+                jodaNanos,
+                codecNanos
+        ));
+    }
+
+    @Test
+    public void benchmarkParseWithMillis() throws Exception {
+        this.runParseBenchmark("with millis", new String[]{
+                "2016-06-15T07:55:32.342Z",
+                "2017-03-08T20:10:05.123Z",
+                "1999-12-31T23:59:59.999Z"
+        });
+    }
+
+    @Test
+    public void benchmarkParseWithoutMillis() throws Exception {
+        this.runParseBenchmark("without millis", new String[]{
+                "2016-06-15T07:55:32Z",
+                "2017-03-08T20:10:05Z",
+                "1999-12-31T23:59:59Z"
+        });
+    }
+
+    @Test
+    public void benchmarkPrint() throws Exception {
+        final Date[] dates = new Date[]{
+                new Date(1465977332342L),
+                new Date(1489003805123L),
+                new Date(946684799999L)
+        };
+
+        for (Date perDate : dates) {
+            assertEquals(
+                    FormatterWithMS.print(new DateTime(perDate)),
+                    DateSerializer.stringFromDate(perDate)
+            );
+        }
+
+        long jodaNanos = nanosPerOperation(new Operation() {
+            @Override
+            public Object run(int idx) {
+                return FormatterWithMS.print(new DateTime(dates[idx % dates.length]));
+            }
+        });
+        long codecNanos = nanosPerOperation(new Operation() {
+            @Override
+            public Object run(int idx) {
+                return DateSerializer.stringFromDate(dates[idx % dates.length]);
+            }
+        });
+
+        Log.i(TAG, String.format(
+                "Date printing: joda %d ns, codec %d ns",
+                jodaNanos,
+                codecNanos
+        ));
+    }
+}
@@ -21,13 +21,17 @@ import android.support.test.runner.AndroidJUnit4;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
 import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.Date;
+import java.util.Random;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
 public class DateSerializerUnitTest {
@@ -90,4 +94,75 @@ public class DateSerializerUnitTest {
                 DateSerializer.stringFromDate(dateWithZeroMS)
         );
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testDateFromStringWithFractionAndOffset() throws Exception {
+        assertEquals(
+                new DateTime(2017, 3, 8, 20, 10, 5, 100, DateTimeZone.UTC).toDate(),
+                DateSerializer.dateFromString("2017-03-08T20:10:05.1Z")
+        );
+        assertEquals(
+                new DateTime(2017, 3, 8, 20, 10, 5, 123, DateTimeZone.UTC).toDate(),
+                DateSerializer.dateFromString("2017-03-08T20:10:05.123456789Z")
+        );
+        assertEquals(
+                new DateTime(2017, 3, 8, 12, 10, 5, 0, DateTimeZone.UTC).toDate(),
+                DateSerializer.dateFromString("2017-03-08T20:10:05+08:00")
+        );
+        assertEquals(
+                new DateTime(2017, 3, 9, 0, 40, 5, 0, DateTimeZone.UTC).toDate(),
+                DateSerializer.dateFromString("2017-03-08T20:10:05-0430")
+        );
+        assertEquals(
+                new DateTime(1969, 12, 31, 23, 59, 59, 999, DateTimeZone.UTC).toDate(),
+                DateSerializer.dateFromString("1969-12-31T23:59:59.999Z")
+        );
+        assertEquals(
+                new DateTime(2016, 2, 29, 0, 0, 0, 0, DateTimeZone.UTC).toDate(),
+                DateSerializer.dateFromString("2016-02-29T00:00:00Z")
+        );
+    }
+
+    @Test
+    public void testDateFromMalformedString() throws Exception {
+        String[] malformedStrings = new String[]{
+                "",
+                "2017-03-08",
+                "2017-03-08T20:10:05",
+                "2017-03-08T20:10:05.Z",
+                "2017-03-08T20:10:05.123",
+                "2017-03-08 20:10:05Z",
+                "2017-13-08T20:10:05Z",
+                "2017-02-29T20:10:05Z",
+                "2017-03-08T24:10:05Z",
+                "2017-03-08T20:10:05Zjunk",
+                "2017-03-08T20:10:05+8",
+                "2017-0a-08T20:10:05Z"
+        };
+
+        for (String perString : malformedStrings) {
+            boolean failed = false;
+            try {
+                DateSerializer.dateFromString(perString);
+            } catch (IllegalArgumentException e) {
+                failed = true;
+            }
+            assertTrue("Should fail to parse: " + perString, failed);
+        }
+    }
+
+    @Test
+    public void testDateStringMatchesJoda() throws Exception {
+        DateTimeFormatter formatter = ISODateTimeFormat.dateTime().withZoneUTC();
+        Random random = new Random(42);
+
+        for (int idx = 0; idx < 1000; idx++) {
+            // from 1900 to 2100
+            long time = -2208988800000L + (long) (random.nextDouble() * 6311433600000L);
+            String expected = formatter.print(new DateTime(time));
+
+            assertEquals(expected, DateSerializer.stringFromDate(new Date(time)));
+            assertEquals(time, DateSerializer.dateFromString(expected).getTime());
+        }
+    }
+}
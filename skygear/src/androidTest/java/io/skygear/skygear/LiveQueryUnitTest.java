@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static io.skygear.skygear.RecordDiffUnitTest.records;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class LiveQueryUnitTest {
+    @Test
+    public void testDeliverDiffsInOrder() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(3);
+        final List<RecordDiff> diffs = new ArrayList<>();
+        final List<Record[]> results = new ArrayList<>();
+
+        LiveQuery liveQuery = new LiveQuery(new Database("_public", null), new Query("Note"));
+        liveQuery.setListener(new LiveQuery.Listener() {
+            @Override
+            public void onResultUpdate(Record[] records, RecordDiff diff) {
+                results.add(records);
+                diffs.add(diff);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(Error error) {
+                // Do nothing. Queries are not sent in this test.
+            }
+        });
+
+        liveQuery.onQueryResult(records("a", "b", "c"));
+        liveQuery.onQueryResult(records("b", "c", "a", "d"));
+        liveQuery.onQueryResult(records("b", "d"));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        assertEquals(3, diffs.size());
+        assertEquals(3, diffs.get(0).getInsertedCount());
+
+        assertEquals(1, diffs.get(1).getMovedCount());
+        assertEquals(1, diffs.get(1).getInsertedCount());
+        assertEquals(0, diffs.get(1).getRemovedCount());
+
+        assertEquals(2, diffs.get(2).getRemovedCount());
+        assertEquals(0, diffs.get(2).getInsertedCount());
+
+        assertEquals(2, results.get(2).length);
+        assertEquals("d", results.get(2)[1].getId());
+    }
+
+    @Test
+    public void testQueryIsCopied() throws Exception {
+        Query query = new Query("Note");
+        LiveQuery liveQuery = new LiveQuery(new Database("_public", null), query);
+        query.setLimit(10);
+
+        assertEquals(Query.DEFAULT_LIMIT, liveQuery.getQuery().getLimit());
+        assertEquals(0, liveQuery.getRecords().length);
+    }
+
+    @Test
+    public void testPatch() throws Exception {
+        Query query = new Query("Note");
+        Record[] records = records("a", "b", "c");
+
+        Record[] deleted = LiveQuery.patch(
+                query,
+                records,
+                new RecordChange(RecordChange.Type.DELETED, new Record("Note", "b"))
+        );
+        assertEquals(2, deleted.length);
+        assertEquals("a", deleted[0].getId());
+        assertEquals("c", deleted[1].getId());
+
+        Record updatedRecord = new Record("Note", "c");
+        Record[] updated = LiveQuery.patch(
+                query,
+                records,
+                new RecordChange(RecordChange.Type.UPDATED, updatedRecord)
+        );
+        assertSame(updatedRecord, updated[2]);
+        assertSame(records[0], updated[0]);
+
+        assertSame(records, LiveQuery.patch(
+                query,
+                records,
+                new RecordChange(RecordChange.Type.DELETED, new Record("Note", "x"))
+        ));
+        assertNull(LiveQuery.patch(
+                query,
+                records,
+                new RecordChange(RecordChange.Type.UPDATED, new Record("Note", "x"))
+        ));
+        assertNull(LiveQuery.patch(
+                query,
+                records,
+                new RecordChange(RecordChange.Type.INSERTED, new Record("Note", "x"))
+        ));
+    }
+
+    @Test
+    public void testPatchUpdateRefreshesFilteredOrSortedQuery() throws Exception {
+        Record[] records = records("a", "b", "c");
+        RecordChange change = new RecordChange(RecordChange.Type.UPDATED, new Record("Note", "b"));
+
+        assertNull(LiveQuery.patch(new Query("Note").equalTo("title", "Hello"), records, change));
+        assertNull(LiveQuery.patch(new Query("Note").addAscending("title"), records, change));
+
+        Record[] deleted = LiveQuery.patch(
+                new Query("Note").addAscending("title"),
+                records,
+                new RecordChange(RecordChange.Type.DELETED, new Record("Note", "b"))
+        );
+        assertEquals(2, deleted.length);
+    }
+
+    @Test
+    public void testRecordChangePatchesResult() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final List<RecordDiff> diffs = new ArrayList<>();
+
+        LiveQuery liveQuery = new LiveQuery(new Database("_public", null), new Query("Note"));
+        liveQuery.setListener(new LiveQuery.Listener() {
+            @Override
+            public void onResultUpdate(Record[] records, RecordDiff diff) {
+                diffs.add(diff);
+                latch.countDown();
+            }
+
+            @Override
+            public void onError(Error error) {
+                // Do nothing. Queries are not sent in this test.
+            }
+        });
+
+        liveQuery.onQueryResult(records("a", "b", "c"));
+        liveQuery.onRecordChange(new RecordChange(RecordChange.Type.DELETED, new Record("Note", "b")));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        assertEquals(1, diffs.get(1).getRemovedCount());
+    }
+}
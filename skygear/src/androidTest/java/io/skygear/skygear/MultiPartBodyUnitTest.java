@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class MultiPartBodyUnitTest {
+    private static String boundaryOf(MultiPartBody body) {
+        String contentType = body.getContentType();
+        assertTrue(contentType.startsWith("multipart/form-data; boundary="));
+
+        return contentType.substring("multipart/form-data; boundary=".length());
+    }
+
+    @Test
+    public void testMultiPartBodyNormalFlow() throws Exception {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("key", "assets/hello.txt");
+        fields.put("acl", "public-read");
+
+        Asset asset = new Asset.Builder("hello.txt")
+                .setMimeType("text/plain")
+                .setData("hello world".getBytes("utf-8"))
+                .build();
+
+        MultiPartBody body = new MultiPartBody(fields, "file", asset);
+        String boundary = boundaryOf(body);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        body.writeTo(outputStream);
+
+        String expected = "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"key\"\r\n" +
+                "\r\n" +
+                "assets/hello.txt\r\n" +
+                "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"acl\"\r\n" +
+                "\r\n" +
+                "public-read\r\n" +
+                "--" + boundary + "\r\n" +
+                "Content-Disposition: form-data; name=\"file\"; filename=\"hello.txt\"\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "\r\n" +
+                "hello world\r\n" +
+                "--" + boundary + "--\r\n";
+
+        assertEquals(expected, outputStream.toString("utf-8"));
+        assertEquals(outputStream.size(), body.getContentLength());
+    }
+
+    @Test
+    public void testMultiPartBodyFromFile() throws Exception {
+        byte[] data = new byte[100 * 1024];
+        for (int idx = 0; idx < data.length; idx++) {
+            data[idx] = (byte) idx;
+        }
+
+        File file = File.createTempFile("MultiPartBodyUnitTest", null);
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(data);
+        fileOutputStream.close();
+
+        Asset asset = new Asset("data.bin", "application/octet-stream", data.length, new FileInputStream(file));
+        MultiPartBody body = new MultiPartBody(new LinkedHashMap<String, String>(), "file", asset);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        body.writeTo(outputStream);
+        file.delete();
+
+        assertEquals(body.getContentLength(), outputStream.size());
+
+        byte[] written = outputStream.toByteArray();
+        int offset = written.length - data.length - ("\r\n--" + boundaryOf(body) + "--\r\n").length();
+        for (int idx = 0; idx < data.length; idx++) {
+            assertEquals(data[idx], written[offset + idx]);
+        }
+    }
+
+    @Test
+    public void testMultiPartBodyFromTruncatedFile() throws Exception {
+        File file = File.createTempFile("MultiPartBodyUnitTest", null);
+        FileOutputStream fileOutputStream = new FileOutputStream(file);
+        fileOutputStream.write(new byte[1024]);
+        fileOutputStream.close();
+
+        Asset asset = new Asset("data.bin", "application/octet-stream", 4096, new FileInputStream(file));
+        MultiPartBody body = new MultiPartBody(new LinkedHashMap<String, String>(), "file", asset);
+
+        boolean failed = false;
+        try {
+            body.writeTo(new ByteArrayOutputStream());
+        } catch (IOException e) {
+            failed = true;
+        } finally {
+            file.delete();
+        }
+
+        assertTrue(failed);
+    }
+
+    @Test
+    public void testMultiPartBodyWithUnknownSize() throws Exception {
+        Asset asset = new Asset(
+                "hello.txt",
+                "text/plain",
+                0,
+                new ByteArrayInputStream("hello world".getBytes("utf-8"))
+        );
+        MultiPartBody body = new MultiPartBody(new LinkedHashMap<String, String>(), "file", asset);
+
+        assertEquals(-1, body.getContentLength());
+        assertTrue(new String(body.toByteArray(), "utf-8").contains("hello world"));
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Response;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class OkHttpTransportUnitTest {
+    private static final Transport.ResponseParser<JSONObject> JsonParser
+            = new Transport.ResponseParser<JSONObject>() {
+        @Override
+        public JSONObject parse(InputStream body, String charset)
+                throws IOException, JSONException
+        {
+            Scanner scanner = new Scanner(body, charset).useDelimiter("\\A");
+            return new JSONObject(scanner.hasNext() ? scanner.next() : "");
+        }
+    };
+
+    private MockWebServer server;
+    private OkHttpTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = new MockWebServer();
+        this.server.start();
+        this.transport = new OkHttpTransport();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.shutdown();
+    }
+
+    private static Map<String, String> headers() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Skygear-API-Key", "my-api-key");
+
+        return headers;
+    }
+
+    @Test
+    public void testSendRequestNormalFlow() throws Exception {
+        this.server.enqueue(new MockResponse()
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"result\": \"ok\"}"));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<JSONObject> responseRef = new AtomicReference<>();
+
+        this.transport.sendRequest(
+                this.server.url("/auth/login").toString(),
+                headers(),
+                "{\"action\":\"auth:login\"}".getBytes("utf-8"),
+                RequestManager.DEFAULT_TIMEOUT,
+                JsonParser,
+                new Response.Listener<JSONObject>() {
+                    @Override
+                    public void onResponse(JSONObject response) {
+                        responseRef.set(response);
+                        latch.countDown();
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        fail("Should not get error");
+                    }
+                }
+        );
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals("ok", responseRef.get().getString("result"));
+
+        RecordedRequest recordedRequest = this.server.takeRequest();
+        assertEquals("POST", recordedRequest.getMethod());
+        assertEquals("/auth/login", recordedRequest.getPath());
+        assertEquals("my-api-key", recordedRequest.getHeader("X-Skygear-API-Key"));
+        assertTrue(recordedRequest.getHeader("Content-Type").startsWith("application/json"));
+        assertEquals("{\"action\":\"auth:login\"}", recordedRequest.getBody().readUtf8());
+    }
+
+    @Test
+    public void testSendRequestServerError() throws Exception {
+        this.server.enqueue(new MockResponse()
+                .setResponseCode(500)
+                .setBody("{\"error\": {\"code\": 10000, \"message\": \"Unexpected error\"}}"));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<VolleyError> errorRef = new AtomicReference<>();
+
+        this.transport.sendRequest(
+                this.server.url("/record/query").toString(),
+                headers(),
+                "{}".getBytes("utf-8"),
+                RequestManager.DEFAULT_TIMEOUT,
+                JsonParser,
+                new Response.Listener<JSONObject>() {
+                    @Override
+                    public void onResponse(JSONObject response) {
+                        fail("Should not get response");
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        errorRef.set(error);
+                        latch.countDown();
+                    }
+                }
+        );
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        VolleyError error = errorRef.get();
+        assertTrue(error instanceof ServerError);
+        assertNotNull(error.networkResponse);
+        assertEquals(500, error.networkResponse.statusCode);
+        assertEquals(
+                10000,
+                new JSONObject(new String(error.networkResponse.data, "utf-8"))
+                        .getJSONObject("error")
+                        .getInt("code")
+        );
+    }
+
+    @Test
+    public void testSendRequestAuthFailure() throws Exception {
+        this.server.enqueue(new MockResponse().setResponseCode(401).setBody("{}"));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<VolleyError> errorRef = new AtomicReference<>();
+
+        this.transport.sendRequest(
+                this.server.url("/me").toString(),
+                headers(),
+                "{}".getBytes("utf-8"),
+                RequestManager.DEFAULT_TIMEOUT,
+                JsonParser,
+                new Response.Listener<JSONObject>() {
+                    @Override
+                    public void onResponse(JSONObject response) {
+                        fail("Should not get response");
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        errorRef.set(error);
+                        latch.countDown();
+                    }
+                }
+        );
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(errorRef.get() instanceof AuthFailureError);
+        assertEquals(401, errorRef.get().networkResponse.statusCode);
+    }
+
+    @Test
+    public void testSendMultiPartRequestNormalFlow() throws Exception {
+        this.server.enqueue(new MockResponse().setResponseCode(204));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicLong progress = new AtomicLong();
+        Map<String, String> fields = new HashMap<>();
+        fields.put("key", "assets/hello.txt");
+
+        this.transport.sendMultiPartRequest(
+                this.server.url("/upload").toString(),
+                headers(),
+                fields,
+                "file",
+                new Asset("hello.txt", "text/plain", "Hello World".getBytes("utf-8")),
+                RequestManager.DEFAULT_TIMEOUT,
+                new MultiPartBody.ProgressListener() {
+                    @Override
+                    public void onProgress(long bytesWritten, long totalBytes) {
+                        progress.set(bytesWritten);
+                    }
+                },
+                new Response.Listener<String>() {
+                    @Override
+                    public void onResponse(String response) {
+                        latch.countDown();
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        fail("Should not get error");
+                    }
+                }
+        );
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(11, progress.get());
+
+        RecordedRequest recordedRequest = this.server.takeRequest();
+        assertTrue(recordedRequest.getHeader("Content-Type").startsWith("multipart/form-data"));
+
+        String body = recordedRequest.getBody().readUtf8();
+        assertTrue(body.contains("name=\"key\""));
+        assertTrue(body.contains("assets/hello.txt"));
+        assertTrue(body.contains("name=\"file\"; filename=\"hello.txt\""));
+        assertTrue(body.contains("Hello World"));
+    }
+
+    @Test
+    public void testSendRequestWaitsLongerThanDefaultReadTimeout() throws Exception {
+        this.server.enqueue(new MockResponse()
+                .setHeadersDelay(11, TimeUnit.SECONDS)
+                .setHeader("Content-Type", "application/json")
+                .setBody("{\"result\": \"ok\"}"));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<JSONObject> responseRef = new AtomicReference<>();
+
+        this.transport.sendRequest(
+                this.server.url("/record/query").toString(),
+                headers(),
+                "{}".getBytes("utf-8"),
+                RequestManager.DEFAULT_TIMEOUT,
+                JsonParser,
+                new Response.Listener<JSONObject>() {
+                    @Override
+                    public void onResponse(JSONObject response) {
+                        responseRef.set(response);
+                        latch.countDown();
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        fail("Should not get error");
+                    }
+                }
+        );
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals("ok", responseRef.get().getString("result"));
+    }
+
+    @Test
+    public void testSendRequestTimeout() throws Exception {
+        this.server.enqueue(new MockResponse()
+                .setHeadersDelay(5, TimeUnit.SECONDS)
+                .setBody("{}"));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<VolleyError> errorRef = new AtomicReference<>();
+
+        this.transport.sendRequest(
+                this.server.url("/record/query").toString(),
+                headers(),
+                "{}".getBytes("utf-8"),
+                1000,
+                JsonParser,
+                new Response.Listener<JSONObject>() {
+                    @Override
+                    public void onResponse(JSONObject response) {
+                        fail("Should not get response");
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        errorRef.set(error);
+                        latch.countDown();
+                    }
+                }
+        );
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertTrue(errorRef.get() instanceof TimeoutError);
+    }
+
+    @Test
+    public void testSendMultiPartRequestWaitsLongerThanDefaultReadTimeout() throws Exception {
+        this.server.enqueue(new MockResponse()
+                .setHeadersDelay(11, TimeUnit.SECONDS)
+                .setResponseCode(204));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        this.transport.sendMultiPartRequest(
+                this.server.url("/upload").toString(),
+                headers(),
+                new HashMap<String, String>(),
+                "file",
+                new Asset("hello.txt", "text/plain", "Hello World".getBytes("utf-8")),
+                RequestManager.DEFAULT_TIMEOUT,
+                null,
+                new Response.Listener<String>() {
+                    @Override
+                    public void onResponse(String response) {
+                        latch.countDown();
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        fail("Should not get error");
+                    }
+                }
+        );
+
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Subscribes and unsubscribes from many threads while a local WebSocket server
+ * floods the client with messages.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PubsubClientConcurrencyUnitTest {
+    private static final int CHANNEL_COUNT = 4;
+    private static final int THREAD_COUNT = 8;
+    private static final int ITERATIONS = 500;
+    private static final String TRANSIENT_CHANNEL = "transient";
+
+    private static class FloodServer extends WebSocketServer {
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final Map<String, String> lastActions = new HashMap<>();
+        final AtomicInteger unsubscribeCount = new AtomicInteger();
+        volatile boolean flooding = true;
+
+        FloodServer() {
+            super(new InetSocketAddress("127.0.0.1", 0));
+            this.setReuseAddr(true);
+        }
+
+        @Override
+        public void onOpen(final WebSocket conn, ClientHandshake handshake) {
+            new Thread() {
+                @Override
+                public void run() {
+                    int seq = 0;
+                    while (FloodServer.this.flooding && conn.isOpen()) {
+                        conn.send(String.format(
+                                "{\"channel\": \"channel%d\", \"data\": {\"seq\": %d}}",
+                                seq % CHANNEL_COUNT,
+                                seq
+                        ));
+                        conn.send(String.format(
+                                "{\"channel\": \"%s\", \"data\": {\"seq\": %d}}",
+                                TRANSIENT_CHANNEL,
+                                seq
+                        ));
+                        seq++;
+
+                        if (seq % 20 == 0) {
+                            try {
+                                Thread.sleep(1);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                    }
+                }
+            }.start();
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, String message) {
+            try {
+                JSONObject request = new JSONObject(message);
+                String action = request.getString("action");
+                String channel = request.getString("channel");
+                synchronized (this.lastActions) {
+                    this.lastActions.put(channel, action);
+                }
+
+                if (action.equals("unsub") && !channel.equals(TRANSIENT_CHANNEL)) {
+                    this.unsubscribeCount.incrementAndGet();
+                }
+            } catch (JSONException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        String getLastAction(String channel) {
+            synchronized (this.lastActions) {
+                return this.lastActions.get(channel);
+            }
+        }
+
+        @Override
+        public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+            // Do nothing
+        }
+
+        @Override
+        public void onError(WebSocket conn, Exception ex) {
+            // Do nothing
+        }
+
+        @Override
+        public void onStart() {
+            this.startLatch.countDown();
+        }
+    }
+
+    private static class CountingHandler implements PubsubHandler {
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void handle(JSONObject data) {
+            this.count.incrementAndGet();
+        }
+    }
+
+    private FloodServer server;
+    private PubsubClient pubsubClient;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = new FloodServer();
+        this.server.start();
+        assertTrue(this.server.startLatch.await(5, TimeUnit.SECONDS));
+
+        Context context = InstrumentationRegistry.getContext().getApplicationContext();
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://127.0.0.1:" + this.server.getPort() + "/")
+                .apiKey("changeme")
+                .pubsubConnectAutomatically(false)
+                .pubsubHandlerExecutionInBackground(true)
+                .build();
+        Container container = new Container(context, config);
+        container.connectivityMonitor.setConnected(true);
+
+        this.pubsubClient = new PubsubClient(container);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.flooding = false;
+        this.server.stop(1000);
+    }
+
+    @Test
+    public void testSubscribeAndUnsubscribeWhileFlooded() throws Exception {
+        final PubsubClient client = this.pubsubClient;
+
+        CountingHandler[] stableHandlers = new CountingHandler[CHANNEL_COUNT];
+        for (int idx = 0; idx < CHANNEL_COUNT; idx++) {
+            stableHandlers[idx] = new CountingHandler();
+            client.subscribe("channel" + idx, stableHandlers[idx]);
+        }
+
+        client.connect();
+        for (int idx = 0; idx < 50 && !client.isConnected(); idx++) {
+            Thread.sleep(100);
+        }
+        assertTrue(client.isConnected());
+
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch doneLatch = new CountDownLatch(THREAD_COUNT);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        for (int threadIdx = 0; threadIdx < THREAD_COUNT; threadIdx++) {
+            final Random random = new Random(threadIdx);
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        for (int idx = 0; idx < ITERATIONS; idx++) {
+                            String channel = random.nextBoolean()
+                                    ? TRANSIENT_CHANNEL
+                                    : "channel" + random.nextInt(CHANNEL_COUNT);
+                            PubsubHandler handler = new CountingHandler();
+
+                            client.subscribe(channel, handler);
+                            Thread.yield();
+                            assertSame(handler, client.unsubscribe(channel, handler));
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    } finally {
+                        doneLatch.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        startLatch.countDown();
+        assertTrue(doneLatch.await(60, TimeUnit.SECONDS));
+        assertEquals(0, errors.size());
+
+        // no subscription is lost, and stable channels are never unsubscribed
+        for (int idx = 0; idx < CHANNEL_COUNT; idx++) {
+            PubsubHandler[] channelHandlers = client.subscriptions.get("channel" + idx);
+            assertEquals(1, channelHandlers.length);
+            assertSame(stableHandlers[idx], channelHandlers[0]);
+            assertTrue(stableHandlers[idx].count.get() > 0);
+        }
+        assertEquals(0, client.subscriptions.get(TRANSIENT_CHANNEL).length);
+        assertEquals(0, this.server.unsubscribeCount.get());
+
+        // the server sees the transient channel unsubscribed in the end
+        for (int idx = 0; idx < 50 && !"unsub".equals(this.server.getLastAction(TRANSIENT_CHANNEL)); idx++) {
+            Thread.sleep(100);
+        }
+        assertEquals("unsub", this.server.getLastAction(TRANSIENT_CHANNEL));
+        assertTrue(client.getMetrics().getDeliveredEventCount() > 0);
+    }
+}
@@ -29,11 +29,11 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -128,6 +128,47 @@ public class PubsubClientUnitTest {
         pubsubClient.configure(config);
     }
 
+    @Test
+    public void testPubsubReconnectConfigFlow() throws Exception {
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://skygear.dev/")
+                .apiKey("changeme")
+                .pubsubConnectAutomatically(false)
+                .pubsubReconnectDelay(500, 8000)
+                .pubsubReconnectRetryLimit(3)
+                .build();
+
+        PubsubClient pubsubClient = new PubsubClient(instrumentationContainer);
+        pubsubClient.configure(config);
+
+        assertEquals(3, pubsubClient.getRetryLimit());
+        assertEquals(500, pubsubClient.getRetryWaitTime());
+
+        long delay = pubsubClient.getBackoffRetryWaitTime();
+        assertTrue(delay >= 250 && delay <= 500);
+    }
+
+    @Test
+    public void testPubsubReconnectPausedWithoutNetworkFlow() throws Exception {
+        ConnectivityMonitor connectivityMonitor = instrumentationContainer.connectivityMonitor;
+        PubsubClient pubsubClient = new PubsubClient(instrumentationContainer);
+
+        try {
+            connectivityMonitor.setConnected(false);
+            assertTrue(pubsubClient.isWaitingForNetwork());
+
+            pubsubClient.connect();
+            assertTrue(pubsubClient.isWaitingForNetwork());
+            assertNull(pubsubClient.webSocket);
+
+            connectivityMonitor.setConnected(true);
+            assertFalse(pubsubClient.isWaitingForNetwork());
+            assertNotNull(pubsubClient.webSocket);
+        } finally {
+            connectivityMonitor.setConnected(true);
+        }
+    }
+
     @Test
     public void testPubsubIsConnectedCheckFlow() throws Exception {
         final boolean[] checkpoints = new boolean[]{ false };
@@ -531,10 +572,10 @@ public class PubsubClientUnitTest {
                 fail("Should not run handle function");
             }
         });
-        assertEquals(1, pubsubClient.handlers.get("HelloWorld").size());
+        assertEquals(1, pubsubClient.subscriptions.get("HelloWorld").length);
 
         pubsubClient.unsubscribeAll("HelloWorld");
-        assertNull(pubsubClient.handlers.get("HelloWorld"));
+        assertEquals(0, pubsubClient.subscriptions.get("HelloWorld").length);
     }
 
     @Test
@@ -637,18 +678,18 @@ public class PubsubClientUnitTest {
                 new JSONObject("{\"msg\": \"test_msg_3\"}")
         );
 
-        Queue<PubsubClient.Message> pendingMessages = pubsubClient.pendingMessages;
+        List<PubsubOutbox.Entry> pendingMessages = pubsubClient.pendingMessages.peek(10);
         assertEquals(3, pendingMessages.size());
 
-        PubsubClient.Message message1 = pendingMessages.remove();
+        PubsubClient.Message message1 = pendingMessages.get(0);
         assertEquals("test_channel", message1.channel);
         assertEquals("{\"msg\":\"test_msg_1\"}", message1.data.toString());
 
-        PubsubClient.Message message2 = pendingMessages.remove();
+        PubsubClient.Message message2 = pendingMessages.get(1);
         assertEquals("test_channel", message2.channel);
         assertEquals("{\"msg\":\"test_msg_2\"}", message2.data.toString());
 
-        PubsubClient.Message message3 = pendingMessages.remove();
+        PubsubClient.Message message3 = pendingMessages.get(2);
         assertEquals("test_channel", message3.channel);
         assertEquals("{\"msg\":\"test_msg_3\"}", message3.data.toString());
     }
@@ -715,5 +756,95 @@ public class PubsubClientUnitTest {
         assertTrue(checkpoints.get("test_msg_1"));
         assertTrue(checkpoints.get("test_msg_2"));
         assertTrue(checkpoints.get("test_msg_3"));
+        assertTrue(pubsubClient.pendingMessages.isEmpty());
+    }
+
+    @Test
+    public void testPendingMessagesBoundedByConfig() throws Exception {
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://skygear.dev/")
+                .apiKey("changeme")
+                .pubsubConnectAutomatically(false)
+                .pubsubOutboxCapacity(2)
+                .pubsubOutboxOverflowPolicy(PubsubOverflowPolicy.DROP_NEWEST)
+                .build();
+
+        PubsubClient pubsubClient = new PubsubClient(instrumentationContainer);
+        pubsubClient.configure(config);
+
+        pubsubClient.publish("test_channel", new JSONObject("{\"msg\": \"test_msg_1\"}"));
+        pubsubClient.publish("test_channel", new JSONObject("{\"msg\": \"test_msg_2\"}"));
+        pubsubClient.publish("test_channel", new JSONObject("{\"msg\": \"test_msg_3\"}"));
+
+        List<PubsubOutbox.Entry> pendingMessages = pubsubClient.pendingMessages.peek(10);
+        assertEquals(2, pendingMessages.size());
+        assertEquals("test_msg_1", pendingMessages.get(0).data.getString("msg"));
+        assertEquals("test_msg_2", pendingMessages.get(1).data.getString("msg"));
+    }
+
+    @Test
+    public void testFlushPendingMessagesStopsWhenDisconnected() throws Exception {
+        final int[] sentCount = new int[]{ 0 };
+        WebSocketClient flakyWebSocketClient = new WebSocketClientEmptyImpl() {
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void sendMessage(String message) throws NotYetConnectedException {
+                if (sentCount[0] == 60) {
+                    throw new NotYetConnectedException("WebSocket disconnected");
+                }
+                sentCount[0]++;
+            }
+        };
+
+        PubsubClient pubsubClient = new PubsubClient(instrumentationContainer);
+        for (int idx = 0; idx < 100; idx++) {
+            pubsubClient.pendingMessages.offer("test_channel", new JSONObject().put("msg", idx));
+        }
+
+        pubsubClient.webSocket = flakyWebSocketClient;
+        pubsubClient.flushPendingMessages();
+
+        assertEquals(60, sentCount[0]);
+        assertEquals(40, pubsubClient.pendingMessages.size());
+        assertEquals(60, pubsubClient.pendingMessages.peek(1).get(0).data.getInt("msg"));
+    }
+
+    @Test
+    public void testPublishWhileFlushingKeepsOrder() throws Exception {
+        final List<Integer> sentMessages = new ArrayList<>();
+        final PubsubClient pubsubClient = new PubsubClient(instrumentationContainer);
+        pubsubClient.webSocket = new WebSocketClientEmptyImpl() {
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void sendMessage(String message) throws NotYetConnectedException {
+                try {
+                    int msg = new JSONObject(message).getJSONObject("data").getInt("msg");
+                    sentMessages.add(msg);
+
+                    // published in the middle of the flush
+                    if (msg == 0) {
+                        pubsubClient.publish("test_channel", new JSONObject().put("msg", 3));
+                    }
+                } catch (JSONException e) {
+                    fail(e.getMessage());
+                }
+            }
+        };
+
+        for (int idx = 0; idx < 3; idx++) {
+            pubsubClient.pendingMessages.offer("test_channel", new JSONObject().put("msg", idx));
+        }
+        pubsubClient.flushPendingMessages();
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), sentMessages);
+        assertTrue(pubsubClient.pendingMessages.isEmpty());
     }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares dispatching pubsub messages per message (parse on the socket thread,
+ * then one Handler and one Runnable per handler per message) with the batching
+ * dispatcher (parse on a worker, deliver per channel in batches).
+ *
+ * Socket thread time per message and total delivery time are reported. Results
+ * are written to logcat with tag "Skygear Benchmark".
+ */
+@Benchmark
+@RunWith(AndroidJUnit4.class)
+public class PubsubDispatchBenchmark {
+    private static final String TAG = "Skygear Benchmark";
+    private static final int HANDLERS_PER_CHANNEL = 2;
+
+    private static HandlerThread deliveryThread;
+
+    private static synchronized HandlerThread getDeliveryThread() {
+        if (deliveryThread == null) {
+            deliveryThread = new HandlerThread("Benchmark Delivery");
+            deliveryThread.start();
+        }
+
+        return deliveryThread;
+    }
+
+    private static String[] buildMessages(int messageCount) throws Exception {
+        String[] messages = new String[messageCount];
+        for (int idx = 0; idx < messageCount; idx++) {
+            messages[idx] = new JSONObject()
+                    .put("channel", "channel" + (idx % 4))
+                    .put("data", new JSONObject()
+                            .put("msg", "message number " + idx)
+                            .put("seq", idx))
+                    .toString();
+        }
+
+        return messages;
+    }
+
+    private static PubsubHandler countingHandler(final CountDownLatch latch) {
+        return new PubsubHandler() {
+            @Override
+            public void handle(JSONObject data) {
+                latch.countDown();
+            }
+        };
+    }
+
+    /**
+     * @return socket thread nanos per message, and total nanos until all are handled
+     */
+    private static long[] runPerMessage(String[] messages) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(messages.length * HANDLERS_PER_CHANNEL);
+        PubsubHandler[] handlers = new PubsubHandler[HANDLERS_PER_CHANNEL];
+        for (int idx = 0; idx < handlers.length; idx++) {
+            handlers[idx] = countingHandler(latch);
+        }
+
+        long start = System.nanoTime();
+        for (String perMessage : messages) {
+            final JSONObject data = new JSONObject(perMessage).getJSONObject("data");
+            Handler handler = new Handler(getDeliveryThread().getLooper());
+            for (final PubsubHandler perHandler : handlers) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        perHandler.handle(data);
+                    }
+                });
+            }
+        }
+        long socketNanos = System.nanoTime() - start;
+
+        assertTrue(latch.await(60, TimeUnit.SECONDS));
+        long totalNanos = System.nanoTime() - start;
+
+        return new long[]{socketNanos / messages.length, totalNanos};
+    }
+
+    private static long[] runDispatcher(String[] messages) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(messages.length * HANDLERS_PER_CHANNEL);
+        final PubsubHandler[] handlers = new PubsubHandler[HANDLERS_PER_CHANNEL];
+        for (int idx = 0; idx < handlers.length; idx++) {
+            handlers[idx] = countingHandler(latch);
+        }
+
+        PubsubDispatcher dispatcher = new PubsubDispatcher(new PubsubDispatcher.Callback() {
+            @Override
+            public PubsubHandler[] getHandlers(String channel) {
+                return handlers;
+            }
+
+            @Override
+            public void onDecodeError(WebSocketClientImpl.Exception exception) {
+                throw new RuntimeException(exception);
+            }
+        }, true);
+
+        long start = System.nanoTime();
+        for (String perMessage : messages) {
+            dispatcher.dispatch(perMessage);
+        }
+        long socketNanos = System.nanoTime() - start;
+
+        assertTrue(latch.await(60, TimeUnit.SECONDS));
+        long totalNanos = System.nanoTime() - start;
+
+        return new long[]{socketNanos / messages.length, totalNanos};
+    }
+
+    private void runBenchmark(int messageCount) throws Exception {
+        String[] messages = buildMessages(messageCount);
+
+        // warm up
+        runPerMessage(messages);
+        runDispatcher(messages);
+
+        long[] perMessage = runPerMessage(messages);
+        long[] dispatcher = runDispatcher(messages);
+
+        Log.i(TAG, String.format(
+                "Pubsub dispatch, %d messages, %d handlers per channel: " +
+                        "per message %d ns on socket thread / %.2f ms total, " +
+                        "dispatcher %d ns on socket thread / %.2f ms total",
+                messageCount,
+                HANDLERS_PER_CHANNEL,
+                perMessage[0],
+                perMessage[1] / 1e6,
+                dispatcher[0],
+                dispatcher[1] / 1e6
+        ));
+    }
+
+    @Test
+    public void benchmark100Messages() throws Exception {
+        this.runBenchmark(100);
+    }
+
+    @Test
+    public void benchmark1000Messages() throws Exception {
+        this.runBenchmark(1000);
+    }
+
+    @Test
+    public void benchmark10000Messages() throws Exception {
+        this.runBenchmark(10000);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.os.Looper;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class PubsubDispatcherUnitTest {
+    private static class TestCallback implements PubsubDispatcher.Callback {
+        final Map<String, List<PubsubHandler>> handlers = new HashMap<>();
+        final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+        synchronized void subscribe(String channel, PubsubHandler handler) {
+            List<PubsubHandler> channelHandlers = this.handlers.get(channel);
+            if (channelHandlers == null) {
+                channelHandlers = new ArrayList<>();
+                this.handlers.put(channel, channelHandlers);
+            }
+            channelHandlers.add(handler);
+        }
+
+        @Override
+        public synchronized PubsubHandler[] getHandlers(String channel) {
+            List<PubsubHandler> channelHandlers = this.handlers.get(channel);
+            if (channelHandlers == null) {
+                return new PubsubHandler[0];
+            }
+
+            return channelHandlers.toArray(new PubsubHandler[channelHandlers.size()]);
+        }
+
+        @Override
+        public void onDecodeError(WebSocketClientImpl.Exception exception) {
+            this.errors.add(exception.getMessage());
+        }
+    }
+
+    private static class RecordingHandler implements PubsubHandler {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch latch;
+        volatile boolean onMainThread;
+
+        RecordingHandler(int expectedCount) {
+            this.latch = new CountDownLatch(expectedCount);
+        }
+
+        @Override
+        public void handle(JSONObject data) {
+            this.onMainThread = Looper.myLooper() == Looper.getMainLooper();
+            this.messages.add(data == null ? null : data.optString("msg"));
+            this.latch.countDown();
+        }
+    }
+
+    private static String message(String channel, String msg) {
+        return String.format("{\"channel\": \"%s\", \"data\": {\"msg\": \"%s\"}}", channel, msg);
+    }
+
+    @Test
+    public void testDispatchInOrderPerChannel() throws Exception {
+        TestCallback callback = new TestCallback();
+        RecordingHandler handler1 = new RecordingHandler(3);
+        RecordingHandler handler2 = new RecordingHandler(2);
+        callback.subscribe("channel1", handler1);
+        callback.subscribe("channel2", handler2);
+
+        PubsubDispatcher dispatcher = new PubsubDispatcher(callback, true);
+        dispatcher.dispatch(message("channel1", "a"));
+        dispatcher.dispatch(message("channel2", "b"));
+        dispatcher.dispatch(message("channel1", "c"));
+        dispatcher.dispatch(new JSONObject(message("channel2", "d")));
+        dispatcher.dispatch(message("channel1", "e"));
+
+        assertTrue(handler1.latch.await(1, TimeUnit.SECONDS));
+        assertTrue(handler2.latch.await(1, TimeUnit.SECONDS));
+        assertEquals(3, handler1.messages.size());
+        assertEquals("a", handler1.messages.get(0));
+        assertEquals("c", handler1.messages.get(1));
+        assertEquals("e", handler1.messages.get(2));
+        assertEquals(2, handler2.messages.size());
+        assertEquals("b", handler2.messages.get(0));
+        assertEquals("d", handler2.messages.get(1));
+        assertFalse(handler1.onMainThread);
+    }
+
+    @Test
+    public void testDispatchToBatchHandler() throws Exception {
+        final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+        final CountDownLatch latch = new CountDownLatch(3);
+        PubsubBatchHandler batchHandler = new PubsubBatchHandler() {
+            @Override
+            public void handle(List<JSONObject> events) {
+                List<String> batch = new ArrayList<>();
+                for (JSONObject perEvent : events) {
+                    batch.add(perEvent.optString("msg"));
+                    latch.countDown();
+                }
+                batches.add(batch);
+            }
+        };
+        RecordingHandler handler = new RecordingHandler(3);
+
+        TestCallback callback = new TestCallback();
+        callback.subscribe("channel1", batchHandler);
+        callback.subscribe("channel1", handler);
+
+        PubsubDispatcher dispatcher = new PubsubDispatcher(callback, true);
+        dispatcher.dispatch(message("channel1", "a"));
+        dispatcher.dispatch(message("channel1", "b"));
+        dispatcher.dispatch(message("channel1", "c"));
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(handler.latch.await(1, TimeUnit.SECONDS));
+
+        List<String> received = new ArrayList<>();
+        for (List<String> perBatch : batches) {
+            assertFalse(perBatch.isEmpty());
+            received.addAll(perBatch);
+        }
+        assertEquals(Arrays.asList("a", "b", "c"), received);
+        assertEquals(Arrays.asList("a", "b", "c"), handler.messages);
+    }
+
+    @Test
+    public void testDispatchOnMainThread() throws Exception {
+        TestCallback callback = new TestCallback();
+        RecordingHandler handler = new RecordingHandler(1);
+        callback.subscribe("channel1", handler);
+
+        PubsubDispatcher dispatcher = new PubsubDispatcher(callback, false);
+        dispatcher.dispatch(message("channel1", "a"));
+
+        assertTrue(handler.latch.await(1, TimeUnit.SECONDS));
+        assertTrue(handler.onMainThread);
+    }
+
+    @Test
+    public void testDispatchWithoutData() throws Exception {
+        TestCallback callback = new TestCallback();
+        RecordingHandler handler = new RecordingHandler(1);
+        callback.subscribe("channel1", handler);
+
+        PubsubDispatcher dispatcher = new PubsubDispatcher(callback, true);
+        dispatcher.dispatch("{\"channel\": \"channel1\"}");
+
+        assertTrue(handler.latch.await(1, TimeUnit.SECONDS));
+        assertEquals(1, handler.messages.size());
+        assertNull(handler.messages.get(0));
+    }
+
+    @Test
+    public void testReportDecodeErrors() throws Exception {
+        TestCallback callback = new TestCallback();
+        RecordingHandler handler = new RecordingHandler(1);
+        callback.subscribe("channel1", handler);
+
+        PubsubDispatcher dispatcher = new PubsubDispatcher(callback, true);
+        dispatcher.dispatch("{not json");
+        dispatcher.dispatch("{\"data\": {\"msg\": \"no channel\"}}");
+        dispatcher.dispatch(message("channel1", "a"));
+
+        assertTrue(handler.latch.await(1, TimeUnit.SECONDS));
+        assertEquals(2, callback.errors.size());
+        assertEquals("Missing channel name on event data", callback.errors.get(1));
+        assertEquals(1, handler.messages.size());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        TestCallback callback = new TestCallback();
+        RecordingHandler handler = new RecordingHandler(100);
+        callback.subscribe("channel1", handler);
+
+        PubsubDispatcher dispatcher = new PubsubDispatcher(callback, true);
+        for (int idx = 0; idx < 100; idx++) {
+            dispatcher.dispatch(message("channel1", String.valueOf(idx)));
+        }
+        dispatcher.dispatch(message("channel_without_handler", "x"));
+
+        assertTrue(handler.latch.await(1, TimeUnit.SECONDS));
+
+        PubsubMetrics metrics = dispatcher.getMetrics();
+        assertEquals(100, metrics.getDeliveredEventCount());
+        assertEquals(0, metrics.getDeliveryQueueDepth());
+        assertTrue(metrics.getMaxDecodeQueueDepth() >= 1);
+        assertTrue(metrics.getMaxDeliveryQueueDepth() >= 1);
+        assertTrue(metrics.getMaxDeliveryQueueDepth() <= 100);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class PubsubOutboxUnitTest {
+    private static JSONObject message(int value) throws Exception {
+        return new JSONObject().put("value", value);
+    }
+
+    private static int valueOf(PubsubOutbox.Entry entry) throws Exception {
+        return entry.data.getInt("value");
+    }
+
+    @Test
+    public void testOfferAndPeekInOrder() throws Exception {
+        PubsubOutbox outbox = new PubsubOutbox(10, PubsubOverflowPolicy.DROP_OLDEST, null);
+        assertTrue(outbox.isEmpty());
+
+        assertTrue(outbox.offer("ch1", message(1)));
+        assertTrue(outbox.offer("ch2", message(2)));
+        assertTrue(outbox.offer("ch1", message(3)));
+
+        assertEquals(3, outbox.size());
+        List<PubsubOutbox.Entry> entries = outbox.peek(2);
+        assertEquals(2, entries.size());
+        assertEquals("ch1", entries.get(0).channel);
+        assertEquals(1, valueOf(entries.get(0)));
+        assertEquals("ch2", entries.get(1).channel);
+        assertEquals(2, valueOf(entries.get(1)));
+        assertTrue(entries.get(0).id < entries.get(1).id);
+
+        // peeking does not remove
+        assertEquals(3, outbox.size());
+    }
+
+    @Test
+    public void testRemoveSentEntries() throws Exception {
+        PubsubOutbox outbox = new PubsubOutbox(10, PubsubOverflowPolicy.DROP_OLDEST, null);
+        outbox.offer("ch1", message(1));
+        outbox.offer("ch1", message(2));
+        outbox.offer("ch1", message(3));
+
+        outbox.remove(outbox.peek(2));
+
+        List<PubsubOutbox.Entry> entries = outbox.peek(10);
+        assertEquals(1, entries.size());
+        assertEquals(3, valueOf(entries.get(0)));
+    }
+
+    @Test
+    public void testDropOldestWhenFull() throws Exception {
+        PubsubOutbox outbox = new PubsubOutbox(2, PubsubOverflowPolicy.DROP_OLDEST, null);
+        assertTrue(outbox.offer("ch1", message(1)));
+        assertTrue(outbox.offer("ch1", message(2)));
+        assertTrue(outbox.offer("ch1", message(3)));
+
+        List<PubsubOutbox.Entry> entries = outbox.peek(10);
+        assertEquals(2, entries.size());
+        assertEquals(2, valueOf(entries.get(0)));
+        assertEquals(3, valueOf(entries.get(1)));
+    }
+
+    @Test
+    public void testDropNewestWhenFull() throws Exception {
+        PubsubOutbox outbox = new PubsubOutbox(2, PubsubOverflowPolicy.DROP_NEWEST, null);
+        assertTrue(outbox.offer("ch1", message(1)));
+        assertTrue(outbox.offer("ch1", message(2)));
+        assertFalse(outbox.offer("ch1", message(3)));
+
+        List<PubsubOutbox.Entry> entries = outbox.peek(10);
+        assertEquals(2, entries.size());
+        assertEquals(1, valueOf(entries.get(0)));
+        assertEquals(2, valueOf(entries.get(1)));
+    }
+
+    @Test
+    public void testCoalesceByChannel() throws Exception {
+        PubsubOutbox outbox = new PubsubOutbox(2, PubsubOverflowPolicy.COALESCE_BY_CHANNEL, null);
+        assertTrue(outbox.offer("ch1", message(1)));
+        assertTrue(outbox.offer("ch2", message(2)));
+        assertTrue(outbox.offer("ch1", message(3)));
+
+        List<PubsubOutbox.Entry> entries = outbox.peek(10);
+        assertEquals(2, entries.size());
+        assertEquals("ch2", entries.get(0).channel);
+        assertEquals(2, valueOf(entries.get(0)));
+        assertEquals("ch1", entries.get(1).channel);
+        assertEquals(3, valueOf(entries.get(1)));
+
+        // a new channel still drops the oldest message when full
+        assertTrue(outbox.offer("ch3", message(4)));
+        entries = outbox.peek(10);
+        assertEquals(2, entries.size());
+        assertEquals("ch1", entries.get(0).channel);
+        assertEquals("ch3", entries.get(1).channel);
+    }
+
+    @Test
+    public void testZeroCapacityDropsEverything() throws Exception {
+        PubsubOutbox outbox = new PubsubOutbox(0, PubsubOverflowPolicy.DROP_OLDEST, null);
+        assertFalse(outbox.offer("ch1", message(1)));
+        assertTrue(outbox.isEmpty());
+    }
+
+    @Test
+    public void testTransferTo() throws Exception {
+        PubsubOutbox outbox = new PubsubOutbox(10, PubsubOverflowPolicy.DROP_OLDEST, null);
+        outbox.offer("ch1", message(1));
+        outbox.offer("ch1", message(2));
+        outbox.offer("ch1", message(3));
+
+        PubsubOutbox smallerOutbox = new PubsubOutbox(2, PubsubOverflowPolicy.DROP_OLDEST, null);
+        outbox.transferTo(smallerOutbox);
+
+        assertTrue(outbox.isEmpty());
+        List<PubsubOutbox.Entry> entries = smallerOutbox.peek(10);
+        assertEquals(2, entries.size());
+        assertEquals(2, valueOf(entries.get(0)));
+        assertEquals(3, valueOf(entries.get(1)));
+    }
+
+    @Test
+    public void testRestoreInBackgroundKeepsOrder() throws Exception {
+        Context context = InstrumentationRegistry.getContext().getApplicationContext();
+        context.deleteDatabase(PubsubOutbox.DATABASE_NAME);
+
+        try {
+            final CountDownLatch firstLatch = new CountDownLatch(1);
+            PubsubOutbox outbox = new PubsubOutbox(
+                    10,
+                    PubsubOverflowPolicy.DROP_OLDEST,
+                    context,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            firstLatch.countDown();
+                        }
+                    }
+            );
+            assertTrue(firstLatch.await(5, TimeUnit.SECONDS));
+            outbox.offer("ch1", message(1));
+            outbox.offer("ch1", message(2));
+
+            // as after a process restart
+            final CountDownLatch latch = new CountDownLatch(1);
+            PubsubOutbox restoredOutbox = new PubsubOutbox(
+                    10,
+                    PubsubOverflowPolicy.DROP_OLDEST,
+                    context,
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            latch.countDown();
+                        }
+                    }
+            );
+            restoredOutbox.offer("ch2", message(3));
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+            assertTrue(restoredOutbox.isRestored());
+            assertEquals(3, restoredOutbox.size());
+            List<PubsubOutbox.Entry> entries = restoredOutbox.peek(10);
+            assertEquals(1, valueOf(entries.get(0)));
+            assertEquals(2, valueOf(entries.get(1)));
+            assertEquals(3, valueOf(entries.get(2)));
+            assertTrue(entries.get(1).id < entries.get(2).id);
+        } finally {
+            context.deleteDatabase(PubsubOutbox.DATABASE_NAME);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class PubsubSubscriptionRegistryUnitTest {
+    private static PubsubHandler emptyHandler() {
+        return new PubsubHandler() {
+            @Override
+            public void handle(JSONObject data) {
+                // Do nothing
+            }
+        };
+    }
+
+    @Test
+    public void testAddAndGet() throws Exception {
+        PubsubSubscriptionRegistry registry = new PubsubSubscriptionRegistry();
+        PubsubHandler handler1 = emptyHandler();
+        PubsubHandler handler2 = emptyHandler();
+
+        assertEquals(0, registry.get("channel1").length);
+        assertTrue(registry.add("channel1", handler1));
+        assertFalse(registry.add("channel1", handler2));
+        assertFalse(registry.add("channel1", handler1));
+        assertTrue(registry.add("channel2", handler1));
+
+        PubsubHandler[] channelHandlers = registry.get("channel1");
+        assertEquals(2, channelHandlers.length);
+        assertSame(handler1, channelHandlers[0]);
+        assertSame(handler2, channelHandlers[1]);
+
+        List<String> channels = registry.getChannels();
+        Collections.sort(channels);
+        assertEquals(2, channels.size());
+        assertEquals("channel1", channels.get(0));
+        assertEquals("channel2", channels.get(1));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        PubsubSubscriptionRegistry registry = new PubsubSubscriptionRegistry();
+        PubsubHandler handler1 = emptyHandler();
+        PubsubHandler handler2 = emptyHandler();
+        PubsubHandler handler3 = emptyHandler();
+        registry.add("channel1", handler1);
+        registry.add("channel1", handler2);
+        registry.add("channel1", handler3);
+
+        assertEquals(-1, registry.remove("channel2", handler1));
+        assertEquals(2, registry.remove("channel1", handler2));
+        assertEquals(2, registry.remove("channel1", handler2));
+
+        PubsubHandler[] channelHandlers = registry.get("channel1");
+        assertEquals(2, channelHandlers.length);
+        assertSame(handler1, channelHandlers[0]);
+        assertSame(handler3, channelHandlers[1]);
+
+        assertEquals(1, registry.remove("channel1", handler1));
+        assertEquals(0, registry.remove("channel1", handler3));
+        assertEquals(0, registry.get("channel1").length);
+        assertEquals(0, registry.getChannels().size());
+    }
+
+    @Test
+    public void testRemoveAll() throws Exception {
+        PubsubSubscriptionRegistry registry = new PubsubSubscriptionRegistry();
+        registry.add("channel1", emptyHandler());
+        registry.add("channel1", emptyHandler());
+
+        assertEquals(2, registry.removeAll("channel1").length);
+        assertEquals(0, registry.removeAll("channel1").length);
+        assertEquals(0, registry.get("channel1").length);
+    }
+
+    @Test
+    public void testSnapshotNotAffectedByChanges() throws Exception {
+        PubsubSubscriptionRegistry registry = new PubsubSubscriptionRegistry();
+        PubsubHandler handler1 = emptyHandler();
+        registry.add("channel1", handler1);
+
+        PubsubHandler[] snapshot = registry.get("channel1");
+        registry.add("channel1", emptyHandler());
+        registry.remove("channel1", handler1);
+
+        assertEquals(1, snapshot.length);
+        assertSame(handler1, snapshot[0]);
+    }
+
+    @Test
+    public void testConcurrentChanges() throws Exception {
+        final PubsubSubscriptionRegistry registry = new PubsubSubscriptionRegistry();
+        final PubsubHandler stableHandler = emptyHandler();
+        for (int idx = 0; idx < 4; idx++) {
+            registry.add("channel" + idx, stableHandler);
+        }
+
+        final int threadCount = 8;
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        final CountDownLatch doneLatch = new CountDownLatch(threadCount + 1);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        for (int threadIdx = 0; threadIdx < threadCount; threadIdx++) {
+            final int seed = threadIdx;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                        for (int idx = 0; idx < 2000; idx++) {
+                            String channel = "channel" + ((seed + idx) % 4);
+                            PubsubHandler handler = emptyHandler();
+                            registry.add(channel, handler);
+                            if (registry.remove(channel, handler) < 1) {
+                                throw new AssertionError("Stable handler is lost");
+                            }
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    } finally {
+                        doneLatch.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        // reads the handlers without locking while they are changed
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    startLatch.await();
+                    while (doneLatch.getCount() > 1) {
+                        for (int idx = 0; idx < 4; idx++) {
+                            PubsubHandler[] channelHandlers = registry.get("channel" + idx);
+                            if (channelHandlers.length == 0 || channelHandlers[0] != stableHandler) {
+                                throw new AssertionError("Stable handler is lost");
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                } finally {
+                    doneLatch.countDown();
+                }
+            }
+        }.start();
+
+        startLatch.countDown();
+        assertTrue(doneLatch.await(30, TimeUnit.SECONDS));
+        assertEquals(0, errors.size());
+
+        for (int idx = 0; idx < 4; idx++) {
+            PubsubHandler[] channelHandlers = registry.get("channel" + idx);
+            assertEquals(1, channelHandlers.length);
+            assertSame(stableHandler, channelHandlers[0]);
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
 
 @RunWith(AndroidJUnit4.class)
 public class QueryUnitTest {
@@ -617,4 +618,58 @@ public class QueryUnitTest {
 
         assertEquals(true, query.getOverallCount());
     }
+
+    @Test
+    public void testQueryCopy() throws Exception {
+        Query query = new Query("Note").equalTo("title", "Hello").addAscending("rating");
+        query.setLimit(10);
+        query.setOffset(20);
+        query.setOverallCount(true);
+
+        Query copiedQuery = new Query(query);
+        copiedQuery.addAscending("_id");
+
+        assertEquals("Note", copiedQuery.getType());
+        assertEquals(query.getPredicateJson().toString(), copiedQuery.getPredicateJson().toString());
+        assertEquals(10, copiedQuery.getLimit());
+        assertEquals(20, copiedQuery.getOffset());
+        assertEquals(true, copiedQuery.getOverallCount());
+        assertEquals(1, query.getSortPredicateJson().length());
+        assertEquals(2, copiedQuery.getSortPredicateJson().length());
+    }
+
+    @Test
+    public void testQueryAddPredicateWithNegation() throws Exception {
+        Query query = new Query("Note").equalTo("title", "Hello").negate();
+        query.addPredicate(new JSONArray("[\"eq\", {\"$type\": \"keypath\", \"$val\": \"rating\"}, 5]"));
+
+        JSONArray predicate = query.getPredicateJson();
+        assertEquals("and", predicate.getString(0));
+        assertEquals("not", predicate.getJSONArray(1).getString(0));
+        assertEquals("eq", predicate.getJSONArray(2).getString(0));
+    }
+
+    @Test
+    public void testSelect() throws Exception {
+        Query query = new Query("Note");
+        assertNull(query.getSelectedKeys());
+
+        query.select("title", "rating", "title");
+        assertEquals(2, query.getSelectedKeys().size());
+        assertEquals("title", query.getSelectedKeys().get(0));
+        assertEquals("rating", query.getSelectedKeys().get(1));
+
+        Query copiedQuery = new Query(query);
+        copiedQuery.select("title");
+        assertEquals(1, copiedQuery.getSelectedKeys().size());
+        assertEquals(2, query.getSelectedKeys().size());
+
+        query.select();
+        assertEquals(0, query.getSelectedKeys().size());
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testSelectNotAllowReservedKey() throws Exception {
+        new Query("Note").select("title", "_id");
+    }
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ReconnectBackoffUnitTest {
+    private static class FixedRandom extends Random {
+        private final double value;
+
+        FixedRandom(double value) {
+            super();
+            this.value = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return this.value;
+        }
+    }
+
+    @Test
+    public void testDelayCeilingDoublesUpToMaxDelay() throws Exception {
+        ReconnectBackoff backoff = new ReconnectBackoff(1000, 10000);
+
+        assertEquals(1000, backoff.getDelayCeiling(0));
+        assertEquals(2000, backoff.getDelayCeiling(1));
+        assertEquals(4000, backoff.getDelayCeiling(2));
+        assertEquals(8000, backoff.getDelayCeiling(3));
+        assertEquals(10000, backoff.getDelayCeiling(4));
+        assertEquals(10000, backoff.getDelayCeiling(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testDelayJitterBounds() throws Exception {
+        ReconnectBackoff lowest = new ReconnectBackoff(1000, 10000, new FixedRandom(0));
+        ReconnectBackoff highest = new ReconnectBackoff(1000, 10000, new FixedRandom(0.9999999));
+
+        assertEquals(500, lowest.getDelay(0));
+        assertEquals(1000, highest.getDelay(0));
+        assertEquals(4000, lowest.getDelay(3));
+        assertEquals(8000, highest.getDelay(3));
+        assertEquals(5000, lowest.getDelay(10));
+        assertEquals(10000, highest.getDelay(10));
+    }
+
+    @Test
+    public void testDelayIsRandomized() throws Exception {
+        ReconnectBackoff backoff = new ReconnectBackoff(1000, 60000, new Random(42));
+
+        long first = backoff.getDelay(5);
+        boolean randomized = false;
+        for (int idx = 0; idx < 20; idx++) {
+            long delay = backoff.getDelay(5);
+            assertTrue(delay >= 16000 && delay <= 32000);
+            randomized = randomized || delay != first;
+        }
+
+        assertTrue(randomized);
+    }
+
+    @Test
+    public void testMaxDelayNotLessThanBaseDelay() throws Exception {
+        ReconnectBackoff backoff = new ReconnectBackoff(3000, 1000);
+
+        assertEquals(3000, backoff.getMaxDelay());
+        assertEquals(3000, backoff.getDelayCeiling(5));
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.InvalidParameterException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+public class RecordCacheUnitTest {
+    static Context instrumentationContext;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        instrumentationContext = InstrumentationRegistry.getContext().getApplicationContext();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        instrumentationContext = null;
+    }
+
+    @Test
+    public void testRecordCacheNormalFlow() throws Exception {
+        RecordCache cache = new RecordCache(10);
+        Record note1 = new Record("Note", "note1");
+        Record note2 = new Record("Note", "note2");
+
+        cache.put("_public", new Record[]{ note1, note2 });
+
+        assertEquals(2, cache.size());
+        assertSame(note1, cache.get("_public", "Note", "note1"));
+        assertNull(cache.get("_private", "Note", "note1"));
+        assertNull(cache.get("_public", "Comment", "note1"));
+
+        Record[] records = cache.get("_public", "Note", new String[]{ "note2", "note1" });
+        assertEquals(2, records.length);
+        assertSame(note2, records[0]);
+        assertSame(note1, records[1]);
+
+        assertNull(cache.get("_public", "Note", new String[]{ "note1", "note3" }));
+    }
+
+    @Test
+    public void testRecordCacheEvictsLeastRecentlyUsed() throws Exception {
+        RecordCache cache = new RecordCache(2);
+        cache.put("_public", new Record[]{ new Record("Note", "note1") });
+        cache.put("_public", new Record[]{ new Record("Note", "note2") });
+        cache.get("_public", "Note", "note1");
+        cache.put("_public", new Record[]{ new Record("Note", "note3") });
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("_public", "Note", "note1"));
+        assertNull(cache.get("_public", "Note", "note2"));
+        assertNotNull(cache.get("_public", "Note", "note3"));
+    }
+
+    @Test
+    public void testRecordCacheQueryResult() throws Exception {
+        RecordCache cache = new RecordCache(10);
+        Query query = new Query("Note").equalTo("title", "Hello");
+        Record note1 = new Record("Note", "note1");
+        Record note2 = new Record("Note", "note2");
+
+        cache.put("_public", query, new Record[]{ note2, note1 });
+
+        Record[] records = cache.get("_public", new Query("Note").equalTo("title", "Hello"));
+        assertEquals(2, records.length);
+        assertSame(note2, records[0]);
+        assertSame(note1, records[1]);
+
+        assertNull(cache.get("_private", query));
+        assertNull(cache.get("_public", new Query("Note").equalTo("title", "World")));
+
+        Query pagedQuery = new Query("Note").equalTo("title", "Hello");
+        pagedQuery.setOffset(50);
+        assertNull(cache.get("_public", pagedQuery));
+    }
+
+    @Test
+    public void testRecordCacheRemove() throws Exception {
+        RecordCache cache = new RecordCache(10);
+        Query query = new Query("Note");
+        cache.put("_public", query, new Record[]{
+                new Record("Note", "note1"),
+                new Record("Note", "note2")
+        });
+
+        cache.remove("_public", "Note", "note1");
+
+        assertNull(cache.get("_public", "Note", "note1"));
+        assertNotNull(cache.get("_public", "Note", "note2"));
+        assertNull(cache.get("_public", query));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testRecordCacheNotAllowZeroSize() throws Exception {
+        new RecordCache(0);
+    }
+
+    @Test
+    public void testQueryRequestPopulatesRecordCache() throws Exception {
+        Container container = new Container(
+                instrumentationContext,
+                new Configuration.Builder()
+                        .endPoint("http://skygear.dev/")
+                        .apiKey("changeme")
+                        .pubsubConnectAutomatically(false)
+                        .recordCacheSize(10)
+                        .build()
+        );
+        Database database = Database.Factory.publicDatabase(container);
+        RecordCache cache = container.getRecordCache();
+
+        JSONObject recordJson = new JSONObject();
+        recordJson.put("_id", "Note/note1");
+        recordJson.put("_type", "record");
+        recordJson.put("hello", "world");
+
+        JSONObject responseObject = new JSONObject();
+        responseObject.put("result", new JSONArray().put(recordJson));
+
+        Query query = new Query("Note");
+        RecordQueryRequest request = new RecordQueryRequest(query, database);
+        request.setResponseHandler(new RecordQueryResponseHandler() {
+            @Override
+            public void onQueryError(Error error) {
+            }
+        });
+        request.onResponse(responseObject);
+
+        assertEquals("world", cache.get("_public", "Note", "note1").get("hello"));
+        assertEquals(1, cache.get("_public", query).length);
+
+        RecordDeleteRequest deleteRequest = new RecordDeleteRequest(
+                "Note",
+                new String[]{ "note1" },
+                database
+        );
+        deleteRequest.onResponse(new JSONObject().put("result", new JSONArray()));
+
+        assertNull(cache.get("_public", "Note", "note1"));
+        assertNull(cache.get("_public", query));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.toolbox.Volley;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.UnsupportedEncodingException;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RecordChangeDispatcherUnitTest {
+    static Context instrumentationContext;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        instrumentationContext = InstrumentationRegistry.getContext().getApplicationContext();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        instrumentationContext = null;
+    }
+
+    private static JSONObject event(String event, String recordId, String title) throws Exception {
+        JSONObject record = new JSONObject().put("_id", "Note/" + recordId);
+        if (title != null) {
+            record.put("title", title);
+        }
+
+        return new JSONObject().put("event", event).put("record", record);
+    }
+
+    @Test
+    public void testChannelName() throws Exception {
+        assertEquals(
+                "record-change/_public/Note",
+                RecordChangeDispatcher.channelName("_public", null, "Note")
+        );
+        assertEquals(
+                "record-change/_private/user1/Note",
+                RecordChangeDispatcher.channelName("_private", "user1", "Note")
+        );
+    }
+
+    @Test
+    public void testDecodeEvents() throws Exception {
+        RecordChange created = RecordChange.fromJson(event("create", "note1", "Hello"));
+        assertEquals(RecordChange.Type.INSERTED, created.getType());
+        assertEquals("note1", created.getRecord().getId());
+        assertEquals("Hello", created.getRecord().get("title"));
+
+        RecordChange updated = RecordChange.fromJson(event("update", "note1", "World"));
+        assertEquals(RecordChange.Type.UPDATED, updated.getType());
+        assertEquals("World", updated.getRecord().get("title"));
+
+        RecordChange deleted = RecordChange.fromJson(event("delete", "note1", null));
+        assertEquals(RecordChange.Type.DELETED, deleted.getType());
+        assertTrue(deleted.getRecord().deleted);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testDecodeUnknownEvent() throws Exception {
+        RecordChange.fromJson(event("upsert", "note1", null));
+    }
+
+    @Test
+    public void testDispatchFetchedRecords() throws Exception {
+        Container container = new Container(
+                instrumentationContext,
+                new Configuration.Builder()
+                        .endPoint("http://skygear.dev/")
+                        .apiKey("testApiKey")
+                        .pubsubConnectAutomatically(false)
+                        .recordCacheSize(10)
+                        .build()
+        );
+        final AtomicReference<String> responseBody = new AtomicReference<>();
+        container.requestManager.queue = Volley.newRequestQueue(
+                instrumentationContext,
+                new MockHttpStack(new MockHttpStack.MockResponder() {
+                    @Override
+                    public HttpResponse getResponse(
+                            com.android.volley.Request request,
+                            Map<String, String> header
+                    ) throws AuthFailureError {
+                        BasicHttpResponse response = new BasicHttpResponse(
+                                new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK")
+                        );
+
+                        try {
+                            response.setEntity(new StringEntity(responseBody.get()));
+                        } catch (UnsupportedEncodingException e) {
+                            e.printStackTrace();
+                        }
+
+                        return response;
+                    }
+                })
+        );
+
+        Database database = container.getPublicDatabase();
+        RecordCache cache = database.getRecordCache();
+        cache.put("_public", new Record[]{ new Record("Note", "note1") });
+
+        final List<RecordChange> changes = new ArrayList<>();
+        final CountDownLatch[] latch = { new CountDownLatch(1) };
+        RecordChangeHandler handler = database.subscribeRecordChanges("Note", new RecordChangeHandler() {
+            @Override
+            public void onRecordChange(RecordChange change) {
+                changes.add(change);
+                latch[0].countDown();
+            }
+        });
+        RecordChangeDispatcher dispatcher = database.getRecordChangeDispatcher();
+
+        // the record in the event is not trusted
+        responseBody.set("{\"result\": [{\"_id\": \"Note/note1\", \"title\": \"Server\"}]}");
+        dispatcher.onEvent("Note", event("update", "note1", "World"));
+        assertTrue(latch[0].await(5, TimeUnit.SECONDS));
+
+        assertEquals(RecordChange.Type.UPDATED, changes.get(0).getType());
+        assertEquals("Server", changes.get(0).getRecord().get("title"));
+        assertEquals("Server", cache.get("_public", "Note", "note1").get("title"));
+
+        latch[0] = new CountDownLatch(1);
+        responseBody.set("{\"result\": []}");
+        dispatcher.onEvent("Note", event("update", "note1", "World"));
+        assertTrue(latch[0].await(5, TimeUnit.SECONDS));
+
+        assertEquals(RecordChange.Type.DELETED, changes.get(1).getType());
+        assertEquals("note1", changes.get(1).getRecord().getId());
+        assertNull(cache.get("_public", "Note", "note1"));
+
+        assertEquals(handler, database.unsubscribeRecordChanges("Note", handler));
+        assertNull(database.unsubscribeRecordChanges("Note", handler));
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testSubscribeNotAllowInvalidType() throws Exception {
+        new Database("_public", null).getRecordChangeDispatcher().subscribe(
+                "_note",
+                new RecordChangeHandler() {
+                    @Override
+                    public void onRecordChange(RecordChange change) {
+                        // Do nothing. The subscription is expected to fail.
+                    }
+                }
+        );
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Measures the time to compute the diff between two results of a query, for
+ * a few typical changes of a list.
+ *
+ * Results are written to logcat with tag "Skygear Benchmark".
+ */
+@Benchmark
+@RunWith(AndroidJUnit4.class)
+public class RecordDiffBenchmark {
+    private static final String TAG = "Skygear Benchmark";
+    private static final int WARM_UP_ITERATIONS = 3;
+    private static final int ITERATIONS = 10;
+
+    private static Record[] buildRecords(List<String> ids) {
+        Record[] records = new Record[ids.size()];
+        for (int idx = 0; idx < records.length; idx++) {
+            records[idx] = new Record("Note", ids.get(idx));
+            records[idx].updatedAt = new Date(0);
+        }
+
+        return records;
+    }
+
+    private static double measure(Record[] oldRecords, Record[] newRecords) {
+        for (int idx = 0; idx < WARM_UP_ITERATIONS; idx++) {
+            RecordDiff.compute(oldRecords, newRecords);
+        }
+
+        long start = System.nanoTime();
+        RecordDiff diff = null;
+        for (int idx = 0; idx < ITERATIONS; idx++) {
+            diff = RecordDiff.compute(oldRecords, newRecords);
+        }
+        assertTrue(diff != null);
+
+        return (System.nanoTime() - start) / ITERATIONS / 1e6;
+    }
+
+    private void runBenchmark(int recordCount) {
+        Random random = new Random(recordCount);
+        List<String> ids = new ArrayList<>();
+        for (int idx = 0; idx < recordCount; idx++) {
+            ids.add("48092492-0791-4120-B314-" + String.format("%012d", idx));
+        }
+        Record[] oldRecords = buildRecords(ids);
+
+        // a new record on top, and a few edited records moved to the top
+        List<String> edited = new ArrayList<>(ids);
+        for (int idx = 0; idx < 5; idx++) {
+            edited.add(0, edited.remove(random.nextInt(edited.size())));
+        }
+        edited.add(0, "new-record");
+        edited.remove(edited.size() - 1);
+
+        List<String> shuffled = new ArrayList<>(ids);
+        Collections.shuffle(shuffled, random);
+
+        Log.i(TAG, String.format(
+                "Record diff, %d records: few changes %.2f ms, shuffled %.2f ms",
+                recordCount,
+                measure(oldRecords, buildRecords(edited)),
+                measure(oldRecords, buildRecords(shuffled))
+        ));
+    }
+
+    @Test
+    public void benchmark500Records() throws Exception {
+        this.runBenchmark(500);
+    }
+
+    @Test
+    public void benchmark5000Records() throws Exception {
+        this.runBenchmark(5000);
+    }
+
+    @Test
+    public void benchmark20000Records() throws Exception {
+        this.runBenchmark(20000);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RecordDiffUnitTest {
+    static Record[] records(String... ids) {
+        Record[] records = new Record[ids.length];
+        for (int idx = 0; idx < ids.length; idx++) {
+            records[idx] = new Record("Note", ids[idx]);
+            records[idx].updatedAt = new Date(0);
+        }
+
+        return records;
+    }
+
+    /**
+     * Applies the updates of a diff to a list of IDs, as an adapter does.
+     */
+    static class ListApplier implements RecordDiff.Callback {
+        final List<String> ids;
+        final List<Integer> changedPositions = new ArrayList<>();
+        int moveCount = 0;
+
+        ListApplier(Record[] records) {
+            this.ids = new ArrayList<>();
+            for (Record perRecord : records) {
+                this.ids.add(perRecord.getId());
+            }
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            for (int idx = 0; idx < count; idx++) {
+                this.ids.add(position + idx, "?");
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            for (int idx = 0; idx < count; idx++) {
+                this.ids.remove(position);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            this.ids.add(toPosition, this.ids.remove(fromPosition));
+            this.moveCount++;
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            for (int idx = 0; idx < count; idx++) {
+                this.changedPositions.add(position + idx);
+            }
+        }
+
+        void assertResult(Record[] expected) {
+            assertEquals(expected.length, this.ids.size());
+            for (int idx = 0; idx < expected.length; idx++) {
+                String id = this.ids.get(idx);
+                assertTrue(id.equals("?") || id.equals(expected[idx].getId()));
+            }
+        }
+    }
+
+    private static ListApplier apply(Record[] oldRecords, Record[] newRecords) {
+        ListApplier applier = new ListApplier(oldRecords);
+        RecordDiff.compute(oldRecords, newRecords).dispatchUpdatesTo(applier);
+        applier.assertResult(newRecords);
+
+        return applier;
+    }
+
+    @Test
+    public void testSameResult() throws Exception {
+        RecordDiff diff = RecordDiff.compute(records("a", "b", "c"), records("a", "b", "c"));
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    public void testInsertAndRemove() throws Exception {
+        RecordDiff diff = RecordDiff.compute(
+                records("a", "b", "c", "d"),
+                records("x", "a", "d", "y", "z")
+        );
+        assertEquals(3, diff.getInsertedCount());
+        assertEquals(2, diff.getRemovedCount());
+        assertEquals(0, diff.getMovedCount());
+
+        apply(records("a", "b", "c", "d"), records("x", "a", "d", "y", "z"));
+        apply(records(), records("a", "b"));
+        apply(records("a", "b"), records());
+    }
+
+    @Test
+    public void testMinimalMoves() throws Exception {
+        RecordDiff diff = RecordDiff.compute(records("a", "b", "c", "d"), records("b", "c", "d", "a"));
+        assertEquals(1, diff.getMovedCount());
+        assertEquals(0, diff.getInsertedCount());
+        assertEquals(0, diff.getRemovedCount());
+
+        assertEquals(1, apply(records("a", "b", "c", "d"), records("d", "a", "b", "c")).moveCount);
+        assertEquals(2, apply(records("a", "b", "c", "d"), records("d", "c", "a", "b")).moveCount);
+        assertEquals(3, apply(records("a", "b", "c", "d"), records("d", "c", "b", "a")).moveCount);
+    }
+
+    @Test
+    public void testChanged() throws Exception {
+        Record[] oldRecords = records("a", "b", "c");
+        Record[] newRecords = records("c", "b", "a", "d");
+        newRecords[0].updatedAt = new Date(1);
+        newRecords[2].updatedAt = new Date(1);
+
+        RecordDiff diff = RecordDiff.compute(oldRecords, newRecords);
+        assertEquals(2, diff.getChangedCount());
+
+        ListApplier applier = apply(oldRecords, newRecords);
+        assertEquals(2, applier.changedPositions.size());
+        assertEquals(Integer.valueOf(0), applier.changedPositions.get(0));
+        assertEquals(Integer.valueOf(2), applier.changedPositions.get(1));
+    }
+
+    @Test
+    public void testDuplicatedIds() throws Exception {
+        RecordDiff diff = RecordDiff.compute(records("a", "b"), records("a", "a", "c"));
+        assertEquals(2, diff.getRemovedCount());
+        assertEquals(3, diff.getInsertedCount());
+
+        apply(records("a", "b"), records("a", "a", "c"));
+    }
+
+    @Test
+    public void testRandomResults() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            int size = random.nextInt(60);
+            List<String> ids = new ArrayList<>();
+            for (int idx = 0; idx < size; idx++) {
+                ids.add("id" + idx);
+            }
+
+            List<String> newIds = new ArrayList<>(ids);
+            Collections.shuffle(newIds, random);
+            newIds = newIds.subList(0, random.nextInt(size + 1));
+            for (int idx = random.nextInt(10); idx > 0; idx--) {
+                newIds.add(random.nextInt(newIds.size() + 1), "new" + round + "-" + idx);
+            }
+
+            Record[] oldRecords = records(ids.toArray(new String[ids.size()]));
+            Record[] newRecords = records(newIds.toArray(new String[newIds.size()]));
+            ListApplier applier = apply(oldRecords, newRecords);
+
+            // the kept records form the longest run in the old order
+            List<Integer> oldPositions = new ArrayList<>();
+            for (String perId : newIds) {
+                if (ids.contains(perId)) {
+                    oldPositions.add(ids.indexOf(perId));
+                }
+            }
+            assertEquals(oldPositions.size() - longestRun(oldPositions), applier.moveCount);
+        }
+    }
+
+    private static int longestRun(List<Integer> values) {
+        int[] lengths = new int[values.size()];
+        int longest = 0;
+        for (int idx = 0; idx < values.size(); idx++) {
+            lengths[idx] = 1;
+            for (int previous = 0; previous < idx; previous++) {
+                if (values.get(previous) < values.get(idx)) {
+                    lengths[idx] = Math.max(lengths[idx], lengths[previous] + 1);
+                }
+            }
+            longest = Math.max(longest, lengths[idx]);
+        }
+
+        return longest;
+    }
+}
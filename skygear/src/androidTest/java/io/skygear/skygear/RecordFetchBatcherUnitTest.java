@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RecordFetchBatcherUnitTest {
+    static class MockRecordFetchBatcher extends RecordFetchBatcher {
+        final List<String> scheduledTypes = new ArrayList<>();
+        final List<RecordFetchRequest> sentRequests = new ArrayList<>();
+
+        MockRecordFetchBatcher(Database database) {
+            super(database);
+        }
+
+        @Override
+        void schedule(String recordType, int window) {
+            this.scheduledTypes.add(recordType);
+        }
+
+        @Override
+        void send(RecordFetchRequest request) {
+            this.sentRequests.add(request);
+        }
+    }
+
+    private static JSONObject responseOf(String... recordIds) throws Exception {
+        JSONArray results = new JSONArray();
+        for (String perRecordId : recordIds) {
+            JSONObject perRecord = new JSONObject();
+            perRecord.put("_id", "Note/" + perRecordId);
+            perRecord.put("_type", "record");
+            results.put(perRecord);
+        }
+
+        return new JSONObject().put("result", results);
+    }
+
+    @Test
+    public void testBatcherCoalescesRequests() throws Exception {
+        Database database = new Database("_public", null);
+        MockRecordFetchBatcher batcher = new MockRecordFetchBatcher(database);
+
+        final List<Record> singleResults = new ArrayList<>();
+        final List<RecordResult<Record>[]> multipleResults = new ArrayList<>();
+
+        RecordFetchRequest request1 = new RecordFetchRequest("Note", "note1", database);
+        request1.setResponseHandler(new RecordFetchResponseHandler() {
+            @Override
+            public void onFetchSuccess(Record result) {
+                singleResults.add(result);
+            }
+
+            @Override
+            public void onFetchError(Error error) {
+                throw new RuntimeException("Should not get error");
+            }
+        });
+
+        RecordFetchRequest request2 = new RecordFetchRequest(
+                "Note",
+                new String[]{ "note2", "note1", "note3" },
+                database
+        );
+        request2.setResponseHandler(new RecordsFetchResponseHandler() {
+            @Override
+            public void onFetchSuccess(RecordResult<Record>[] result) {
+                multipleResults.add(result);
+            }
+
+            @Override
+            public void onFetchError(Error error) {
+                throw new RuntimeException("Should not get error");
+            }
+        });
+
+        RecordFetchRequest request3 = new RecordFetchRequest("Comment", "comment1", database);
+
+        batcher.enqueue(request1, 10);
+        batcher.enqueue(request2, 10);
+        batcher.enqueue(request3, 10);
+
+        assertEquals(Arrays.asList("Note", "Comment"), batcher.scheduledTypes);
+        assertEquals(0, batcher.sentRequests.size());
+
+        batcher.flush("Note");
+
+        assertEquals(1, batcher.sentRequests.size());
+        RecordFetchRequest batchRequest = batcher.sentRequests.get(0);
+        assertEquals("Note", batchRequest.fetchingRecordType);
+        assertEquals(
+                Arrays.asList("note1", "note2", "note3"),
+                Arrays.asList(batchRequest.fetchingRecordIDs)
+        );
+
+        batchRequest.onResponse(responseOf("note1", "note2"));
+
+        assertEquals(1, singleResults.size());
+        assertEquals("note1", singleResults.get(0).getId());
+
+        assertEquals(1, multipleResults.size());
+        RecordResult<Record>[] results = multipleResults.get(0);
+        assertEquals(3, results.length);
+        assertEquals("note2", results[0].value.getId());
+        assertEquals("note1", results[1].value.getId());
+        assertTrue(results[2].isError());
+        assertEquals(Error.Code.RESOURCE_NOT_FOUND, results[2].error.getCode());
+
+        batcher.flush("Comment");
+
+        assertEquals(2, batcher.sentRequests.size());
+        assertSame(request3, batcher.sentRequests.get(1));
+    }
+
+    @Test
+    public void testBatcherFansOutError() throws Exception {
+        Database database = new Database("_public", null);
+        MockRecordFetchBatcher batcher = new MockRecordFetchBatcher(database);
+
+        final List<Error> errors = new ArrayList<>();
+        for (int idx = 0; idx < 2; idx++) {
+            RecordFetchRequest perRequest = new RecordFetchRequest("Note", "note" + idx, database);
+            perRequest.setResponseHandler(new RecordFetchResponseHandler() {
+                @Override
+                public void onFetchSuccess(Record result) {
+                    throw new RuntimeException("Should not get success");
+                }
+
+                @Override
+                public void onFetchError(Error error) {
+                    errors.add(error);
+                }
+            });
+            batcher.enqueue(perRequest, 10);
+        }
+
+        batcher.flush("Note");
+        batcher.sentRequests.get(0).getResponseHandler().onFailure(new Error("Test error"));
+
+        assertEquals(2, errors.size());
+        assertEquals("Test error", errors.get(0).getDetailMessage());
+
+        batcher.flush("Note");
+        assertEquals(1, batcher.sentRequests.size());
+        assertNull(batcher.sentRequests.get(0).recordCache);
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testBatcherRejectsQueryResponseHandler() throws Exception {
+        Database database = new Database("_public", null);
+        MockRecordFetchBatcher batcher = new MockRecordFetchBatcher(database);
+
+        RecordFetchRequest request = new RecordFetchRequest("Note", "note1", database);
+        request.setResponseHandler(new RecordQueryResponseHandler() {
+            @Override
+            public void onQuerySuccess(Record[] records) {
+                // Do nothing. The request is rejected.
+            }
+
+            @Override
+            public void onQueryError(Error error) {
+                // Do nothing. The request is rejected.
+            }
+        });
+        assertFalse(RecordFetchBatcher.canBatch(request));
+
+        batcher.enqueue(request, 10);
+    }
+}
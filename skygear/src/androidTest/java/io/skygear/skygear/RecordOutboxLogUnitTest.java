@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.content.Context;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RecordOutboxLogUnitTest {
+    @Test
+    public void testAppendUpdateAndRemove() throws Exception {
+        RecordOutboxLog log = new RecordOutboxLog((Context) null);
+
+        RecordOutboxLog.Entry entry1 = log.append("user1", "record:save", new JSONObject().put("n", 1));
+        RecordOutboxLog.Entry entry2 = log.append("user1", "record:delete", new JSONObject().put("n", 2));
+        assertTrue(entry2.id > entry1.id);
+
+        log.update(entry1.id, new JSONObject().put("n", 3));
+
+        List<RecordOutboxLog.Entry> entries = log.load("user1");
+        assertEquals(2, entries.size());
+        assertEquals("record:save", entries.get(0).action);
+        assertEquals(3, entries.get(0).payload.getInt("n"));
+        assertEquals("record:delete", entries.get(1).action);
+
+        log.remove(entry1.id);
+        entries = log.load("user1");
+        assertEquals(1, entries.size());
+        assertEquals(entry2.id, entries.get(0).id);
+    }
+
+    @Test
+    public void testLoadEntriesOfOwner() throws Exception {
+        RecordOutboxLog log = new RecordOutboxLog((Context) null);
+        log.append("user1", "record:save", new JSONObject().put("n", 1));
+        log.append("user2", "record:save", new JSONObject().put("n", 2));
+        log.append(null, "record:save", new JSONObject().put("n", 3));
+
+        List<RecordOutboxLog.Entry> entries = log.load("user2");
+        assertEquals(1, entries.size());
+        assertEquals("user2", entries.get(0).owner);
+        assertEquals(2, entries.get(0).payload.getInt("n"));
+
+        entries = log.load(null);
+        assertEquals(1, entries.size());
+        assertEquals(3, entries.get(0).payload.getInt("n"));
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.content.Context;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.ServerError;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RecordOutboxUnitTest {
+    private static final String OWNER = "user1";
+
+    static class MockRecordOutbox extends RecordOutbox {
+        final List<Request> sentRequests = new ArrayList<>();
+        final List<Runnable> backgroundTasks = new ArrayList<>();
+        boolean deferBackgroundTasks;
+        int retryCount;
+
+        MockRecordOutbox(RecordOutboxLog log, ConnectivityMonitor monitor) {
+            super(log, monitor, null, OWNER);
+        }
+
+        @Override
+        void runInBackground(Runnable task) {
+            if (this.deferBackgroundTasks) {
+                this.backgroundTasks.add(task);
+            } else {
+                task.run();
+            }
+        }
+
+        @Override
+        void runOnMainThread(Runnable task) {
+            task.run();
+        }
+
+        void runBackgroundTasks() {
+            this.deferBackgroundTasks = false;
+            for (Runnable perTask : this.backgroundTasks) {
+                perTask.run();
+            }
+            this.backgroundTasks.clear();
+        }
+
+        @Override
+        void sendRequest(Request request) {
+            this.sentRequests.add(request);
+        }
+
+        @Override
+        void scheduleRetry() {
+            this.retryCount++;
+        }
+
+        Request lastSentRequest() {
+            return this.sentRequests.get(this.sentRequests.size() - 1);
+        }
+    }
+
+    static class MockSaveHandler extends RecordSaveResponseHandler {
+        Record savedRecord;
+        Error error;
+
+        @Override
+        public void onSaveSuccess(Record record) {
+            this.savedRecord = record;
+        }
+
+        @Override
+        public void onSaveFail(Error error) {
+            this.error = error;
+        }
+    }
+
+    private static Database database = new Database("_public", null);
+
+    private static RecordSaveRequest createSaveRequest(Record record, ResponseHandler handler) {
+        RecordSaveRequest request = new RecordSaveRequest(record, database);
+        request.setResponseHandler(handler);
+
+        return request;
+    }
+
+    private static JSONObject createSaveResponse(Record record) throws Exception {
+        JSONObject recordObject = record.toJson();
+        recordObject.put("_type", "record");
+
+        return new JSONObject().put("result", new JSONArray().put(recordObject));
+    }
+
+    private static JSONArray sentRecords(Request request) {
+        return (JSONArray) request.getData().get("records");
+    }
+
+    @Test
+    public void testOutboxSendsMutationsInOrder() throws Exception {
+        RecordOutboxLog log = new RecordOutboxLog((Context) null);
+        MockRecordOutbox outbox = new MockRecordOutbox(log, new ConnectivityMonitor(null));
+        outbox.start();
+
+        Record note = new Record("Note", "note1");
+        note.set("title", "hello");
+        MockSaveHandler saveHandler = new MockSaveHandler();
+        outbox.enqueue(createSaveRequest(note, saveHandler));
+        outbox.enqueue(new RecordDeleteRequest("Note", new String[]{"note2"}, database));
+
+        // only one mutation is sent at a time
+        assertEquals(1, outbox.sentRequests.size());
+        assertEquals("record:save", outbox.lastSentRequest().action);
+        assertEquals(2, log.load(OWNER).size());
+
+        outbox.lastSentRequest().onResponse(createSaveResponse(note));
+        assertNotNull(saveHandler.savedRecord);
+        assertEquals("hello", saveHandler.savedRecord.get("title"));
+        assertEquals(1, log.load(OWNER).size());
+
+        assertEquals(2, outbox.sentRequests.size());
+        assertEquals("record:delete", outbox.lastSentRequest().action);
+        outbox.lastSentRequest().onResponse(new JSONObject().put("result", new JSONArray()));
+
+        assertEquals(0, log.load(OWNER).size());
+        assertEquals(0, outbox.getPendingCount());
+    }
+
+    @Test
+    public void testOutboxCollapsesAdjacentSaves() throws Exception {
+        ConnectivityMonitor monitor = new ConnectivityMonitor(null);
+        monitor.setConnected(false);
+
+        RecordOutboxLog log = new RecordOutboxLog((Context) null);
+        MockRecordOutbox outbox = new MockRecordOutbox(log, monitor);
+        outbox.start();
+
+        Record note = new Record("Note", "note1");
+        note.set("title", "hello");
+        note.set("content", "first");
+        MockSaveHandler saveHandler1 = new MockSaveHandler();
+        outbox.enqueue(createSaveRequest(note, saveHandler1));
+
+        Record updatedNote = new Record("Note", "note1");
+        updatedNote.set("content", "second");
+        MockSaveHandler saveHandler2 = new MockSaveHandler();
+        outbox.enqueue(createSaveRequest(updatedNote, saveHandler2));
+
+        // a save of another record is not merged
+        outbox.enqueue(createSaveRequest(new Record("Note", "note2"), null));
+
+        assertEquals(0, outbox.sentRequests.size());
+        assertEquals(2, outbox.getPendingCount());
+
+        monitor.setConnected(true);
+        assertEquals(1, outbox.sentRequests.size());
+
+        JSONObject sentRecord = sentRecords(outbox.lastSentRequest()).getJSONObject(0);
+        assertEquals("hello", sentRecord.getString("title"));
+        assertEquals("second", sentRecord.getString("content"));
+
+        outbox.lastSentRequest().onResponse(createSaveResponse(note));
+        assertNotNull(saveHandler1.savedRecord);
+        assertNotNull(saveHandler2.savedRecord);
+        assertEquals(2, outbox.sentRequests.size());
+    }
+
+    @Test
+    public void testOutboxKeepsMutationOnNetworkFailure() throws Exception {
+        RecordOutboxLog log = new RecordOutboxLog((Context) null);
+        MockRecordOutbox outbox = new MockRecordOutbox(log, new ConnectivityMonitor(null));
+        outbox.start();
+
+        MockSaveHandler saveHandler = new MockSaveHandler();
+        outbox.enqueue(createSaveRequest(new Record("Note", "note1"), saveHandler));
+        outbox.lastSentRequest().onErrorResponse(new NoConnectionError());
+
+        assertEquals(1, outbox.retryCount);
+        assertEquals(1, log.load(OWNER).size());
+        assertEquals(null, saveHandler.error);
+
+        // a later save is not merged into the failed one
+        outbox.enqueue(createSaveRequest(new Record("Note", "note1"), null));
+        assertEquals(2, outbox.sentRequests.size());
+        assertEquals(1, outbox.getPendingCount());
+    }
+
+    @Test
+    public void testOutboxDropsMutationRejectedByServer() throws Exception {
+        RecordOutboxLog log = new RecordOutboxLog((Context) null);
+        MockRecordOutbox outbox = new MockRecordOutbox(log, new ConnectivityMonitor(null));
+        outbox.start();
+
+        MockSaveHandler saveHandler = new MockSaveHandler();
+        outbox.enqueue(createSaveRequest(new Record("Note", "note1"), saveHandler));
+
+        byte[] errorBody = ("{\"error\": {\"code\": 102, \"name\": \"PermissionDenied\", " +
+                "\"message\": \"Permission denied\"}}").getBytes();
+        outbox.lastSentRequest().onErrorResponse(new ServerError(
+                new NetworkResponse(403, errorBody, new HashMap<String, String>(), false)
+        ));
+
+        assertNotNull(saveHandler.error);
+        assertEquals(Error.Code.PERMISSION_DENIED, saveHandler.error.getCode());
+        assertEquals(0, log.load(OWNER).size());
+        assertEquals(0, outbox.retryCount);
+    }
+
+    @Test
+    public void testOutboxResumesMutationsInLog() throws Exception {
+        RecordOutboxLog log = new RecordOutboxLog((Context) null);
+        ConnectivityMonitor monitor = new ConnectivityMonitor(null);
+        monitor.setConnected(false);
+
+        MockRecordOutbox outbox1 = new MockRecordOutbox(log, monitor);
+        outbox1.start();
+        outbox1.enqueue(createSaveRequest(new Record("Note", "note1"), null));
+        outbox1.enqueue(new RecordDeleteRequest("Note", new String[]{"note2"}, database));
+        outbox1.stop();
+
+        MockRecordOutbox outbox2 = new MockRecordOutbox(log, monitor);
+        outbox2.start();
+        assertEquals(2, outbox2.getPendingCount());
+        assertEquals(0, outbox2.sentRequests.size());
+
+        monitor.setConnected(true);
+        assertEquals(0, outbox1.sentRequests.size());
+        assertEquals(1, outbox2.sentRequests.size());
+        assertEquals("record:save", outbox2.lastSentRequest().action);
+        assertTrue(sentRecords(outbox2.lastSentRequest()).length() == 1);
+    }
+
+    @Test
+    public void testOutboxAccessesLogInBackground() throws Exception {
+        RecordOutboxLog log = new RecordOutboxLog((Context) null);
+        log.append(OWNER, "record:delete", new JSONObject()
+                .put("database_id", "_public")
+                .put("ids", new JSONArray().put("Note/note1")));
+
+        MockRecordOutbox outbox = new MockRecordOutbox(log, new ConnectivityMonitor(null));
+        outbox.deferBackgroundTasks = true;
+        outbox.start();
+        outbox.enqueue(createSaveRequest(new Record("Note", "note2"), null));
+
+        // nothing is sent before the log is loaded
+        assertEquals(0, outbox.sentRequests.size());
+        assertEquals(1, log.load(OWNER).size());
+
+        outbox.runBackgroundTasks();
+        assertEquals(2, log.load(OWNER).size());
+        assertEquals(2, outbox.getPendingCount());
+        assertEquals(1, outbox.sentRequests.size());
+        assertEquals("record:delete", outbox.lastSentRequest().action);
+    }
+
+    @Test
+    public void testOutboxHoldsMutationsOfAnotherUser() throws Exception {
+        ConnectivityMonitor monitor = new ConnectivityMonitor(null);
+        monitor.setConnected(false);
+
+        RecordOutboxLog log = new RecordOutboxLog((Context) null);
+        MockRecordOutbox outbox = new MockRecordOutbox(log, monitor);
+        outbox.start();
+        outbox.enqueue(createSaveRequest(new Record("Note", "note1"), null));
+
+        outbox.setOwner("user2");
+        assertEquals(0, outbox.getPendingCount());
+        outbox.enqueue(new RecordDeleteRequest("Note", new String[]{"note2"}, database));
+
+        // only the mutations of the current user are sent
+        monitor.setConnected(true);
+        assertEquals(1, outbox.sentRequests.size());
+        assertEquals("record:delete", outbox.lastSentRequest().action);
+        outbox.lastSentRequest().onResponse(new JSONObject().put("result", new JSONArray()));
+        assertEquals(1, outbox.sentRequests.size());
+        assertEquals(1, log.load(OWNER).size());
+
+        outbox.setOwner(OWNER);
+        assertEquals(2, outbox.sentRequests.size());
+        assertEquals("record:save", outbox.lastSentRequest().action);
+    }
+}
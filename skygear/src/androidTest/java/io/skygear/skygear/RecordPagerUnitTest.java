@@ -0,0 +1,239 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RecordPagerUnitTest {
+    static class MockRecordPager extends RecordPager {
+        final List<Query> sentQueries = new ArrayList<>();
+        final List<RecordQueryResponseHandler> sentHandlers = new ArrayList<>();
+
+        MockRecordPager(Query query, RecordPageHandler handler) {
+            super(query, null, handler);
+        }
+
+        @Override
+        void sendQuery(Query pageQuery, RecordQueryResponseHandler handler) {
+            this.sentQueries.add(pageQuery);
+            this.sentHandlers.add(handler);
+        }
+
+        void respond(int idx, Record... records) {
+            this.sentHandlers.get(idx).onQueryResult(records, null);
+        }
+    }
+
+    static class MockPageHandler extends RecordPageHandler {
+        final List<Record[]> pages = new ArrayList<>();
+        final List<Error> errors = new ArrayList<>();
+        boolean completed = false;
+
+        @Override
+        public void onPage(Record[] records, RecordPager pager) {
+            this.pages.add(records);
+        }
+
+        @Override
+        public void onComplete() {
+            this.completed = true;
+        }
+
+        @Override
+        public void onPageError(Error error) {
+            this.errors.add(error);
+        }
+    }
+
+    private static Record noteWithScore(String id, Object score) {
+        Map<String, Object> data = new HashMap<>();
+        if (score != null) {
+            data.put("score", score);
+        }
+
+        return new Record("Note", id, data);
+    }
+
+    @Test
+    public void testPagerUsesKeysetPagination() throws Exception {
+        Query query = new Query("Note").addDescending("score");
+        query.setLimit(2);
+
+        MockPageHandler handler = new MockPageHandler();
+        MockRecordPager pager = new MockRecordPager(query, handler);
+        pager.start();
+
+        assertEquals(1, pager.sentQueries.size());
+        JSONArray sortPredicate = pager.sentQueries.get(0).getSortPredicateJson();
+        assertEquals(2, sortPredicate.length());
+        assertEquals("_id", sortPredicate.getJSONArray(1).getJSONObject(0).getString("$val"));
+        assertEquals("asc", sortPredicate.getJSONArray(1).getString(1));
+
+        pager.respond(0, noteWithScore("n1", 10), noteWithScore("n2", 8));
+
+        assertEquals(1, handler.pages.size());
+        assertEquals(2, handler.pages.get(0).length);
+
+        // next page is prefetched
+        assertEquals(2, pager.sentQueries.size());
+        Query secondQuery = pager.sentQueries.get(1);
+        assertEquals(0, secondQuery.getOffset());
+        assertEquals(
+                "[\"or\"," +
+                        "[\"lt\",{\"$type\":\"keypath\",\"$val\":\"score\"},8]," +
+                        "[\"and\"," +
+                        "[\"eq\",{\"$type\":\"keypath\",\"$val\":\"score\"},8]," +
+                        "[\"gt\",{\"$type\":\"keypath\",\"$val\":\"_id\"},\"n2\"]]]",
+                secondQuery.getPredicateJson().toString()
+        );
+
+        pager.respond(1, noteWithScore("n3", 5));
+
+        // not delivered until requested
+        assertEquals(1, handler.pages.size());
+        assertFalse(handler.completed);
+
+        pager.next();
+
+        assertEquals(2, handler.pages.size());
+        assertEquals("n3", handler.pages.get(1)[0].getId());
+        assertTrue(handler.completed);
+        assertEquals(2, pager.sentQueries.size());
+    }
+
+    @Test
+    public void testPagerKeysetMatchesMissingValuesInAscendingOrder() throws Exception {
+        Query query = new Query("Note").addAscending("score");
+        query.setLimit(2);
+
+        MockPageHandler handler = new MockPageHandler();
+        MockRecordPager pager = new MockRecordPager(query, handler);
+        pager.start();
+        pager.respond(0, noteWithScore("n1", 1), noteWithScore("n2", 3));
+
+        assertEquals(
+                "[\"or\"," +
+                        "[\"gt\",{\"$type\":\"keypath\",\"$val\":\"score\"},3]," +
+                        "[\"eq\",{\"$type\":\"keypath\",\"$val\":\"score\"},null]," +
+                        "[\"and\"," +
+                        "[\"eq\",{\"$type\":\"keypath\",\"$val\":\"score\"},3]," +
+                        "[\"gt\",{\"$type\":\"keypath\",\"$val\":\"_id\"},\"n2\"]]]",
+                pager.sentQueries.get(1).getPredicateJson().toString()
+        );
+    }
+
+    @Test
+    public void testPagerKeepsOriginalPredicate() throws Exception {
+        Query query = new Query("Note").equalTo("done", false).negate();
+        query.setLimit(1);
+
+        MockPageHandler handler = new MockPageHandler();
+        MockRecordPager pager = new MockRecordPager(query, handler);
+        pager.start();
+        pager.respond(0, noteWithScore("n1", 1));
+
+        JSONArray predicate = pager.sentQueries.get(1).getPredicateJson();
+        assertEquals("and", predicate.getString(0));
+        assertEquals(query.getPredicateJson().toString(), predicate.getJSONArray(1).toString());
+        assertEquals(
+                "[\"gt\",{\"$type\":\"keypath\",\"$val\":\"_id\"},\"n1\"]",
+                predicate.getJSONArray(2).toString()
+        );
+    }
+
+    @Test
+    public void testPagerFallsBackToOffset() throws Exception {
+        Query query = new Query("Note").addAscending("score");
+        query.setLimit(2);
+
+        MockPageHandler handler = new MockPageHandler();
+        MockRecordPager pager = new MockRecordPager(query, handler);
+        pager.start();
+        pager.respond(0, noteWithScore("n1", 1), noteWithScore("n2", null));
+
+        Query secondQuery = pager.sentQueries.get(1);
+        assertEquals(0, secondQuery.getPredicateJson().length());
+        assertEquals(2, secondQuery.getOffset());
+
+        pager.next();
+        pager.respond(1, noteWithScore("n3", null), noteWithScore("n4", null));
+
+        assertEquals(2, handler.pages.size());
+        assertEquals(4, pager.sentQueries.get(2).getOffset());
+
+        pager.next();
+        pager.respond(2);
+
+        assertEquals(2, handler.pages.size());
+        assertTrue(handler.completed);
+    }
+
+    @Test
+    public void testPagerCancel() throws Exception {
+        Query query = new Query("Note");
+        query.setLimit(1);
+
+        MockPageHandler handler = new MockPageHandler();
+        MockRecordPager pager = new MockRecordPager(query, handler);
+        pager.start();
+        pager.respond(0, noteWithScore("n1", 1));
+        pager.cancel();
+        pager.respond(1, noteWithScore("n2", 1));
+        pager.next();
+
+        assertTrue(pager.isCancelled());
+        assertEquals(1, handler.pages.size());
+        assertEquals(2, pager.sentQueries.size());
+        assertFalse(handler.completed);
+    }
+
+    @Test
+    public void testPagerError() throws Exception {
+        Query query = new Query("Note");
+        query.setLimit(1);
+
+        MockPageHandler handler = new MockPageHandler();
+        MockRecordPager pager = new MockRecordPager(query, handler);
+        pager.start();
+        pager.respond(0, noteWithScore("n1", 1));
+        pager.sentHandlers.get(1).onFailure(new Error("Test error"));
+
+        assertEquals(0, handler.errors.size());
+
+        pager.next();
+
+        assertEquals(1, handler.errors.size());
+        assertEquals("Test error", handler.errors.get(0).getDetailMessage());
+        assertNull(pager.getOverallCount());
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.os.Parcel;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Compares parcelling records as JSON strings with the binary parcel format,
+ * for a round trip of writing the records to a parcel and reading them back.
+ *
+ * Results are written to logcat with tag "Skygear Benchmark".
+ */
+@Benchmark
+@RunWith(AndroidJUnit4.class)
+public class RecordParcelBenchmark {
+    private static final String TAG = "Skygear Benchmark";
+    private static final int WARM_UP_ITERATIONS = 5;
+    private static final int ITERATIONS = 20;
+
+    private interface Parceller {
+        void write(Parcel parcel, Record record) throws Exception;
+
+        Record read(Parcel parcel) throws Exception;
+    }
+
+    private static final Parceller JsonParceller = new Parceller() {
+        @Override
+        public void write(Parcel parcel, Record record) throws Exception {
+            parcel.writeString(record.toJson().toString());
+        }
+
+        @Override
+        public Record read(Parcel parcel) throws Exception {
+            return Record.fromJson(new JSONObject(parcel.readString()));
+        }
+    };
+
+    private static final Parceller BinaryParceller = new Parceller() {
+        @Override
+        public void write(Parcel parcel, Record record) throws Exception {
+            record.writeToParcel(parcel, 0);
+        }
+
+        @Override
+        public Record read(Parcel parcel) throws Exception {
+            return Record.CREATOR.createFromParcel(parcel);
+        }
+    };
+
+    private static Record[] buildRecords(int recordCount) throws Exception {
+        Record[] records = new Record[recordCount];
+        for (int idx = 0; idx < recordCount; idx++) {
+            records[idx] = Record.fromJson(new JSONObject()
+                    .put("_id", "Note/48092492-0791-4120-B314-" + String.format("%012d", idx))
+                    .put("_created_at", "2016-06-15T07:55:32.342Z")
+                    .put("_created_by", "5a497b0b-cf93-4720-bea4-14637478cfc0")
+                    .put("_updated_at", "2016-06-15T07:55:33.342Z")
+                    .put("_updated_by", "5a497b0b-cf93-4720-bea4-14637478cfc0")
+                    .put("_ownerID", "5a497b0b-cf93-4720-bea4-14637478cfc0")
+                    .put("_access", new JSONArray()
+                            .put(new JSONObject().put("public", true).put("level", "read"))
+                            .put(new JSONObject().put("role", "admin").put("level", "write")))
+                    .put("_transient", new JSONObject().put("owner", new JSONObject()
+                            .put("_id", "user/5a497b0b-cf93-4720-bea4-14637478cfc0")
+                            .put("name", "John Doe")))
+                    .put("title", "Note title number " + idx)
+                    .put("content", "Lorem ipsum dolor sit amet, consectetur adipiscing elit, " +
+                            "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.")
+                    .put("priority", idx % 5)
+                    .put("score", idx * 0.5)
+                    .put("done", idx % 2 == 0)
+                    .put("tags", new JSONArray().put("work").put("todo").put("tag" + idx))
+                    .put("meta", new JSONObject().put("color", "red").put("pinned", false))
+                    .put("due", new JSONObject()
+                            .put("$type", "date")
+                            .put("$date", "2016-07-15T07:55:32.342Z"))
+                    .put("owner", new JSONObject()
+                            .put("$type", "ref")
+                            .put("$recordType", "user")
+                            .put("$recordID", "5a497b0b-cf93-4720-bea4-14637478cfc0"))
+                    .put("attachment", new JSONObject()
+                            .put("$type", "asset")
+                            .put("$name", "48092492-0791-4120-B314-attachment.png")
+                            .put("$url", "http://skygear.dev/files/attachment.png")
+                            .put("$content_type", "image/png")));
+        }
+
+        return records;
+    }
+
+    private static int roundTrip(Parceller parceller, Record[] records) throws Exception {
+        Parcel parcel = Parcel.obtain();
+        try {
+            for (Record perRecord : records) {
+                parceller.write(parcel, perRecord);
+            }
+            int size = parcel.dataSize();
+
+            parcel.setDataPosition(0);
+            for (Record perRecord : records) {
+                assertEquals(perRecord.getId(), parceller.read(parcel).getId());
+            }
+
+            return size;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static long measure(Parceller parceller, Record[] records) throws Exception {
+        for (int idx = 0; idx < WARM_UP_ITERATIONS; idx++) {
+            roundTrip(parceller, records);
+        }
+
+        long start = System.nanoTime();
+        for (int idx = 0; idx < ITERATIONS; idx++) {
+            roundTrip(parceller, records);
+        }
+
+        return (System.nanoTime() - start) / ((long) ITERATIONS * records.length);
+    }
+
+    private void runBenchmark(int recordCount) throws Exception {
+        Record[] records = buildRecords(recordCount);
+
+        int jsonSize = roundTrip(JsonParceller, records);
+        int binarySize = roundTrip(BinaryParceller, records);
+
+        long jsonNanos = measure(JsonParceller, records);
+        long binaryNanos = measure(BinaryParceller, records);
+
+        Log.i(TAG, String.format(
+                "Record parcelling, %d records, per record: " +
+                        "JSON %d ns / %d bytes, binary %d ns / %d bytes",
+                recordCount,
+                jsonNanos,
+                jsonSize / recordCount,
+                binaryNanos,
+                binarySize / recordCount
+        ));
+    }
+
+    @Test
+    public void benchmark10Records() throws Exception {
+        this.runBenchmark(10);
+    }
+
+    @Test
+    public void benchmark100Records() throws Exception {
+        this.runBenchmark(100);
+    }
+
+    @Test
+    public void benchmark1000Records() throws Exception {
+        this.runBenchmark(1000);
+    }
+}
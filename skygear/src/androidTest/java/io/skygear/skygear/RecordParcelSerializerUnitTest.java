@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.location.Location;
+import android.os.Parcel;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RecordParcelSerializerUnitTest {
+    private static Record parcelAndUnparcel(Record record) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            record.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+
+            return Record.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Test
+    public void testParcelMetadata() throws Exception {
+        Record note = new Record("Note", "note1");
+        note.createdAt = new Date(1466063732342L);
+        note.updatedAt = new Date(1466063733342L);
+        note.creatorId = "user1";
+        note.updaterId = "user2";
+        note.ownerId = "user3";
+        note.deleted = true;
+        note.access = new AccessControl()
+                .addEntry(new AccessControl.Entry(AccessControl.Level.READ_WRITE))
+                .addEntry(new AccessControl.Entry("user4", AccessControl.Level.READ_ONLY))
+                .addEntry(new AccessControl.Entry(new Role("admin"), AccessControl.Level.READ_WRITE));
+
+        Record parcelled = parcelAndUnparcel(note);
+        assertEquals("Note", parcelled.getType());
+        assertEquals("note1", parcelled.getId());
+        assertEquals(note.getCreatedAt(), parcelled.getCreatedAt());
+        assertEquals(note.getUpdatedAt(), parcelled.getUpdatedAt());
+        assertEquals("user1", parcelled.getCreatorId());
+        assertEquals("user2", parcelled.getUpdaterId());
+        assertEquals("user3", parcelled.getOwnerId());
+        assertTrue(parcelled.deleted);
+        assertEquals(
+                AccessControl.Level.READ_WRITE,
+                parcelled.getAccess().getPublicAccess().getLevel()
+        );
+        assertEquals(
+                AccessControl.Level.READ_ONLY,
+                parcelled.getAccess().getAccess("user4").getLevel()
+        );
+        assertEquals(
+                AccessControl.Level.READ_WRITE,
+                parcelled.getAccess().getAccess(new Role("admin")).getLevel()
+        );
+    }
+
+    @Test
+    public void testParcelWithoutOptionalMetadata() throws Exception {
+        Record note = new Record("Note");
+        note.access = null;
+
+        Record parcelled = parcelAndUnparcel(note);
+        assertEquals(note.getId(), parcelled.getId());
+        assertNull(parcelled.getCreatedAt());
+        assertNull(parcelled.getOwnerId());
+        assertFalse(parcelled.deleted);
+        assertNull(parcelled.getAccess());
+    }
+
+    @Test
+    public void testParcelTypedValues() throws Exception {
+        Location location = new Location("skygear");
+        location.setLatitude(22.3360901);
+        location.setLongitude(114.1476178);
+
+        Record note = new Record("Note");
+        note.set("title", "hello");
+        note.set("count", 3);
+        note.set("big", 3000000000L);
+        note.set("ratio", 0.5);
+        note.set("ratioFloat", 0.25f);
+        note.set("done", true);
+        note.set("null", JSONObject.NULL);
+        note.set("due", new Date(1466063732342L));
+        note.set("image", new Asset("image.png", "http://skygear.dev/image.png", "image/png"));
+        note.set("author", new Reference("user", "user1"));
+        note.set("location", location);
+        note.set("money", new UnknownValue("money"));
+        note.set("tags", new String[]{"a", "b"});
+        note.set("nested", new JSONObject()
+                .put("a", 1)
+                .put("b", new JSONArray().put("x").put(JSONObject.NULL).put(2.5)));
+
+        Record parcelled = parcelAndUnparcel(note);
+        assertEquals("hello", parcelled.get("title"));
+        assertEquals(3, parcelled.get("count"));
+        assertEquals(3000000000L, parcelled.get("big"));
+        assertEquals(0.5, parcelled.get("ratio"));
+        assertEquals(0.25f, parcelled.get("ratioFloat"));
+        assertEquals(true, parcelled.get("done"));
+        assertEquals(JSONObject.NULL, parcelled.get("null"));
+        assertEquals(new Date(1466063732342L), parcelled.get("due"));
+
+        Asset image = (Asset) parcelled.get("image");
+        assertEquals("image.png", image.getName());
+        assertEquals("http://skygear.dev/image.png", image.getUrl());
+        assertEquals("image/png", image.getMimeType());
+
+        Reference author = (Reference) parcelled.get("author");
+        assertEquals("user", author.getType());
+        assertEquals("user1", author.getId());
+
+        Location parcelledLocation = (Location) parcelled.get("location");
+        assertEquals(22.3360901, parcelledLocation.getLatitude());
+        assertEquals(114.1476178, parcelledLocation.getLongitude());
+
+        assertEquals("money", ((UnknownValue) parcelled.get("money")).getUnderlyingType());
+
+        String[] tags = (String[]) parcelled.get("tags");
+        assertEquals(2, tags.length);
+        assertEquals("b", tags[1]);
+
+        JSONObject nested = (JSONObject) parcelled.get("nested");
+        assertEquals(1, nested.getInt("a"));
+        assertEquals("[\"x\",null,2.5]", nested.getJSONArray("b").toString());
+    }
+
+    @Test
+    public void testParcelTransientRecords() throws Exception {
+        Record author = new Record("user", "user1");
+        author.set("name", "John");
+
+        Record note = new Record("Note");
+        note.transientMap.put("author", author);
+        note.transientMap.put("count", 2);
+
+        Record parcelled = parcelAndUnparcel(note);
+        Record parcelledAuthor = (Record) parcelled.getTransient().get("author");
+        assertEquals("user1", parcelledAuthor.getId());
+        assertEquals("John", parcelledAuthor.get("name"));
+        assertEquals(2, parcelled.getTransient().get("count"));
+    }
+
+    @Test
+    public void testParcelKeepsModifiedAndUndecodedKeys() throws Exception {
+        JSONObject recordJson = new JSONObject();
+        recordJson.put("_id", "Note/note1");
+        recordJson.put("title", "hello");
+        recordJson.put("due", new JSONObject()
+                .put("$type", "date")
+                .put("$date", "2016-06-15T07:55:32.342Z"));
+
+        Record note = RecordSerializer.deserialize(recordJson, true);
+        note.set("title", "world");
+
+        Record parcelled = parcelAndUnparcel(note);
+        assertEquals(1, parcelled.dirtyKeys.size());
+        assertTrue(parcelled.dirtyKeys.contains("title"));
+        assertTrue(parcelled.undecodedKeys.contains("due"));
+        assertFalse(parcelled.isPartial());
+        assertEquals(new Date(1465977332342L), parcelled.get("due"));
+    }
+
+    @Test
+    public void testParcelPartialRecord() throws Exception {
+        Record note = new Record("Note");
+        note.set("title", "hello");
+        note.selectedKeys = new HashSet<>(Arrays.asList("title", "content"));
+
+        Record parcelled = parcelAndUnparcel(note);
+        assertTrue(parcelled.isPartial());
+        assertTrue(parcelled.isLoaded("content"));
+        assertFalse(parcelled.isLoaded("rating"));
+    }
+
+    @Test
+    public void testParcelCustomCodecValue() throws Exception {
+        ValueCodecRegistry.register(new ValueCodecRegistryUnitTest.MoneyCodec());
+        try {
+            Record note = new Record("Note");
+            note.set("price", new ValueCodecRegistryUnitTest.Money("HKD", 100));
+
+            Record parcelled = parcelAndUnparcel(note);
+            ValueCodecRegistryUnitTest.Money price
+                    = (ValueCodecRegistryUnitTest.Money) parcelled.get("price");
+            assertEquals("HKD", price.currency);
+            assertEquals(100L, price.cents);
+        } finally {
+            ValueCodecRegistry.unregister("money");
+        }
+    }
+
+    @Test
+    public void testParcelNestedCollections() throws Exception {
+        Map<String, Reference> authors = new HashMap<>();
+        authors.put("editor", new Reference("user", "user1"));
+        authors.put("reviewer", new Reference("user", "user2"));
+
+        List<Asset> attachments = new ArrayList<>();
+        attachments.add(new Asset("image.png", "http://skygear.dev/image.png", "image/png"));
+        attachments.add(new Asset("note.txt", "http://skygear.dev/note.txt", "text/plain"));
+
+        Record note = new Record("Note");
+        note.data.put("authors", authors);
+        note.transientMap.put("attachments", attachments);
+
+        Record parcelled = parcelAndUnparcel(note);
+        Map<?, ?> parcelledAuthors = (Map<?, ?>) parcelled.get("authors");
+        assertEquals(2, parcelledAuthors.size());
+        assertEquals("user2", ((Reference) parcelledAuthors.get("reviewer")).getId());
+
+        List<?> parcelledAttachments = (List<?>) parcelled.getTransient().get("attachments");
+        assertEquals(2, parcelledAttachments.size());
+        Asset attachment = (Asset) parcelledAttachments.get(1);
+        assertEquals("note.txt", attachment.getName());
+        assertEquals("http://skygear.dev/note.txt", attachment.getUrl());
+        assertEquals("text/plain", attachment.getMimeType());
+    }
+
+    @Test
+    public void testParcelManyRecords() throws Exception {
+        Map<String, Object> data = new HashMap<>();
+        data.put("title", "hello");
+
+        Parcel parcel = Parcel.obtain();
+        for (int idx = 0; idx < 10; idx++) {
+            new Record("Note", "note" + idx, data).writeToParcel(parcel, 0);
+        }
+
+        parcel.setDataPosition(0);
+        for (int idx = 0; idx < 10; idx++) {
+            Record parcelled = Record.CREATOR.createFromParcel(parcel);
+            assertEquals("note" + idx, parcelled.getId());
+            assertEquals("hello", parcelled.get("title"));
+        }
+        parcel.recycle();
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares the tree decoding path (bytes to String to JSONObject to Records) with the
+ * streaming decoding path (bytes to Records) for record query responses.
+ *
+ * Results are written to logcat with tag "Skygear Benchmark".
+ */
+@Benchmark
+@RunWith(AndroidJUnit4.class)
+public class RecordQueryDecodingBenchmark {
+    private static final String TAG = "Skygear Benchmark";
+    private static final int WARM_UP_ITERATIONS = 3;
+    private static final int ITERATIONS = 10;
+
+    static byte[] buildResponseBody(int recordCount) throws Exception {
+        JSONArray results = new JSONArray();
+        for (int idx = 0; idx < recordCount; idx++) {
+            JSONObject perRecord = new JSONObject();
+            perRecord.put("_id", "Note/48092492-0791-4120-B314-" + String.format("%012d", idx));
+            perRecord.put("_type", "record");
+            perRecord.put("_created_at", "2016-06-15T07:55:32.342Z");
+            perRecord.put("_created_by", "5a497b0b-cf93-4720-bea4-14637478cfc0");
+            perRecord.put("_updated_at", "2016-06-15T07:55:33.342Z");
+            perRecord.put("_updated_by", "5a497b0b-cf93-4720-bea4-14637478cfc0");
+            perRecord.put("_ownerID", "5a497b0b-cf93-4720-bea4-14637478cfc0");
+            perRecord.put("_access", new JSONArray().put(
+                    new JSONObject().put("public", true).put("level", "read")
+            ));
+            perRecord.put("title", "Note title number " + idx);
+            perRecord.put("content", "Lorem ipsum dolor sit amet, consectetur adipiscing elit, " +
+                    "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.");
+            perRecord.put("priority", idx % 5);
+            perRecord.put("score", idx * 0.5);
+            perRecord.put("done", idx % 2 == 0);
+            perRecord.put("tags", new JSONArray().put("work").put("todo").put("tag" + idx));
+            perRecord.put("due", new JSONObject()
+                    .put("$type", "date")
+                    .put("$date", "2016-07-15T07:55:32.342Z"));
+            perRecord.put("owner", new JSONObject()
+                    .put("$type", "ref")
+                    .put("$recordType", "user")
+                    .put("$recordID", "5a497b0b-cf93-4720-bea4-14637478cfc0"));
+
+            results.put(perRecord);
+        }
+
+        JSONObject response = new JSONObject();
+        response.put("result", results);
+        response.put("info", new JSONObject().put("count", recordCount));
+
+        return response.toString().getBytes("utf-8");
+    }
+
+    private static Record[] decodeAsTree(byte[] body) throws Exception {
+        String bodyString = new String(body, "utf-8");
+        JSONObject responseObject = new JSONObject(bodyString);
+        JSONArray results = responseObject.getJSONArray("result");
+
+        Record[] records = new Record[results.length()];
+        for (int idx = 0; idx < results.length(); idx++) {
+            records[idx] = Record.fromJson(results.getJSONObject(idx));
+        }
+
+        return records;
+    }
+
+    private static Record[] decodeAsStream(byte[] body) throws Exception {
+        return RecordQueryResponseParser.parse(new ByteArrayInputStream(body), "utf-8").records;
+    }
+
+    /**
+     * Decodes the records and reads a few attributes, as a list screen does.
+     */
+    private static int decodeAndReadAsStream(byte[] body, boolean lazy) throws Exception {
+        Record[] records = RecordQueryResponseParser.parse(
+                new ByteArrayInputStream(body),
+                "utf-8",
+                lazy
+        ).records;
+
+        int count = 0;
+        for (Record perRecord : records) {
+            if (perRecord.get("title") != null && perRecord.get("due") != null) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int idx = 0; idx < 3; idx++) {
+            runtime.gc();
+            runtime.runFinalization();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long peakHeapOfTreeDecoding(byte[] body) throws Exception {
+        long baseline = usedHeap();
+
+        // keep every intermediate representation reachable, as the tree path does
+        // until the response handler returns
+        String bodyString = new String(body, "utf-8");
+        JSONObject responseObject = new JSONObject(bodyString);
+        JSONArray results = responseObject.getJSONArray("result");
+        Record[] records = new Record[results.length()];
+        for (int idx = 0; idx < results.length(); idx++) {
+            records[idx] = Record.fromJson(results.getJSONObject(idx));
+        }
+
+        long peak = usedHeap() - baseline;
+        assertEquals(records.length, responseObject.getJSONArray("result").length());
+        assertTrue(bodyString.length() > 0);
+
+        return peak;
+    }
+
+    private static long peakHeapOfStreamDecoding(byte[] body) throws Exception {
+        long baseline = usedHeap();
+        Record[] records = decodeAsStream(body);
+        long peak = usedHeap() - baseline;
+        assertTrue(records.length > 0);
+
+        return peak;
+    }
+
+    private void runBenchmark(int recordCount) throws Exception {
+        byte[] body = buildResponseBody(recordCount);
+
+        for (int idx = 0; idx < WARM_UP_ITERATIONS; idx++) {
+            assertEquals(recordCount, decodeAsTree(body).length);
+            assertEquals(recordCount, decodeAsStream(body).length);
+        }
+
+        long treeStart = System.nanoTime();
+        for (int idx = 0; idx < ITERATIONS; idx++) {
+            decodeAsTree(body);
+        }
+        long treeNanos = (System.nanoTime() - treeStart) / ITERATIONS;
+
+        long streamStart = System.nanoTime();
+        for (int idx = 0; idx < ITERATIONS; idx++) {
+            decodeAsStream(body);
+        }
+        long streamNanos = (System.nanoTime() - streamStart) / ITERATIONS;
+
+        for (int idx = 0; idx < WARM_UP_ITERATIONS; idx++) {
+            assertEquals(recordCount, decodeAndReadAsStream(body, false));
+            assertEquals(recordCount, decodeAndReadAsStream(body, true));
+        }
+
+        long eagerReadStart = System.nanoTime();
+        for (int idx = 0; idx < ITERATIONS; idx++) {
+            decodeAndReadAsStream(body, false);
+        }
+        long eagerReadNanos = (System.nanoTime() - eagerReadStart) / ITERATIONS;
+
+        long lazyReadStart = System.nanoTime();
+        for (int idx = 0; idx < ITERATIONS; idx++) {
+            decodeAndReadAsStream(body, true);
+        }
+        long lazyReadNanos = (System.nanoTime() - lazyReadStart) / ITERATIONS;
+
+        long treePeak = peakHeapOfTreeDecoding(body);
+        long streamPeak = peakHeapOfStreamDecoding(body);
+
+        Log.i(TAG, String.format(
+                "Query decoding, %d records (%d KB body): " +
+                        "tree %.2f ms / %d KB peak, stream %.2f ms / %d KB peak, " +
+                        "reading 2 fields eager %.2f ms, lazy %.2f ms",
+                recordCount,
+                body.length / 1024,
+                treeNanos / 1e6,
+                treePeak / 1024,
+                streamNanos / 1e6,
+                streamPeak / 1024,
+                eagerReadNanos / 1e6,
+                lazyReadNanos / 1e6
+        ));
+    }
+
+    @Test
+    public void benchmark50Records() throws Exception {
+        this.runBenchmark(50);
+    }
+
+    @Test
+    public void benchmark500Records() throws Exception {
+        this.runBenchmark(500);
+    }
+
+    @Test
+    public void benchmark5000Records() throws Exception {
+        this.runBenchmark(5000);
+    }
+}
@@ -28,9 +28,13 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.List;
 import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
 public class RecordQueryRequestUnitTest {
@@ -116,4 +120,34 @@ public class RecordQueryRequestUnitTest {
         RecordQueryRequest request = new RecordQueryRequest(query, instrumentationPublicDatabase);
         assertEquals(0, request.data.get("offset"));
     }
+
+    @Test
+    public void testRecordQueryDesiredKeys() throws Exception {
+        Query query = new Query("Note").select("title", "rating");
+
+        RecordQueryRequest request = new RecordQueryRequest(query, instrumentationPublicDatabase);
+        List<?> desiredKeys = (List<?>) request.data.get("desired_keys");
+        assertEquals(2, desiredKeys.size());
+        assertEquals("title", desiredKeys.get(0));
+        assertEquals("rating", desiredKeys.get(1));
+
+        request.setQuery(new Query("Note"));
+        assertFalse(request.data.containsKey("desired_keys"));
+    }
+
+    @Test
+    public void testRecordQueryResultPartialRecords() throws Exception {
+        Query query = new Query("Note").select("title");
+        RecordQueryRequest request = new RecordQueryRequest(query, instrumentationPublicDatabase);
+        request.recordCache = new RecordCache(10);
+
+        Record note = new Record("Note", "note1");
+        request.onQueryResult(new Record[]{note});
+
+        assertTrue(note.isPartial());
+        assertTrue(note.isLoaded("title"));
+        assertFalse(note.isLoaded("content"));
+        assertNull(request.recordCache.get("_public", "Note", "note1"));
+        assertNull(request.getCachedResult());
+    }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RecordQueryResponseParserUnitTest {
+    private static InputStream streamOf(String body) throws Exception {
+        return new ByteArrayInputStream(body.getBytes("utf-8"));
+    }
+
+    @Test
+    public void testParseNormalFlow() throws Exception {
+        String body = "{" +
+                "  \"result\": [" +
+                "    {" +
+                "      \"_id\": \"Note/48092492-0791-4120-B314-022202AD3970\"," +
+                "      \"_created_at\": \"2016-06-15T07:55:32.342Z\"," +
+                "      \"_ownerID\": \"5a497b0b-cf93-4720-bea4-14637478cfc1\"," +
+                "      \"_type\": \"record\"," +
+                "      \"_access\": null," +
+                "      \"hello\": \"world\"," +
+                "      \"foobar\": 3," +
+                "      \"big\": 3000000000," +
+                "      \"abc\": 12.345," +
+                "      \"flag\": true," +
+                "      \"tags\": [\"a\", \"b\"]," +
+                "      \"when\": {\"$type\": \"date\", \"$date\": \"2016-06-15T07:55:34.342Z\"}" +
+                "    }," +
+                "    {" +
+                "      \"_recordType\": \"Note\"," +
+                "      \"_recordID\": \"48092492-0791-4120-B314-022202AD3971\"," +
+                "      \"hello\": \"world2\"" +
+                "    }" +
+                "  ]," +
+                "  \"info\": {\"count\": 24}," +
+                "  \"extra\": {\"ignored\": [1, 2, 3]}" +
+                "}";
+
+        RecordQueryResponseParser.Result result
+                = RecordQueryResponseParser.parse(streamOf(body), "utf-8");
+
+        assertEquals(2, result.records.length);
+        assertEquals(Integer.valueOf(24), result.queryInfo.getOverallCount());
+
+        Record record1 = result.records[0];
+        assertEquals("Note", record1.getType());
+        assertEquals("48092492-0791-4120-B314-022202AD3970", record1.getId());
+        assertEquals(
+                new DateTime(2016, 6, 15, 7, 55, 32, 342, DateTimeZone.UTC).toDate(),
+                record1.getCreatedAt()
+        );
+        assertEquals("5a497b0b-cf93-4720-bea4-14637478cfc1", record1.getOwnerId());
+        assertEquals("world", record1.get("hello"));
+        assertEquals(3, record1.get("foobar"));
+        assertEquals(3000000000L, record1.get("big"));
+        assertEquals(12.345, record1.get("abc"));
+        assertEquals(true, record1.get("flag"));
+        assertEquals(2, ((JSONArray) record1.get("tags")).length());
+        assertEquals(
+                new DateTime(2016, 6, 15, 7, 55, 34, 342, DateTimeZone.UTC).toDate(),
+                record1.get("when")
+        );
+
+        Record record2 = result.records[1];
+        assertEquals("Note", record2.getType());
+        assertEquals("48092492-0791-4120-B314-022202AD3971", record2.getId());
+        assertEquals("world2", record2.get("hello"));
+    }
+
+    @Test
+    public void testParseMatchesTreeDecoding() throws Exception {
+        JSONObject recordJson = new JSONObject();
+        recordJson.put("_id", "Note/id1");
+        recordJson.put("_updated_at", "2016-06-15T07:55:33.342Z");
+        recordJson.put("nested", new JSONObject().put("a", 1).put("b", JSONObject.NULL));
+        recordJson.put("ref", new JSONObject()
+                .put("$type", "ref")
+                .put("$recordType", "User")
+                .put("$recordID", "u1"));
+
+        JSONObject responseJson = new JSONObject();
+        responseJson.put("result", new JSONArray().put(recordJson));
+
+        Record expected = Record.fromJson(recordJson);
+        Record actual = RecordQueryResponseParser.parse(
+                streamOf(responseJson.toString()),
+                "utf-8"
+        ).records[0];
+
+        assertEquals(expected.getUpdatedAt(), actual.getUpdatedAt());
+        assertEquals(expected.get("nested").toString(), actual.get("nested").toString());
+        assertEquals(((Reference) expected.get("ref")).getId(), ((Reference) actual.get("ref")).getId());
+    }
+
+    @Test
+    public void testParseLazily() throws Exception {
+        String body = "{\"result\": [{" +
+                "\"_id\": \"Note/note1\", " +
+                "\"when\": {\"$type\": \"date\", \"$date\": \"2016-06-15T07:55:34.342Z\"}" +
+                "}]}";
+
+        Record record = RecordQueryResponseParser.parse(streamOf(body), "utf-8", true).records[0];
+        assertTrue(record.undecodedKeys.contains("when"));
+        assertEquals(
+                new DateTime(2016, 6, 15, 7, 55, 34, 342, DateTimeZone.UTC).toDate(),
+                record.get("when")
+        );
+    }
+
+    @Test
+    public void testParseWithoutInfo() throws Exception {
+        RecordQueryResponseParser.Result result
+                = RecordQueryResponseParser.parse(streamOf("{\"result\": []}"), "utf-8");
+
+        assertEquals(0, result.records.length);
+        assertNull(result.queryInfo);
+    }
+
+    @Test(expected = JSONException.class)
+    public void testParseMissingResult() throws Exception {
+        RecordQueryResponseParser.parse(streamOf("{\"info\": {\"count\": 1}}"), "utf-8");
+    }
+
+    @Test
+    public void testParseMalformedBody() throws Exception {
+        String[] malformedBodies = new String[]{
+                "{\"result\": [{\"_id\": \"Note/1\"}",
+                "[]",
+                "{\"result\": [1, 2]}"
+        };
+
+        for (String perBody : malformedBodies) {
+            boolean failed = false;
+            try {
+                RecordQueryResponseParser.parse(streamOf(perBody), "utf-8");
+            } catch (Exception e) {
+                failed = true;
+            }
+            assertTrue("Should fail to parse: " + perBody, failed);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares the request body size of full record saves with delta record
+ * saves, where a single attribute of each record is modified.
+ *
+ * Results are written to logcat with tag "Skygear Benchmark".
+ */
+@Benchmark
+@RunWith(AndroidJUnit4.class)
+public class RecordSaveBenchmark {
+    private static final String TAG = "Skygear Benchmark";
+
+    private static Record[] buildFetchedRecords(int recordCount, int arraySize) throws Exception {
+        Record[] records = new Record[recordCount];
+        for (int idx = 0; idx < recordCount; idx++) {
+            JSONArray tags = new JSONArray();
+            JSONObject history = new JSONObject();
+            for (int itemIdx = 0; itemIdx < arraySize; itemIdx++) {
+                tags.put("tag-" + itemIdx);
+                history.put("revision-" + itemIdx, new JSONObject()
+                        .put("editor", "5a497b0b-cf93-4720-bea4-14637478cfc0")
+                        .put("summary", "Revision number " + itemIdx));
+            }
+
+            JSONObject recordObject = new JSONObject()
+                    .put("_id", "Note/48092492-0791-4120-B314-" + String.format("%012d", idx))
+                    .put("_type", "record")
+                    .put("_created_at", "2016-06-15T07:55:32.342Z")
+                    .put("_ownerID", "5a497b0b-cf93-4720-bea4-14637478cfc0")
+                    .put("title", "Note title number " + idx)
+                    .put("tags", tags)
+                    .put("history", history);
+
+            records[idx] = Record.fromJson(recordObject);
+            records[idx].set("title", "Updated note title number " + idx);
+        }
+
+        return records;
+    }
+
+    private static int requestBodySize(Record[] records, boolean deltaSave) throws Exception {
+        RecordSaveRequest request = new RecordSaveRequest(records, new Database("_public", null));
+        request.setDeltaSave(deltaSave);
+
+        Map<String, Object> extraData = new HashMap<>();
+        extraData.put("action", request.action);
+
+        return RequestBodyWriter.write(request.getData(), extraData).getBytes("utf-8").length;
+    }
+
+    private void runBenchmark(int recordCount, int arraySize) throws Exception {
+        Record[] records = buildFetchedRecords(recordCount, arraySize);
+
+        int fullSize = requestBodySize(records, false);
+        int deltaSize = requestBodySize(records, true);
+        assertTrue(deltaSize < fullSize);
+
+        Log.i(TAG, String.format(
+                "Record save, %d records with %d array items: " +
+                        "full %d bytes, delta %d bytes (%.1f%%)",
+                recordCount,
+                arraySize,
+                fullSize,
+                deltaSize,
+                deltaSize * 100.0 / fullSize
+        ));
+    }
+
+    @Test
+    public void benchmarkSmallRecords() throws Exception {
+        this.runBenchmark(10, 5);
+    }
+
+    @Test
+    public void benchmarkLargeRecords() throws Exception {
+        this.runBenchmark(10, 500);
+    }
+
+    @Test
+    public void benchmarkManyLargeRecords() throws Exception {
+        this.runBenchmark(100, 500);
+    }
+}
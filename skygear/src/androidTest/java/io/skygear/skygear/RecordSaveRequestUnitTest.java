@@ -67,7 +67,8 @@ public class RecordSaveRequestUnitTest {
         Map<String, Object> data = recordSaveRequest.data;
         assertEquals("_public", data.get("database_id"));
 
-        JSONArray records = (JSONArray) data.get("records");
+        JSONArray records = new JSONObject(RequestBodyWriter.write(data))
+                .getJSONArray("records");
         assertEquals(2, records.length());
 
         assertTrue(data.containsKey("atomic"));
@@ -93,6 +94,23 @@ public class RecordSaveRequestUnitTest {
         recordSaveRequest.validate();
     }
 
+    @Test
+    public void testRecordSaveRequestRecordSubclass() throws Exception {
+        Record note = new Record("Note", "note1") {
+            // a subclass of Record
+        };
+        note.set("identifier", 1);
+
+        RecordSaveRequest recordSaveRequest
+                = new RecordSaveRequest(new Record[]{note}, instrumentationPublicDatabase);
+        JSONObject record = new JSONObject(RequestBodyWriter.write(recordSaveRequest.data))
+                .getJSONArray("records")
+                .getJSONObject(0);
+
+        assertEquals("Note/note1", record.getString("_id"));
+        assertEquals(1, record.getInt("identifier"));
+    }
+
     @Test
     public void testRecordSaveRequestNonAtomic() throws Exception {
         RecordSaveRequest recordSaveRequest
@@ -137,4 +155,78 @@ public class RecordSaveRequestUnitTest {
         );
         recordSaveRequest.validate();
     }
+
+    @Test
+    public void testRecordSaveRequestDeltaSave() throws Exception {
+        Record note = Record.fromJson(new JSONObject()
+                .put("_id", "Note/note1")
+                .put("title", "hello")
+                .put("content", "world"));
+        note.set("title", "hello again");
+
+        RecordSaveRequest recordSaveRequest
+                = new RecordSaveRequest(new Record[]{note}, instrumentationPublicDatabase);
+        recordSaveRequest.setAtomic(false);
+        recordSaveRequest.setDeltaSave(true);
+        assertTrue(recordSaveRequest.isDeltaSave());
+        assertFalse(recordSaveRequest.isAtomic());
+
+        JSONObject record = new JSONObject(RequestBodyWriter.write(recordSaveRequest.data))
+                .getJSONArray("records")
+                .getJSONObject(0);
+        assertEquals("note1", record.getString("_recordID"));
+        assertEquals("hello again", record.getString("title"));
+        assertFalse(record.has("content"));
+    }
+
+    @Test
+    public void testRecordSaveRequestClearsDirtyKeysOnSuccess() throws Exception {
+        Record note1 = new Record("Note", "note1");
+        Record note2 = new Record("Note", "note2");
+        note1.set("title", "hello");
+        note2.set("title", "world");
+
+        RecordSaveRequest recordSaveRequest
+                = new RecordSaveRequest(new Record[]{note1, note2}, instrumentationPublicDatabase);
+        recordSaveRequest.onResponse(new JSONObject().put("result", new JSONArray()
+                .put(new JSONObject()
+                        .put("_id", "Note/note1")
+                        .put("_type", "record")
+                        .put("title", "hello"))
+                .put(new JSONObject()
+                        .put("_id", "Note/note2")
+                        .put("_type", "error")
+                        .put("code", 102)
+                        .put("message", "Permission denied"))
+        ));
+
+        assertFalse(note1.isDirty());
+        assertTrue(note2.isDirty());
+    }
+
+    @Test
+    public void testRecordSaveRequestKeepsKeysSetDuringSave() throws Exception {
+        Record note = new Record("Note", "note1");
+        note.set("title", "hello");
+        note.set("content", "first");
+
+        RecordSaveRequest recordSaveRequest = new RecordSaveRequest(note, instrumentationPublicDatabase);
+        recordSaveRequest.setDeltaSave(true);
+
+        // modified after the payload is built, the new value may not be saved
+        note.set("content", "second");
+        note.set("tag", "draft");
+
+        recordSaveRequest.onResponse(new JSONObject().put("result", new JSONArray()
+                .put(new JSONObject()
+                        .put("_id", "Note/note1")
+                        .put("_type", "record")
+                        .put("title", "hello")
+                        .put("content", "first"))
+        ));
+
+        assertEquals(2, note.getDirtyKeys().size());
+        assertTrue(note.getDirtyKeys().contains("content"));
+        assertTrue(note.getDirtyKeys().contains("tag"));
+    }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Compares the tree encoding path (Records to JSONObjects to String to bytes) with the
+ * single pass encoding path (Records to bytes) for record save request bodies.
+ *
+ * Time and allocations are reported per record. Results are written to logcat with
+ * tag "Skygear Benchmark".
+ */
+@Benchmark
+@RunWith(AndroidJUnit4.class)
+public class RecordSerializationBenchmark {
+    private static final String TAG = "Skygear Benchmark";
+    private static final int WARM_UP_ITERATIONS = 5;
+    private static final int ITERATIONS = 20;
+
+    private interface Encoder {
+        byte[] encode(Map<String, Object> data, Record[] records) throws Exception;
+    }
+
+    private static final Encoder TreeEncoder = new Encoder() {
+        @Override
+        public byte[] encode(Map<String, Object> data, Record[] records) throws Exception {
+            JSONArray recordArray = new JSONArray();
+            for (Record perRecord : records) {
+                recordArray.put(RecordSerializer.serialize(perRecord));
+            }
+
+            Map<String, Object> bodyData = new HashMap<>(data);
+            bodyData.put("records", recordArray);
+
+            return new JSONObject(bodyData).toString().getBytes("utf-8");
+        }
+    };
+
+    private static final Encoder StreamEncoder = new Encoder() {
+        @Override
+        public byte[] encode(Map<String, Object> data, Record[] records) throws Exception {
+            return RequestBodyWriter.write(data).getBytes("utf-8");
+        }
+    };
+
+    private static Record[] buildRecords(int recordCount) throws Exception {
+        Record[] records = new Record[recordCount];
+        for (int idx = 0; idx < recordCount; idx++) {
+            records[idx] = Record.fromJson(new JSONObject()
+                    .put("_id", "Note/48092492-0791-4120-B314-" + String.format("%012d", idx))
+                    .put("_created_at", "2016-06-15T07:55:32.342Z")
+                    .put("_ownerID", "5a497b0b-cf93-4720-bea4-14637478cfc0")
+                    .put("_access", new JSONArray().put(
+                            new JSONObject().put("public", true).put("level", "read")
+                    ))
+                    .put("title", "Note title number " + idx)
+                    .put("content", "Lorem ipsum dolor sit amet, consectetur adipiscing elit, " +
+                            "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.")
+                    .put("priority", idx % 5)
+                    .put("score", idx * 0.5)
+                    .put("done", idx % 2 == 0)
+                    .put("tags", new JSONArray().put("work").put("todo").put("tag" + idx))
+                    .put("due", new JSONObject()
+                            .put("$type", "date")
+                            .put("$date", "2016-07-15T07:55:32.342Z"))
+                    .put("owner", new JSONObject()
+                            .put("$type", "ref")
+                            .put("$recordType", "user")
+                            .put("$recordID", "5a497b0b-cf93-4720-bea4-14637478cfc0")));
+        }
+
+        return records;
+    }
+
+    private static long[] measure(Encoder encoder, Map<String, Object> data, Record[] records)
+            throws Exception
+    {
+        for (int idx = 0; idx < WARM_UP_ITERATIONS; idx++) {
+            encoder.encode(data, records);
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int idx = 0; idx < ITERATIONS; idx++) {
+            encoder.encode(data, records);
+        }
+        long nanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+
+        long perRecordDivisor = (long) ITERATIONS * records.length;
+        return new long[]{
+                nanos / perRecordDivisor,
+                Debug.getThreadAllocCount() / perRecordDivisor,
+                Debug.getThreadAllocSize() / perRecordDivisor
+        };
+    }
+
+    private void runBenchmark(int recordCount) throws Exception {
+        Record[] records = buildRecords(recordCount);
+        RecordSaveRequest request = new RecordSaveRequest(records, new Database("_public", null));
+        Map<String, Object> data = request.getData();
+
+        JSONArray treeRecords = new JSONObject(new String(TreeEncoder.encode(data, records), "utf-8"))
+                .getJSONArray("records");
+        JSONArray streamRecords = new JSONObject(new String(StreamEncoder.encode(data, records), "utf-8"))
+                .getJSONArray("records");
+        assertEquals(treeRecords.length(), streamRecords.length());
+
+        long[] tree = measure(TreeEncoder, data, records);
+        long[] stream = measure(StreamEncoder, data, records);
+
+        Log.i(TAG, String.format(
+                "Record save encoding, %d records, per record: " +
+                        "tree %d ns / %d allocations / %d bytes, " +
+                        "stream %d ns / %d allocations / %d bytes",
+                recordCount,
+                tree[0],
+                tree[1],
+                tree[2],
+                stream[0],
+                stream[1],
+                stream[2]
+        ));
+    }
+
+    @Test
+    public void benchmark10Records() throws Exception {
+        this.runBenchmark(10);
+    }
+
+    @Test
+    public void benchmark100Records() throws Exception {
+        this.runBenchmark(100);
+    }
+
+    @Test
+    public void benchmark1000Records() throws Exception {
+        this.runBenchmark(1000);
+    }
+}
@@ -37,9 +37,13 @@ import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 @RunWith(AndroidJUnit4.class)
 public class RecordSerializerUnitTest {
+    static class Point {
+    }
+
     @Test
     public void testRecordTypeValidation() throws Exception {
         assertFalse(RecordSerializer.isValidType(null));
@@ -569,4 +573,137 @@ public class RecordSerializerUnitTest {
         assertEquals(note.updaterId, record.updaterId);
         assertEquals(note.data, record.data);
     }
+
+    @Test
+    public void testRecordDeserializationClearsDirtyKeys() throws Exception {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("_id", "Note/48092492-0791-4120-B314-022202AD3970");
+        jsonObject.put("hello", "world");
+
+        Record record = RecordSerializer.deserialize(jsonObject);
+        assertFalse(record.isDirty());
+        assertEquals("world", record.get("hello"));
+    }
+
+    @Test
+    public void testRecordSerializeDirty() throws Exception {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("_id", "Note/48092492-0791-4120-B314-022202AD3970");
+        jsonObject.put("_created_at", "2016-06-15T07:55:32.342Z");
+        jsonObject.put("_ownerID", "5a497b0b-cf93-4720-bea4-14637478cfc0");
+        jsonObject.put("hello", "world");
+        jsonObject.put("tags", new JSONArray().put("a").put("b"));
+
+        Record record = RecordSerializer.deserialize(jsonObject);
+        record.set("hello", "skygear");
+
+        JSONObject dirtyObject = RecordSerializer.serializeDirty(record);
+        assertEquals("Note/48092492-0791-4120-B314-022202AD3970", dirtyObject.getString("_id"));
+        assertEquals("Note", dirtyObject.getString("_recordType"));
+        assertEquals("48092492-0791-4120-B314-022202AD3970", dirtyObject.getString("_recordID"));
+        assertEquals("skygear", dirtyObject.getString("hello"));
+        assertFalse(dirtyObject.has("tags"));
+        assertFalse(dirtyObject.has("_created_at"));
+        assertFalse(dirtyObject.has("_ownerID"));
+    }
+
+    @Test
+    public void testRecordDeserializeLazily() throws Exception {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("_id", "Note/48092492-0791-4120-B314-022202AD3970");
+        jsonObject.put("hello", "world");
+        jsonObject.put("due", new JSONObject()
+                .put("$type", "date")
+                .put("$date", "2016-06-15T07:55:34.342Z"));
+        jsonObject.put("owner", new JSONObject()
+                .put("$type", "ref")
+                .put("$recordType", "User")
+                .put("$recordID", "user1"));
+        jsonObject.put("malformed", new JSONObject().put("$type", "date"));
+
+        Record record = RecordSerializer.deserialize(jsonObject, true);
+        assertFalse(record.isDirty());
+        assertEquals(3, record.undecodedKeys.size());
+        assertTrue(record.data.get("due") instanceof JSONObject);
+
+        assertEquals(
+                new DateTime(2016, 6, 15, 7, 55, 34, 342, DateTimeZone.UTC).toDate(),
+                record.get("due")
+        );
+        assertFalse(record.undecodedKeys.contains("due"));
+        assertTrue(record.data.get("owner") instanceof JSONObject);
+        assertTrue(record.get("malformed") instanceof JSONObject);
+
+        Map<String, Object> data = record.getData();
+        assertEquals("user1", ((Reference) data.get("owner")).getId());
+        assertNull(record.undecodedKeys);
+    }
+
+    @Test
+    public void testRecordDeserializeLazilyMalformedValue() throws Exception {
+        ValueCodecRegistry.register(new ValueCodec<Point>() {
+            @Override
+            public String getType() {
+                return "point";
+            }
+
+            @Override
+            public Class<Point> getValueClass() {
+                return Point.class;
+            }
+
+            @Override
+            public JSONObject serialize(Point value) throws JSONException {
+                return null;
+            }
+
+            @Override
+            public Point deserialize(JSONObject jsonObject) throws JSONException {
+                throw new JSONException("Missing coordinates");
+            }
+        });
+
+        try {
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("_id", "Note/48092492-0791-4120-B314-022202AD3970");
+            jsonObject.put("where", new JSONObject().put("$type", "point"));
+
+            Record record = RecordSerializer.deserialize(jsonObject, true);
+            try {
+                record.get("where");
+                fail("Should throw IllegalStateException");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getCause() instanceof JSONException);
+            }
+
+            // still kept for another attempt
+            assertTrue(record.undecodedKeys.contains("where"));
+        } finally {
+            ValueCodecRegistry.unregister("point");
+        }
+    }
+
+    @Test
+    public void testRecordSerializeLazilyDeserialized() throws Exception {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("_id", "Note/48092492-0791-4120-B314-022202AD3970");
+        jsonObject.put("due", new JSONObject()
+                .put("$type", "date")
+                .put("$date", "2016-06-15T07:55:34.342Z"));
+        jsonObject.put("owner", new JSONObject()
+                .put("$type", "ref")
+                .put("$recordType", "User")
+                .put("$recordID", "user1"));
+
+        Record record = RecordSerializer.deserialize(jsonObject, true);
+        record.set("owner", new Reference("User", "user2"));
+
+        JSONObject serialized = RecordSerializer.serialize(record);
+        assertEquals(
+                "2016-06-15T07:55:34.342Z",
+                serialized.getJSONObject("due").getString("$date")
+        );
+        assertEquals("user2", serialized.getJSONObject("owner").getString("$recordID"));
+        assertEquals(Reference.class, record.get("owner").getClass());
+    }
 }
@@ -25,7 +25,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.security.InvalidParameterException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 
 import static junit.framework.Assert.assertEquals;
@@ -75,14 +77,33 @@ public class RecordUnitTest {
         aNote.writeToParcel(parcel, 0);
 
         parcel.setDataPosition(0);
-        String parcelledString = parcel.readString();
-        JSONObject parcelledJSONObject = new JSONObject(parcelledString);
-        assertEquals("world", parcelledJSONObject.getString("hello"));
-        assertEquals(3, parcelledJSONObject.getInt("foobar"));
-        assertEquals(12.345, parcelledJSONObject.getDouble("abc"));
+        assertEquals(RecordParcelSerializer.FormatVersion, parcel.readInt());
 
         parcel.setDataPosition(0);
         Record anotherNote = Record.CREATOR.createFromParcel(parcel);
+        assertEquals(aNote.getId(), anotherNote.getId());
+        assertEquals("world", anotherNote.get("hello"));
+        assertEquals(3, anotherNote.get("foobar"));
+        assertEquals(12.345, anotherNote.get("abc"));
+
+        parcel.recycle();
+    }
+
+    @Test
+    public void testRecordParcelableFromJsonParcel() throws Exception {
+        Map<String, Object> data = new HashMap<>();
+        data.put("hello", "world");
+        data.put("foobar", 3);
+        data.put("abc", 12.345);
+
+        Record aNote = new Record("Note", data);
+
+        Parcel parcel = Parcel.obtain();
+        parcel.writeString(aNote.toJson().toString());
+
+        parcel.setDataPosition(0);
+        Record anotherNote = Record.CREATOR.createFromParcel(parcel);
+        assertEquals(aNote.getId(), anotherNote.getId());
         assertEquals("world", anotherNote.get("hello"));
         assertEquals(3, anotherNote.get("foobar"));
         assertEquals(12.345, anotherNote.get("abc"));
@@ -206,4 +227,45 @@ public class RecordUnitTest {
         assertTrue(aNote.isReadable(humanRole));
         assertTrue(aNote.isWritable(humanRole));
     }
+
+    @Test
+    public void testRecordTracksDirtyKeys() throws Exception {
+        Record note = new Record("Note");
+        assertFalse(note.isDirty());
+
+        note.set("title", "hello");
+        note.set("content", "world");
+        assertTrue(note.isDirty());
+        assertEquals(2, note.getDirtyKeys().size());
+        assertTrue(note.getDirtyKeys().contains("title"));
+        assertTrue(note.getDirtyKeys().contains("content"));
+    }
+
+    @Test
+    public void testRecordReplaceNotMarkingDirtyKeys() throws Exception {
+        Record note = Record.fromJson(new JSONObject("{\"_id\": \"Note/1\", \"title\": \"hello\"}"));
+        assertFalse(note.isDirty());
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("title", "hello again");
+        note.replace(data);
+
+        assertEquals("hello again", note.get("title"));
+        assertFalse(note.isDirty());
+    }
+
+    @Test
+    public void testRecordPartial() throws Exception {
+        Record note = new Record("Note");
+        assertFalse(note.isPartial());
+        assertTrue(note.isLoaded("title"));
+
+        note.selectedKeys = new HashSet<>(Arrays.asList("title"));
+        assertTrue(note.isPartial());
+        assertTrue(note.isLoaded("title"));
+        assertFalse(note.isLoaded("content"));
+
+        note.set("content", "hello");
+        assertTrue(note.isLoaded("content"));
+    }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RequestBodyWriterUnitTest {
+    private static JSONObject parse(String body) throws Exception {
+        return new JSONObject(body);
+    }
+
+    @Test
+    public void testWriteRequestData() throws Exception {
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("a", 1);
+        nested.put("b", null);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("string", "hello \"world\"");
+        data.put("int", 3);
+        data.put("long", 3000000000L);
+        data.put("double", 12.5);
+        data.put("boolean", true);
+        data.put("null", JSONObject.NULL);
+        data.put("map", nested);
+        data.put("list", Arrays.asList("x", 2));
+        data.put("array", new String[]{"y", "z"});
+        data.put("json", new JSONObject().put("c", new JSONArray().put(1).put(false)));
+        data.put("date", new Date(0));
+
+        Map<String, Object> extraData = new HashMap<>();
+        extraData.put("action", "record:save");
+        extraData.put("string", "overridden");
+
+        JSONObject body = parse(RequestBodyWriter.write(data, extraData));
+        assertEquals("overridden", body.getString("string"));
+        assertEquals("record:save", body.getString("action"));
+        assertEquals(3, body.getInt("int"));
+        assertEquals(3000000000L, body.getLong("long"));
+        assertEquals(12.5, body.getDouble("double"));
+        assertTrue(body.getBoolean("boolean"));
+        assertTrue(body.isNull("null"));
+        assertEquals(1, body.getJSONObject("map").getInt("a"));
+        assertTrue(body.getJSONObject("map").isNull("b"));
+        assertEquals("x", body.getJSONArray("list").getString(0));
+        assertEquals(2, body.getJSONArray("list").getInt(1));
+        assertEquals("z", body.getJSONArray("array").getString(1));
+        assertFalse(body.getJSONObject("json").getJSONArray("c").getBoolean(1));
+        assertEquals("date", body.getJSONObject("date").getString("$type"));
+        assertEquals("1970-01-01T00:00:00.000Z", body.getJSONObject("date").getString("$date"));
+    }
+
+    @Test
+    public void testWriteRecordMatchesRecordSerializer() throws Exception {
+        Record note = Record.fromJson(new JSONObject()
+                .put("_id", "Note/note1")
+                .put("_created_at", "2016-06-15T07:55:32.342Z")
+                .put("_ownerID", "user1")
+                .put("_access", new JSONArray().put(
+                        new JSONObject().put("public", true).put("level", "read")
+                ))
+                .put("title", "hello")
+                .put("tags", new JSONArray().put("a").put("b"))
+                .put("due", new JSONObject()
+                        .put("$type", "date")
+                        .put("$date", "2016-07-15T07:55:32.342Z"))
+                .put("owner", new JSONObject()
+                        .put("$type", "ref")
+                        .put("$recordType", "user")
+                        .put("$recordID", "user1")));
+        note.transientMap.put("count", 2);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("records", Collections.singletonList(note));
+
+        JSONObject expected = RecordSerializer.serialize(note);
+        JSONObject actual = parse(RequestBodyWriter.write(data))
+                .getJSONArray("records")
+                .getJSONObject(0);
+
+        assertEquals(expected.length(), actual.length());
+        for (String perKey : Arrays.asList(
+                "_id", "_recordType", "_recordID", "_created_at", "_ownerID", "title"
+        )) {
+            assertEquals(expected.getString(perKey), actual.getString(perKey));
+        }
+        assertEquals(expected.get("tags").toString(), actual.get("tags").toString());
+        assertEquals(
+                expected.getJSONObject("due").getString("$date"),
+                actual.getJSONObject("due").getString("$date")
+        );
+        assertEquals(
+                expected.getJSONObject("owner").getString("$recordID"),
+                actual.getJSONObject("owner").getString("$recordID")
+        );
+        assertEquals(expected.get("_access").toString(), actual.get("_access").toString());
+        assertEquals(2, actual.getJSONObject("_transient").getInt("count"));
+    }
+
+    @Test
+    public void testWritePartialRecord() throws Exception {
+        Record note = new Record("Note", "note1");
+        note.set("title", "hello");
+        note.set("content", "world");
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("records", Collections.singletonList(new RequestBodyWriter.PartialRecord(
+                note,
+                new HashSet<>(Collections.singletonList("title"))
+        )));
+
+        JSONObject record = parse(RequestBodyWriter.write(data))
+                .getJSONArray("records")
+                .getJSONObject(0);
+
+        assertEquals("Note/note1", record.getString("_id"));
+        assertEquals("note1", record.getString("_recordID"));
+        assertEquals("hello", record.getString("title"));
+        assertFalse(record.has("content"));
+    }
+
+    @Test
+    public void testWriteRecordSubclass() throws Exception {
+        Record note = new Record("Note", "note1") {
+            @Override
+            public String toString() {
+                return "a note";
+            }
+        };
+        note.set("title", "hello");
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("records", Collections.singletonList(note));
+        data.put("json", new JSONObject() {
+            // a subclass of JSONObject
+        }.put("a", 1));
+
+        JSONObject body = parse(RequestBodyWriter.write(data));
+        JSONObject record = body.getJSONArray("records").getJSONObject(0);
+
+        assertEquals("Note/note1", record.getString("_id"));
+        assertEquals("Note", record.getString("_recordType"));
+        assertEquals("hello", record.getString("title"));
+        assertEquals(1, body.getJSONObject("json").getInt("a"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteNonFiniteNumber() throws Exception {
+        Map<String, Object> data = new HashMap<>();
+        data.put("value", Double.NaN);
+
+        RequestBodyWriter.write(data);
+    }
+}
@@ -44,6 +44,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
@@ -470,7 +471,14 @@ public class RequestManagerUnitTest {
                         assertEquals("world", multipartParams.get("hello").value);
                         assertEquals("bar", multipartParams.get("foo").value);
 
-                        assertTrue(multiPartRequest.getFilesToUpload().keySet().contains("file"));
+                        assertTrue(request instanceof VolleyTransport.StreamingMultiPartRequest);
+                        assertEquals(
+                                "hello.txt",
+                                ((VolleyTransport.StreamingMultiPartRequest) request)
+                                        .getMultiPartBody()
+                                        .getAsset()
+                                        .getName()
+                        );
                     }
                 })
         );
@@ -509,4 +517,278 @@ public class RequestManagerUnitTest {
         latch.await();
         assertTrue(checkpoints[0]);
     }
+
+    @Test
+    public void testSendRecordQueryRequestInStreamingMode() throws Exception {
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .pubsubConnectAutomatically(false)
+                .streamingQueryDecoding(true)
+                .build();
+        Container container = new Container(RequestManagerUnitTest.instrumentationContext, config);
+        RequestManager requestManager = new RequestManager(
+                RequestManagerUnitTest.instrumentationContext,
+                config
+        );
+        assertTrue(requestManager.streamingQueryDecoding);
+
+        requestManager.queue = Volley.newRequestQueue(
+                RequestManagerUnitTest.instrumentationContext,
+                new MockHttpStack(new MockHttpStack.MockResponder() {
+                    @Override
+                    public HttpResponse getResponse(
+                            com.android.volley.Request request,
+                            Map<String, String> header
+                    ) throws AuthFailureError {
+                        try {
+                            JSONObject bodyObject = new JSONObject(new String(request.getBody()));
+                            assertEquals("record:query", bodyObject.getString("action"));
+                            assertEquals("Note", bodyObject.getString("record_type"));
+                        } catch (JSONException e) {
+                            fail("Invalid body format");
+                        }
+
+                        BasicHttpResponse response = new BasicHttpResponse(
+                                new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK")
+                        );
+
+                        try {
+                            response.setEntity(new StringEntity(
+                                    "{\"result\": [" +
+                                    "{\"_id\": \"Note/note1\", \"hello\": \"world\"}," +
+                                    "{\"_id\": \"Note/note2\", \"hello\": \"world2\"}" +
+                                    "], \"info\": {\"count\": 2}}"
+                            ));
+                        } catch (UnsupportedEncodingException e) {
+                            e.printStackTrace();
+                        }
+
+                        return response;
+                    }
+                })
+        );
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean[] checkpoints = { false };
+
+        RecordQueryRequest request = new RecordQueryRequest(
+                new Query("Note"),
+                container.getPublicDatabase()
+        );
+        request.setResponseHandler(new RecordQueryResponseHandler() {
+            @Override
+            public void onQuerySuccess(Record[] records, QueryInfo queryInfo) {
+                assertEquals(2, records.length);
+                assertEquals("note1", records[0].getId());
+                assertEquals("world2", records[1].get("hello"));
+                assertEquals(Integer.valueOf(2), queryInfo.getOverallCount());
+
+                checkpoints[0] = true;
+                latch.countDown();
+            }
+
+            @Override
+            public void onQueryError(Error error) {
+                fail("Should not get error callback");
+            }
+        });
+
+        requestManager.sendRequest(request);
+
+        latch.await(1, TimeUnit.SECONDS);
+        assertTrue(checkpoints[0]);
+    }
+
+    @Test
+    public void testSendRecordQueryRequestInStreamingModeWithMalformedResponse() throws Exception {
+        Configuration config = new Configuration.Builder()
+                .endPoint("http://my-endpoint.skygeario.com/")
+                .apiKey("my-api-key")
+                .pubsubConnectAutomatically(false)
+                .streamingQueryDecoding(true)
+                .build();
+        Container container = new Container(RequestManagerUnitTest.instrumentationContext, config);
+        RequestManager requestManager = new RequestManager(
+                RequestManagerUnitTest.instrumentationContext,
+                config
+        );
+        requestManager.queue = Volley.newRequestQueue(
+                RequestManagerUnitTest.instrumentationContext,
+                new MockHttpStack()
+        );
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean[] checkpoints = { false };
+
+        RecordQueryRequest request = new RecordQueryRequest(
+                new Query("Note"),
+                container.getPublicDatabase()
+        );
+        request.setResponseHandler(new RecordQueryResponseHandler() {
+            @Override
+            public void onQuerySuccess(Record[] records, QueryInfo queryInfo) {
+                fail("Should not get success callback");
+            }
+
+            @Override
+            public void onQueryError(Error error) {
+                assertEquals("Malformed server response", error.getDetailMessage());
+
+                checkpoints[0] = true;
+                latch.countDown();
+            }
+        });
+
+        requestManager.sendRequest(request);
+
+        latch.await(1, TimeUnit.SECONDS);
+        assertTrue(checkpoints[0]);
+    }
+
+    private int sendIdenticalLambdaRequests(boolean idempotent, final int[] handledCount)
+            throws Exception
+    {
+        RequestManager requestManager = new RequestManager(
+                RequestManagerUnitTest.instrumentationContext,
+                Configuration.testConfiguration()
+        );
+
+        final AtomicInteger httpRequestCount = new AtomicInteger();
+        requestManager.queue = Volley.newRequestQueue(
+                RequestManagerUnitTest.instrumentationContext,
+                new MockHttpStack(new MockHttpStack.MockResponder() {
+                    @Override
+                    public HttpResponse getResponse(
+                            com.android.volley.Request request,
+                            Map<String, String> header
+                    ) throws AuthFailureError {
+                        httpRequestCount.incrementAndGet();
+
+                        BasicHttpResponse response = new BasicHttpResponse(
+                                new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK")
+                        );
+
+                        try {
+                            response.setEntity(
+                                    new StringEntity("{\"result\": {\"status\": \"OK\"}}")
+                            );
+                        } catch (UnsupportedEncodingException e) {
+                            e.printStackTrace();
+                        }
+
+                        return response;
+                    }
+                })
+        );
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        for (int idx = 0; idx < 2; idx++) {
+            LambdaRequest request = new LambdaRequest("hello:world", new Object[]{ "abc", 123 });
+            request.setIdempotent(idempotent);
+            request.setResponseHandler(new LambdaResponseHandler() {
+                @Override
+                public void onLambdaSuccess(JSONObject result) {
+                    assertEquals("OK", result.optString("status"));
+
+                    handledCount[0]++;
+                    latch.countDown();
+                }
+
+                @Override
+                public void onLambdaFail(Error error) {
+                    fail("Should not get error callback");
+                }
+            });
+
+            requestManager.sendRequest(request);
+        }
+
+        latch.await(1, TimeUnit.SECONDS);
+        assertEquals(idempotent ? 1 : 0, requestManager.getCoalescedRequestCount());
+
+        return httpRequestCount.get();
+    }
+
+    @Test
+    public void testSendIdenticalIdempotentRequests() throws Exception {
+        int[] handledCount = { 0 };
+        int httpRequestCount = this.sendIdenticalLambdaRequests(true, handledCount);
+
+        assertEquals(1, httpRequestCount);
+        assertEquals(2, handledCount[0]);
+    }
+
+    @Test
+    public void testSendIdenticalNonIdempotentRequests() throws Exception {
+        int[] handledCount = { 0 };
+        int httpRequestCount = this.sendIdenticalLambdaRequests(false, handledCount);
+
+        assertEquals(2, httpRequestCount);
+        assertEquals(2, handledCount[0]);
+    }
+
+    @Test
+    public void testSendIdenticalQueriesWithDifferentDecodingModes() throws Exception {
+        Container container = new Container(
+                RequestManagerUnitTest.instrumentationContext,
+                Configuration.testConfiguration()
+        );
+        RequestManager requestManager = new RequestManager(
+                RequestManagerUnitTest.instrumentationContext,
+                Configuration.testConfiguration()
+        );
+
+        final AtomicInteger httpRequestCount = new AtomicInteger();
+        requestManager.queue = Volley.newRequestQueue(
+                RequestManagerUnitTest.instrumentationContext,
+                new MockHttpStack(new MockHttpStack.MockResponder() {
+                    @Override
+                    public HttpResponse getResponse(
+                            com.android.volley.Request request,
+                            Map<String, String> header
+                    ) throws AuthFailureError {
+                        httpRequestCount.incrementAndGet();
+
+                        BasicHttpResponse response = new BasicHttpResponse(
+                                new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, "OK")
+                        );
+
+                        try {
+                            response.setEntity(new StringEntity("{\"result\": []}"));
+                        } catch (UnsupportedEncodingException e) {
+                            e.printStackTrace();
+                        }
+
+                        return response;
+                    }
+                })
+        );
+
+        final CountDownLatch latch = new CountDownLatch(2);
+        for (int idx = 0; idx < 2; idx++) {
+            RecordQueryRequest request = new RecordQueryRequest(
+                    new Query("Note"),
+                    container.getPublicDatabase()
+            );
+            request.setLazyDecoding(idx == 0);
+            request.setResponseHandler(new RecordQueryResponseHandler() {
+                @Override
+                public void onQuerySuccess(Record[] records, QueryInfo queryInfo) {
+                    latch.countDown();
+                }
+
+                @Override
+                public void onQueryError(Error error) {
+                    fail("Should not get error callback");
+                }
+            });
+
+            requestManager.sendRequest(request);
+        }
+
+        latch.await(1, TimeUnit.SECONDS);
+        assertEquals(0, requestManager.getCoalescedRequestCount());
+        assertEquals(2, httpRequestCount.get());
+    }
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class RetryingAssetUploaderUnitTest {
+    private static final String REUSE_KEY = "video-1";
+
+    /**
+     * A minimal storage accepting presigned post requests.
+     */
+    private static class MockStorage extends Dispatcher {
+        final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+        volatile int failureCount;
+        volatile int failureStatusCode = 500;
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            this.bodies.add(request.getBody().readUtf8());
+
+            if (this.failureCount > 0) {
+                this.failureCount--;
+                return new MockResponse().setResponseCode(this.failureStatusCode).setBody(
+                        "<Error><Code>InternalError</Code><Message>Failed</Message></Error>"
+                );
+            }
+
+            return new MockResponse().setResponseCode(201).setBody(
+                    "<PostResponse><Key>assets/hello.bin</Key></PostResponse>"
+            );
+        }
+    }
+
+    private MockWebServer server;
+    private MockStorage storage;
+    private RetryingAssetUploader uploader;
+    private Transport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        this.storage = new MockStorage();
+        this.server = new MockWebServer();
+        this.server.setDispatcher(this.storage);
+        this.server.start();
+        this.uploader = new RetryingAssetUploader(new AssetUploadStateStore(null));
+        this.transport = new OkHttpTransport();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.shutdown();
+    }
+
+    private static Asset createAsset(String data) throws Exception {
+        return new Asset.Builder("hello.bin")
+                .setMimeType("application/octet-stream")
+                .setData(data.getBytes("utf-8"))
+                .build();
+    }
+
+    private AssetPostRequest createRequest(Asset asset) {
+        Map<String, String> extraFields = new HashMap<>();
+        extraFields.put("key", "assets/hello.bin");
+
+        AssetPostRequest request = new AssetPostRequest(
+                asset,
+                this.server.url("/bucket/").toString(),
+                extraFields
+        );
+        request.setReuseKey(REUSE_KEY);
+
+        return request;
+    }
+
+    private static class Result {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final List<Long> progress = Collections.synchronizedList(new ArrayList<Long>());
+        volatile long totalBytes;
+        volatile String response;
+        volatile Error error;
+    }
+
+    private Result upload(AssetPostRequest request) throws Exception {
+        final Result result = new Result();
+        request.setResponseHandler(new AssetPostRequest.ResponseHandler() {
+            @Override
+            public void onPostSuccess(Asset asset, String response) {
+                result.response = response;
+                result.latch.countDown();
+            }
+
+            @Override
+            public void onPostFail(Asset asset, Error error) {
+                result.error = error;
+                result.latch.countDown();
+            }
+
+            @Override
+            public void onPostProgress(Asset asset, long bytesSent, long totalBytes) {
+                result.progress.add(bytesSent);
+                result.totalBytes = totalBytes;
+            }
+        });
+
+        this.uploader.upload(
+                this.transport,
+                request.getAction(),
+                new HashMap<String, String>(),
+                RequestManager.DEFAULT_TIMEOUT,
+                request
+        );
+        assertTrue(result.latch.await(30, TimeUnit.SECONDS));
+
+        return result;
+    }
+
+    @Test
+    public void testUploadNormalFlow() throws Exception {
+        Result result = this.upload(this.createRequest(createAsset("hello world")));
+
+        assertNull(result.error);
+        assertTrue(result.response.contains("assets/hello.bin"));
+        assertEquals(1, this.storage.bodies.size());
+        assertTrue(this.storage.bodies.get(0).contains("hello world"));
+        assertEquals(
+                Long.valueOf(result.totalBytes),
+                result.progress.get(result.progress.size() - 1)
+        );
+    }
+
+    @Test
+    public void testUploadRetriesFromBeginning() throws Exception {
+        this.storage.failureCount = 1;
+        Result result = this.upload(this.createRequest(createAsset("hello world")));
+
+        assertNull(result.error);
+        assertEquals(2, this.storage.bodies.size());
+        assertTrue(this.storage.bodies.get(0).contains("hello world"));
+        assertTrue(this.storage.bodies.get(1).contains("hello world"));
+    }
+
+    @Test
+    public void testUploadRetriesFileFromBeginning() throws Exception {
+        File file = File.createTempFile("hello", ".bin");
+        file.deleteOnExit();
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write("hello world".getBytes("utf-8"));
+        } finally {
+            outputStream.close();
+        }
+
+        FileInputStream inputStream = new FileInputStream(file);
+        Asset asset = new Asset("hello.bin", "application/octet-stream", file.length(), inputStream);
+
+        this.storage.failureCount = 1;
+        Result result = this.upload(this.createRequest(asset));
+
+        assertNull(result.error);
+        assertEquals(2, this.storage.bodies.size());
+        assertTrue(this.storage.bodies.get(0).contains("hello world"));
+        assertTrue(this.storage.bodies.get(1).contains("hello world"));
+        assertFalse(inputStream.getChannel().isOpen());
+    }
+
+    @Test
+    public void testUploadDoesNotRetryUnreadableData() throws Exception {
+        Asset asset = new Asset(
+                "hello.bin",
+                "application/octet-stream",
+                11,
+                new FilterInputStream(new ByteArrayInputStream("hello world".getBytes("utf-8"))) {}
+        );
+
+        this.storage.failureCount = 1;
+        Result result = this.upload(this.createRequest(asset));
+
+        assertNotNull(result.error);
+        assertEquals(1, this.storage.bodies.size());
+    }
+
+    @Test
+    public void testUploadReusesSavedPostRequest() throws Exception {
+        AssetPostRequest request = this.createRequest(createAsset("hello world"));
+        request.getAsset().name = "prepared-hello.bin";
+        request.getAsset().url = "http://storage/bucket/assets/prepared-hello.bin";
+        this.uploader.savePostRequest(request);
+
+        this.storage.failureCount = 3;
+        Result failedResult = this.upload(request);
+        assertNotNull(failedResult.error);
+        assertEquals(3, this.storage.bodies.size());
+
+        // upload again with a new asset, as after an app restart
+        Asset asset = createAsset("hello world");
+        AssetPostRequest savedRequest = this.uploader.restorePostRequest(asset, REUSE_KEY);
+        assertNotNull(savedRequest);
+        assertEquals(request.getAction(), savedRequest.getAction());
+        assertEquals("assets/hello.bin", savedRequest.getExtraFields().get("key"));
+        assertEquals("prepared-hello.bin", asset.getName());
+        assertEquals("http://storage/bucket/assets/prepared-hello.bin", asset.getUrl());
+
+        Result result = this.upload(savedRequest);
+        assertNull(result.error);
+        assertNull(this.uploader.restorePostRequest(createAsset("hello world"), REUSE_KEY));
+    }
+
+    @Test
+    public void testUploadDiscardsPostRequestOfChangedAsset() throws Exception {
+        this.uploader.savePostRequest(this.createRequest(createAsset("hello world")));
+
+        assertNull(this.uploader.restorePostRequest(createAsset("hello world!"), REUSE_KEY));
+        assertNull(this.uploader.restorePostRequest(createAsset("hello world"), REUSE_KEY));
+    }
+
+    @Test
+    public void testUploadDiscardsRejectedPostRequest() throws Exception {
+        AssetPostRequest request = this.createRequest(createAsset("hello world"));
+        this.uploader.savePostRequest(request);
+
+        this.storage.failureCount = 1;
+        this.storage.failureStatusCode = 403;
+        Result result = this.upload(request);
+
+        assertNotNull(result.error);
+        assertEquals(1, this.storage.bodies.size());
+        assertNull(this.uploader.restorePostRequest(createAsset("hello world"), REUSE_KEY));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.volley.Header;
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.HttpResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class StreamingHttpStackUnitTest {
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = new MockWebServer();
+        this.server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.shutdown();
+    }
+
+    @Test
+    public void testExecuteMultiPartRequest() throws Exception {
+        this.server.enqueue(new MockResponse()
+                .setResponseCode(201)
+                .setHeader("ETag", "\"abc\"")
+                .setBody("<PostResponse><Key>assets/hello.txt</Key></PostResponse>"));
+
+        Map<String, String> fields = new HashMap<>();
+        fields.put("key", "assets/hello.txt");
+        MultiPartBody body = new MultiPartBody(
+                fields,
+                "file",
+                new Asset("hello.txt", "text/plain", "Hello World".getBytes("utf-8"))
+        );
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("X-Skygear-API-Key", "my-api-key");
+
+        VolleyTransport.StreamingMultiPartRequest request
+                = new VolleyTransport.StreamingMultiPartRequest(
+                        this.server.url("/upload").toString(),
+                        headers,
+                        body,
+                        RequestManager.DEFAULT_TIMEOUT,
+                        new Response.Listener<String>() {
+                            @Override
+                            public void onResponse(String response) {
+                                // Do nothing. The stack is called directly.
+                            }
+                        },
+                        new Response.ErrorListener() {
+                            @Override
+                            public void onErrorResponse(VolleyError error) {
+                                // Do nothing. The stack is called directly.
+                            }
+                        }
+                );
+
+        HttpResponse response = new StreamingHttpStack().executeRequest(
+                request,
+                new HashMap<String, String>()
+        );
+
+        assertEquals(201, response.getStatusCode());
+        boolean hasETag = false;
+        for (Header perHeader : response.getHeaders()) {
+            if (perHeader.getName().equalsIgnoreCase("ETag")) {
+                hasETag = "\"abc\"".equals(perHeader.getValue());
+            }
+        }
+        assertTrue(hasETag);
+
+        Scanner scanner = new Scanner(response.getContent(), "utf-8").useDelimiter("\\A");
+        assertTrue(scanner.next().contains("assets/hello.txt"));
+
+        RecordedRequest recordedRequest = this.server.takeRequest();
+        assertEquals("my-api-key", recordedRequest.getHeader("X-Skygear-API-Key"));
+        assertEquals(String.valueOf(body.getContentLength()), recordedRequest.getHeader("Content-Length"));
+        assertTrue(recordedRequest.getHeader("Content-Type").startsWith("multipart/form-data"));
+        assertTrue(recordedRequest.getBody().readUtf8().contains("Hello World"));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.android.volley.Response;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.Volley;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares the throughput of the Volley transport with the OkHttp transport
+ * at different numbers of concurrent requests.
+ *
+ * The OkHttp transport is measured over both HTTP/1.1 and HTTP/2 (prior knowledge,
+ * as the mock server does not serve TLS). Each response is delayed to simulate
+ * network latency.
+ *
+ * Results are written to logcat with tag "Skygear Benchmark".
+ */
+@Benchmark
+@RunWith(AndroidJUnit4.class)
+public class TransportBenchmark {
+    private static final String TAG = "Skygear Benchmark";
+    private static final int REQUEST_COUNT = 256;
+    private static final int RESPONSE_DELAY_MILLIS = 20;
+    private static final String RESPONSE_BODY = "{\"result\": [{\"_id\": \"Note/1\", \"title\": \"Hello\"}]}";
+
+    private static final Transport.ResponseParser<Integer> LengthParser
+            = new Transport.ResponseParser<Integer>() {
+        @Override
+        public Integer parse(InputStream body, String charset) throws IOException {
+            int length = 0;
+            byte[] buffer = new byte[1024];
+            for (int count; (count = body.read(buffer)) != -1; ) {
+                length += count;
+            }
+
+            return length;
+        }
+    };
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = new MockWebServer();
+        this.server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse()
+                        .setHeader("Content-Type", "application/json")
+                        .setBody(RESPONSE_BODY)
+                        .setBodyDelay(RESPONSE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.shutdown();
+    }
+
+    private double measure(Transport transport, int concurrency) throws Exception {
+        final String url = this.server.url("/record/query").toString();
+        final Map<String, String> headers = new HashMap<>();
+        final byte[] body = "{\"action\":\"record:query\"}".getBytes("utf-8");
+        final AtomicInteger errorCount = new AtomicInteger();
+
+        long start = System.nanoTime();
+        for (int sent = 0; sent < REQUEST_COUNT; sent += concurrency) {
+            int batchSize = Math.min(concurrency, REQUEST_COUNT - sent);
+            final CountDownLatch latch = new CountDownLatch(batchSize);
+
+            for (int idx = 0; idx < batchSize; idx++) {
+                transport.sendRequest(
+                        url,
+                        headers,
+                        body,
+                        RequestManager.DEFAULT_TIMEOUT,
+                        LengthParser,
+                        new Response.Listener<Integer>() {
+                            @Override
+                            public void onResponse(Integer response) {
+                                latch.countDown();
+                            }
+                        },
+                        new Response.ErrorListener() {
+                            @Override
+                            public void onErrorResponse(VolleyError error) {
+                                errorCount.incrementAndGet();
+                                latch.countDown();
+                            }
+                        }
+                );
+            }
+
+            assertTrue(latch.await(60, TimeUnit.SECONDS));
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        assertEquals(0, errorCount.get());
+        return REQUEST_COUNT / (elapsedNanos / 1e9);
+    }
+
+    private void runBenchmark(int concurrency) throws Exception {
+        this.server.setProtocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE));
+        this.server.start();
+
+        Transport volleyTransport = new VolleyTransport(
+                Volley.newRequestQueue(InstrumentationRegistry.getContext())
+        );
+        Transport http1Transport = new OkHttpTransport(new OkHttpClient.Builder()
+                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                .build());
+        Transport http2Transport = new OkHttpTransport(new OkHttpClient.Builder()
+                .protocols(Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE))
+                .build());
+
+        // warm up connections before measuring
+        this.measure(http2Transport, concurrency);
+        double http2Throughput = this.measure(http2Transport, concurrency);
+
+        // restart the server over HTTP/1.1 for the other transports
+        this.server.shutdown();
+        this.setUp();
+        this.server.start();
+
+        this.measure(volleyTransport, concurrency);
+        double volleyThroughput = this.measure(volleyTransport, concurrency);
+
+        this.measure(http1Transport, concurrency);
+        double http1Throughput = this.measure(http1Transport, concurrency);
+
+        Log.i(TAG, String.format(
+                "Transport throughput, %d concurrent requests: " +
+                        "volley %.1f req/s, okhttp http/1.1 %.1f req/s, okhttp h2 %.1f req/s",
+                concurrency,
+                volleyThroughput,
+                http1Throughput,
+                http2Throughput
+        ));
+    }
+
+    @Test
+    public void benchmark1ConcurrentRequest() throws Exception {
+        this.runBenchmark(1);
+    }
+
+    @Test
+    public void benchmark8ConcurrentRequests() throws Exception {
+        this.runBenchmark(8);
+    }
+
+    @Test
+    public void benchmark64ConcurrentRequests() throws Exception {
+        this.runBenchmark(64);
+    }
+}
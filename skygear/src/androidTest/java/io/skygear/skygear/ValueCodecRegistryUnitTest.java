@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.security.InvalidParameterException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ValueCodecRegistryUnitTest {
+    static class Money {
+        final String currency;
+        final long cents;
+
+        Money(String currency, long cents) {
+            this.currency = currency;
+            this.cents = cents;
+        }
+    }
+
+    static class MoneyCodec implements ValueCodec<Money> {
+        @Override
+        public String getType() {
+            return "money";
+        }
+
+        @Override
+        public Class<Money> getValueClass() {
+            return Money.class;
+        }
+
+        @Override
+        public JSONObject serialize(Money value) throws JSONException {
+            return new JSONObject()
+                    .put("$type", "money")
+                    .put("currency", value.currency)
+                    .put("cents", value.cents);
+        }
+
+        @Override
+        public Money deserialize(JSONObject jsonObject) throws JSONException {
+            if (!jsonObject.has("currency")) {
+                return null;
+            }
+
+            return new Money(jsonObject.getString("currency"), jsonObject.getLong("cents"));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ValueCodecRegistry.unregister("money");
+    }
+
+    @Test
+    public void testDeserializeBuiltInTypes() throws Exception {
+        Object date = ValueCodecRegistry.deserialize(new JSONObject()
+                .put("$type", "date")
+                .put("$date", "2016-06-15T07:55:34.342Z"));
+        assertTrue(date instanceof Date);
+
+        Object reference = ValueCodecRegistry.deserialize(new JSONObject()
+                .put("$type", "ref")
+                .put("$recordType", "Note")
+                .put("$recordID", "note1"));
+        assertEquals("note1", ((Reference) reference).getId());
+    }
+
+    @Test
+    public void testDeserializeKeepsMalformedAndUntypedObjects() throws Exception {
+        JSONObject malformedDate = new JSONObject().put("$type", "date");
+        JSONObject unknownType = new JSONObject().put("$type", "money").put("currency", "HKD");
+        JSONObject untyped = new JSONObject().put("hello", "world");
+        JSONObject nonStringType = new JSONObject().put("$type", 1);
+
+        assertTrue(malformedDate == ValueCodecRegistry.deserialize(malformedDate));
+        assertTrue(unknownType == ValueCodecRegistry.deserialize(unknownType));
+        assertTrue(untyped == ValueCodecRegistry.deserialize(untyped));
+        assertTrue(nonStringType == ValueCodecRegistry.deserialize(nonStringType));
+    }
+
+    @Test
+    public void testCustomCodecRoundTrip() throws Exception {
+        assertFalse(RecordSerializer.isCompatibleValue(new Money("HKD", 100)));
+        ValueCodecRegistry.register(new MoneyCodec());
+        assertTrue(RecordSerializer.isCompatibleValue(new Money("HKD", 100)));
+
+        Record note = new Record("Note", "note1");
+        note.set("price", new Money("HKD", 1250));
+
+        JSONObject noteJson = RecordSerializer.serialize(note);
+        assertEquals("money", noteJson.getJSONObject("price").getString("$type"));
+        assertEquals(1250, noteJson.getJSONObject("price").getLong("cents"));
+
+        Record decoded = RecordSerializer.deserialize(noteJson);
+        Money price = (Money) decoded.get("price");
+        assertEquals("HKD", price.currency);
+        assertEquals(1250, price.cents);
+
+        JSONObject body = new JSONObject(RequestBodyWriter.write(
+                Collections.<String, Object>singletonMap("records", Collections.singletonList(note))
+        ));
+        assertEquals(
+                1250,
+                body.getJSONArray("records")
+                        .getJSONObject(0)
+                        .getJSONObject("price")
+                        .getLong("cents")
+        );
+    }
+
+    @Test
+    public void testRequestBodyWriterUsesCodecRegisteredLater() throws Exception {
+        Map<String, Object> data = Collections.<String, Object>singletonMap(
+                "price",
+                new Money("HKD", 1250)
+        );
+
+        // written as its string representation without a codec
+        assertFalse(new JSONObject(RequestBodyWriter.write(data)).get("price") instanceof JSONObject);
+
+        ValueCodecRegistry.register(new MoneyCodec());
+        assertEquals(
+                1250,
+                new JSONObject(RequestBodyWriter.write(data)).getJSONObject("price").getLong("cents")
+        );
+    }
+
+    @Test
+    public void testUnregisterCustomCodec() throws Exception {
+        ValueCodecRegistry.register(new MoneyCodec());
+        ValueCodecRegistry.unregister("money");
+
+        assertNull(ValueCodecRegistry.forClass(Money.class));
+        assertFalse(RecordSerializer.isCompatibleValue(new Money("HKD", 100)));
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testCannotReplaceBuiltInType() throws Exception {
+        ValueCodecRegistry.register(new ValueCodec<Money>() {
+            @Override
+            public String getType() {
+                return "date";
+            }
+
+            @Override
+            public Class<Money> getValueClass() {
+                return Money.class;
+            }
+
+            @Override
+            public JSONObject serialize(Money value) throws JSONException {
+                return null;
+            }
+
+            @Override
+            public Money deserialize(JSONObject jsonObject) throws JSONException {
+                return null;
+            }
+        });
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testCannotReplaceBuiltInClass() throws Exception {
+        ValueCodecRegistry.register(new ValueCodec<String>() {
+            @Override
+            public String getType() {
+                return "text";
+            }
+
+            @Override
+            public Class<String> getValueClass() {
+                return String.class;
+            }
+
+            @Override
+            public JSONObject serialize(String value) throws JSONException {
+                return null;
+            }
+
+            @Override
+            public String deserialize(JSONObject jsonObject) throws JSONException {
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Iterator;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Compares decoding record attribute values by trying every value format in turn
+ * with decoding through the value codec registry, for records with many attributes.
+ *
+ * Results are written to logcat with tag "Skygear Benchmark".
+ */
+@Benchmark
+@RunWith(AndroidJUnit4.class)
+public class ValueDecodingBenchmark {
+    private static final String TAG = "Skygear Benchmark";
+    private static final int WARM_UP_ITERATIONS = 3;
+    private static final int ITERATIONS = 10;
+
+    private static JSONObject buildRecordJson(int fieldCount) throws Exception {
+        JSONObject recordJson = new JSONObject();
+        recordJson.put("_id", "Note/note1");
+
+        for (int idx = 0; idx < fieldCount; idx++) {
+            String key = "field" + idx;
+            switch (idx % 10) {
+                case 0:
+                    recordJson.put(key, new JSONObject()
+                            .put("$type", "date")
+                            .put("$date", "2016-06-15T07:55:34.342Z"));
+                    break;
+                case 1:
+                    recordJson.put(key, new JSONObject()
+                            .put("$type", "ref")
+                            .put("$recordType", "User")
+                            .put("$recordID", "user" + idx));
+                    break;
+                case 2:
+                case 3:
+                    recordJson.put(key, new JSONObject().put("nested", idx));
+                    break;
+                case 4:
+                case 5:
+                    recordJson.put(key, idx);
+                    break;
+                default:
+                    recordJson.put(key, "value " + idx);
+                    break;
+            }
+        }
+
+        return recordJson;
+    }
+
+    /**
+     * Decodes attribute values as the serializer did before the codec registry.
+     */
+    private static int decodeWithFormatChecks(JSONObject recordJson) throws JSONException {
+        int decodedCount = 0;
+        Iterator<String> keys = recordJson.keys();
+        while (keys.hasNext()) {
+            Object value = recordJson.get(keys.next());
+
+            if (DateSerializer.isDateFormat(value)) {
+                value = DateSerializer.deserialize((JSONObject) value);
+            } else if (AssetSerializer.isAssetFormat(value)) {
+                value = AssetSerializer.deserialize((JSONObject) value);
+            } else if (LocationSerializer.isLocationFormat(value)) {
+                value = LocationSerializer.deserialize((JSONObject) value);
+            } else if (ReferenceSerializer.isReferenceFormat(value)) {
+                value = ReferenceSerializer.deserialize((JSONObject) value);
+            } else if (UnknownValueSerializer.isUnknownValueFormat(value)) {
+                value = UnknownValueSerializer.deserialize((JSONObject) value);
+            }
+
+            if (value != null) {
+                decodedCount++;
+            }
+        }
+
+        return decodedCount;
+    }
+
+    private static int decodeWithRegistry(JSONObject recordJson) throws JSONException {
+        int decodedCount = 0;
+        Iterator<String> keys = recordJson.keys();
+        while (keys.hasNext()) {
+            Object value = recordJson.get(keys.next());
+
+            if (value instanceof JSONObject) {
+                value = ValueCodecRegistry.deserialize((JSONObject) value);
+            }
+
+            if (value != null) {
+                decodedCount++;
+            }
+        }
+
+        return decodedCount;
+    }
+
+    private void runBenchmark(int fieldCount) throws Exception {
+        JSONObject recordJson = buildRecordJson(fieldCount);
+
+        for (int idx = 0; idx < WARM_UP_ITERATIONS; idx++) {
+            assertEquals(decodeWithFormatChecks(recordJson), decodeWithRegistry(recordJson));
+        }
+
+        long checksStart = System.nanoTime();
+        for (int idx = 0; idx < ITERATIONS; idx++) {
+            decodeWithFormatChecks(recordJson);
+        }
+        long checksNanos = (System.nanoTime() - checksStart) / ITERATIONS;
+
+        long registryStart = System.nanoTime();
+        for (int idx = 0; idx < ITERATIONS; idx++) {
+            decodeWithRegistry(recordJson);
+        }
+        long registryNanos = (System.nanoTime() - registryStart) / ITERATIONS;
+
+        long recordStart = System.nanoTime();
+        for (int idx = 0; idx < ITERATIONS; idx++) {
+            RecordSerializer.deserialize(recordJson);
+        }
+        long recordNanos = (System.nanoTime() - recordStart) / ITERATIONS;
+
+        long lazyRecordStart = System.nanoTime();
+        for (int idx = 0; idx < ITERATIONS; idx++) {
+            Record record = RecordSerializer.deserialize(recordJson, true);
+            record.get("field0");
+            record.get("field1");
+            record.get("field6");
+        }
+        long lazyRecordNanos = (System.nanoTime() - lazyRecordStart) / ITERATIONS;
+
+        Log.i(TAG, String.format(
+                "Value decoding, %d fields: format checks %.2f ms, registry %.2f ms, " +
+                        "whole record %.2f ms, whole record reading 3 fields lazily %.2f ms",
+                fieldCount,
+                checksNanos / 1e6,
+                registryNanos / 1e6,
+                recordNanos / 1e6,
+                lazyRecordNanos / 1e6
+        ));
+    }
+
+    @Test
+    public void benchmark1000Fields() throws Exception {
+        this.runBenchmark(1000);
+    }
+
+    @Test
+    public void benchmark10000Fields() throws Exception {
+        this.runBenchmark(10000);
+    }
+}
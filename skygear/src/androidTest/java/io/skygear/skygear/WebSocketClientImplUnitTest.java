@@ -20,8 +20,6 @@ package io.skygear.skygear;
 import android.support.test.runner.AndroidJUnit4;
 
 import org.java_websocket.handshake.ServerHandshake;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -73,7 +71,7 @@ public class WebSocketClientImplUnitTest {
         }
 
         @Override
-        public void onMessage(JSONObject eventData) {
+        public void onMessage(String message) {
             throw new UnsupportedOperationException("Not yet implemented");
         }
 
@@ -125,15 +123,8 @@ public class WebSocketClientImplUnitTest {
         final boolean[] checkpoints = new boolean[]{ false };
         WebSocketClientImpl.EventHandler eventHandler = new WebSocketEventHandlerEmptyImpl() {
             @Override
-            public void onMessage(JSONObject eventData) {
-                try {
-                    assertEquals("world", eventData.getString("hello"));
-                    assertEquals(123, eventData.getInt("foobar"));
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                    return;
-                }
-
+            public void onMessage(String message) {
+                assertEquals("{\"hello\": \"world\", \"foobar\": 123}", message);
                 checkpoints[0] = true;
             }
         };
@@ -267,8 +267,10 @@ public class Asset {
             InputStream inputStream;
             long size;
             try {
-                inputStream = contentResolver.openInputStream(uri);
+                // stream from the descriptor itself, so that uploads can transfer
+                // the data through its file channel
                 ParcelFileDescriptor fd = contentResolver.openFileDescriptor(this.uri, "r");
+                inputStream = new ParcelFileDescriptor.AutoCloseInputStream(fd);
                 size = fd.getStatSize();
             } catch (FileNotFoundException e) {
                 e.printStackTrace();
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The Skygear asset content digest.
+ * <p>
+ * The digest is computed by streaming the asset input stream, which is then
+ * rewound so that the asset can still be uploaded. Only assets of files and
+ * in-memory data have a digest, since other streams would have to be buffered
+ * as a whole to be read again.
+ * </p>
+ */
+class AssetDigest {
+    private static final String TAG = "Skygear SDK";
+    private static final String ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private AssetDigest() {
+    }
+
+    /**
+     * Computes the SHA-256 digest of the asset content.
+     *
+     * @param asset the asset
+     * @return the digest in hex, null if the asset is not backed by a file or in-memory data
+     */
+    static String compute(Asset asset) {
+        InputStream inputStream = asset.inputStream;
+        if (inputStream == null) {
+            return null;
+        }
+
+        try {
+            if (inputStream instanceof FileInputStream) {
+                FileChannel channel = ((FileInputStream) inputStream).getChannel();
+                long position = channel.position();
+                try {
+                    return AssetDigest.digest(inputStream);
+                } finally {
+                    channel.position(position);
+                }
+            }
+
+            if (inputStream instanceof ByteArrayInputStream) {
+                // the data is in memory already, marking buffers nothing
+                inputStream.mark(0);
+                try {
+                    return AssetDigest.digest(inputStream);
+                } finally {
+                    inputStream.reset();
+                }
+            }
+        } catch (IOException e) {
+            // e.g. a file descriptor of a pipe, of which the position cannot be restored
+            Log.w(TAG, "Fail to compute asset digest", e);
+        }
+
+        return null;
+    }
+
+    private static String digest(InputStream inputStream) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int length; (length = inputStream.read(buffer)) != -1; ) {
+            digest.update(buffer, 0, length);
+        }
+
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int idx = 0; idx < bytes.length; idx++) {
+            hex[idx * 2] = HEX_DIGITS[(bytes[idx] >> 4) & 0x0f];
+            hex[idx * 2 + 1] = HEX_DIGITS[bytes[idx] & 0x0f];
+        }
+
+        return new String(hex);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.content.Context;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Skygear asset digest index.
+ * <p>
+ * This class maps the content digest of uploaded assets to their names and
+ * urls, so that the same content is not uploaded twice to the same endpoint.
+ * The index is kept in shared preferences. When the index is full, the least
+ * recently used entry is evicted. The index is cleared when the current user
+ * changes, so that assets uploaded by a user are not reused by another.
+ * </p>
+ */
+class AssetDigestIndex {
+    static final String SKYGEAR_DIGEST_PREF_SPACE = "SkygearAssetDigestSharedPreferences";
+
+    /**
+     * The default maximum number of entries.
+     */
+    static final int DEFAULT_CAPACITY = 500;
+
+    private static final String NameKey = "$name";
+    private static final String UrlKey = "$url";
+    private static final String UsedAtKey = "$used_at";
+
+    private final AssetUploadStateStore store;
+    private final int capacity;
+
+    /**
+     * The last used time of the entries, from the least recently used.
+     * It is loaded from the store on first use.
+     */
+    private LinkedHashMap<String, Long> usedAt;
+    private long clock;
+
+    /**
+     * Instantiates a new asset digest index.
+     *
+     * @param context the context, null to keep the index in memory only
+     */
+    AssetDigestIndex(Context context) {
+        this(new AssetUploadStateStore(context, SKYGEAR_DIGEST_PREF_SPACE), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Instantiates a new asset digest index.
+     *
+     * @param store    the store
+     * @param capacity the maximum number of entries
+     */
+    AssetDigestIndex(AssetUploadStateStore store, int capacity) {
+        super();
+
+        this.store = store;
+        this.capacity = capacity;
+    }
+
+    private static String getKey(String endpoint, String digest) {
+        return endpoint + "#" + digest;
+    }
+
+    private LinkedHashMap<String, Long> getUsedAt() {
+        if (this.usedAt != null) {
+            return this.usedAt;
+        }
+
+        List<Map.Entry<String, JSONObject>> entries = new ArrayList<>(this.store.loadAll().entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, JSONObject>>() {
+            @Override
+            public int compare(Map.Entry<String, JSONObject> lhs, Map.Entry<String, JSONObject> rhs) {
+                long lhsUsedAt = lhs.getValue().optLong(UsedAtKey);
+                long rhsUsedAt = rhs.getValue().optLong(UsedAtKey);
+                return lhsUsedAt < rhsUsedAt ? -1 : (lhsUsedAt == rhsUsedAt ? 0 : 1);
+            }
+        });
+
+        this.usedAt = new LinkedHashMap<>(16, 0.75f, true);
+        for (Map.Entry<String, JSONObject> perEntry : entries) {
+            long entryUsedAt = perEntry.getValue().optLong(UsedAtKey);
+            this.usedAt.put(perEntry.getKey(), entryUsedAt);
+            this.clock = Math.max(this.clock, entryUsedAt);
+        }
+
+        return this.usedAt;
+    }
+
+    /**
+     * Loads the index from the store, if it is not loaded yet.
+     */
+    synchronized void load() {
+        this.getUsedAt();
+    }
+
+    /**
+     * Restores the name and url of an uploaded asset with the same digest.
+     *
+     * @param endpoint the endpoint
+     * @param digest   the content digest
+     * @param asset    the asset to be updated
+     * @return the boolean indicating whether an uploaded asset is found
+     */
+    synchronized boolean restore(String endpoint, String digest, Asset asset) {
+        String key = AssetDigestIndex.getKey(endpoint, digest);
+        if (!this.getUsedAt().containsKey(key)) {
+            return false;
+        }
+
+        JSONObject entry = this.store.load(key);
+        if (entry == null) {
+            this.usedAt.remove(key);
+            return false;
+        }
+
+        try {
+            String name = entry.getString(NameKey);
+            String url = entry.getString(UrlKey);
+            asset.name = name;
+            asset.url = url;
+
+            this.clock++;
+            this.usedAt.put(key, this.clock);
+            this.store.save(key, entry.put(UsedAtKey, this.clock));
+
+            return true;
+        } catch (JSONException e) {
+            this.usedAt.remove(key);
+            this.store.remove(key);
+            return false;
+        }
+    }
+
+    /**
+     * Saves the name and url of an uploaded asset.
+     *
+     * @param endpoint the endpoint
+     * @param digest   the content digest
+     * @param asset    the uploaded asset
+     */
+    synchronized void save(String endpoint, String digest, Asset asset) {
+        String key = AssetDigestIndex.getKey(endpoint, digest);
+        LinkedHashMap<String, Long> entriesUsedAt = this.getUsedAt();
+
+        try {
+            this.clock++;
+            JSONObject entry = new JSONObject()
+                    .put(NameKey, asset.getName())
+                    .put(UrlKey, asset.getUrl())
+                    .put(UsedAtKey, this.clock);
+
+            this.store.save(key, entry);
+            entriesUsedAt.put(key, this.clock);
+        } catch (JSONException e) {
+            // Do nothing. The asset will be uploaded again next time.
+            return;
+        }
+
+        Iterator<String> keys = entriesUsedAt.keySet().iterator();
+        while (entriesUsedAt.size() > this.capacity && keys.hasNext()) {
+            String eldestKey = keys.next();
+            keys.remove();
+            this.store.remove(eldestKey);
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    synchronized void clear() {
+        this.store.clear();
+        this.usedAt = null;
+        this.clock = 0;
+    }
+}
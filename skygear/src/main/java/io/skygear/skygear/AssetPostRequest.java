@@ -27,6 +27,7 @@ import org.simpleframework.xml.Root;
 import org.simpleframework.xml.core.Persister;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.security.InvalidParameterException;
 import java.util.HashMap;
@@ -50,7 +51,14 @@ public class AssetPostRequest implements Response.Listener<String>, Response.Err
      */
     Map<String, String> extraFields;
 
+    /**
+     * The Reuse Key, null if the post request is not saved for reuse.
+     */
+    String reuseKey;
+
     private ResponseHandler responseHandler;
+    private Transport.Cancellable cancellable;
+    private volatile boolean cancelled;
 
     /**
      * Instantiates a new Skygear Asset Post Request.
@@ -98,6 +106,102 @@ public class AssetPostRequest implements Response.Listener<String>, Response.Err
         return extraFields;
     }
 
+    /**
+     * Gets the reuse key.
+     *
+     * @return the reuse key, null if the post request is not saved for reuse
+     */
+    public String getReuseKey() {
+        return reuseKey;
+    }
+
+    /**
+     * Sets the reuse key, under which the post request is saved until the
+     * upload succeeds.
+     * <p>
+     * An upload with a reuse key is retried on network errors and server
+     * errors. If it still fails, uploading an asset with the same reuse key
+     * again, even after the app restarts, reuses this post request instead of
+     * preparing a new one. The upload is not resumed: the asset data is sent
+     * from the beginning in every attempt.
+     * </p>
+     *
+     * @param reuseKey the key identifying the upload, null to not save the post request
+     */
+    public void setReuseKey(String reuseKey) {
+        if (reuseKey != null && reuseKey.length() == 0) {
+            throw new InvalidParameterException("Reuse key should not be empty");
+        }
+
+        this.reuseKey = reuseKey;
+    }
+
+    /**
+     * Cancels the request.
+     * <p>
+     * No callback would be called after the request is cancelled. A cancelled
+     * upload with a reuse key can be sent again by uploading with the same reuse key.
+     * </p>
+     */
+    public void cancel() {
+        Transport.Cancellable requestCancellable;
+        synchronized (this) {
+            this.cancelled = true;
+            requestCancellable = this.cancellable;
+        }
+
+        if (requestCancellable != null) {
+            requestCancellable.cancel();
+        }
+        this.closeAsset();
+    }
+
+    /**
+     * Closes the asset input stream.
+     * <p>
+     * The stream is kept open while the upload may be retried, and is closed
+     * once the upload is done.
+     * </p>
+     */
+    void closeAsset() {
+        InputStream inputStream = this.asset.inputStream;
+        if (inputStream == null) {
+            return;
+        }
+
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            // Do nothing. The upload is done anyway.
+        }
+    }
+
+    /**
+     * Checks whether the request is cancelled.
+     *
+     * @return the boolean indicating whether the request is cancelled
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Sets the handle for cancelling the sent request.
+     *
+     * @param cancellable the handle
+     */
+    void setCancellable(Transport.Cancellable cancellable) {
+        boolean alreadyCancelled;
+        synchronized (this) {
+            this.cancellable = cancellable;
+            alreadyCancelled = this.cancelled;
+        }
+
+        if (alreadyCancelled && cancellable != null) {
+            cancellable.cancel();
+        }
+    }
+
     /**
      * Set the Response Handler of the Request.
      *
@@ -170,21 +274,36 @@ public class AssetPostRequest implements Response.Listener<String>, Response.Err
      * @param exception the exception
      */
     public void onValidationError(Exception exception) {
+        this.closeAsset();
         if (this.responseHandler != null) {
             this.responseHandler.onPostFail(this.asset, new Error(exception.getMessage()));
         }
     }
 
+    /**
+     * Upload progress callback.
+     *
+     * @param bytesSent  the number of bytes sent
+     * @param totalBytes the total number of bytes
+     */
+    void onProgress(long bytesSent, long totalBytes) {
+        if (this.responseHandler != null && !this.cancelled) {
+            this.responseHandler.onPostProgress(this.asset, bytesSent, totalBytes);
+        }
+    }
+
     @Override
     public void onResponse(String response) {
-        if (this.responseHandler != null) {
+        this.closeAsset();
+        if (this.responseHandler != null && !this.cancelled) {
             this.responseHandler.onPostSuccess(this.asset, response);
         }
     }
 
     @Override
     public void onErrorResponse(VolleyError error) {
-        if (this.responseHandler != null) {
+        this.closeAsset();
+        if (this.responseHandler != null && !this.cancelled) {
             this.responseHandler.onPostFail(this.asset, this.parseResponseError(error));
         }
     }
@@ -228,6 +347,17 @@ public class AssetPostRequest implements Response.Listener<String>, Response.Err
 
             return null;
         }
+
+        /**
+         * Post progress callback.
+         *
+         * @param asset      the asset
+         * @param bytesSent  the number of bytes sent
+         * @param totalBytes the total number of bytes
+         */
+        public void onPostProgress(Asset asset, long bytesSent, long totalBytes) {
+            // Do nothing. Let subclasses to override it.
+        }
     }
 
     @Root(strict = false, name = "Error")
@@ -64,40 +64,51 @@ public abstract class AssetPreparePostResponseHandler extends ResponseHandler {
     @Override
     public final void onSuccess(JSONObject result) {
         try {
-            // parse asset return from server and update the asset object
-            JSONObject assetObject = result.getJSONObject("asset");
-            this.asset.name = assetObject.getString("$name");
-            this.asset.url = assetObject.getString("$url");
-
-            // parse post request object
-            JSONObject postRequestObject = result.getJSONObject("post-request");
-            String postRequestAction = postRequestObject.getString("action");
-            Map<String, String> postExtraFields = null;
-            if (!postRequestObject.isNull("extra-fields")) {
-                postExtraFields = new HashMap<>();
-
-                JSONObject extraFieldObject = postRequestObject.getJSONObject("extra-fields");
-                Iterator<String> extraKeys = extraFieldObject.keys();
-                while (extraKeys.hasNext()) {
-                    String perKey = extraKeys.next();
-                    String perValue = extraFieldObject.getString(perKey);
-
-                    postExtraFields.put(perKey, perValue);
-                }
-            }
-
-            AssetPostRequest postRequest = new AssetPostRequest(
-                    this.asset,
-                    postRequestAction,
-                    postExtraFields
+            this.onPreparePostSuccess(
+                    AssetPreparePostResponseHandler.parsePostRequest(this.asset, result)
             );
-
-            this.onPreparePostSuccess(postRequest);
         } catch (JSONException e) {
             this.onPreparePostFail(new Error("Malformed server response"));
         }
     }
 
+    /**
+     * Parses the asset and post request of a prepare post result.
+     * <p>
+     *     The asset name and url will be updated according to the result.
+     * </p>
+     *
+     * @param asset  the asset
+     * @param result the prepare post result
+     * @return the post request
+     * @throws JSONException the JSON exception
+     */
+    static AssetPostRequest parsePostRequest(Asset asset, JSONObject result) throws JSONException {
+        // parse asset return from server and update the asset object
+        JSONObject assetObject = result.getJSONObject("asset");
+        asset.name = assetObject.getString("$name");
+        asset.url = assetObject.getString("$url");
+
+        // parse post request object
+        JSONObject postRequestObject = result.getJSONObject("post-request");
+        String postRequestAction = postRequestObject.getString("action");
+        Map<String, String> postExtraFields = null;
+        if (!postRequestObject.isNull("extra-fields")) {
+            postExtraFields = new HashMap<>();
+
+            JSONObject extraFieldObject = postRequestObject.getJSONObject("extra-fields");
+            Iterator<String> extraKeys = extraFieldObject.keys();
+            while (extraKeys.hasNext()) {
+                String perKey = extraKeys.next();
+                String perValue = extraFieldObject.getString(perKey);
+
+                postExtraFields.put(perKey, perValue);
+            }
+        }
+
+        return new AssetPostRequest(asset, postRequestAction, postExtraFields);
+    }
+
     @Override
     public final void onFailure(Error error) {
         this.onPreparePostFail(error);
@@ -0,0 +1,435 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * The Skygear Asset Upload Pipeline.
+ * <p>
+ * This class uploads a list of assets with a bounded number of uploads in
+ * flight. Each asset is prepared by an asset:put request and then uploaded.
+ * Pending assets are prepared together in one batched request. If the server
+ * does not support batching, assets are prepared one by one ahead of the
+ * uploads, with at most as many prepared assets waiting as uploads in flight.
+ * </p>
+ * <p>
+ * Assets with the same content digest are uploaded only once. Assets found in
+ * the digest index are not uploaded at all, and take the name and url of the
+ * asset uploaded before.
+ * </p>
+ * <p>
+ * The pipeline fails on the first error, cancelling the uploads in flight.
+ * All callbacks are expected to be delivered on the main thread.
+ * </p>
+ */
+class AssetUploadPipeline {
+    private static final Executor DIGEST_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final Database database;
+    private final int maxInFlight;
+    private final AssetDigestIndex digestIndex;
+    private final String endpoint;
+    private final AssetsUploadResponseHandler handler;
+
+    private final List<Asset> assets;
+    private final Queue<Asset> pendingAssets;
+    private final Queue<AssetPostRequest> preparedRequests;
+    private final List<AssetPostRequest> uploadingRequests;
+    private final Map<Asset, Long> bytesSent;
+    private final Map<Asset, String> digests;
+    private final Map<Asset, List<Asset>> duplicatedAssets;
+    private final long totalBytes;
+
+    private int preparingCount;
+    private int uploadedCount;
+    private boolean finished;
+
+    /**
+     * Instantiates a new Asset Upload Pipeline.
+     *
+     * @param database    the database
+     * @param assets      the assets, each asset should appear only once
+     * @param maxInFlight the maximum number of uploads in flight
+     * @param digestIndex the digest index, null to upload every asset
+     * @param endpoint    the endpoint the assets are uploaded to
+     * @param handler     the response handler
+     */
+    AssetUploadPipeline(
+            Database database,
+            List<Asset> assets,
+            int maxInFlight,
+            AssetDigestIndex digestIndex,
+            String endpoint,
+            AssetsUploadResponseHandler handler
+    ) {
+        super();
+
+        this.database = database;
+        this.maxInFlight = maxInFlight;
+        this.digestIndex = digestIndex;
+        this.endpoint = endpoint;
+        this.handler = handler;
+
+        this.assets = new ArrayList<>(assets);
+        this.pendingAssets = new ArrayDeque<>(assets);
+        this.preparedRequests = new ArrayDeque<>();
+        this.uploadingRequests = new ArrayList<>();
+        this.bytesSent = new IdentityHashMap<>();
+        this.digests = new IdentityHashMap<>();
+        this.duplicatedAssets = new IdentityHashMap<>();
+
+        long total = 0;
+        for (Asset perAsset : assets) {
+            total += perAsset.getSize();
+        }
+        this.totalBytes = total;
+    }
+
+    /**
+     * Starts the pipeline.
+     */
+    void start() {
+        if (this.digestIndex == null || this.assets.isEmpty()) {
+            this.pump();
+            return;
+        }
+
+        this.computeDigests(new Runnable() {
+            @Override
+            public void run() {
+                AssetUploadPipeline.this.deduplicate();
+                AssetUploadPipeline.this.pump();
+            }
+        });
+    }
+
+    /**
+     * Cancels the pipeline. No callback would be called afterwards.
+     */
+    void cancel() {
+        this.finished = true;
+
+        for (AssetPostRequest perRequest : this.uploadingRequests) {
+            perRequest.cancel();
+        }
+        this.uploadingRequests.clear();
+        this.preparedRequests.clear();
+        this.pendingAssets.clear();
+    }
+
+    /**
+     * Checks whether the pipeline is finished.
+     *
+     * @return the boolean indicating whether the pipeline is finished
+     */
+    boolean isFinished() {
+        return this.finished;
+    }
+
+    /**
+     * Computes the content digests of the assets in background, and then
+     * runs the callback on the main thread.
+     *
+     * @param callback the callback
+     */
+    void computeDigests(final Runnable callback) {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        DIGEST_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                AssetUploadPipeline.this.computeDigests();
+                mainHandler.post(callback);
+            }
+        });
+    }
+
+    /**
+     * Computes the content digests of the assets.
+     * <p>
+     * The digests are only read on the main thread after the callback of
+     * {@link #computeDigests(Runnable)} is posted.
+     * </p>
+     */
+    void computeDigests() {
+        this.digestIndex.load();
+        for (Asset perAsset : this.assets) {
+            this.digests.put(perAsset, AssetDigest.compute(perAsset));
+        }
+    }
+
+    private void deduplicate() {
+        if (this.finished) {
+            return;
+        }
+
+        Map<String, Asset> assetsByDigest = new HashMap<>();
+        this.pendingAssets.clear();
+        for (Asset perAsset : this.assets) {
+            String digest = this.digests.get(perAsset);
+            if (digest == null) {
+                this.pendingAssets.add(perAsset);
+            } else if (this.digestIndex.restore(this.endpoint, digest, perAsset)) {
+                this.onUploadSkipped(perAsset);
+            } else if (assetsByDigest.containsKey(digest)) {
+                Asset uploadingAsset = assetsByDigest.get(digest);
+                List<Asset> duplicates = this.duplicatedAssets.get(uploadingAsset);
+                if (duplicates == null) {
+                    duplicates = new ArrayList<>();
+                    this.duplicatedAssets.put(uploadingAsset, duplicates);
+                }
+                duplicates.add(perAsset);
+            } else {
+                assetsByDigest.put(digest, perAsset);
+                this.pendingAssets.add(perAsset);
+            }
+        }
+    }
+
+    private void onUploaded(Asset asset) {
+        String digest = this.digests.get(asset);
+        if (digest != null) {
+            this.digestIndex.save(this.endpoint, digest, asset);
+        }
+
+        List<Asset> duplicates = this.duplicatedAssets.remove(asset);
+        if (duplicates != null) {
+            for (Asset perDuplicate : duplicates) {
+                perDuplicate.name = asset.name;
+                perDuplicate.url = asset.url;
+                this.onUploadSkipped(perDuplicate);
+            }
+        }
+    }
+
+    private void onUploadSkipped(Asset asset) {
+        try {
+            asset.inputStream.close();
+        } catch (IOException e) {
+            // Do nothing. The content is not needed anymore.
+        }
+
+        this.uploadedCount++;
+        this.onProgress(asset, asset.getSize());
+    }
+
+    private void pump() {
+        if (this.finished) {
+            return;
+        }
+
+        while (!this.preparedRequests.isEmpty() && this.uploadingRequests.size() < this.maxInFlight) {
+            this.upload(this.preparedRequests.poll());
+        }
+
+        if (this.pendingAssets.size() > 1
+                && this.preparingCount == 0
+                && !this.database.assetsPrepareBatchUnsupported) {
+            List<Asset> assetsToPrepare = new ArrayList<>(this.pendingAssets);
+            this.pendingAssets.clear();
+            this.prepareBatch(assetsToPrepare);
+        }
+
+        while (!this.pendingAssets.isEmpty()
+                && this.preparingCount + this.preparedRequests.size() < this.maxInFlight) {
+            this.prepare(this.pendingAssets.poll());
+        }
+
+        if (this.uploadedCount == this.assets.size()) {
+            this.finished = true;
+            this.handler.onUploadSuccess(this.assets.toArray(new Asset[this.assets.size()]));
+        }
+    }
+
+    private void prepare(final Asset asset) {
+        this.preparingCount++;
+
+        AssetPreparePostRequest request = new AssetPreparePostRequest(asset);
+        request.setResponseHandler(new AssetPreparePostResponseHandler(asset) {
+            @Override
+            public void onPreparePostSuccess(AssetPostRequest postRequest) {
+                AssetUploadPipeline.this.preparingCount--;
+                if (AssetUploadPipeline.this.finished) {
+                    return;
+                }
+
+                AssetUploadPipeline.this.preparedRequests.add(postRequest);
+                AssetUploadPipeline.this.pump();
+            }
+
+            @Override
+            public void onPreparePostFail(Error error) {
+                AssetUploadPipeline.this.preparingCount--;
+                AssetUploadPipeline.this.fail(error);
+            }
+        });
+
+        this.sendPrepareRequest(request);
+    }
+
+    private void prepareBatch(final List<Asset> assetsToPrepare) {
+        this.preparingCount += assetsToPrepare.size();
+
+        AssetsPreparePostRequest request = new AssetsPreparePostRequest(assetsToPrepare);
+        request.setResponseHandler(new AssetsPreparePostResponseHandler(assetsToPrepare) {
+            @Override
+            public void onPreparePostSuccess(Asset asset, AssetPostRequest postRequest) {
+                AssetUploadPipeline.this.preparingCount--;
+                if (AssetUploadPipeline.this.finished) {
+                    return;
+                }
+
+                AssetUploadPipeline.this.preparedRequests.add(postRequest);
+                AssetUploadPipeline.this.pump();
+            }
+
+            @Override
+            public void onPreparePostFail(Asset asset, Error error) {
+                AssetUploadPipeline.this.preparingCount--;
+                AssetUploadPipeline.this.fail(error);
+            }
+
+            @Override
+            public void onPreparePostsFail(Error error) {
+                AssetUploadPipeline.this.preparingCount -= assetsToPrepare.size();
+                if (!AssetUploadPipeline.isBatchUnsupportedError(error)) {
+                    AssetUploadPipeline.this.fail(error);
+                    return;
+                }
+
+                // fall back to prepare the assets one by one
+                AssetUploadPipeline.this.database.assetsPrepareBatchUnsupported = true;
+                if (!AssetUploadPipeline.this.finished) {
+                    AssetUploadPipeline.this.pendingAssets.addAll(assetsToPrepare);
+                    AssetUploadPipeline.this.pump();
+                }
+            }
+        });
+
+        this.sendBatchPrepareRequest(request);
+    }
+
+    private static boolean isBatchUnsupportedError(Error error) {
+        return Arrays.asList(
+                Error.Code.BAD_REQUEST,
+                Error.Code.INVALID_ARGUMENT,
+                Error.Code.NOT_SUPPORTED,
+                Error.Code.NOT_IMPLEMENTED,
+                Error.Code.UNDEFINED_OPERATION
+        ).contains(error.getCode());
+    }
+
+    private void upload(final AssetPostRequest request) {
+        this.uploadingRequests.add(request);
+
+        request.setResponseHandler(new AssetPostRequest.ResponseHandler() {
+            @Override
+            public void onPostSuccess(Asset asset, String response) {
+                if (AssetUploadPipeline.this.finished) {
+                    return;
+                }
+
+                AssetUploadPipeline.this.uploadingRequests.remove(request);
+                AssetUploadPipeline.this.uploadedCount++;
+                AssetUploadPipeline.this.onProgress(asset, asset.getSize());
+                AssetUploadPipeline.this.onUploaded(asset);
+                AssetUploadPipeline.this.pump();
+            }
+
+            @Override
+            public void onPostFail(Asset asset, Error error) {
+                AssetUploadPipeline.this.uploadingRequests.remove(request);
+                AssetUploadPipeline.this.fail(error);
+            }
+
+            @Override
+            public void onPostProgress(Asset asset, long bytesSent, long totalBytes) {
+                if (!AssetUploadPipeline.this.finished) {
+                    AssetUploadPipeline.this.onProgress(asset, bytesSent);
+                }
+            }
+        });
+
+        this.sendPostRequest(request);
+    }
+
+    private void onProgress(Asset asset, long assetBytesSent) {
+        Long previous = this.bytesSent.put(asset, assetBytesSent);
+        if (previous != null && previous == assetBytesSent) {
+            return;
+        }
+
+        long sent = 0;
+        for (Long perBytesSent : this.bytesSent.values()) {
+            sent += perBytesSent;
+        }
+
+        this.handler.onAssetProgress(asset, assetBytesSent, asset.getSize());
+        this.handler.onProgress(sent, this.totalBytes);
+    }
+
+    private void fail(Error error) {
+        if (this.finished) {
+            return;
+        }
+
+        this.cancel();
+        this.handler.onUploadFail(error);
+    }
+
+    /**
+     * Sends an asset prepare post request.
+     *
+     * @param request the request
+     */
+    void sendPrepareRequest(AssetPreparePostRequest request) {
+        this.database.getContainer().requestManager.sendRequest(request);
+    }
+
+    /**
+     * Sends an assets prepare post request.
+     *
+     * @param request the request
+     */
+    void sendBatchPrepareRequest(AssetsPreparePostRequest request) {
+        this.database.getContainer().requestManager.sendRequest(request);
+    }
+
+    /**
+     * Sends an asset post request.
+     *
+     * @param request the request
+     */
+    void sendPostRequest(AssetPostRequest request) {
+        this.database.getContainer().requestManager.sendAssetPostRequest(request);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Skygear asset upload state store.
+ *
+ * This class keeps the prepared post requests of asset uploads with a reuse
+ * key, so that a failed upload can be sent again after the process restarts
+ * without preparing it again.
+ */
+class AssetUploadStateStore {
+    private static final String TAG = "Skygear SDK";
+
+    static final String SKYGEAR_UPLOAD_PREF_SPACE = "SkygearAssetUploadSharedPreferences";
+
+    private final Context context;
+    private final String preferencesName;
+    private final Map<String, String> memoryStates;
+
+    /**
+     * Instantiates a new asset upload state store.
+     *
+     * @param context the context, null to keep the states in memory only
+     */
+    AssetUploadStateStore(Context context) {
+        this(context, SKYGEAR_UPLOAD_PREF_SPACE);
+    }
+
+    /**
+     * Instantiates a new asset upload state store.
+     *
+     * @param context         the context, null to keep the states in memory only
+     * @param preferencesName the name of the shared preferences
+     */
+    AssetUploadStateStore(Context context, String preferencesName) {
+        super();
+
+        this.context = context;
+        this.preferencesName = preferencesName;
+        this.memoryStates = new HashMap<>();
+    }
+
+    private SharedPreferences getPreferences() {
+        return this.context.getSharedPreferences(this.preferencesName, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Loads an upload state.
+     *
+     * @param key the upload key
+     * @return the upload state, null if not found
+     */
+    synchronized JSONObject load(String key) {
+        String stateString;
+        if (this.context == null) {
+            stateString = this.memoryStates.get(key);
+        } else {
+            stateString = this.getPreferences().getString(key, null);
+        }
+
+        if (stateString == null) {
+            return null;
+        }
+
+        try {
+            return new JSONObject(stateString);
+        } catch (JSONException e) {
+            Log.w(TAG, "Fail to restore asset upload state", e);
+            this.remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Saves an upload state.
+     *
+     * @param key   the upload key
+     * @param state the upload state
+     */
+    synchronized void save(String key, JSONObject state) {
+        if (this.context == null) {
+            this.memoryStates.put(key, state.toString());
+        } else {
+            this.getPreferences().edit().putString(key, state.toString()).apply();
+        }
+    }
+
+    /**
+     * Loads all upload states.
+     *
+     * @return the upload states keyed by the upload keys
+     */
+    synchronized Map<String, JSONObject> loadAll() {
+        Map<String, ?> stateStrings;
+        if (this.context == null) {
+            stateStrings = this.memoryStates;
+        } else {
+            stateStrings = this.getPreferences().getAll();
+        }
+
+        Map<String, JSONObject> states = new HashMap<>();
+        for (Map.Entry<String, ?> perEntry : stateStrings.entrySet()) {
+            try {
+                states.put(perEntry.getKey(), new JSONObject(String.valueOf(perEntry.getValue())));
+            } catch (JSONException e) {
+                Log.w(TAG, "Fail to restore asset upload state", e);
+            }
+        }
+
+        return states;
+    }
+
+    /**
+     * Removes an upload state.
+     *
+     * @param key the upload key
+     */
+    synchronized void remove(String key) {
+        if (this.context == null) {
+            this.memoryStates.remove(key);
+        } else {
+            this.getPreferences().edit().remove(key).apply();
+        }
+    }
+
+    /**
+     * Removes all upload states.
+     */
+    synchronized void clear() {
+        if (this.context == null) {
+            this.memoryStates.clear();
+        } else {
+            this.getPreferences().edit().clear().apply();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The Skygear Assets Prepare Post Request.
+ * <p>
+ * This request prepares the post requests of multiple assets in a single
+ * asset:put round trip.
+ * </p>
+ */
+public class AssetsPreparePostRequest extends Request {
+    private final List<Asset> assets;
+
+    /**
+     * Instantiates a new Assets prepare post request.
+     *
+     * @param assets the assets
+     */
+    public AssetsPreparePostRequest(Asset[] assets) {
+        this(Arrays.asList(assets));
+    }
+
+    /**
+     * Instantiates a new Assets prepare post request.
+     *
+     * @param assets the assets
+     */
+    public AssetsPreparePostRequest(List<Asset> assets) {
+        super("asset:put");
+
+        this.data = new HashMap<>();
+        this.assets = new ArrayList<>(assets);
+
+        this.updateData();
+    }
+
+    /**
+     * Gets the assets.
+     *
+     * @return the assets
+     */
+    public List<Asset> getAssets() {
+        return this.assets;
+    }
+
+    private void updateData() {
+        JSONArray assetArray = new JSONArray();
+        for (Asset perAsset : this.assets) {
+            HashMap<String, Object> assetData = new HashMap<>();
+            assetData.put("filename", perAsset.getName());
+            assetData.put("content-type", perAsset.getMimeType());
+            assetData.put("content-size", perAsset.getSize());
+
+            assetArray.put(new JSONObject(assetData));
+        }
+
+        this.data.put("assets", assetArray);
+    }
+
+    @Override
+    protected void validate() throws Exception {
+        super.validate();
+
+        if (this.assets.isEmpty()) {
+            throw new InvalidParameterException("Missing assets");
+        }
+
+        for (Asset perAsset : this.assets) {
+            String filename = perAsset.getName();
+            if (filename == null || filename.length() == 0) {
+                throw new InvalidParameterException("Missing filename");
+            }
+
+            if (perAsset.getMimeType() == null) {
+                throw new InvalidParameterException("Missing MIME type of the asset");
+            }
+
+            if (perAsset.getSize() == 0) {
+                throw new InvalidParameterException("Missing content size of the asset");
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * The Skygear Assets Prepare Post Response Handler.
+ * <p>
+ *     The result of each asset is reported separately, in the order of the
+ *     assets passed in. The name and url of each asset will be updated
+ *     according to the response from Skygear Server.
+ * </p>
+ */
+public abstract class AssetsPreparePostResponseHandler extends ResponseHandler {
+    private final List<Asset> assets;
+
+    /**
+     * Instantiates a new Assets Prepare Post Response Handler.
+     *
+     * @param assets the assets
+     */
+    public AssetsPreparePostResponseHandler(List<Asset> assets) {
+        super();
+
+        this.assets = assets;
+    }
+
+    /**
+     * Prepare post success callback of an asset.
+     *
+     * @param asset       the asset
+     * @param postRequest the post request
+     */
+    public abstract void onPreparePostSuccess(Asset asset, AssetPostRequest postRequest);
+
+    /**
+     * Prepare post fail callback of an asset.
+     *
+     * @param asset the asset
+     * @param error the error
+     */
+    public abstract void onPreparePostFail(Asset asset, Error error);
+
+    /**
+     * Fail callback of the whole request.
+     *
+     * @param error the error
+     */
+    public abstract void onPreparePostsFail(Error error);
+
+    @Override
+    public final void onSuccess(JSONObject result) {
+        JSONArray resultArray = result.optJSONArray("result");
+        if (resultArray == null || resultArray.length() != this.assets.size()) {
+            // servers without batch support prepare a single asset at most
+            this.onPreparePostsFail(new Error(
+                    Error.Code.NOT_SUPPORTED.getValue(),
+                    "Batch asset prepare is not supported"
+            ));
+            return;
+        }
+
+        for (int idx = 0; idx < resultArray.length(); idx++) {
+            Asset perAsset = this.assets.get(idx);
+            try {
+                JSONObject perResult = resultArray.getJSONObject(idx);
+                if (perResult.has("error")) {
+                    this.onPreparePostFail(
+                            perAsset,
+                            ErrorSerializer.deserialize(perResult.getJSONObject("error"))
+                    );
+                } else {
+                    this.onPreparePostSuccess(
+                            perAsset,
+                            AssetPreparePostResponseHandler.parsePostRequest(perAsset, perResult)
+                    );
+                }
+            } catch (JSONException e) {
+                this.onPreparePostFail(perAsset, new Error("Malformed server response"));
+            }
+        }
+    }
+
+    @Override
+    public final void onFailure(Error error) {
+        this.onPreparePostsFail(error);
+    }
+}
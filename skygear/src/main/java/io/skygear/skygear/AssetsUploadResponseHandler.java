@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+/**
+ * The Skygear Assets Upload Response Handler.
+ * <p>
+ * Progress callbacks are optional. They are called on the main thread.
+ * </p>
+ */
+public abstract class AssetsUploadResponseHandler {
+    /**
+     * Upload success callback, called when all assets are uploaded.
+     *
+     * @param assets the uploaded assets
+     */
+    public abstract void onUploadSuccess(Asset[] assets);
+
+    /**
+     * Upload fail callback, called when the first asset fails to upload.
+     * Uploads of the other assets are cancelled.
+     *
+     * @param error the error
+     */
+    public abstract void onUploadFail(Error error);
+
+    /**
+     * Asset progress callback.
+     *
+     * @param asset      the asset
+     * @param bytesSent  the number of bytes of the asset sent
+     * @param totalBytes the size of the asset
+     */
+    public void onAssetProgress(Asset asset, long bytesSent, long totalBytes) {
+        // Do nothing. Let subclasses to override it.
+    }
+
+    /**
+     * Aggregate progress callback.
+     *
+     * @param bytesSent  the number of bytes sent of all assets
+     * @param totalBytes the total size of all assets
+     */
+    public void onProgress(long bytesSent, long totalBytes) {
+        // Do nothing. Let subclasses to override it.
+    }
+}
@@ -608,12 +608,40 @@ public class AuthContainer implements AuthResolver {
     @Override
     public void resolveAuthUser(Record user, String accessToken) {
         Container container = this.getContainer();
+        Record previousUser = container.persistentStore.currentUser;
+        boolean userChanged = !AuthContainer.isSameUser(previousUser, user);
+        if (userChanged) {
+            if (container.recordCache != null) {
+                container.recordCache.clear();
+            }
+            container.requestManager.getAssetDigestIndex().clear();
+            container.requestManager.getRetryingUploader().clear();
+        }
+
         container.persistentStore.currentUser = user;
         container.persistentStore.accessToken = accessToken;
         container.persistentStore.save();
 
         container.requestManager.accessToken = accessToken;
         container.push.registerDeviceToken(container.persistentStore.deviceToken);
+
+        // mutations of the new user are sent with its access token
+        if (container.recordOutbox != null) {
+            container.recordOutbox.setOwner(user != null ? user.getId() : null);
+        }
+
+        // private record changes are published to the channels of each user
+        if (userChanged) {
+            container.privateDatabase.resubscribeRecordChanges();
+        }
+    }
+
+    private static boolean isSameUser(Record user1, Record user2) {
+        if (user1 == null || user2 == null) {
+            return user1 == user2;
+        }
+
+        return user1.getId() != null && user1.getId().equals(user2.getId());
     }
 
 }
@@ -26,6 +26,26 @@ public final class Configuration {
     private static final String TEST_BASE_URL = "http://skygear.dev/";
     private static final String TEST_API_KEY = "changeme";
 
+    /**
+     * The default maximum number of concurrent asset uploads.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_ASSET_UPLOADS = 2;
+
+    /**
+     * The default base delay in milliseconds before reconnecting pubsub.
+     */
+    public static final long DEFAULT_PUBSUB_RECONNECT_BASE_DELAY = 3000;
+
+    /**
+     * The default maximum delay in milliseconds before reconnecting pubsub.
+     */
+    public static final long DEFAULT_PUBSUB_RECONNECT_MAX_DELAY = 60000;
+
+    /**
+     * The default maximum number of pubsub messages queued while disconnected.
+     */
+    public static final int DEFAULT_PUBSUB_OUTBOX_CAPACITY = 1000;
+
     /**
      * Skygear Endpoint.
      */
@@ -53,19 +73,123 @@ public final class Configuration {
      */
     final boolean encryptCurrentUserData;
 
+    /**
+     * Boolean indicating whether record query responses are decoded in streaming mode.
+     */
+    final boolean streamingQueryDecoding;
+
+    /**
+     * Maximum number of records kept in the record cache, zero if disabled.
+     */
+    final int recordCacheSize;
+
+    /**
+     * Time window in milliseconds for batching record fetches, zero if disabled.
+     */
+    final int fetchBatchingWindow;
+
+    /**
+     * The HTTP transport type.
+     */
+    final TransportType transportType;
+
+    /**
+     * Maximum number of asset uploads in flight when saving records.
+     */
+    final int maxConcurrentAssetUploads;
+
+    /**
+     * Boolean indicating whether assets with uploaded content are not uploaded again.
+     */
+    final boolean assetDeduplication;
+
+    /**
+     * Whether record saves and deletes are queued in a durable outbox.
+     */
+    final boolean offlineWriteQueueEnabled;
+
+    /**
+     * Whether only modified attributes are sent when saving records.
+     */
+    final boolean deltaRecordSave;
+
+    /**
+     * Whether typed attribute values of queried records are decoded when first read.
+     */
+    final boolean lazyRecordDecoding;
+
+    /**
+     * Base delay in milliseconds before reconnecting pubsub.
+     */
+    final long pubsubReconnectBaseDelay;
+
+    /**
+     * Maximum delay in milliseconds before reconnecting pubsub.
+     */
+    final long pubsubReconnectMaxDelay;
+
+    /**
+     * Maximum number of pubsub reconnection attempts, -1 if unlimited.
+     */
+    final long pubsubReconnectRetryLimit;
+
+    /**
+     * Maximum number of pubsub messages queued while disconnected.
+     */
+    final int pubsubOutboxCapacity;
+
+    /**
+     * Policy deciding which pubsub message is dropped when the queue is full.
+     */
+    final PubsubOverflowPolicy pubsubOutboxOverflowPolicy;
+
+    /**
+     * Whether pubsub messages queued while disconnected are persisted.
+     */
+    final boolean pubsubOutboxPersistent;
 
     private Configuration(
             String endpoint,
             String apiKey,
             boolean pubsubHandlerExecutionInBackground,
             boolean pubsubConnectAutomatically,
-            boolean encryptCurrentUserData
+            boolean encryptCurrentUserData,
+            boolean streamingQueryDecoding,
+            int recordCacheSize,
+            int fetchBatchingWindow,
+            TransportType transportType,
+            int maxConcurrentAssetUploads,
+            boolean assetDeduplication,
+            boolean offlineWriteQueueEnabled,
+            boolean deltaRecordSave,
+            boolean lazyRecordDecoding,
+            long pubsubReconnectBaseDelay,
+            long pubsubReconnectMaxDelay,
+            long pubsubReconnectRetryLimit,
+            int pubsubOutboxCapacity,
+            PubsubOverflowPolicy pubsubOutboxOverflowPolicy,
+            boolean pubsubOutboxPersistent
     ) {
         this.endpoint = endpoint;
         this.apiKey = apiKey;
         this.pubsubHandlerExecutionInBackground = pubsubHandlerExecutionInBackground;
         this.pubsubConnectAutomatically = pubsubConnectAutomatically;
         this.encryptCurrentUserData = encryptCurrentUserData;
+        this.streamingQueryDecoding = streamingQueryDecoding;
+        this.recordCacheSize = recordCacheSize;
+        this.fetchBatchingWindow = fetchBatchingWindow;
+        this.transportType = transportType;
+        this.maxConcurrentAssetUploads = maxConcurrentAssetUploads;
+        this.assetDeduplication = assetDeduplication;
+        this.offlineWriteQueueEnabled = offlineWriteQueueEnabled;
+        this.deltaRecordSave = deltaRecordSave;
+        this.lazyRecordDecoding = lazyRecordDecoding;
+        this.pubsubReconnectBaseDelay = pubsubReconnectBaseDelay;
+        this.pubsubReconnectMaxDelay = pubsubReconnectMaxDelay;
+        this.pubsubReconnectRetryLimit = pubsubReconnectRetryLimit;
+        this.pubsubOutboxCapacity = pubsubOutboxCapacity;
+        this.pubsubOutboxOverflowPolicy = pubsubOutboxOverflowPolicy;
+        this.pubsubOutboxPersistent = pubsubOutboxPersistent;
     }
 
     /**
@@ -113,6 +237,141 @@ public final class Configuration {
         return encryptCurrentUserData;
     }
 
+    /**
+     * Is record query response decoded in streaming mode boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isStreamingQueryDecoding() {
+        return streamingQueryDecoding;
+    }
+
+    /**
+     * Gets the record cache size.
+     *
+     * @return the maximum number of cached records, zero if the record cache is disabled
+     */
+    public int getRecordCacheSize() {
+        return recordCacheSize;
+    }
+
+    /**
+     * Gets the fetch batching window.
+     *
+     * @return the time window in milliseconds, zero if fetch batching is disabled
+     */
+    public int getFetchBatchingWindow() {
+        return fetchBatchingWindow;
+    }
+
+    /**
+     * Gets the HTTP transport type.
+     *
+     * @return the transport type
+     */
+    public TransportType getTransportType() {
+        return transportType;
+    }
+
+    /**
+     * Gets the maximum number of concurrent asset uploads.
+     *
+     * @return the maximum number of asset uploads in flight
+     */
+    public int getMaxConcurrentAssetUploads() {
+        return maxConcurrentAssetUploads;
+    }
+
+    /**
+     * Is asset deduplication boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isAssetDeduplication() {
+        return assetDeduplication;
+    }
+
+    /**
+     * Is offline write queue enabled boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isOfflineWriteQueueEnabled() {
+        return offlineWriteQueueEnabled;
+    }
+
+    /**
+     * Is delta record save boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isDeltaRecordSave() {
+        return deltaRecordSave;
+    }
+
+    /**
+     * Is lazy record decoding boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isLazyRecordDecoding() {
+        return lazyRecordDecoding;
+    }
+
+    /**
+     * Gets pubsub reconnect base delay.
+     *
+     * @return the base delay in milliseconds
+     */
+    public long getPubsubReconnectBaseDelay() {
+        return pubsubReconnectBaseDelay;
+    }
+
+    /**
+     * Gets pubsub reconnect max delay.
+     *
+     * @return the max delay in milliseconds
+     */
+    public long getPubsubReconnectMaxDelay() {
+        return pubsubReconnectMaxDelay;
+    }
+
+    /**
+     * Gets pubsub reconnect retry limit.
+     *
+     * @return the retry limit, -1 if unlimited
+     */
+    public long getPubsubReconnectRetryLimit() {
+        return pubsubReconnectRetryLimit;
+    }
+
+    /**
+     * Gets pubsub outbox capacity.
+     *
+     * @return the capacity
+     */
+    public int getPubsubOutboxCapacity() {
+        return pubsubOutboxCapacity;
+    }
+
+    /**
+     * Gets pubsub outbox overflow policy.
+     *
+     * @return the overflow policy
+     */
+    public PubsubOverflowPolicy getPubsubOutboxOverflowPolicy() {
+        return pubsubOutboxOverflowPolicy;
+    }
+
+    /**
+     * Is pubsub outbox persistent boolean.
+     *
+     * @return the boolean
+     */
+    public boolean isPubsubOutboxPersistent() {
+        return pubsubOutboxPersistent;
+    }
+
     /**
      * Creates an instance of default configuration.
      *
@@ -150,12 +409,34 @@ public final class Configuration {
         private boolean pubsubHandlerExecutionInBackground;
         private boolean pubsubConnectAutomatically;
         private boolean encryptCurrentUserData;
+        private boolean streamingQueryDecoding;
+        private int recordCacheSize;
+        private int fetchBatchingWindow;
+        private TransportType transportType;
+        private int maxConcurrentAssetUploads;
+        private boolean assetDeduplication;
+        private boolean offlineWriteQueueEnabled;
+        private boolean deltaRecordSave;
+        private boolean lazyRecordDecoding;
+        private long pubsubReconnectBaseDelay;
+        private long pubsubReconnectMaxDelay;
+        private long pubsubReconnectRetryLimit;
+        private int pubsubOutboxCapacity;
+        private PubsubOverflowPolicy pubsubOutboxOverflowPolicy;
+        private boolean pubsubOutboxPersistent;
 
         /**
          * Creates an instance of Builder.
          */
         public Builder() {
             this.pubsubConnectAutomatically = true;
+            this.transportType = TransportType.VOLLEY;
+            this.maxConcurrentAssetUploads = DEFAULT_MAX_CONCURRENT_ASSET_UPLOADS;
+            this.pubsubReconnectBaseDelay = DEFAULT_PUBSUB_RECONNECT_BASE_DELAY;
+            this.pubsubReconnectMaxDelay = DEFAULT_PUBSUB_RECONNECT_MAX_DELAY;
+            this.pubsubReconnectRetryLimit = PubsubClient.RETRY_LIMIT_INFINITE;
+            this.pubsubOutboxCapacity = DEFAULT_PUBSUB_OUTBOX_CAPACITY;
+            this.pubsubOutboxOverflowPolicy = PubsubOverflowPolicy.DROP_OLDEST;
         }
 
         /**
@@ -215,6 +496,281 @@ public final class Configuration {
             return this;
         }
 
+        /**
+         * Sets whether record query responses are decoded in streaming mode.
+         * <p>
+         * In streaming mode, records are built directly from the response body
+         * with a pull parser on the network thread, instead of materializing
+         * the whole response as a JSON object first.
+         * </p>
+         *
+         * @param enabled the boolean indicating whether streaming mode is enabled
+         * @return the builder
+         */
+        public Builder streamingQueryDecoding(boolean enabled) {
+            this.streamingQueryDecoding = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the record cache size.
+         * <p>
+         * Records received from fetch and query responses are kept in memory,
+         * up to the specified number of records. The cache is disabled by default.
+         * </p>
+         *
+         * @param size the maximum number of cached records, zero to disable the cache
+         * @return the builder
+         */
+        public Builder recordCacheSize(int size) {
+            if (size < 0) {
+                throw new InvalidParameterException("Record cache size should not be negative");
+            }
+
+            this.recordCacheSize = size;
+            return this;
+        }
+
+        /**
+         * Sets the fetch batching window.
+         * <p>
+         * Record fetches by ID of the same record type issued within the window
+         * are sent as a single request. Fetch batching is disabled by default.
+         * </p>
+         *
+         * @param millis the time window in milliseconds, zero to disable batching
+         * @return the builder
+         */
+        public Builder fetchBatchingWindow(int millis) {
+            if (millis < 0) {
+                throw new InvalidParameterException("Fetch batching window should not be negative");
+            }
+
+            this.fetchBatchingWindow = millis;
+            return this;
+        }
+
+        /**
+         * Sets the HTTP transport type.
+         * <p>
+         * Requests are sent with Volley by default. {@link TransportType#OKHTTP}
+         * multiplexes requests over HTTP/2 when the endpoint supports it, and
+         * requires the app to depend on {@code com.squareup.okhttp3:okhttp}.
+         * </p>
+         *
+         * @param type the transport type
+         * @return the builder
+         */
+        public Builder transportType(TransportType type) {
+            if (type == null) {
+                throw new InvalidParameterException("Null transport type is not allowed");
+            }
+            if (type == TransportType.OKHTTP && !Builder.isOkHttpAvailable()) {
+                throw new InvalidParameterException(
+                        "OkHttp transport requires com.squareup.okhttp3:okhttp in the app dependencies"
+                );
+            }
+
+            this.transportType = type;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of concurrent asset uploads.
+         * <p>
+         * Pending assets of records being saved are uploaded with at most this
+         * number of uploads in flight, leaving room in the request queue for
+         * other requests. Defaults to {@value Configuration#DEFAULT_MAX_CONCURRENT_ASSET_UPLOADS}.
+         * </p>
+         *
+         * @param max the maximum number of asset uploads in flight
+         * @return the builder
+         */
+        public Builder maxConcurrentAssetUploads(int max) {
+            if (max < 1) {
+                throw new InvalidParameterException("Max concurrent asset uploads should be positive");
+            }
+
+            this.maxConcurrentAssetUploads = max;
+            return this;
+        }
+
+        /**
+         * Sets whether assets with uploaded content are not uploaded again.
+         * <p>
+         * The content digest of each asset of records being saved is computed
+         * before uploading, which reads the asset data once more. An asset with
+         * the same digest as an asset uploaded before by the current user takes
+         * the name and url of that asset instead. Only assets of files or
+         * in-memory data are deduplicated. Deduplication is disabled by default.
+         * </p>
+         *
+         * @param enabled the boolean indicating whether assets are deduplicated
+         * @return the builder
+         */
+        public Builder assetDeduplication(boolean enabled) {
+            this.assetDeduplication = enabled;
+            return this;
+        }
+
+        /**
+         * Sets whether record saves and deletes are queued in a durable outbox.
+         * <p>
+         * Queued mutations are kept on disk and sent one by one in order,
+         * and are sent again when the connectivity returns. The response
+         * handler is called when the mutation is finally sent, as long as the
+         * application is still running. Adjacent saves of the same records
+         * are sent as one. The queue is disabled by default.
+         * </p>
+         *
+         * @param enabled the boolean indicating whether the queue is enabled
+         * @return the builder
+         */
+        public Builder offlineWriteQueueEnabled(boolean enabled) {
+            this.offlineWriteQueueEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * Sets whether only modified attributes are sent when saving records.
+         * <p>
+         * A record keeps track of the attributes set since it is fetched or
+         * saved. In delta mode, a save sends only these attributes with the
+         * record identifiers and access control, and the server keeps the
+         * other attributes unchanged. Delta mode is disabled by default.
+         * </p>
+         *
+         * @param enabled the boolean indicating whether delta mode is enabled
+         * @return the builder
+         */
+        public Builder deltaRecordSave(boolean enabled) {
+            this.deltaRecordSave = enabled;
+            return this;
+        }
+
+        /**
+         * Sets whether typed attribute values of queried records are decoded when first read.
+         * <p>
+         * In lazy mode, attribute values such as dates, assets and references
+         * are kept as JSON when the query response is decoded, and are decoded
+         * by {@link Record#get(String)} or {@link Record#getData()}. Attributes
+         * never read are never decoded. A malformed value, which fails the
+         * query in eager mode, makes these methods throw an
+         * {@link IllegalStateException} instead. Lazy mode is disabled by default.
+         * </p>
+         *
+         * @param enabled the boolean indicating whether lazy mode is enabled
+         * @return the builder
+         */
+        public Builder lazyRecordDecoding(boolean enabled) {
+            this.lazyRecordDecoding = enabled;
+            return this;
+        }
+
+        /**
+         * Sets the pubsub reconnect delays.
+         * <p>
+         * After a pubsub connection is lost, the delay before each reconnection
+         * attempt doubles from the base delay up to the max delay, and a random
+         * jitter of up to half of the delay is applied so that clients do not
+         * reconnect at the same time. While the device has no network,
+         * reconnection is paused and resumes as soon as a network is available.
+         * Defaults to {@value Configuration#DEFAULT_PUBSUB_RECONNECT_BASE_DELAY}ms
+         * and {@value Configuration#DEFAULT_PUBSUB_RECONNECT_MAX_DELAY}ms.
+         * </p>
+         *
+         * @param baseDelay the base delay in milliseconds
+         * @param maxDelay  the max delay in milliseconds
+         * @return the builder
+         */
+        public Builder pubsubReconnectDelay(long baseDelay, long maxDelay) {
+            if (baseDelay < PubsubClient.MIN_RETRY_WAIT) {
+                throw new InvalidParameterException(String.format(
+                        "Pubsub reconnect base delay should be at least %dms",
+                        PubsubClient.MIN_RETRY_WAIT
+                ));
+            }
+
+            if (maxDelay < baseDelay) {
+                throw new InvalidParameterException(
+                        "Pubsub reconnect max delay should not be less than the base delay"
+                );
+            }
+
+            this.pubsubReconnectBaseDelay = baseDelay;
+            this.pubsubReconnectMaxDelay = maxDelay;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of pubsub reconnection attempts.
+         *
+         * @param retryLimit the retry limit, -1 if unlimited
+         * @return the builder
+         */
+        public Builder pubsubReconnectRetryLimit(long retryLimit) {
+            if (retryLimit < 0 && retryLimit != PubsubClient.RETRY_LIMIT_INFINITE) {
+                throw new InvalidParameterException("Invalid pubsub reconnect retry limit");
+            }
+
+            this.pubsubReconnectRetryLimit = retryLimit;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of pubsub messages queued while disconnected.
+         * <p>
+         * Messages published while pubsub is disconnected are queued and sent
+         * when the connection is opened. When the queue is full, messages are
+         * dropped according to the overflow policy.
+         * Defaults to {@value Configuration#DEFAULT_PUBSUB_OUTBOX_CAPACITY}.
+         * </p>
+         *
+         * @param capacity the capacity, zero to drop messages published while disconnected
+         * @return the builder
+         */
+        public Builder pubsubOutboxCapacity(int capacity) {
+            if (capacity < 0) {
+                throw new InvalidParameterException("Pubsub outbox capacity should not be negative");
+            }
+
+            this.pubsubOutboxCapacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets the policy deciding which pubsub message is dropped when the queue is full.
+         * <p>
+         * Defaults to {@link PubsubOverflowPolicy#DROP_OLDEST}.
+         * </p>
+         *
+         * @param policy the overflow policy
+         * @return the builder
+         */
+        public Builder pubsubOutboxOverflowPolicy(PubsubOverflowPolicy policy) {
+            if (policy == null) {
+                throw new InvalidParameterException("Null pubsub overflow policy is not allowed");
+            }
+
+            this.pubsubOutboxOverflowPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Sets whether pubsub messages queued while disconnected are persisted.
+         * <p>
+         * When enabled, queued messages are kept in a SQLite database and are
+         * sent after the app restarts. Persistence is disabled by default.
+         * </p>
+         *
+         * @param enabled the boolean indicating whether persistence is enabled
+         * @return the builder
+         */
+        public Builder pubsubOutboxPersistent(boolean enabled) {
+            this.pubsubOutboxPersistent = enabled;
+            return this;
+        }
+
         /**
          * Build a configuration.
          *
@@ -234,8 +790,32 @@ public final class Configuration {
                     this.apiKey,
                     this.pubsubHandlerExecutionInBackground,
                     this.pubsubConnectAutomatically,
-                    this.encryptCurrentUserData
+                    this.encryptCurrentUserData,
+                    this.streamingQueryDecoding,
+                    this.recordCacheSize,
+                    this.fetchBatchingWindow,
+                    this.transportType,
+                    this.maxConcurrentAssetUploads,
+                    this.assetDeduplication,
+                    this.offlineWriteQueueEnabled,
+                    this.deltaRecordSave,
+                    this.lazyRecordDecoding,
+                    this.pubsubReconnectBaseDelay,
+                    this.pubsubReconnectMaxDelay,
+                    this.pubsubReconnectRetryLimit,
+                    this.pubsubOutboxCapacity,
+                    this.pubsubOutboxOverflowPolicy,
+                    this.pubsubOutboxPersistent
             );
         }
+
+        private static boolean isOkHttpAvailable() {
+            try {
+                Class.forName("okhttp3.OkHttpClient", false, Configuration.class.getClassLoader());
+                return true;
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
     }
 }
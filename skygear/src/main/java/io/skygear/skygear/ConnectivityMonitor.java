@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Skygear Connectivity Monitor.
+ * <p>
+ * This class tracks whether the device has an active network connection,
+ * and notifies its listeners when the connectivity changes.
+ * </p>
+ */
+class ConnectivityMonitor {
+    private final Context context;
+    private final List<Listener> listeners;
+    private BroadcastReceiver receiver;
+    private boolean connected;
+
+    /**
+     * Instantiates a new Connectivity Monitor.
+     *
+     * @param context the context, null to assume the device is always connected
+     */
+    ConnectivityMonitor(Context context) {
+        super();
+
+        this.context = context;
+        this.listeners = new ArrayList<>();
+        this.connected = this.queryConnected();
+    }
+
+    /**
+     * Checks whether the device is connected.
+     *
+     * @return the boolean indicating whether the device is connected
+     */
+    synchronized boolean isConnected() {
+        return this.connected;
+    }
+
+    /**
+     * Adds a listener. The monitor starts receiving connectivity changes
+     * when the first listener is added.
+     *
+     * @param listener the listener
+     */
+    synchronized void addListener(Listener listener) {
+        this.listeners.add(listener);
+
+        if (this.receiver == null && this.context != null) {
+            this.receiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    ConnectivityMonitor.this.setConnected(ConnectivityMonitor.this.queryConnected());
+                }
+            };
+            this.context.registerReceiver(
+                    this.receiver,
+                    new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION)
+            );
+        }
+    }
+
+    /**
+     * Removes a listener. The monitor stops receiving connectivity changes
+     * when the last listener is removed.
+     *
+     * @param listener the listener
+     */
+    synchronized void removeListener(Listener listener) {
+        this.listeners.remove(listener);
+
+        if (this.listeners.isEmpty() && this.receiver != null) {
+            this.context.unregisterReceiver(this.receiver);
+            this.receiver = null;
+        }
+    }
+
+    /**
+     * Updates the connectivity and notifies the listeners if it is changed.
+     *
+     * @param connected the boolean indicating whether the device is connected
+     */
+    void setConnected(boolean connected) {
+        List<Listener> listenersToNotify;
+        synchronized (this) {
+            if (this.connected == connected) {
+                return;
+            }
+
+            this.connected = connected;
+            listenersToNotify = new ArrayList<>(this.listeners);
+        }
+
+        for (Listener perListener : listenersToNotify) {
+            perListener.onConnectivityChanged(connected);
+        }
+    }
+
+    private boolean queryConnected() {
+        if (this.context == null) {
+            return true;
+        }
+
+        ConnectivityManager manager
+                = (ConnectivityManager) this.context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (manager == null) {
+            return true;
+        }
+
+        NetworkInfo networkInfo = manager.getActiveNetworkInfo();
+        return networkInfo != null && networkInfo.isConnected();
+    }
+
+    /**
+     * The Connectivity Listener.
+     */
+    interface Listener {
+        /**
+         * Connectivity changed callback.
+         *
+         * @param connected the boolean indicating whether the device is connected
+         */
+        void onConnectivityChanged(boolean connected);
+    }
+}
@@ -35,6 +35,9 @@ public final class Container {
     final Context context;
     final RequestManager requestManager;
     Configuration config;
+    RecordCache recordCache;
+    RecordOutbox recordOutbox;
+    final ConnectivityMonitor connectivityMonitor;
 
     final AuthContainer auth;
     final PubsubContainer pubsub;
@@ -61,6 +64,7 @@ public final class Container {
         this.context = context.getApplicationContext();
         this.config = config;
         this.requestManager = new RequestManager(this.context, this.config);
+        this.connectivityMonitor = new ConnectivityMonitor(this.context);
 
         this.auth = new AuthContainer(this);
         this.pubsub = new PubsubContainer(this);
@@ -68,6 +72,8 @@ public final class Container {
         this.publicDatabase = Database.Factory.publicDatabase(this);
         this.privateDatabase = Database.Factory.privateDatabase(this);
         this.configPersistentStore(config);
+        this.configRecordCache(config);
+        this.configRecordOutbox(config);
     }
 
     /**
@@ -147,10 +153,21 @@ public final class Container {
 
         this.config = config;
         this.configPersistentStore(config);
+        this.configRecordCache(config);
         this.requestManager.configure(config);
+        this.configRecordOutbox(config);
         this.pubsub.configure(config);
     }
 
+    /**
+     * Gets the record cache.
+     *
+     * @return the record cache, null if it is disabled in the configuration
+     */
+    public RecordCache getRecordCache() {
+        return this.recordCache;
+    }
+
     /**
      * Gets context.
      *
@@ -187,6 +204,15 @@ public final class Container {
         return this.requestManager.requestTimeout;
     }
 
+    /**
+     * Gets the number of requests coalesced into identical in-flight requests.
+     *
+     * @return the number of coalesced requests
+     */
+    public long getCoalescedRequestCount() {
+        return this.requestManager.getCoalescedRequestCount();
+    }
+
     /**
      * Send a request.
      *
@@ -270,6 +296,31 @@ public final class Container {
         });
     }
 
+    private void configRecordCache(Configuration config) {
+        if (config != null && config.recordCacheSize > 0) {
+            this.recordCache = new RecordCache(config.recordCacheSize);
+        } else {
+            this.recordCache = null;
+        }
+    }
+
+    private void configRecordOutbox(Configuration config) {
+        boolean enabled = config != null && config.offlineWriteQueueEnabled;
+        if (enabled && this.recordOutbox == null) {
+            Record currentUser = this.persistentStore.currentUser;
+            this.recordOutbox = new RecordOutbox(
+                    new RecordOutboxLog(this.context),
+                    this.connectivityMonitor,
+                    this.requestManager,
+                    currentUser != null ? currentUser.getId() : null
+            );
+            this.recordOutbox.start();
+        } else if (!enabled && this.recordOutbox != null) {
+            this.recordOutbox.stop();
+            this.recordOutbox = null;
+        }
+    }
+
     private void configPersistentStore(Configuration config) {
         if (config != null && config.encryptCurrentUserData) {
             this.persistentStore = new SecurePersistentStore(this.context);
@@ -21,11 +21,13 @@ import java.lang.ref.WeakReference;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
+import java.util.Set;
 
 /**
  * The Skygear Database.
@@ -36,12 +38,19 @@ import java.util.concurrent.Semaphore;
  */
 public class Database {
     private static final String PUBLIC_DATABASE_NAME = "_public";
-    private static final String PRIVATE_DATABASE_NAME = "_private";
+    static final String PRIVATE_DATABASE_NAME = "_private";
     private static final List<String> AvailableDatabaseNames
             = Arrays.asList(PUBLIC_DATABASE_NAME, PRIVATE_DATABASE_NAME);
 
     private String name;
     private WeakReference<Container> containerRef;
+    private final RecordFetchBatcher fetchBatcher;
+    private RecordChangeDispatcher recordChangeDispatcher;
+
+    /**
+     * Whether the server is known to reject batched asset prepare requests.
+     */
+    boolean assetsPrepareBatchUnsupported;
 
     /**
      * Instantiates a new Database.
@@ -61,6 +70,7 @@ public class Database {
 
         this.name = databaseName;
         this.containerRef = new WeakReference<>(container);
+        this.fetchBatcher = new RecordFetchBatcher(this);
     }
 
     /**
@@ -86,6 +96,48 @@ public class Database {
         return name;
     }
 
+    /**
+     * Gets the record cache of the container.
+     *
+     * @return the record cache, null if it is disabled or the container is released
+     */
+    RecordCache getRecordCache() {
+        Container container = this.containerRef.get();
+        if (container == null) {
+            return null;
+        }
+
+        return container.recordCache;
+    }
+
+    /**
+     * Creates a record save request, which only sends modified attributes
+     * if delta record save is enabled.
+     *
+     * @param records the records
+     * @return the request
+     */
+    private RecordSaveRequest createSaveRequest(Record[] records) {
+        Configuration config = this.getContainer().getConfig();
+        return new RecordSaveRequest(records, this, config != null && config.deltaRecordSave);
+    }
+
+    /**
+     * Sends a record save or delete request, through the record outbox if
+     * the offline write queue is enabled.
+     *
+     * @param request the request
+     */
+    private void sendMutationRequest(Request request) {
+        Container container = this.getContainer();
+
+        if (container.recordOutbox != null) {
+            container.recordOutbox.enqueue(request);
+        } else {
+            container.sendRequest(request);
+        }
+    }
+
     private static <T> List<T> findInObject(Object object, Class<T> klass) {
         if (klass.isInstance(object)) {
             List<T> wanted = new ArrayList<T>();
@@ -168,7 +220,7 @@ public class Database {
         // TODO: It is better to create a clone of the Record object, but
         // the Record class does not offer a clone method.
         Record record = (Record)object;
-        record.set((Map)Database.replaceObject(record.getData(), mapTable));
+        record.replace((Map)Database.replaceObject(record.getData(), mapTable));
         return record;
     }
 
@@ -181,7 +233,22 @@ public class Database {
         }
 
         if (assetsToUpload.size() > 0) {
-            this.uploadAssets(assetsToUpload, callback);
+            this.uploadAssets(assetsToUpload, new AssetsUploadResponseHandler() {
+                @Override
+                public void onUploadSuccess(Asset[] assets) {
+                    Map<Asset, Asset> savedAssets = new HashMap<>();
+                    for (Asset perAsset : assets) {
+                        savedAssets.put(perAsset, perAsset);
+                    }
+
+                    callback.onSuccess(savedAssets);
+                }
+
+                @Override
+                public void onUploadFail(Error error) {
+                    callback.onFailure(error);
+                }
+            });
         } else {
             callback.onSuccess(new HashMap<Asset, Asset>());
         }
@@ -245,10 +312,10 @@ public class Database {
             @Override
             public void onSuccess(Record[] result) {
                 Record theRecord = result[0];
-                RecordSaveRequest request = new RecordSaveRequest(theRecord, Database.this);
+                RecordSaveRequest request = Database.this.createSaveRequest(new Record[]{theRecord});
                 request.setResponseHandler(responseHandler);
 
-                Database.this.getContainer().sendRequest(request);
+                Database.this.sendMutationRequest(request);
             }
 
             @Override
@@ -271,10 +338,10 @@ public class Database {
         this.presave(records, new ResultHandling<Record[]>() {
             @Override
             public final void onSuccess(Record[] result) {
-                RecordSaveRequest request = new RecordSaveRequest(result, Database.this);
+                RecordSaveRequest request = Database.this.createSaveRequest(result);
                 request.setResponseHandler(responseHandler);
 
-                Database.this.getContainer().sendRequest(request);
+                Database.this.sendMutationRequest(request);
             }
 
             @Override
@@ -300,11 +367,11 @@ public class Database {
         this.presave(records, new ResultHandling<Record[]>() {
             @Override
             public final void onSuccess(Record[] result) {
-                RecordSaveRequest request = new RecordSaveRequest(result, Database.this);
+                RecordSaveRequest request = Database.this.createSaveRequest(result);
                 request.setAtomic(false);
                 request.setResponseHandler(responseHandler);
 
-                Database.this.getContainer().sendRequest(request);
+                Database.this.sendMutationRequest(request);
             }
 
             @Override
@@ -328,10 +395,25 @@ public class Database {
             String recordId,
             RecordFetchResponseHandler handler
     ) {
-        RecordFetchRequest request = new RecordFetchRequest(recordType, recordId, this);
-        request.setResponseHandler(handler);
+        this.fetchRecordById(recordType, recordId, RecordCachePolicy.NETWORK_ONLY, handler);
+    }
 
-        this.getContainer().sendRequest(request);
+    /**
+     * Fetch record by ID with a cache policy.
+     *
+     * @param recordType  the record type
+     * @param recordId    the record id
+     * @param cachePolicy the cache policy
+     * @param handler     the response handler
+     */
+    public void fetchRecordById(
+            String recordType,
+            String recordId,
+            RecordCachePolicy cachePolicy,
+            RecordFetchResponseHandler handler
+    ) {
+        RecordFetchRequest request = new RecordFetchRequest(recordType, recordId, this);
+        this.sendQueryRequest(request, cachePolicy, handler);
     }
 
     /**
@@ -346,10 +428,25 @@ public class Database {
             String[] recordIds,
             RecordsFetchResponseHandler handler
     ) {
-        RecordFetchRequest request = new RecordFetchRequest(recordType, recordIds, this);
-        request.setResponseHandler(handler);
+        this.fetchRecordById(recordType, recordIds, RecordCachePolicy.NETWORK_ONLY, handler);
+    }
 
-        this.getContainer().sendRequest(request);
+    /**
+     * Fetch records by ID with a cache policy.
+     *
+     * @param recordType  the record type
+     * @param recordIds   the record ids
+     * @param cachePolicy the cache policy
+     * @param handler     the response handler
+     */
+    public void fetchRecordById(
+            String recordType,
+            String[] recordIds,
+            RecordCachePolicy cachePolicy,
+            RecordsFetchResponseHandler handler
+    ) {
+        RecordFetchRequest request = new RecordFetchRequest(recordType, recordIds, this);
+        this.sendQueryRequest(request, cachePolicy, handler);
     }
 
     /**
@@ -359,10 +456,146 @@ public class Database {
      * @param handler the response handler
      */
     public void query(Query query, RecordQueryResponseHandler handler) {
+        this.query(query, RecordCachePolicy.NETWORK_ONLY, handler);
+    }
+
+    /**
+     * Query records with a cache policy.
+     * <p>
+     * Cached results are delivered to the handler before this method returns,
+     * without query info.
+     * </p>
+     *
+     * @param query       the query object
+     * @param cachePolicy the cache policy
+     * @param handler     the response handler
+     */
+    public void query(
+            Query query,
+            RecordCachePolicy cachePolicy,
+            RecordQueryResponseHandler handler
+    ) {
         RecordQueryRequest request = new RecordQueryRequest(query, this);
+        Configuration config = this.getContainer().getConfig();
+        if (config != null && config.lazyRecordDecoding) {
+            request.setLazyDecoding(true);
+        }
+
+        this.sendQueryRequest(request, cachePolicy, handler);
+    }
+
+    private void sendQueryRequest(
+            RecordQueryRequest request,
+            RecordCachePolicy cachePolicy,
+            RecordQueryResponseHandler handler
+    ) {
         request.setResponseHandler(handler);
 
-        this.getContainer().sendRequest(request);
+        if (handler != null && cachePolicy != RecordCachePolicy.NETWORK_ONLY) {
+            Record[] cachedRecords = request.getCachedResult();
+            if (cachedRecords != null) {
+                handler.onQueryResult(cachedRecords, null);
+                if (cachePolicy == RecordCachePolicy.CACHE_FIRST) {
+                    return;
+                }
+            }
+        }
+
+        Container container = this.getContainer();
+        Configuration config = container.getConfig();
+        if (request instanceof RecordFetchRequest
+                && config != null
+                && config.fetchBatchingWindow > 0
+                && RecordFetchBatcher.canBatch((RecordFetchRequest) request)) {
+            this.fetchBatcher.enqueue((RecordFetchRequest) request, config.fetchBatchingWindow);
+            return;
+        }
+
+        container.sendRequest(request);
+    }
+
+    /**
+     * Query all records matching a query, page by page.
+     * <p>
+     * The limit of the query is used as the page size. The next page is delivered
+     * to the handler after {@link RecordPager#next()} is called.
+     * </p>
+     *
+     * @param query   the query object
+     * @param handler the page handler
+     * @return the record pager
+     */
+    public RecordPager queryAll(Query query, RecordPageHandler handler) {
+        RecordPager pager = new RecordPager(query, this, handler);
+        pager.start();
+
+        return pager;
+    }
+
+    /**
+     * Subscribes to the changes of a record type.
+     * <p>
+     * Changes are received from the pubsub channel of the record type, which is expected
+     * to be published by the server, for example by cloud code after records are saved or
+     * deleted. Channels of the private database are scoped to the current user, in the form
+     * of <code>record-change/_private/&lt;user id&gt;/&lt;record type&gt;</code>.
+     * </p>
+     * <p>
+     * As pubsub events are not authenticated, an event only evicts the changed record from
+     * the record cache. The record is then fetched again, and the handler is called on the
+     * main thread with the fetched record, or with a deletion if it cannot be found.
+     * </p>
+     *
+     * @param recordType the record type
+     * @param handler    the handler
+     * @return the handler being registered
+     */
+    public RecordChangeHandler subscribeRecordChanges(
+            String recordType,
+            RecordChangeHandler handler
+    ) {
+        this.getRecordChangeDispatcher().subscribe(recordType, handler);
+        return handler;
+    }
+
+    /**
+     * Unsubscribes a handler from the changes of a record type.
+     *
+     * @param recordType the record type
+     * @param handler    the handler
+     * @return the handler being removed, null if it was not subscribed
+     */
+    public RecordChangeHandler unsubscribeRecordChanges(
+            String recordType,
+            RecordChangeHandler handler
+    ) {
+        if (this.getRecordChangeDispatcher().unsubscribe(recordType, handler)) {
+            return handler;
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the record change dispatcher.
+     *
+     * @return the record change dispatcher
+     */
+    RecordChangeDispatcher getRecordChangeDispatcher() {
+        if (this.recordChangeDispatcher == null) {
+            this.recordChangeDispatcher = new RecordChangeDispatcher(this);
+        }
+
+        return this.recordChangeDispatcher;
+    }
+
+    /**
+     * Moves the record change subscriptions to the channels of the current user.
+     */
+    void resubscribeRecordChanges() {
+        if (this.recordChangeDispatcher != null) {
+            this.recordChangeDispatcher.resubscribe();
+        }
     }
 
 
@@ -376,7 +609,7 @@ public class Database {
         RecordDeleteRequest request = new RecordDeleteRequest(new Record[]{record}, this);
         request.setResponseHandler(handler);
 
-        this.getContainer().sendRequest(request);
+        this.sendMutationRequest(request);
     }
 
     /**
@@ -389,7 +622,7 @@ public class Database {
         RecordDeleteRequest request = new RecordDeleteRequest(records, this);
         request.setResponseHandler(handler);
 
-        this.getContainer().sendRequest(request);
+        this.sendMutationRequest(request);
     }
 
     /**
@@ -403,7 +636,7 @@ public class Database {
         RecordDeleteRequest request = new RecordDeleteRequest(recordType, new String[]{recordID}, this);
         request.setResponseHandler(handler);
 
-        this.getContainer().sendRequest(request);
+        this.sendMutationRequest(request);
     }
 
     /**
@@ -417,7 +650,7 @@ public class Database {
         RecordDeleteRequest request = new RecordDeleteRequest(recordType, recordIDs, this);
         request.setResponseHandler(handler);
 
-        this.getContainer().sendRequest(request);
+        this.sendMutationRequest(request);
     }
 
     /**
@@ -436,7 +669,7 @@ public class Database {
         request.setAtomic(false);
         request.setResponseHandler(handler);
 
-        this.getContainer().sendRequest(request);
+        this.sendMutationRequest(request);
     }
 
     /**
@@ -453,7 +686,7 @@ public class Database {
         request.setAtomic(false);
         request.setResponseHandler(handler);
 
-        this.getContainer().sendRequest(request);
+        this.sendMutationRequest(request);
     }
 
     /**
@@ -465,13 +698,46 @@ public class Database {
     public void uploadAsset(
             final Asset asset,
             final AssetPostRequest.ResponseHandler responseHandler
+    ) {
+        this.uploadAsset(asset, null, responseHandler);
+    }
+
+    /**
+     * Upload asset, reusing the presigned post request saved under a key.
+     * <p>
+     * The upload is retried on network errors and server errors. If it still
+     * fails, uploading an asset with the same reuse key again, even after the
+     * app restarts, uploads to the same location without preparing again. See
+     * {@link AssetPostRequest#setReuseKey(String)}.
+     * </p>
+     *
+     * @param asset           the asset
+     * @param reuseKey        the key identifying the upload, null to not save the post request
+     * @param responseHandler the response handler
+     */
+    public void uploadAsset(
+            final Asset asset,
+            final String reuseKey,
+            final AssetPostRequest.ResponseHandler responseHandler
     ) {
         final RequestManager requestManager = this.getContainer().requestManager;
 
+        if (reuseKey != null) {
+            AssetPostRequest savedRequest = requestManager.getRetryingUploader()
+                    .restorePostRequest(asset, reuseKey);
+            if (savedRequest != null) {
+                savedRequest.setResponseHandler(responseHandler);
+                requestManager.sendAssetPostRequest(savedRequest);
+                return;
+            }
+        }
+
         AssetPreparePostRequest preparePostRequest = new AssetPreparePostRequest(asset);
         preparePostRequest.setResponseHandler(new AssetPreparePostResponseHandler(asset) {
             @Override
             public void onPreparePostSuccess(AssetPostRequest postRequest) {
+                postRequest.setReuseKey(reuseKey);
+                requestManager.getRetryingUploader().savePostRequest(postRequest);
                 postRequest.setResponseHandler(responseHandler);
                 requestManager.sendAssetPostRequest(postRequest);
             }
@@ -487,52 +753,51 @@ public class Database {
         requestManager.sendRequest(preparePostRequest);
     }
 
-    private void uploadAssets(
-            final List<Asset> assets,
-            final ResultHandling<Map<Asset, Asset>> callback
-    ) {
-        final RequestManager requestManager = this.getContainer().requestManager;
-
-        final Map<Asset, Asset> savedAssets = new HashMap<>();
-        final List<Error> errors = new ArrayList<Error>();
-        final List<Asset> allAssets = assets;
-        final Semaphore lock = new Semaphore(1);
-
-        for (final Asset asset : assets) {
-            AssetPostRequest.ResponseHandler handler = new AssetPostRequest.ResponseHandler() {
-                private void onAllFinished() {
-                    if (errors.isEmpty()) {
-                        callback.onSuccess(savedAssets);
-                    } else {
-                        callback.onFailure(errors.get(0));
-                    }
-                }
-
-                @Override
-                public void onPostSuccess(Asset savedAsset, String response) {
-                    lock.acquireUninterruptibly();
-                    savedAssets.put(asset, savedAsset);
-                    boolean allFinished = allAssets.size() >= savedAssets.size() + errors.size();
-                    lock.release();
-                    if (allFinished) {
-                        this.onAllFinished();
-                    }
-                }
-
-                @Override
-                public void onPostFail(Asset savedAsset, Error error) {
-                    lock.acquireUninterruptibly();
-                    errors.add(error);
-                    boolean allFinished = allAssets.size() >= savedAssets.size() + errors.size();
-                    lock.release();
-                    if (allFinished) {
-                        this.onAllFinished();
-                    }
-                }
-            };
+    /**
+     * Upload assets.
+     * <p>
+     * The number of uploads in flight is bounded by
+     * {@link Configuration#getMaxConcurrentAssetUploads()}. The upload fails on
+     * the first asset failing to upload, and the other uploads are cancelled.
+     * </p>
+     * <p>
+     * If {@link Configuration#isAssetDeduplication()} is enabled, assets with
+     * the same content as an asset uploaded before to the same endpoint are not
+     * uploaded again.
+     * </p>
+     *
+     * @param assets          the assets
+     * @param responseHandler the response handler
+     */
+    public void uploadAssets(Asset[] assets, AssetsUploadResponseHandler responseHandler) {
+        this.uploadAssets(Arrays.asList(assets), responseHandler);
+    }
 
-            this.uploadAsset(asset, handler);
+    private void uploadAssets(List<Asset> assets, AssetsUploadResponseHandler responseHandler) {
+        // the same asset may be referenced more than once
+        Set<Asset> uniqueAssets = Collections.newSetFromMap(new IdentityHashMap<Asset, Boolean>());
+        List<Asset> assetsToUpload = new ArrayList<>();
+        for (Asset perAsset : assets) {
+            if (uniqueAssets.add(perAsset)) {
+                assetsToUpload.add(perAsset);
+            }
         }
+
+        Configuration config = this.getContainer().getConfig();
+        int maxInFlight = config != null
+                ? config.maxConcurrentAssetUploads
+                : Configuration.DEFAULT_MAX_CONCURRENT_ASSET_UPLOADS;
+        boolean deduplication = config != null && config.assetDeduplication;
+
+        RequestManager requestManager = this.getContainer().requestManager;
+        new AssetUploadPipeline(
+                this,
+                assetsToUpload,
+                maxInFlight,
+                deduplication ? requestManager.getAssetDigestIndex() : null,
+                requestManager.endpoint,
+                responseHandler
+        ).start();
     }
 
     static class Factory {
@@ -17,9 +17,6 @@
 
 package io.skygear.skygear;
 
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -31,8 +28,12 @@ import java.util.Date;
  * This class converts between date object and JSON object in Skygear defined format.
  */
 public class DateSerializer {
-    private static DateTimeFormatter formatterWithMS = ISODateTimeFormat.dateTime().withZoneUTC();
-    private static DateTimeFormatter formatterWithoutMS = ISODateTimeFormat.dateTimeNoMillis().withZoneUTC();
+    private static final long MillisPerSecond = 1000L;
+    private static final long MillisPerDay = 24L * 60 * 60 * MillisPerSecond;
+
+    /* days from 0000-03-01 to 1970-01-01 in the proleptic Gregorian calendar */
+    private static final long EpochDayOffset = 719468L;
+    private static final long DaysPerEra = 146097L;
 
     /**
      * Serialize a date object.
@@ -91,28 +92,218 @@ public class DateSerializer {
 
     /**
      * Parse a date string to a Date object
+     * <p>
+     * The date string should be in ISO 8601 format, i.e. <code>yyyy-MM-ddTHH:mm:ss</code>
+     * followed by optional fraction of second and a zone designator, e.g.
+     * <code>2017-03-03T09:48:04.123Z</code> or <code>2017-03-03T09:48:04Z</code>.
+     * </p>
      * @param dateString the string representation of a date
      * @return the date object
+     * @throws IllegalArgumentException if the date string is malformed
      */
     static Date dateFromString(String dateString) {
-        try {
-            return DateSerializer.formatterWithMS.parseDateTime(dateString).toDate();
-        } catch (IllegalArgumentException e) {
-            /*
-             * In some rare case, dateString is in the format of `2017-03-03T09:48:04Z` and
-             * with that foramt, the `dateTime` formatter will throw `IllegalArgumentException`.
-             * Therefore, we try to parse the date with `dateTimeNoMillis` formatter
-             */
-            return DateSerializer.formatterWithoutMS.parseDateTime(dateString).toDate();
+        return new Date(DateSerializer.millisFromString(dateString));
+    }
+
+    private static long millisFromString(String dateString) {
+        int length = dateString.length();
+        if (length < 20
+                || dateString.charAt(4) != '-'
+                || dateString.charAt(7) != '-'
+                || dateString.charAt(10) != 'T'
+                || dateString.charAt(13) != ':'
+                || dateString.charAt(16) != ':'
+        ) {
+            throw DateSerializer.malformedDateString(dateString);
+        }
+
+        int year = DateSerializer.parseDigits(dateString, 0, 4);
+        int month = DateSerializer.parseDigits(dateString, 5, 2);
+        int day = DateSerializer.parseDigits(dateString, 8, 2);
+        int hour = DateSerializer.parseDigits(dateString, 11, 2);
+        int minute = DateSerializer.parseDigits(dateString, 14, 2);
+        int second = DateSerializer.parseDigits(dateString, 17, 2);
+
+        int position = 19;
+        int millis = 0;
+        if (dateString.charAt(position) == '.') {
+            position++;
+            int fractionStart = position;
+            int scale = 100;
+            while (position < length && DateSerializer.isDigit(dateString.charAt(position))) {
+                millis += (dateString.charAt(position) - '0') * scale;
+                scale /= 10;
+                position++;
+            }
+
+            int fractionLength = position - fractionStart;
+            if (fractionLength == 0 || fractionLength > 9) {
+                throw DateSerializer.malformedDateString(dateString);
+            }
+        }
+
+        if (position >= length) {
+            throw DateSerializer.malformedDateString(dateString);
         }
+
+        int offsetMinutes = 0;
+        char designator = dateString.charAt(position);
+        if (designator == 'Z') {
+            position++;
+        } else if (designator == '+' || designator == '-') {
+            position++;
+            int offsetHours = DateSerializer.parseDigits(dateString, position, 2);
+            position += 2;
+            if (position < length && dateString.charAt(position) == ':') {
+                position++;
+            }
+            if (position < length) {
+                offsetMinutes = DateSerializer.parseDigits(dateString, position, 2);
+                position += 2;
+            }
+
+            if (offsetHours > 23 || offsetMinutes > 59) {
+                throw DateSerializer.malformedDateString(dateString);
+            }
+
+            offsetMinutes += offsetHours * 60;
+            if (designator == '-') {
+                offsetMinutes = -offsetMinutes;
+            }
+        } else {
+            throw DateSerializer.malformedDateString(dateString);
+        }
+
+        if (position != length
+                || month < 1 || month > 12
+                || day < 1 || day > DateSerializer.daysInMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59
+        ) {
+            throw DateSerializer.malformedDateString(dateString);
+        }
+
+        long seconds = DateSerializer.daysFromCivil(year, month, day) * 86400L
+                + hour * 3600 + (minute - offsetMinutes) * 60 + second;
+
+        return seconds * MillisPerSecond + millis;
     }
 
     /**
      * Serialize a Date object to string
+     * <p>
+     * The string is in ISO 8601 format in UTC with milliseconds, e.g.
+     * <code>2017-03-03T09:48:04.123Z</code>.
+     * </p>
      * @param date the date object
      * @return the string representation of a date
      */
     static String stringFromDate(Date date) {
-        return DateSerializer.formatterWithMS.print(new DateTime(date));
+        long time = date.getTime();
+        long days = time / MillisPerDay;
+        long millisOfDay = time % MillisPerDay;
+        if (millisOfDay < 0) {
+            days--;
+            millisOfDay += MillisPerDay;
+        }
+
+        // civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        long shiftedDays = days + EpochDayOffset;
+        long era = (shiftedDays >= 0 ? shiftedDays : shiftedDays - DaysPerEra + 1) / DaysPerEra;
+        int dayOfEra = (int) (shiftedDays - era * DaysPerEra);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        int millis = (int) millisOfDay;
+        char[] buffer = new char[24];
+        buffer[4] = '-';
+        DateSerializer.printDigits(buffer, 5, month, 2);
+        buffer[7] = '-';
+        DateSerializer.printDigits(buffer, 8, day, 2);
+        buffer[10] = 'T';
+        DateSerializer.printDigits(buffer, 11, millis / 3600000, 2);
+        buffer[13] = ':';
+        DateSerializer.printDigits(buffer, 14, millis / 60000 % 60, 2);
+        buffer[16] = ':';
+        DateSerializer.printDigits(buffer, 17, millis / 1000 % 60, 2);
+        buffer[19] = '.';
+        DateSerializer.printDigits(buffer, 20, millis % 1000, 3);
+        buffer[23] = 'Z';
+
+        if (year < 0 || year > 9999) {
+            // out of the range of the server format, only happens for unusual dates
+            String yearString = String.valueOf(Math.abs(year));
+            while (yearString.length() < 4) {
+                yearString = "0" + yearString;
+            }
+
+            return (year < 0 ? "-" : "") + yearString + new String(buffer, 4, buffer.length - 4);
+        }
+
+        DateSerializer.printDigits(buffer, 0, (int) year, 4);
+
+        return new String(buffer);
+    }
+
+    private static long daysFromCivil(long year, int month, int day) {
+        // days from civil, see http://howardhinnant.github.io/date_algorithms.html
+        long shiftedYear = month <= 2 ? year - 1 : year;
+        long era = (shiftedYear >= 0 ? shiftedYear : shiftedYear - 399) / 400;
+        long yearOfEra = shiftedYear - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * DaysPerEra + dayOfEra - EpochDayOffset;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean isLeapYear = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return isLeapYear ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int parseDigits(String string, int start, int count) {
+        if (start + count > string.length()) {
+            throw DateSerializer.malformedDateString(string);
+        }
+
+        int value = 0;
+        for (int idx = start; idx < start + count; idx++) {
+            char c = string.charAt(idx);
+            if (!DateSerializer.isDigit(c)) {
+                throw DateSerializer.malformedDateString(string);
+            }
+
+            value = value * 10 + (c - '0');
+        }
+
+        return value;
+    }
+
+    private static void printDigits(char[] buffer, int start, int value, int count) {
+        for (int idx = start + count - 1; idx >= start; idx--) {
+            buffer[idx] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static IllegalArgumentException malformedDateString(String dateString) {
+        return new IllegalArgumentException("Invalid format: \"" + dateString + "\"");
     }
 }
@@ -48,6 +48,8 @@ public class LambdaRequest extends Request {
             Map.class
     ));
 
+    private boolean idempotent = false;
+
     protected LambdaRequest(String name, Object args) {
         super(name);
 
@@ -105,6 +107,24 @@ public class LambdaRequest extends Request {
         this(name, (Object)args);
     }
 
+    /**
+     * Sets whether the lambda function is idempotent.
+     * <p>
+     * Identical idempotent lambda requests in flight at the same time share a
+     * single HTTP request. Lambda requests are not idempotent by default.
+     * </p>
+     *
+     * @param idempotent the boolean
+     */
+    public void setIdempotent(boolean idempotent) {
+        this.idempotent = idempotent;
+    }
+
+    @Override
+    public boolean isIdempotent() {
+        return this.idempotent;
+    }
+
     @Override
     public void onResponse(JSONObject response) {
         ResponseHandler responseHandler = this.getResponseHandler();
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * The Skygear Live Query.
+ * <p>
+ * A live query keeps the latest result of a query. Each time the query is refreshed,
+ * for example after a pubsub notification, the new result is compared with the
+ * previous one in background, and the listener receives the new records together
+ * with a {@link RecordDiff}, so that a list can be updated incrementally.
+ * </p>
+ * <p>
+ * Results are delivered on the main thread, in the order the queries complete. Each
+ * diff is computed against the records of the previous delivery.
+ * </p>
+ * <p>
+ * After {@link #subscribe()}, the live query follows the record changes of its record
+ * type. Deleted records are removed from the result locally. Updated records in the
+ * result are replaced locally only if the query has neither predicates nor sort
+ * orders. Other changes may affect which records match the query, or their order,
+ * so they refresh the query instead.
+ * </p>
+ */
+public class LiveQuery {
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final Database database;
+    private final Query query;
+    private final Handler mainHandler;
+
+    private final RecordChangeHandler recordChangeHandler;
+
+    private Listener listener;
+    private boolean subscribed;
+    private boolean refreshing;
+    private boolean refreshQueued;
+
+    /**
+     * The records of the latest delivery, only accessed on the main thread.
+     */
+    private Record[] records;
+
+    /**
+     * The records the next diff is computed against, only accessed by the diff executor.
+     */
+    private Record[] diffBase;
+
+    /**
+     * Instantiates a new Live Query.
+     *
+     * @param database the database
+     * @param query    the query, which is copied
+     */
+    public LiveQuery(Database database, Query query) {
+        super();
+
+        this.database = database;
+        this.query = new Query(query);
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.records = new Record[0];
+        this.diffBase = new Record[0];
+        this.recordChangeHandler = new RecordChangeHandler() {
+            @Override
+            public void onRecordChange(RecordChange change) {
+                LiveQuery.this.onRecordChange(change);
+            }
+        };
+    }
+
+    /**
+     * Gets the query.
+     *
+     * @return the query
+     */
+    public Query getQuery() {
+        return this.query;
+    }
+
+    /**
+     * Gets the records of the latest result.
+     *
+     * @return the records
+     */
+    public Record[] getRecords() {
+        return Arrays.copyOf(this.records, this.records.length);
+    }
+
+    /**
+     * Sets the listener.
+     *
+     * @param listener the listener
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Runs the query again.
+     * <p>
+     * If a query is in flight, it is run again once after the current one completes.
+     * </p>
+     */
+    public void refresh() {
+        if (this.refreshing) {
+            this.refreshQueued = true;
+            return;
+        }
+
+        this.refreshing = true;
+        this.database.query(this.query, new RecordQueryResponseHandler() {
+            @Override
+            public void onQuerySuccess(Record[] records) {
+                LiveQuery.this.onQueryResult(records);
+                LiveQuery.this.onRefreshDone();
+            }
+
+            @Override
+            public void onQueryError(Error error) {
+                if (LiveQuery.this.listener != null) {
+                    LiveQuery.this.listener.onError(error);
+                }
+                LiveQuery.this.onRefreshDone();
+            }
+        });
+    }
+
+    private void onRefreshDone() {
+        this.refreshing = false;
+        if (this.refreshQueued) {
+            this.refreshQueued = false;
+            this.refresh();
+        }
+    }
+
+    /**
+     * Follows the record changes of the record type of the query.
+     */
+    public void subscribe() {
+        if (!this.subscribed) {
+            this.database.subscribeRecordChanges(this.query.getType(), this.recordChangeHandler);
+            this.subscribed = true;
+        }
+    }
+
+    /**
+     * Stops following the record changes.
+     */
+    public void unsubscribe() {
+        if (this.subscribed) {
+            this.database.unsubscribeRecordChanges(this.query.getType(), this.recordChangeHandler);
+            this.subscribed = false;
+        }
+    }
+
+    /**
+     * Compares the records with the previous result in background, and then
+     * delivers them with the diff on the main thread.
+     *
+     * @param records the records
+     */
+    void onQueryResult(final Record[] records) {
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                LiveQuery.this.update(records);
+            }
+        });
+    }
+
+    /**
+     * Patches the result with a record change in background, or refreshes the query
+     * if the change cannot be applied locally.
+     *
+     * @param change the change
+     */
+    void onRecordChange(final RecordChange change) {
+        DIFF_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Record[] base = LiveQuery.this.diffBase;
+                Record[] patched = LiveQuery.patch(LiveQuery.this.query, base, change);
+                if (patched == null) {
+                    LiveQuery.this.mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            LiveQuery.this.refresh();
+                        }
+                    });
+                } else if (patched != base) {
+                    LiveQuery.this.update(patched);
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies a record change to a result.
+     *
+     * @param query   the query of the result
+     * @param records the records
+     * @param change  the change
+     * @return the patched records, the same records if the change does not affect them,
+     * or null if the query should be run again
+     */
+    static Record[] patch(Query query, Record[] records, RecordChange change) {
+        String id = change.getRecord().getId();
+        int index = -1;
+        for (int idx = 0; idx < records.length; idx++) {
+            if (records[idx].getId().equals(id)) {
+                index = idx;
+                break;
+            }
+        }
+
+        switch (change.getType()) {
+            case DELETED:
+                if (index < 0) {
+                    return records;
+                }
+
+                Record[] remaining = new Record[records.length - 1];
+                System.arraycopy(records, 0, remaining, 0, index);
+                System.arraycopy(records, index + 1, remaining, index, remaining.length - index);
+                return remaining;
+            case UPDATED:
+                // the updated record may no longer match the predicates, or be out of order
+                if (index < 0
+                        || query.getPredicateJson().length() > 0
+                        || query.getSortPredicateJson().length() > 0) {
+                    return null;
+                }
+
+                Record[] updated = Arrays.copyOf(records, records.length);
+                updated[index] = change.getRecord();
+                return updated;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Computes the diff from the previous result, on the diff executor.
+     *
+     * @param records the records
+     */
+    private void update(final Record[] records) {
+        final RecordDiff diff = RecordDiff.compute(this.diffBase, records);
+        this.diffBase = records;
+
+        this.mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                LiveQuery.this.deliver(records, diff);
+            }
+        });
+    }
+
+    private void deliver(Record[] records, RecordDiff diff) {
+        this.records = records;
+        if (this.listener != null) {
+            this.listener.onResultUpdate(this.getRecords(), diff);
+        }
+    }
+
+    /**
+     * The Live Query Listener.
+     */
+    public interface Listener {
+        /**
+         * Result update callback.
+         *
+         * @param records the records of the new result
+         * @param diff    the updates from the previous result to the new one
+         */
+        void onResultUpdate(Record[] records, RecordDiff diff);
+
+        /**
+         * Error callback.
+         *
+         * @param error the error
+         */
+        void onError(Error error);
+    }
+}
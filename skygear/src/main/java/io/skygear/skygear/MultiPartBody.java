@@ -0,0 +1,290 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The multipart/form-data body of an asset upload.
+ * <p>
+ * The body is written directly from the asset input stream, so that the asset
+ * data is never copied to a temporary file or buffered in memory. Assets backed
+ * by a file descriptor are transferred through a file channel.
+ * </p>
+ */
+class MultiPartBody {
+    private static final String CHARSET = "utf-8";
+    private static final String LINE_END = "\r\n";
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final String boundary;
+    private final Map<String, String> fields;
+    private final String fileField;
+    private final Asset asset;
+    private ProgressListener progressListener;
+
+    /**
+     * Instantiates a new multipart body.
+     *
+     * @param fields    the string fields
+     * @param fileField the name of the file field
+     * @param asset     the asset
+     */
+    MultiPartBody(Map<String, String> fields, String fileField, Asset asset) {
+        super();
+
+        this.boundary = "Skygear-" + UUID.randomUUID().toString();
+        this.fields = new LinkedHashMap<>(fields);
+        this.fileField = fileField;
+        this.asset = asset;
+    }
+
+    /**
+     * Gets the asset.
+     *
+     * @return the asset
+     */
+    Asset getAsset() {
+        return this.asset;
+    }
+
+    /**
+     * Gets the string fields.
+     *
+     * @return the fields
+     */
+    Map<String, String> getFields() {
+        return this.fields;
+    }
+
+    /**
+     * Sets the progress listener, which is called while the body is written.
+     *
+     * @param progressListener the progress listener
+     */
+    void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Gets the content type, including the boundary.
+     *
+     * @return the content type
+     */
+    String getContentType() {
+        return "multipart/form-data; boundary=" + this.boundary;
+    }
+
+    /**
+     * Gets the content length.
+     *
+     * @return the content length, or -1 if the asset size is unknown
+     */
+    long getContentLength() {
+        if (this.asset.getSize() <= 0) {
+            return -1;
+        }
+
+        return this.getPreamble().length + this.asset.getSize() + this.getEpilogue().length;
+    }
+
+    /**
+     * Writes the body to an output stream.
+     * <p>
+     * The asset input stream is kept open, so that a failed upload can be sent
+     * again. It is closed by {@link AssetPostRequest} when the upload is done.
+     * </p>
+     *
+     * @param outputStream the output stream
+     * @throws IOException the IO exception
+     */
+    void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(this.getPreamble());
+
+        OutputStream dataStream = outputStream;
+        if (this.progressListener != null) {
+            dataStream = new ProgressOutputStream(outputStream, this.asset.getSize(), this.progressListener);
+        }
+
+        InputStream inputStream = this.asset.inputStream;
+        if (inputStream instanceof FileInputStream && this.asset.getSize() > 0) {
+            MultiPartBody.transfer((FileInputStream) inputStream, this.asset.getSize(), dataStream);
+        } else {
+            MultiPartBody.copy(inputStream, dataStream);
+        }
+        dataStream.flush();
+
+        outputStream.write(this.getEpilogue());
+        outputStream.flush();
+    }
+
+    /**
+     * Writes the body to a byte array.
+     * <p>
+     * This is only used by HTTP stacks that cannot stream a request body.
+     * </p>
+     *
+     * @return the body
+     * @throws IOException the IO exception
+     */
+    byte[] toByteArray() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        this.writeTo(outputStream);
+
+        return outputStream.toByteArray();
+    }
+
+    private byte[] getPreamble() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, String> perField : this.fields.entrySet()) {
+            builder.append("--").append(this.boundary).append(LINE_END)
+                    .append("Content-Disposition: form-data; name=\"")
+                    .append(perField.getKey()).append("\"").append(LINE_END)
+                    .append(LINE_END)
+                    .append(perField.getValue()).append(LINE_END);
+        }
+
+        builder.append("--").append(this.boundary).append(LINE_END)
+                .append("Content-Disposition: form-data; name=\"")
+                .append(this.fileField).append("\"; filename=\"")
+                .append(this.asset.getName()).append("\"").append(LINE_END)
+                .append("Content-Type: ").append(this.asset.getMimeType()).append(LINE_END)
+                .append(LINE_END);
+
+        return MultiPartBody.encode(builder.toString());
+    }
+
+    private byte[] getEpilogue() {
+        return MultiPartBody.encode(LINE_END + "--" + this.boundary + "--" + LINE_END);
+    }
+
+    private static byte[] encode(String string) {
+        try {
+            return string.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            return string.getBytes();
+        }
+    }
+
+    private static void transfer(
+            FileInputStream inputStream,
+            long size,
+            OutputStream outputStream
+    ) throws IOException {
+        FileChannel channel = inputStream.getChannel();
+        WritableByteChannel target = Channels.newChannel(outputStream);
+
+        long position = channel.position();
+        long transferred = 0;
+        while (transferred < size) {
+            long count = channel.transferTo(position + transferred, size - transferred, target);
+            if (count <= 0) {
+                throw new IOException(String.format(
+                        "Fail to transfer asset content: %d of %d bytes written",
+                        transferred,
+                        size
+                ));
+            }
+
+            transferred += count;
+        }
+    }
+
+    private static void copy(InputStream inputStream, OutputStream outputStream) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int length; (length = inputStream.read(buffer)) != -1; ) {
+            outputStream.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * The Multipart Body Progress Listener.
+     */
+    interface ProgressListener {
+        /**
+         * Progress callback.
+         *
+         * @param bytesWritten the number of body bytes written
+         * @param totalBytes   the asset size
+         */
+        void onProgress(long bytesWritten, long totalBytes);
+    }
+
+    /**
+     * The output stream counting the asset bytes written. Progress is reported
+     * at most every {@link #PROGRESS_INTERVAL} bytes, and when flushed.
+     */
+    private static class ProgressOutputStream extends FilterOutputStream {
+        private static final long PROGRESS_INTERVAL = 256 * 1024;
+
+        private final long totalBytes;
+        private final ProgressListener listener;
+        private long bytesWritten;
+        private long bytesReported;
+
+        ProgressOutputStream(OutputStream outputStream, long totalBytes, ProgressListener listener) {
+            super(outputStream);
+
+            this.totalBytes = totalBytes;
+            this.listener = listener;
+        }
+
+        @Override
+        public void write(int oneByte) throws IOException {
+            this.out.write(oneByte);
+            this.onWritten(1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            this.out.write(buffer, offset, length);
+            this.onWritten(length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            super.flush();
+
+            if (this.bytesReported != this.bytesWritten) {
+                this.bytesReported = this.bytesWritten;
+                this.listener.onProgress(this.bytesWritten, this.totalBytes);
+            }
+        }
+
+        private void onWritten(int length) {
+            this.bytesWritten += length;
+            if (this.bytesWritten - this.bytesReported >= PROGRESS_INTERVAL) {
+                this.bytesReported = this.bytesWritten;
+                this.listener.onProgress(this.bytesWritten, this.totalBytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.NetworkError;
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.ParseError;
+import com.android.volley.Response;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+
+/**
+ * The OkHttp Transport.
+ * <p>
+ * All requests share one connection pool, so that concurrent requests to a server
+ * supporting HTTP/2 are multiplexed over a single connection.
+ * </p>
+ */
+class OkHttpTransport implements Transport {
+    private static final String PROTOCOL_CHARSET = "utf-8";
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json");
+    private static final int MAX_REQUESTS_PER_HOST = 64;
+
+    private final OkHttpClient client;
+    private final Handler mainHandler;
+    private OkHttpClient timeoutClient;
+    private OkHttpClient uploadClient;
+
+    /**
+     * Instantiates a new OkHttp Transport.
+     */
+    OkHttpTransport() {
+        this(new OkHttpClient());
+    }
+
+    /**
+     * Instantiates a new OkHttp Transport with a client.
+     *
+     * @param client the client
+     */
+    OkHttpTransport(OkHttpClient client) {
+        super();
+
+        client.dispatcher().setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+        this.client = client;
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Gets the client for requests of which the whole call is limited by the timeout.
+     *
+     * @param timeout the timeout in milliseconds
+     * @return the client
+     */
+    private synchronized OkHttpClient getClient(int timeout) {
+        if (timeout <= 0) {
+            return this.client;
+        }
+
+        if (this.timeoutClient == null || this.timeoutClient.callTimeoutMillis() != timeout) {
+            // derived clients share the connection pool and dispatcher
+            this.timeoutClient = OkHttpTransport.withTimeout(this.client, timeout)
+                    .callTimeout(timeout, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+
+        return this.timeoutClient;
+    }
+
+    /**
+     * Gets the client for uploads, of which only each read or write is limited by the timeout.
+     *
+     * @param timeout the timeout in milliseconds
+     * @return the client
+     */
+    private synchronized OkHttpClient getUploadClient(int timeout) {
+        if (timeout <= 0) {
+            return this.client;
+        }
+
+        if (this.uploadClient == null || this.uploadClient.readTimeoutMillis() != timeout) {
+            this.uploadClient = OkHttpTransport.withTimeout(this.client, timeout).build();
+        }
+
+        return this.uploadClient;
+    }
+
+    private static OkHttpClient.Builder withTimeout(OkHttpClient client, int timeout) {
+        // otherwise the default timeouts of 10 seconds apply
+        return client.newBuilder()
+                .connectTimeout(timeout, TimeUnit.MILLISECONDS)
+                .readTimeout(timeout, TimeUnit.MILLISECONDS)
+                .writeTimeout(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public <T> void sendRequest(
+            String url,
+            Map<String, String> headers,
+            byte[] body,
+            int timeout,
+            final ResponseParser<T> parser,
+            final Response.Listener<T> listener,
+            final Response.ErrorListener errorListener
+    ) {
+        Request httpRequest = new Request.Builder()
+                .url(url)
+                .headers(Headers.of(headers))
+                .post(RequestBody.create(JSON_MEDIA_TYPE, body))
+                .build();
+
+        this.getClient(timeout).newCall(httpRequest).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                OkHttpTransport.this.deliverError(errorListener, OkHttpTransport.toVolleyError(e));
+            }
+
+            @Override
+            public void onResponse(Call call, okhttp3.Response response) {
+                try {
+                    VolleyError error = OkHttpTransport.toVolleyError(response);
+                    if (error != null) {
+                        OkHttpTransport.this.deliverError(errorListener, error);
+                        return;
+                    }
+
+                    final T result;
+                    try {
+                        result = parser.parse(
+                                response.body().byteStream(),
+                                OkHttpTransport.charsetOf(response.body())
+                        );
+                    } catch (IOException | JSONException | IllegalStateException e) {
+                        OkHttpTransport.this.deliverError(errorListener, new ParseError(e));
+                        return;
+                    }
+
+                    OkHttpTransport.this.mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onResponse(result);
+                        }
+                    });
+                } finally {
+                    response.close();
+                }
+            }
+        });
+    }
+
+    @Override
+    public Cancellable sendMultiPartRequest(
+            String url,
+            Map<String, String> headers,
+            Map<String, String> fields,
+            String fileField,
+            Asset asset,
+            int timeout,
+            MultiPartBody.ProgressListener progressListener,
+            final Response.Listener<String> listener,
+            final Response.ErrorListener errorListener
+    ) {
+        MultiPartBody body = new MultiPartBody(fields, fileField, asset);
+        body.setProgressListener(progressListener);
+
+        Request httpRequest = new Request.Builder()
+                .url(url)
+                .headers(Headers.of(headers))
+                .post(new MultiPartRequestBody(body))
+                .build();
+
+        final Call httpCall = this.getUploadClient(timeout).newCall(httpRequest);
+        httpCall.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (call.isCanceled()) {
+                    return;
+                }
+
+                OkHttpTransport.this.deliverError(errorListener, OkHttpTransport.toVolleyError(e));
+            }
+
+            @Override
+            public void onResponse(Call call, okhttp3.Response response) {
+                try {
+                    VolleyError error = OkHttpTransport.toVolleyError(response);
+                    if (error != null) {
+                        OkHttpTransport.this.deliverError(errorListener, error);
+                        return;
+                    }
+
+                    final String result;
+                    try {
+                        result = response.body().string();
+                    } catch (IOException e) {
+                        OkHttpTransport.this.deliverError(errorListener, new ParseError(e));
+                        return;
+                    }
+
+                    OkHttpTransport.this.mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onResponse(result);
+                        }
+                    });
+                } finally {
+                    response.close();
+                }
+            }
+        });
+
+        return new Cancellable() {
+            @Override
+            public void cancel() {
+                httpCall.cancel();
+            }
+        };
+    }
+
+    private void deliverError(final Response.ErrorListener errorListener, final VolleyError error) {
+        this.mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                errorListener.onErrorResponse(error);
+            }
+        });
+    }
+
+    private static String charsetOf(ResponseBody body) {
+        MediaType contentType = body.contentType();
+        if (contentType == null) {
+            return PROTOCOL_CHARSET;
+        }
+
+        Charset charset = contentType.charset();
+        return charset == null ? PROTOCOL_CHARSET : charset.name();
+    }
+
+    private static VolleyError toVolleyError(IOException e) {
+        if (e instanceof ConnectException || e instanceof UnknownHostException) {
+            return new NoConnectionError(e);
+        }
+
+        // including socket timeouts and call timeouts
+        if (e instanceof InterruptedIOException) {
+            return new TimeoutError();
+        }
+
+        return new NetworkError(e);
+    }
+
+    private static VolleyError toVolleyError(okhttp3.Response response) {
+        if (response.isSuccessful()) {
+            return null;
+        }
+
+        byte[] data;
+        try {
+            data = response.body().bytes();
+        } catch (IOException e) {
+            data = new byte[0];
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        Headers responseHeaders = response.headers();
+        for (int idx = 0; idx < responseHeaders.size(); idx++) {
+            headers.put(responseHeaders.name(idx), responseHeaders.value(idx));
+        }
+
+        NetworkResponse networkResponse = new NetworkResponse(
+                response.code(),
+                data,
+                headers,
+                false
+        );
+
+        if (response.code() == 401 || response.code() == 403) {
+            return new AuthFailureError(networkResponse);
+        }
+
+        return new ServerError(networkResponse);
+    }
+
+    /**
+     * The request body streaming a multipart body.
+     */
+    private static class MultiPartRequestBody extends RequestBody {
+        private final MultiPartBody body;
+
+        private MultiPartRequestBody(MultiPartBody body) {
+            this.body = body;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return MediaType.parse(this.body.getContentType());
+        }
+
+        @Override
+        public long contentLength() {
+            return this.body.getContentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            this.body.writeTo(sink.outputStream());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Skygear Pubsub Batch Handler.
+ * <p>
+ * A batch handler receives the events of a channel that arrive between two
+ * deliveries in a single call, instead of one call per event. The events are in
+ * the order they are received on the channel.
+ * </p>
+ * <p>
+ * Events of different channels are delivered channel by channel, so an event may
+ * be delivered before an event of another channel received earlier. Publish to
+ * a single channel if the order across them matters.
+ * </p>
+ */
+public abstract class PubsubBatchHandler implements PubsubHandler {
+    /**
+     * The Batch Handle Function.
+     *
+     * @param events the data of the events, in the order they are received
+     */
+    public abstract void handle(List<JSONObject> events);
+
+    /**
+     * Handles a single event as a batch of one.
+     *
+     * @param data the data
+     */
+    @Override
+    public void handle(JSONObject data) {
+        this.handle(Collections.singletonList(data));
+    }
+}
@@ -18,7 +18,6 @@
 package io.skygear.skygear;
 
 import android.content.Context;
-import android.os.HandlerThread;
 import android.os.Handler;
 import android.util.Log;
 
@@ -29,17 +28,17 @@ import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.InvalidParameterException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.Queue;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The Skygear PubsubClient.
  */
-class PubsubClient implements WebSocketClientImpl.EventHandler {
+class PubsubClient implements
+        WebSocketClientImpl.EventHandler,
+        ConnectivityMonitor.Listener,
+        PubsubDispatcher.Callback
+{
     /**
      * The constant to indicate infinite retry limit.
      */
@@ -50,16 +49,12 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
     public static final long MIN_RETRY_WAIT = 100;
 
     private static final String TAG = "Skygear SDK";
-    private static final long DEFAULT_RETRY_LIMIT = RETRY_LIMIT_INFINITE;
-    private static final long DEFAULT_RETRY_WAIT = 3000;
+    private static final int FLUSH_BATCH_SIZE = 50;
 
     /**
-     * The Handlers Map
-     * <p>
-     * Mapping Channel Name to PubsubClient Handlers
-     * </p>
+     * The Subscriptions, mapping Channel Name to PubsubClient Handlers.
      */
-    final Map<String, Set<PubsubHandler>> handlers;
+    final PubsubSubscriptionRegistry subscriptions;
 
     private URI uri;
     private String apiKey;
@@ -67,18 +62,37 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
     private WeakReference<Container> containerRef;
     private WeakReference<PubsubListener> listenerRef;
     private boolean handlerExecutionInBackground;
-    private HandlerThread backgroundThread;
+    private PubsubDispatcher dispatcher;
     private boolean connectAutomatically;
+    private long retryLimit;
+    private ReconnectBackoff backoff;
+    private ConnectivityMonitor connectivityMonitor;
+    private boolean monitoringConnectivity;
+    private boolean waitingForNetwork;
+    private Handler reconnectHandler;
+    private final Runnable reconnectRunnable;
 
     /**
      * The WebSocket Client.
      */
-    WebSocketClient webSocket;
+    volatile WebSocketClient webSocket;
+
+    /**
+     * The Pending Messages, published while disconnected.
+     */
+    PubsubOutbox pendingMessages;
 
     /**
-     * The Pending Messages.
+     * The lock of {@link #flushing}, also held while a message is sent directly
+     * by {@link #publish(String, JSONObject)}.
      */
-    Queue<Message> pendingMessages;
+    private final Object flushLock = new Object();
+
+    /**
+     * Whether the pending messages are being flushed. While flushing, published
+     * messages are only queued up, so that they are sent after the pending ones.
+     */
+    private boolean flushing;
 
     /**
      * Instantiates a new Skygear PubsubClient.
@@ -93,11 +107,28 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
 
         this.containerRef = new WeakReference<>(container);
         this.listenerRef = new WeakReference<>(null);
-        this.handlers = new HashMap<>();
-        this.pendingMessages = new LinkedList<>();
+        this.subscriptions = new PubsubSubscriptionRegistry();
+        this.pendingMessages = new PubsubOutbox(
+                Configuration.DEFAULT_PUBSUB_OUTBOX_CAPACITY,
+                PubsubOverflowPolicy.DROP_OLDEST,
+                null
+        );
         this.retryCount = 0;
         this.handlerExecutionInBackground = false;
+        this.dispatcher = new PubsubDispatcher(this, false);
         this.connectAutomatically = true;
+        this.retryLimit = RETRY_LIMIT_INFINITE;
+        this.backoff = new ReconnectBackoff(
+                Configuration.DEFAULT_PUBSUB_RECONNECT_BASE_DELAY,
+                Configuration.DEFAULT_PUBSUB_RECONNECT_MAX_DELAY
+        );
+        this.connectivityMonitor = container.connectivityMonitor;
+        this.reconnectRunnable = new Runnable() {
+            @Override
+            public void run() {
+                PubsubClient.this.reconnect();
+            }
+        };
 
         Configuration config = container.getConfig();
         if (config != null) {
@@ -146,14 +177,48 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
                 this.apiKey
         ));
 
-        this.handlerExecutionInBackground = config.isPubsubHandlerExecutionInBackground();
+        boolean handlerExecutionInBackground = config.isPubsubHandlerExecutionInBackground();
+        if (handlerExecutionInBackground != this.handlerExecutionInBackground) {
+            this.handlerExecutionInBackground = handlerExecutionInBackground;
+            this.dispatcher = new PubsubDispatcher(this, handlerExecutionInBackground);
+        }
         this.connectAutomatically = config.isPubsubConnectAutomatically();
+        this.retryLimit = config.getPubsubReconnectRetryLimit();
+        this.backoff = new ReconnectBackoff(
+                config.getPubsubReconnectBaseDelay(),
+                config.getPubsubReconnectMaxDelay()
+        );
+        this.configurePendingMessages(config);
 
         if (this.connectAutomatically) {
+            this.startMonitoringConnectivity();
             this.connect();
+        } else {
+            this.stopMonitoringConnectivity();
         }
     }
 
+    private void configurePendingMessages(Configuration config) {
+        PubsubOutbox outbox = new PubsubOutbox(
+                config.getPubsubOutboxCapacity(),
+                config.getPubsubOutboxOverflowPolicy(),
+                config.isPubsubOutboxPersistent() ? this.getContainer().getContext() : null,
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        // the restored messages are not sent by the flush on connect
+                        if (PubsubClient.this.isConnected()) {
+                            PubsubClient.this.flushPendingMessages();
+                        }
+                    }
+                }
+        );
+
+        PubsubOutbox previousOutbox = this.pendingMessages;
+        this.pendingMessages = outbox;
+        previousOutbox.transferTo(outbox);
+    }
+
     /**
      * Gets container.
      *
@@ -183,7 +248,7 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
      * @return the retry limit
      */
     long getRetryLimit() {
-        return DEFAULT_RETRY_LIMIT;
+        return this.retryLimit;
     }
 
     /**
@@ -192,16 +257,30 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
      * @return the retry wait time
      */
     long getRetryWaitTime() {
-        return DEFAULT_RETRY_WAIT;
+        return this.backoff.getBaseDelay();
     }
 
     private long getBoundedRetryWaitTime() {
-        long retryWaitTime = this.getRetryWaitTime();
-        if (retryWaitTime < MIN_RETRY_WAIT) {
-            return MIN_RETRY_WAIT;
-        }
+        return Math.max(this.getRetryWaitTime(), MIN_RETRY_WAIT);
+    }
+
+    /**
+     * Gets the jittered backoff delay before the next reconnection attempt.
+     *
+     * @return the delay in milliseconds
+     */
+    long getBackoffRetryWaitTime() {
+        long attempt = Math.max(this.retryCount - 1, 0);
+        return Math.max(this.backoff.getDelay(attempt), MIN_RETRY_WAIT);
+    }
 
-        return retryWaitTime;
+    /**
+     * Checks whether reconnection is paused until a network is available.
+     *
+     * @return the boolean
+     */
+    boolean isWaitingForNetwork() {
+        return this.waitingForNetwork;
     }
 
     /**
@@ -226,6 +305,7 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
      * Connect.
      */
     void connect() {
+        this.cancelDelayedReconnect();
         this.retryCount = 0;
         this.webSocket = null;
         this.reconnect();
@@ -238,6 +318,14 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
             return;
         }
 
+        if (this.connectivityMonitor != null && !this.connectivityMonitor.isConnected()) {
+            Log.i(TAG, "PubsubClient reconnection paused until a network is available");
+            this.waitingForNetwork = true;
+            return;
+        }
+
+        this.waitingForNetwork = false;
+
         if (this.isConnecting()) {
             long retryWaitTime = this.getBoundedRetryWaitTime();
 
@@ -270,15 +358,60 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
     private void delayReconnect(long delay) {
         Log.i(TAG, String.format("PubsubClient reconnect in %dms", delay));
 
-        Context context = this.getContainer().getContext();
-        Handler handler = new android.os.Handler(context.getMainLooper());
+        Handler handler = this.getReconnectHandler();
+        handler.removeCallbacks(this.reconnectRunnable);
+        handler.postDelayed(this.reconnectRunnable, delay);
+    }
 
-        handler.postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                PubsubClient.this.reconnect();
-            }
-        }, delay);
+    private synchronized void cancelDelayedReconnect() {
+        if (this.reconnectHandler != null) {
+            this.reconnectHandler.removeCallbacks(this.reconnectRunnable);
+        }
+    }
+
+    private synchronized Handler getReconnectHandler() {
+        if (this.reconnectHandler == null) {
+            Context context = this.getContainer().getContext();
+            this.reconnectHandler = new android.os.Handler(context.getMainLooper());
+        }
+
+        return this.reconnectHandler;
+    }
+
+    private void startMonitoringConnectivity() {
+        if (this.connectivityMonitor != null && !this.monitoringConnectivity) {
+            this.connectivityMonitor.addListener(this);
+            this.monitoringConnectivity = true;
+        }
+    }
+
+    private void stopMonitoringConnectivity() {
+        if (this.connectivityMonitor != null && this.monitoringConnectivity) {
+            this.connectivityMonitor.removeListener(this);
+            this.monitoringConnectivity = false;
+        }
+    }
+
+    @Override
+    public void onConnectivityChanged(boolean connected) {
+        if (!this.connectAutomatically) {
+            return;
+        }
+
+        if (!connected) {
+            // Do nothing until the network is back, backing off is pointless without it.
+            this.cancelDelayedReconnect();
+            this.waitingForNetwork = true;
+            return;
+        }
+
+        if (this.waitingForNetwork || !(this.isConnected() || this.isConnecting())) {
+            Log.i(TAG, "PubsubClient network available, reconnect now");
+            this.cancelDelayedReconnect();
+            this.waitingForNetwork = false;
+            this.retryCount = 0;
+            this.reconnect();
+        }
     }
 
     private void sendWebSocketSubscribe(String channel) {
@@ -343,19 +476,11 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
             throw new InvalidParameterException("Missing subscription handler");
         }
 
-        Set<PubsubHandler> channelHandlers = this.handlers.get(trimmed);
-        boolean isNewSubscription = false;
-
-        if (channelHandlers == null) {
-            channelHandlers = new HashSet<>();
-            isNewSubscription = true;
-        }
-
-        channelHandlers.add(handler);
-        this.handlers.put(trimmed, channelHandlers);
-
-        if (isNewSubscription) {
-            this.sendWebSocketSubscribe(trimmed);
+        // the registry lock keeps the sub and unsub actions in the order of the changes
+        synchronized (this.subscriptions) {
+            if (this.subscriptions.add(trimmed, handler)) {
+                this.sendWebSocketSubscribe(trimmed);
+            }
         }
 
         return handler;
@@ -373,19 +498,10 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
             throw new InvalidParameterException("Cannot unsubscribe to channel with empty name");
         }
 
-        this.sendWebSocketUnsubscribe(trimmed);
-
-        Set<PubsubHandler> channelHandlers = this.handlers.get(trimmed);
-        if (channelHandlers != null) {
-            this.handlers.remove(trimmed);
-
-            PubsubHandler[] handlerArr = new PubsubHandler[channelHandlers.size()];
-            channelHandlers.toArray(handlerArr);
-
-            return handlerArr;
+        synchronized (this.subscriptions) {
+            this.sendWebSocketUnsubscribe(trimmed);
+            return this.subscriptions.removeAll(trimmed);
         }
-
-        return new PubsubHandler[0];
     }
 
     /**
@@ -405,18 +521,15 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
             throw new InvalidParameterException("Missing subscription handler");
         }
 
-        Set<PubsubHandler> channelHandlers = this.handlers.get(trimmed);
-        if (channelHandlers == null || channelHandlers.size() == 0) {
-            return null;
-        }
-
-        channelHandlers.remove(handler);
+        synchronized (this.subscriptions) {
+            int handlersLeft = this.subscriptions.remove(trimmed, handler);
+            if (handlersLeft == -1) {
+                return null;
+            }
 
-        if (channelHandlers.size() > 0) {
-            this.handlers.put(channel, channelHandlers);
-        } else {
-            this.handlers.remove(trimmed);
-            this.sendWebSocketUnsubscribe(trimmed);
+            if (handlersLeft == 0) {
+                this.sendWebSocketUnsubscribe(trimmed);
+            }
         }
 
         return handler;
@@ -438,22 +551,94 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
             throw new InvalidParameterException("Missing data to publish");
         }
 
-        try {
-            if (!this.isConnected()) {
-                throw new WebSocketClient.NotYetConnectedException("WebSocket not yet connected");
+        String request = this.buildPublishRequest(channel, data);
+
+        synchronized (this.flushLock) {
+            // keep messages in order if earlier ones are still queued or being sent
+            if (!this.flushing && this.isConnected() && this.pendingMessages.isEmpty()) {
+                try {
+                    this.webSocket.sendMessage(request);
+                    return;
+                } catch (WebSocketClient.NotYetConnectedException e) {
+                    // Do nothing. The message is queued up below.
+                }
             }
 
+            if (this.pendingMessages.offer(channel, data)) {
+                Log.i(TAG, "Message has been queued up.");
+            }
+        }
+
+        if (this.isConnected()) {
+            this.flushPendingMessages();
+        }
+    }
+
+    private String buildPublishRequest(String channel, JSONObject data) {
+        try {
             JSONObject request = new JSONObject();
             request.put("action", "pub");
             request.put("channel", channel);
             request.put("data", data);
 
-            this.webSocket.sendMessage(request.toString());
+            return request.toString();
         } catch (JSONException e) {
             throw new InvalidParameterException("Invalid JSON format");
-        } catch (WebSocketClient.NotYetConnectedException e) {
-            Log.i(TAG, "WebSocket not yet connected, message has been queued up.");
-            this.pendingMessages.offer(new Message(channel, data));
+        }
+    }
+
+    /**
+     * Sends the pending messages in batches, until all of them are sent or
+     * the connection is lost.
+     * <p>
+     * Only one flush runs at a time. If a flush is running, this returns
+     * immediately, and the running flush sends the messages queued up meanwhile.
+     * </p>
+     */
+    void flushPendingMessages() {
+        synchronized (this.flushLock) {
+            if (this.flushing) {
+                return;
+            }
+            this.flushing = true;
+        }
+
+        PubsubOutbox outbox = this.pendingMessages;
+        try {
+            while (this.isConnected()) {
+                List<PubsubOutbox.Entry> batch;
+                synchronized (this.flushLock) {
+                    // checked with the lock held, so that no message is queued up
+                    // after the last batch without being sent
+                    batch = outbox.peek(FLUSH_BATCH_SIZE);
+                    if (batch.isEmpty()) {
+                        this.flushing = false;
+                        return;
+                    }
+                }
+
+                List<PubsubOutbox.Entry> sentEntries = new ArrayList<>(batch.size());
+                try {
+                    for (PubsubOutbox.Entry perEntry : batch) {
+                        this.webSocket.sendMessage(
+                                this.buildPublishRequest(perEntry.channel, perEntry.data)
+                        );
+                        sentEntries.add(perEntry);
+                    }
+                } catch (WebSocketClient.NotYetConnectedException e) {
+                    Log.i(TAG, "WebSocket disconnected, keep the rest of pending messages.");
+                } finally {
+                    outbox.remove(sentEntries);
+                }
+
+                if (sentEntries.size() < batch.size()) {
+                    return;
+                }
+            }
+        } finally {
+            synchronized (this.flushLock) {
+                this.flushing = false;
+            }
         }
     }
 
@@ -462,14 +647,12 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
         Log.i(TAG, String.format("PubsubClient connection opened: %d %s", statusCode, statusMessage));
         this.retryCount = 0;
 
-        Set<String> allChannels = this.handlers.keySet();
-        for (String perChannel : allChannels) {
-            this.sendWebSocketSubscribe(perChannel);
+        synchronized (this.subscriptions) {
+            for (String perChannel : this.subscriptions.getChannels()) {
+                this.sendWebSocketSubscribe(perChannel);
+            }
         }
 
-        Queue<Message> pendingMessages = this.pendingMessages;
-        this.pendingMessages = new LinkedList<>();
-
         final PubsubListener listener = listenerRef.get();
         if (listener != null) {
             Handler handler = getHandler();
@@ -481,42 +664,40 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
             });
         }
 
-        while (pendingMessages.peek() != null) {
-            Message message = pendingMessages.poll();
-            this.publish(message.channel, message.data);
-        }
+        this.flushPendingMessages();
     }
 
     @Override
-    public void onMessage(JSONObject eventData) {
-        String channel;
-        try {
-            channel = eventData.getString("channel");
-        } catch (JSONException e) {
-            throw new InvalidParameterException("Missing channel name on event data");
-        }
+    public void onMessage(String message) {
+        this.dispatcher.dispatch(message);
+    }
 
-        JSONObject data = null;
-        try {
-            data = eventData.getJSONObject("data");
-        } catch (JSONException e) {
-            Log.w(TAG, "Invalid JSON Object", e);
-        }
+    /**
+     * Dispatches a decoded message to the channel handlers.
+     *
+     * @param eventData the event data
+     */
+    void onMessage(JSONObject eventData) {
+        this.dispatcher.dispatch(eventData);
+    }
 
-        Handler handler = getHandler();
+    @Override
+    public PubsubHandler[] getHandlers(String channel) {
+        return this.subscriptions.get(channel);
+    }
 
-        Set<PubsubHandler> channelHandlers = this.handlers.get(channel);
-        if (channelHandlers != null) {
-            for (final PubsubHandler perHandler : channelHandlers) {
-                final JSONObject perHandlerData = data;
-                handler.post(new Runnable() {
-                    @Override
-                    public void run() {
-                        perHandler.handle(perHandlerData);
-                    }
-                });
-            }
-        }
+    @Override
+    public void onDecodeError(WebSocketClientImpl.Exception exception) {
+        this.onError(exception);
+    }
+
+    /**
+     * Gets the metrics of the message dispatch queues.
+     *
+     * @return the metrics
+     */
+    PubsubMetrics getMetrics() {
+        return this.dispatcher.getMetrics();
     }
 
     @Override
@@ -541,7 +722,7 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
         Log.i(TAG, "PubsubClient connection close: " + reason);
 
         if (this.connectAutomatically) {
-            this.delayReconnect(this.getBoundedRetryWaitTime());
+            this.delayReconnect(this.getBackoffRetryWaitTime());
         }
 
         final PubsubListener listener = listenerRef.get();
@@ -558,15 +739,7 @@ class PubsubClient implements WebSocketClientImpl.EventHandler {
     }
 
     private Handler getHandler() {
-        if (!this.handlerExecutionInBackground) {
-            return new android.os.Handler(getContainer().getContext().getMainLooper());
-        } else {
-            if (this.backgroundThread == null || this.backgroundThread.getLooper() == null) {
-                throw new IllegalStateException("Background thread is not yet created");
-            }
-
-            return new android.os.Handler(this.backgroundThread.getLooper());
-        }
+        return this.dispatcher.getDeliveryHandler();
     }
 
     void setListener(PubsubListener listener) {
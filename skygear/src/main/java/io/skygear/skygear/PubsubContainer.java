@@ -108,6 +108,11 @@ public class PubsubContainer {
 
     /**
      * Subscribes to a channel.
+     * <p>
+     * Events of the channel are delivered in the order they are received. Events
+     * of different channels may be delivered out of the order they are received,
+     * see {@link PubsubBatchHandler} for handling the events of a delivery at once.
+     * </p>
      *
      * @param channel the channel name
      * @param handler the handler
@@ -148,6 +153,15 @@ public class PubsubContainer {
         pubsubClient.publish(channel, data);
     }
 
+    /**
+     * Gets the metrics of the message dispatch queues.
+     *
+     * @return the metrics
+     */
+    public PubsubMetrics getMetrics() {
+        return pubsubClient.getMetrics();
+    }
+
     /**
      * Set Pubsub Listener
      *
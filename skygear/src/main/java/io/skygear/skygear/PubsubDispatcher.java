@@ -0,0 +1,324 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Skygear Pubsub Dispatcher.
+ * <p>
+ * This class takes pubsub messages off the socket thread. Messages are decoded
+ * in background, in the order they are received, and grouped by channel. The
+ * groups are then delivered to the channel handlers once per frame on the main
+ * thread, or as soon as possible on a background thread.
+ * </p>
+ * <p>
+ * Events of a channel are always delivered in the order they are received. The
+ * groups are delivered in the order their channels first received an event, so
+ * an event may be delivered before an earlier event of another channel. A
+ * {@link PubsubBatchHandler} receives each group in a single call, and other
+ * handlers are called once per event.
+ * </p>
+ */
+class PubsubDispatcher {
+    private static final String TAG = "Skygear SDK";
+    private static final Executor DECODE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private static HandlerThread backgroundThread;
+
+    private final Callback callback;
+    private final Handler deliveryHandler;
+    private final boolean deliveryInBackground;
+
+    private final ConcurrentLinkedQueue<Object> incomingMessages;
+    private final AtomicInteger decodeQueueDepth;
+    private final AtomicInteger maxDecodeQueueDepth;
+    private final AtomicBoolean decodeScheduled;
+    private final Runnable decodeRunnable;
+
+    /**
+     * The decoded events of each channel waiting for delivery, guarded by this.
+     */
+    private Map<String, List<JSONObject>> pendingEvents;
+    private int deliveryQueueDepth;
+    private int maxDeliveryQueueDepth;
+    private long deliveredEventCount;
+    private boolean deliveryScheduled;
+    private final Runnable deliveryRunnable;
+    private final Choreographer.FrameCallback frameCallback;
+
+    /**
+     * Instantiates a new Pubsub Dispatcher.
+     *
+     * @param callback             the callback
+     * @param deliveryInBackground the boolean indicating whether events are
+     *                             delivered on a background thread
+     */
+    PubsubDispatcher(Callback callback, boolean deliveryInBackground) {
+        super();
+
+        this.callback = callback;
+        this.deliveryInBackground = deliveryInBackground;
+        this.deliveryHandler = new Handler(
+                deliveryInBackground ? PubsubDispatcher.getBackgroundLooper() : Looper.getMainLooper()
+        );
+
+        this.incomingMessages = new ConcurrentLinkedQueue<>();
+        this.decodeQueueDepth = new AtomicInteger();
+        this.maxDecodeQueueDepth = new AtomicInteger();
+        this.decodeScheduled = new AtomicBoolean();
+        this.decodeRunnable = new Runnable() {
+            @Override
+            public void run() {
+                PubsubDispatcher.this.decodePendingMessages();
+            }
+        };
+
+        this.pendingEvents = new LinkedHashMap<>();
+        this.frameCallback = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                PubsubDispatcher.this.deliverPendingEvents();
+            }
+        };
+        this.deliveryRunnable = new Runnable() {
+            @Override
+            public void run() {
+                if (PubsubDispatcher.this.deliveryInBackground) {
+                    PubsubDispatcher.this.deliverPendingEvents();
+                } else {
+                    Choreographer.getInstance().postFrameCallback(PubsubDispatcher.this.frameCallback);
+                }
+            }
+        };
+    }
+
+    private static synchronized Looper getBackgroundLooper() {
+        if (backgroundThread == null) {
+            backgroundThread = new HandlerThread("Skygear Pubsub Handler");
+            backgroundThread.start();
+        }
+
+        return backgroundThread.getLooper();
+    }
+
+    /**
+     * Gets the handler of the thread where events are delivered.
+     *
+     * @return the delivery handler
+     */
+    Handler getDeliveryHandler() {
+        return this.deliveryHandler;
+    }
+
+    /**
+     * Queues up a raw message for decoding.
+     *
+     * @param message the message text as received
+     */
+    void dispatch(String message) {
+        this.enqueue(message);
+    }
+
+    /**
+     * Queues up a decoded message.
+     *
+     * @param eventData the event data
+     */
+    void dispatch(JSONObject eventData) {
+        this.enqueue(eventData);
+    }
+
+    private void enqueue(Object message) {
+        this.incomingMessages.offer(message);
+
+        int depth = this.decodeQueueDepth.incrementAndGet();
+        int maxDepth = this.maxDecodeQueueDepth.get();
+        while (depth > maxDepth && !this.maxDecodeQueueDepth.compareAndSet(maxDepth, depth)) {
+            maxDepth = this.maxDecodeQueueDepth.get();
+        }
+
+        if (this.decodeScheduled.compareAndSet(false, true)) {
+            DECODE_EXECUTOR.execute(this.decodeRunnable);
+        }
+    }
+
+    private void decodePendingMessages() {
+        // reset before draining, so that messages arriving afterwards schedule another run
+        this.decodeScheduled.set(false);
+
+        Map<String, List<JSONObject>> decodedEvents = new LinkedHashMap<>();
+        int decodedCount = 0;
+
+        Object message;
+        while ((message = this.incomingMessages.poll()) != null) {
+            this.decodeQueueDepth.decrementAndGet();
+
+            JSONObject eventData;
+            if (message instanceof JSONObject) {
+                eventData = (JSONObject) message;
+            } else {
+                try {
+                    eventData = new JSONObject((String) message);
+                } catch (JSONException e) {
+                    this.callback.onDecodeError(new WebSocketClientImpl.Exception(e.getMessage()));
+                    continue;
+                }
+            }
+
+            String channel = eventData.optString("channel", null);
+            if (channel == null) {
+                this.callback.onDecodeError(
+                        new WebSocketClientImpl.Exception("Missing channel name on event data")
+                );
+                continue;
+            }
+
+            if (this.callback.getHandlers(channel).length == 0) {
+                continue;
+            }
+
+            JSONObject data = eventData.optJSONObject("data");
+            if (data == null) {
+                Log.w(TAG, "Invalid JSON Object on event data of channel " + channel);
+            }
+
+            List<JSONObject> channelEvents = decodedEvents.get(channel);
+            if (channelEvents == null) {
+                channelEvents = new ArrayList<>();
+                decodedEvents.put(channel, channelEvents);
+            }
+            channelEvents.add(data);
+            decodedCount++;
+        }
+
+        if (decodedCount > 0) {
+            this.scheduleDelivery(decodedEvents, decodedCount);
+        }
+    }
+
+    private void scheduleDelivery(Map<String, List<JSONObject>> decodedEvents, int decodedCount) {
+        synchronized (this) {
+            for (Map.Entry<String, List<JSONObject>> perEntry : decodedEvents.entrySet()) {
+                List<JSONObject> channelEvents = this.pendingEvents.get(perEntry.getKey());
+                if (channelEvents == null) {
+                    this.pendingEvents.put(perEntry.getKey(), perEntry.getValue());
+                } else {
+                    channelEvents.addAll(perEntry.getValue());
+                }
+            }
+
+            this.deliveryQueueDepth += decodedCount;
+            this.maxDeliveryQueueDepth = Math.max(this.maxDeliveryQueueDepth, this.deliveryQueueDepth);
+
+            if (this.deliveryScheduled) {
+                return;
+            }
+            this.deliveryScheduled = true;
+        }
+
+        this.deliveryHandler.post(this.deliveryRunnable);
+    }
+
+    private void deliverPendingEvents() {
+        Map<String, List<JSONObject>> events;
+        int eventCount;
+        synchronized (this) {
+            events = this.pendingEvents;
+            eventCount = this.deliveryQueueDepth;
+            this.pendingEvents = new LinkedHashMap<>();
+            this.deliveryQueueDepth = 0;
+            this.deliveryScheduled = false;
+        }
+
+        for (Map.Entry<String, List<JSONObject>> perEntry : events.entrySet()) {
+            // handlers removed after the events are decoded should not be called
+            PubsubHandler[] channelHandlers = this.callback.getHandlers(perEntry.getKey());
+            List<JSONObject> channelEvents = Collections.unmodifiableList(perEntry.getValue());
+            for (PubsubHandler perHandler : channelHandlers) {
+                if (perHandler instanceof PubsubBatchHandler) {
+                    ((PubsubBatchHandler) perHandler).handle(channelEvents);
+                } else {
+                    for (JSONObject perData : channelEvents) {
+                        perHandler.handle(perData);
+                    }
+                }
+            }
+        }
+
+        synchronized (this) {
+            this.deliveredEventCount += eventCount;
+        }
+    }
+
+    /**
+     * Gets the metrics of the dispatch queues.
+     *
+     * @return the metrics
+     */
+    synchronized PubsubMetrics getMetrics() {
+        return new PubsubMetrics(
+                this.decodeQueueDepth.get(),
+                this.deliveryQueueDepth,
+                this.maxDecodeQueueDepth.get(),
+                this.maxDeliveryQueueDepth,
+                this.deliveredEventCount
+        );
+    }
+
+    /**
+     * The Dispatcher Callback.
+     */
+    interface Callback {
+        /**
+         * Gets the handlers subscribed to a channel.
+         * <p>
+         * This is called from both the decoding and the delivery thread.
+         * </p>
+         *
+         * @param channel the channel name
+         * @return the handlers
+         */
+        PubsubHandler[] getHandlers(String channel);
+
+        /**
+         * The Decode Error Callback, called on the decoding thread.
+         *
+         * @param exception the exception
+         */
+        void onDecodeError(WebSocketClientImpl.Exception exception);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+/**
+ * The Skygear Pubsub Metrics.
+ * <p>
+ * This is a snapshot of the pubsub message dispatch queues, which can be used
+ * to tell whether the subscription handlers keep up with the incoming messages.
+ * </p>
+ */
+public class PubsubMetrics {
+    private final int decodeQueueDepth;
+    private final int deliveryQueueDepth;
+    private final int maxDecodeQueueDepth;
+    private final int maxDeliveryQueueDepth;
+    private final long deliveredEventCount;
+
+    PubsubMetrics(
+            int decodeQueueDepth,
+            int deliveryQueueDepth,
+            int maxDecodeQueueDepth,
+            int maxDeliveryQueueDepth,
+            long deliveredEventCount
+    ) {
+        super();
+
+        this.decodeQueueDepth = decodeQueueDepth;
+        this.deliveryQueueDepth = deliveryQueueDepth;
+        this.maxDecodeQueueDepth = maxDecodeQueueDepth;
+        this.maxDeliveryQueueDepth = maxDeliveryQueueDepth;
+        this.deliveredEventCount = deliveredEventCount;
+    }
+
+    /**
+     * Gets the number of received messages not yet decoded.
+     *
+     * @return the decode queue depth
+     */
+    public int getDecodeQueueDepth() {
+        return decodeQueueDepth;
+    }
+
+    /**
+     * Gets the number of decoded events not yet delivered to the handlers.
+     *
+     * @return the delivery queue depth
+     */
+    public int getDeliveryQueueDepth() {
+        return deliveryQueueDepth;
+    }
+
+    /**
+     * Gets the highest decode queue depth seen.
+     *
+     * @return the max decode queue depth
+     */
+    public int getMaxDecodeQueueDepth() {
+        return maxDecodeQueueDepth;
+    }
+
+    /**
+     * Gets the highest delivery queue depth seen.
+     *
+     * @return the max delivery queue depth
+     */
+    public int getMaxDeliveryQueueDepth() {
+        return maxDeliveryQueueDepth;
+    }
+
+    /**
+     * Gets the number of events delivered to the handlers.
+     *
+     * @return the delivered event count
+     */
+    public long getDeliveredEventCount() {
+        return deliveredEventCount;
+    }
+}
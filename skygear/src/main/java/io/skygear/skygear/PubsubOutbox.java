@@ -0,0 +1,459 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The Skygear Pubsub Outbox.
+ * <p>
+ * This class queues the pubsub messages published while disconnected, up to
+ * a capacity, and drops messages according to the overflow policy when it is
+ * full. With a context, the queued messages are also kept in a SQLite
+ * database so that they survive process death. The database is read and
+ * written on a background thread, in the order of the changes, so that
+ * neither creating the outbox nor publishing waits for disk I/O.
+ * </p>
+ * <p>
+ * Messages queued up before the persisted messages are restored are held
+ * back, and queued after the restored messages once the restore finishes.
+ * Until then, the outbox is not empty and has no message to send.
+ * </p>
+ */
+class PubsubOutbox {
+    private static final String TAG = "Skygear SDK";
+    private static final ExecutorService WRITE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    static final String DATABASE_NAME = "skygear_pubsub_outbox.db";
+    private static final int DATABASE_VERSION = 1;
+    private static final String TABLE_NAME = "outbox";
+    private static final String COLUMN_ID = "_id";
+    private static final String COLUMN_CHANNEL = "channel";
+    private static final String COLUMN_DATA = "data";
+
+    private final int capacity;
+    private final PubsubOverflowPolicy overflowPolicy;
+    private final OpenHelper openHelper;
+    private final LinkedList<Entry> entries;
+    private final LinkedList<PubsubClient.Message> offersBeforeRestore;
+    private final Runnable restoreListener;
+    private boolean restored;
+    private long lastId;
+
+    /**
+     * Instantiates a new Pubsub Outbox.
+     *
+     * @param capacity       the maximum number of queued messages
+     * @param overflowPolicy the overflow policy
+     * @param context        the context, null to keep the messages in memory only
+     */
+    PubsubOutbox(int capacity, PubsubOverflowPolicy overflowPolicy, Context context) {
+        this(capacity, overflowPolicy, context, null);
+    }
+
+    /**
+     * Instantiates a new Pubsub Outbox.
+     *
+     * @param capacity        the maximum number of queued messages
+     * @param overflowPolicy  the overflow policy
+     * @param context         the context, null to keep the messages in memory only
+     * @param restoreListener the runnable called on a background thread after the
+     *                        persisted messages are restored, could be null
+     */
+    PubsubOutbox(
+            int capacity,
+            PubsubOverflowPolicy overflowPolicy,
+            Context context,
+            Runnable restoreListener
+    ) {
+        super();
+
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.openHelper = context != null ? new OpenHelper(context) : null;
+        this.entries = new LinkedList<>();
+        this.offersBeforeRestore = new LinkedList<>();
+        this.restoreListener = restoreListener;
+        this.restored = this.openHelper == null;
+
+        if (this.openHelper != null) {
+            // restored after the pending writes, which may come from a previous outbox
+            WRITE_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    PubsubOutbox.this.restore();
+                }
+            });
+        }
+    }
+
+    /**
+     * Gets the capacity.
+     *
+     * @return the capacity
+     */
+    int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Gets the overflow policy.
+     *
+     * @return the overflow policy
+     */
+    PubsubOverflowPolicy getOverflowPolicy() {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * Checks whether the messages are persisted.
+     *
+     * @return the boolean indicating whether the messages are persisted
+     */
+    boolean isPersistent() {
+        return this.openHelper != null;
+    }
+
+    /**
+     * Checks whether the persisted messages are restored.
+     *
+     * @return the boolean indicating whether the persisted messages are restored
+     */
+    synchronized boolean isRestored() {
+        return this.restored;
+    }
+
+    /**
+     * Gets the number of queued messages, including those held back until
+     * the restore finishes.
+     *
+     * @return the number of queued messages
+     */
+    synchronized int size() {
+        return this.entries.size() + this.offersBeforeRestore.size();
+    }
+
+    /**
+     * Checks whether there is no queued message.
+     * <p>
+     * The outbox is never empty before the persisted messages are restored.
+     * </p>
+     *
+     * @return the boolean
+     */
+    synchronized boolean isEmpty() {
+        return this.restored && this.entries.isEmpty();
+    }
+
+    /**
+     * Queues up a message.
+     * <p>
+     * Before the persisted messages are restored, the message is held back
+     * and the overflow policy is applied when the restore finishes.
+     * </p>
+     *
+     * @param channel the channel name
+     * @param data    the data
+     * @return the boolean indicating whether the message is queued
+     */
+    synchronized boolean offer(String channel, JSONObject data) {
+        if (this.capacity == 0) {
+            Log.w(TAG, "Pubsub outbox is disabled, dropping message to " + channel);
+            return false;
+        }
+
+        if (!this.restored) {
+            this.offersBeforeRestore.addLast(new PubsubClient.Message(channel, data));
+            return true;
+        }
+
+        List<Entry> dropped = new ArrayList<>();
+        if (this.overflowPolicy == PubsubOverflowPolicy.COALESCE_BY_CHANNEL) {
+            Iterator<Entry> iterator = this.entries.iterator();
+            while (iterator.hasNext()) {
+                Entry perEntry = iterator.next();
+                if (perEntry.channel.equals(channel)) {
+                    iterator.remove();
+                    dropped.add(perEntry);
+                }
+            }
+        }
+
+        if (this.entries.size() >= this.capacity) {
+            if (this.overflowPolicy == PubsubOverflowPolicy.DROP_NEWEST) {
+                Log.w(TAG, "Pubsub outbox is full, dropping message to " + channel);
+                return false;
+            }
+
+            while (this.entries.size() >= this.capacity) {
+                Entry oldest = this.entries.removeFirst();
+                Log.w(TAG, "Pubsub outbox is full, dropping message to " + oldest.channel);
+                dropped.add(oldest);
+            }
+        }
+
+        this.deleteEntries(dropped);
+        this.entries.addLast(this.insertEntry(channel, data));
+
+        return true;
+    }
+
+    /**
+     * Gets the oldest queued messages without removing them.
+     * <p>
+     * Nothing is returned before the persisted messages are restored.
+     * </p>
+     *
+     * @param max the maximum number of messages
+     * @return the messages, in the order they are queued
+     */
+    synchronized List<Entry> peek(int max) {
+        List<Entry> batch = new ArrayList<>(Math.min(max, this.entries.size()));
+        for (Entry perEntry : this.entries) {
+            if (batch.size() >= max) {
+                break;
+            }
+            batch.add(perEntry);
+        }
+
+        return batch;
+    }
+
+    /**
+     * Removes messages, usually after they are sent.
+     *
+     * @param sentEntries the messages
+     */
+    synchronized void remove(List<Entry> sentEntries) {
+        if (sentEntries.isEmpty()) {
+            return;
+        }
+
+        this.entries.removeAll(new HashSet<>(sentEntries));
+        this.deleteEntries(sentEntries);
+    }
+
+    /**
+     * Moves all queued messages to another outbox.
+     * <p>
+     * When both outboxes are persistent, only messages held back until the
+     * restore are moved, as the other outbox restores the other messages.
+     * </p>
+     *
+     * @param other the other outbox
+     */
+    void transferTo(PubsubOutbox other) {
+        if (other == this) {
+            return;
+        }
+
+        List<PubsubClient.Message> allMessages = new ArrayList<>();
+        synchronized (this) {
+            if (!this.isPersistent() || !other.isPersistent()) {
+                List<Entry> allEntries = new ArrayList<>(this.entries);
+                this.remove(allEntries);
+                allMessages.addAll(allEntries);
+            }
+
+            // not persisted yet, and the restore would not queue them up any more
+            allMessages.addAll(this.offersBeforeRestore);
+            this.offersBeforeRestore.clear();
+        }
+
+        for (PubsubClient.Message perMessage : allMessages) {
+            other.offer(perMessage.channel, perMessage.data);
+        }
+    }
+
+    private void restore() {
+        List<Entry> restoredEntries = new ArrayList<>();
+        List<Entry> dropped = new ArrayList<>();
+        try {
+            Cursor cursor = this.openHelper.getReadableDatabase().query(
+                    TABLE_NAME,
+                    new String[]{COLUMN_ID, COLUMN_CHANNEL, COLUMN_DATA},
+                    null,
+                    null,
+                    null,
+                    null,
+                    COLUMN_ID + " ASC"
+            );
+
+            try {
+                while (cursor.moveToNext()) {
+                    long id = cursor.getLong(0);
+                    try {
+                        restoredEntries.add(new Entry(
+                                id,
+                                cursor.getString(1),
+                                new JSONObject(cursor.getString(2))
+                        ));
+                    } catch (JSONException e) {
+                        Log.w(TAG, "Fail to restore pubsub outbox message, dropping it", e);
+                        dropped.add(new Entry(id, null, null));
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLException e) {
+            Log.w(TAG, "Fail to restore pubsub outbox", e);
+        }
+
+        synchronized (this) {
+            for (Entry perEntry : restoredEntries) {
+                this.lastId = Math.max(this.lastId, perEntry.id);
+            }
+            for (Entry perEntry : dropped) {
+                this.lastId = Math.max(this.lastId, perEntry.id);
+            }
+            this.entries.addAll(0, restoredEntries);
+
+            // the capacity may have been reduced since the messages were queued
+            while (this.entries.size() > this.capacity) {
+                if (this.overflowPolicy == PubsubOverflowPolicy.DROP_NEWEST) {
+                    dropped.add(this.entries.removeLast());
+                } else {
+                    dropped.add(this.entries.removeFirst());
+                }
+            }
+
+            // messages queued up meanwhile are newer than the restored ones
+            this.restored = true;
+            for (PubsubClient.Message perMessage : this.offersBeforeRestore) {
+                this.offer(perMessage.channel, perMessage.data);
+            }
+            this.offersBeforeRestore.clear();
+        }
+
+        try {
+            this.writeDeletes(dropped);
+        } catch (SQLException e) {
+            Log.w(TAG, "Fail to delete dropped pubsub outbox messages", e);
+        }
+
+        if (this.restoreListener != null) {
+            this.restoreListener.run();
+        }
+    }
+
+    private Entry insertEntry(final String channel, final JSONObject data) {
+        final long id = ++this.lastId;
+        if (this.openHelper != null) {
+            WRITE_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ContentValues values = new ContentValues();
+                    values.put(COLUMN_ID, id);
+                    values.put(COLUMN_CHANNEL, channel);
+                    values.put(COLUMN_DATA, data.toString());
+                    try {
+                        PubsubOutbox.this.openHelper.getWritableDatabase()
+                                .insertOrThrow(TABLE_NAME, null, values);
+                    } catch (SQLException e) {
+                        Log.w(TAG, "Fail to persist pubsub outbox message to " + channel, e);
+                    }
+                }
+            });
+        }
+
+        return new Entry(id, channel, data);
+    }
+
+    private void deleteEntries(List<Entry> entriesToDelete) {
+        if (this.openHelper == null || entriesToDelete.isEmpty()) {
+            return;
+        }
+
+        final List<Entry> deletingEntries = new ArrayList<>(entriesToDelete);
+        WRITE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                PubsubOutbox.this.writeDeletes(deletingEntries);
+            }
+        });
+    }
+
+    private void writeDeletes(List<Entry> entriesToDelete) {
+        if (entriesToDelete.isEmpty()) {
+            return;
+        }
+
+        SQLiteDatabase db = this.openHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Entry perEntry : entriesToDelete) {
+                db.delete(TABLE_NAME, COLUMN_ID + " = ?", new String[]{String.valueOf(perEntry.id)});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * The Outbox Entry.
+     */
+    static class Entry extends PubsubClient.Message {
+        /**
+         * The Entry ID, increasing in the order of queueing.
+         */
+        final long id;
+
+        Entry(long id, String channel, JSONObject data) {
+            super(channel, data);
+            this.id = id;
+        }
+    }
+
+    private static class OpenHelper extends SQLiteOpenHelper {
+        OpenHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_NAME + " (" +
+                    COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_CHANNEL + " TEXT NOT NULL, " +
+                    COLUMN_DATA + " TEXT NOT NULL)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // Do nothing. There is only one version of the schema.
+        }
+    }
+}
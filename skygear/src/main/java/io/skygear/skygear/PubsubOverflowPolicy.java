@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+/**
+ * The Pubsub Overflow Policy, deciding which message is dropped when the
+ * outbound pubsub queue is full.
+ */
+public enum PubsubOverflowPolicy {
+    /**
+     * Drops the oldest queued message to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drops the new message and keeps the queued ones.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Replaces the queued message of the same channel with the new one, so
+     * that only the latest message of each channel is sent. The oldest
+     * message is dropped when the queue is still full.
+     */
+    COALESCE_BY_CHANNEL
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The Skygear Pubsub Subscription Registry.
+ * <p>
+ * This class keeps the handlers of each channel as immutable arrays, which
+ * are replaced on every change. Reads return the current array without
+ * locking, so that dispatching never blocks on, or is broken by, concurrent
+ * subscriptions. Changes are serialized on the registry.
+ * </p>
+ */
+class PubsubSubscriptionRegistry {
+    private static final PubsubHandler[] NO_HANDLERS = new PubsubHandler[0];
+
+    private final ConcurrentHashMap<String, PubsubHandler[]> handlers;
+
+    /**
+     * Instantiates a new Pubsub Subscription Registry.
+     */
+    PubsubSubscriptionRegistry() {
+        super();
+
+        this.handlers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the handlers of a channel.
+     * <p>
+     * The returned array is a snapshot shared with other callers, and must
+     * not be modified.
+     * </p>
+     *
+     * @param channel the channel name
+     * @return the handlers, empty if the channel is not subscribed
+     */
+    PubsubHandler[] get(String channel) {
+        PubsubHandler[] channelHandlers = this.handlers.get(channel);
+        return channelHandlers != null ? channelHandlers : NO_HANDLERS;
+    }
+
+    /**
+     * Gets the subscribed channels.
+     *
+     * @return a snapshot of the channel names
+     */
+    List<String> getChannels() {
+        return new ArrayList<>(this.handlers.keySet());
+    }
+
+    /**
+     * Adds a handler to a channel. Adding a handler twice has no effect.
+     *
+     * @param channel the channel name
+     * @param handler the handler
+     * @return the boolean indicating whether the channel was not subscribed before
+     */
+    synchronized boolean add(String channel, PubsubHandler handler) {
+        PubsubHandler[] channelHandlers = this.handlers.get(channel);
+        if (channelHandlers == null) {
+            this.handlers.put(channel, new PubsubHandler[]{handler});
+            return true;
+        }
+
+        if (PubsubSubscriptionRegistry.indexOf(channelHandlers, handler) == -1) {
+            PubsubHandler[] newHandlers = Arrays.copyOf(channelHandlers, channelHandlers.length + 1);
+            newHandlers[channelHandlers.length] = handler;
+            this.handlers.put(channel, newHandlers);
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes a handler from a channel.
+     *
+     * @param channel the channel name
+     * @param handler the handler
+     * @return the number of handlers left on the channel, -1 if the channel
+     * was not subscribed
+     */
+    synchronized int remove(String channel, PubsubHandler handler) {
+        PubsubHandler[] channelHandlers = this.handlers.get(channel);
+        if (channelHandlers == null) {
+            return -1;
+        }
+
+        int index = PubsubSubscriptionRegistry.indexOf(channelHandlers, handler);
+        if (index == -1) {
+            return channelHandlers.length;
+        }
+
+        if (channelHandlers.length == 1) {
+            this.handlers.remove(channel);
+            return 0;
+        }
+
+        PubsubHandler[] newHandlers = new PubsubHandler[channelHandlers.length - 1];
+        System.arraycopy(channelHandlers, 0, newHandlers, 0, index);
+        System.arraycopy(
+                channelHandlers,
+                index + 1,
+                newHandlers,
+                index,
+                channelHandlers.length - index - 1
+        );
+        this.handlers.put(channel, newHandlers);
+
+        return newHandlers.length;
+    }
+
+    /**
+     * Removes all handlers from a channel.
+     *
+     * @param channel the channel name
+     * @return the handlers removed
+     */
+    synchronized PubsubHandler[] removeAll(String channel) {
+        PubsubHandler[] channelHandlers = this.handlers.remove(channel);
+        return channelHandlers != null ? channelHandlers.clone() : NO_HANDLERS;
+    }
+
+    private static int indexOf(PubsubHandler[] channelHandlers, PubsubHandler handler) {
+        for (int idx = 0; idx < channelHandlers.length; idx++) {
+            if (channelHandlers[idx].equals(handler)) {
+                return idx;
+            }
+        }
+
+        return -1;
+    }
+}
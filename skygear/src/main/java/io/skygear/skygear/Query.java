@@ -24,6 +24,8 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.function.Function;
@@ -40,6 +42,8 @@ public class Query {
     private final JSONArray sortPredicate;
     private final JSONObject transientPredicate;
 
+    private List<String> selectedKeys;
+
     private int limit;
     private int offset;
 
@@ -58,11 +62,54 @@ public class Query {
         this.predicates = new LinkedList<>();
         this.sortPredicate = new JSONArray();
         this.transientPredicate = new JSONObject();
+        this.selectedKeys = null;
         this.overallCount = false;
         this.limit = Query.DEFAULT_LIMIT;
         this.offset = 0;
     }
 
+    /**
+     * Instantiates a new Query as a copy of another query.
+     *
+     * @param query the query to be copied
+     */
+    Query(Query query) {
+        super();
+        this.type = query.type;
+        this.negation = query.negation;
+        this.predicates = new LinkedList<>(query.predicates);
+        this.selectedKeys = query.selectedKeys == null ? null : new ArrayList<>(query.selectedKeys);
+        this.overallCount = query.overallCount;
+        this.limit = query.limit;
+        this.offset = query.offset;
+
+        try {
+            this.sortPredicate = new JSONArray(query.sortPredicate.toString());
+            this.transientPredicate = new JSONObject(query.transientPredicate.toString());
+        } catch (JSONException e) {
+            throw new InvalidParameterException("Cannot copy query predicates");
+        }
+    }
+
+    /**
+     * Add a raw predicate which is not affected by the negation of the existing predicates.
+     *
+     * @param predicate the predicate
+     */
+    void addPredicate(JSONArray predicate) {
+        if (this.negation) {
+            JSONArray negatedPredicate = this.getPredicateJson();
+
+            this.predicates.clear();
+            if (negatedPredicate.length() > 0) {
+                this.predicates.add(negatedPredicate);
+            }
+            this.negation = false;
+        }
+
+        this.predicates.add(predicate);
+    }
+
     /**
      * Set like predicate.
      *
@@ -696,6 +743,34 @@ public class Query {
         return this;
     }
 
+    /**
+     * Selects the attributes to be returned.
+     *
+     * <p>
+     * Records in the result only contain the selected attributes and the record metadata,
+     * see {@link Record#isPartial()}. This method returns the query itself, for chaining
+     * different predicate methods.
+     * </p>
+     *
+     * @param keys the attribute keys
+     * @return the query
+     */
+    public Query select(String... keys) {
+        List<String> selectedKeys = new ArrayList<>(keys.length);
+        for (String perKey : keys) {
+            if (!RecordSerializer.isValidKey(perKey)) {
+                throw new InvalidParameterException(String.format("Invalid key \"%s\"", perKey));
+            }
+
+            if (!selectedKeys.contains(perKey)) {
+                selectedKeys.add(perKey);
+            }
+        }
+
+        this.selectedKeys = selectedKeys;
+        return this;
+    }
+
     /**
      * And query.
      *
@@ -793,6 +868,19 @@ public class Query {
         return this.transientPredicate;
     }
 
+    /**
+     * Gets the selected attribute keys.
+     *
+     * @return the selected attribute keys, null if all attributes are selected
+     */
+    public List<String> getSelectedKeys() {
+        if (this.selectedKeys == null) {
+            return null;
+        }
+
+        return Collections.unmodifiableList(this.selectedKeys);
+    }
+
     /**
      * Gets the limit.
      *
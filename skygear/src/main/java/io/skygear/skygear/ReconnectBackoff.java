@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import java.util.Random;
+
+/**
+ * The Skygear Reconnect Backoff.
+ * <p>
+ * This class computes the delay before a reconnection attempt. The delay
+ * doubles on each attempt from the base delay up to the max delay, and only
+ * the upper half of it is fixed, the lower half is randomized so that
+ * clients dropped at the same time do not reconnect at the same time.
+ * </p>
+ */
+class ReconnectBackoff {
+    private final long baseDelay;
+    private final long maxDelay;
+    private final Random random;
+
+    /**
+     * Instantiates a new Reconnect Backoff.
+     *
+     * @param baseDelay the base delay in milliseconds
+     * @param maxDelay  the max delay in milliseconds
+     */
+    ReconnectBackoff(long baseDelay, long maxDelay) {
+        this(baseDelay, maxDelay, new Random());
+    }
+
+    /**
+     * Instantiates a new Reconnect Backoff.
+     *
+     * @param baseDelay the base delay in milliseconds
+     * @param maxDelay  the max delay in milliseconds
+     * @param random    the random number generator for the jitter
+     */
+    ReconnectBackoff(long baseDelay, long maxDelay, Random random) {
+        super();
+
+        this.baseDelay = baseDelay;
+        this.maxDelay = Math.max(baseDelay, maxDelay);
+        this.random = random;
+    }
+
+    /**
+     * Gets the base delay.
+     *
+     * @return the base delay in milliseconds
+     */
+    long getBaseDelay() {
+        return this.baseDelay;
+    }
+
+    /**
+     * Gets the max delay.
+     *
+     * @return the max delay in milliseconds
+     */
+    long getMaxDelay() {
+        return this.maxDelay;
+    }
+
+    /**
+     * Gets the delay ceiling of an attempt, before jitter is applied.
+     *
+     * @param attempt the zero-based attempt number
+     * @return the delay ceiling in milliseconds
+     */
+    long getDelayCeiling(long attempt) {
+        long ceiling = this.baseDelay;
+        for (long idx = 0; idx < attempt && ceiling < this.maxDelay; idx++) {
+            ceiling *= 2;
+        }
+
+        return Math.min(ceiling, this.maxDelay);
+    }
+
+    /**
+     * Gets the jittered delay of an attempt.
+     *
+     * @param attempt the zero-based attempt number
+     * @return the delay in milliseconds, between half of the ceiling and the ceiling
+     */
+    long getDelay(long attempt) {
+        long ceiling = this.getDelayCeiling(attempt);
+        long half = ceiling / 2;
+
+        return half + (long) (this.random.nextDouble() * (ceiling - half + 1));
+    }
+}
@@ -27,7 +27,9 @@ import org.json.JSONObject;
 import java.security.InvalidParameterException;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -54,6 +56,33 @@ public class Record implements Parcelable {
 
     Map<String, Object> data;
 
+    /**
+     * The keys modified since the record is deserialized or saved.
+     */
+    Set<String> dirtyKeys;
+
+    /**
+     * The modification number of each key when it is last set.
+     */
+    Map<String, Long> keyVersions;
+
+    /**
+     * The number of modifications of the attributes.
+     */
+    long modificationCount;
+
+    /**
+     * The keys of attribute values kept as JSON until they are first read,
+     * null if all attribute values are decoded.
+     */
+    Set<String> undecodedKeys;
+
+    /**
+     * The keys of the attributes selected by the query that loaded the record,
+     * null if all attributes are loaded.
+     */
+    Set<String> selectedKeys;
+
     /**
      * Instantiates a new Skygear Record.
      *
@@ -117,6 +146,8 @@ public class Record implements Parcelable {
         this.transientMap = new HashMap<>();
 
         this.data = new HashMap<>();
+        this.dirtyKeys = new HashSet<>();
+        this.keyVersions = new HashMap<>();
 
         if (data != null) {
             this.set(data);
@@ -150,6 +181,59 @@ public class Record implements Parcelable {
         }
 
         this.data.put(key, value);
+        this.dirtyKeys.add(key);
+        this.keyVersions.put(key, ++this.modificationCount);
+        if (this.undecodedKeys != null) {
+            this.undecodedKeys.remove(key);
+        }
+    }
+
+    /**
+     * Replaces attribute values without marking the keys as modified.
+     *
+     * @param data the set of attributes
+     */
+    void replace(Map<String, Object> data) {
+        this.data.putAll(data);
+        if (this.undecodedKeys != null) {
+            this.undecodedKeys.removeAll(data.keySet());
+        }
+    }
+
+    /**
+     * Decodes an attribute value kept as JSON.
+     *
+     * @param key the attribute key
+     * @throws IllegalStateException if the value is malformed
+     */
+    private void decode(String key) {
+        if (this.undecodedKeys == null || !this.undecodedKeys.contains(key)) {
+            return;
+        }
+
+        try {
+            this.data.put(key, ValueCodecRegistry.deserialize((JSONObject) this.data.get(key)));
+            this.undecodedKeys.remove(key);
+        } catch (JSONException e) {
+            // the query would have failed if the value were decoded with the response
+            throw new IllegalStateException(String.format("Fail to decode attribute \"%s\"", key), e);
+        }
+    }
+
+    /**
+     * Decodes all attribute values kept as JSON.
+     *
+     * @throws IllegalStateException if any value is malformed
+     */
+    void decodeAll() {
+        if (this.undecodedKeys == null) {
+            return;
+        }
+
+        for (String perKey : new HashSet<>(this.undecodedKeys)) {
+            this.decode(perKey);
+        }
+        this.undecodedKeys = null;
     }
 
     /**
@@ -157,8 +241,10 @@ public class Record implements Parcelable {
      *
      * @param key the attribute key
      * @return the attribute value
+     * @throws IllegalStateException if the value is decoded lazily and is malformed
      */
     public Object get(String key) {
+        this.decode(key);
         return this.data.get(key);
     }
 
@@ -169,11 +255,52 @@ public class Record implements Parcelable {
      * </p>
      *
      * @return the set of attributes
+     * @throws IllegalStateException if any value is decoded lazily and is malformed
      */
     public HashMap<String, Object> getData() {
+        this.decodeAll();
         return new HashMap<>(this.data);
     }
 
+    /**
+     * Gets the keys modified since the record is fetched or saved.
+     *
+     * @return the modified keys
+     */
+    public Set<String> getDirtyKeys() {
+        return new HashSet<>(this.dirtyKeys);
+    }
+
+    /**
+     * Checks whether any attribute is modified since the record is fetched or saved.
+     *
+     * @return the boolean indicating whether the record is dirty
+     */
+    public boolean isDirty() {
+        return !this.dirtyKeys.isEmpty();
+    }
+
+    /**
+     * Checks whether the record is loaded by a query selecting only some of the attributes.
+     *
+     * @return the boolean indicating whether the record is partial
+     */
+    public boolean isPartial() {
+        return this.selectedKeys != null;
+    }
+
+    /**
+     * Checks whether an attribute is loaded, which is always true unless the record is partial.
+     *
+     * @param key the attribute key
+     * @return the boolean indicating whether the attribute is loaded
+     */
+    public boolean isLoaded(String key) {
+        return this.selectedKeys == null
+                || this.selectedKeys.contains(key)
+                || this.data.containsKey(key);
+    }
+
     /**
      * Gets record id.
      *
@@ -495,16 +622,22 @@ public class Record implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeString(this.toJson().toString());
+        RecordParcelSerializer.write(dest, this, flags);
     }
 
     public static final Creator<Record> CREATOR = new Creator<Record>() {
         @Override
         public Record createFromParcel(Parcel in) {
-            String jsonString = in.readString();
+            int startPosition = in.dataPosition();
 
             try {
-                return Record.fromJson(new JSONObject(jsonString));
+                if (in.readInt() == RecordParcelSerializer.FormatVersion) {
+                    return RecordParcelSerializer.read(in);
+                }
+
+                // parcelled as JSON by an earlier version of the SDK
+                in.setDataPosition(startPosition);
+                return Record.fromJson(new JSONObject(in.readString()));
             } catch (JSONException e) {
                 Log.e(TAG, "Fail to create record from Parcel", e);
             }
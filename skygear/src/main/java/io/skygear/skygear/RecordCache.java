@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.util.LruCache;
+
+import java.security.InvalidParameterException;
+import java.util.Map;
+
+/**
+ * The Skygear Record Cache.
+ * <p>
+ * This class keeps records received from fetch and query responses in memory,
+ * keyed by database, record type and record ID, and bounded by the least
+ * recently used policy. The record IDs of each query result are also kept so
+ * that the same query can be answered from the cache.
+ * </p>
+ * <p>
+ * Cached records are shared with the response handlers that receive them.
+ * </p>
+ */
+public class RecordCache {
+    private final LruCache<String, Record> records;
+    private final LruCache<String, String[]> queryResults;
+
+    /**
+     * Instantiates a new Record Cache.
+     *
+     * @param maxSize the maximum number of cached records
+     */
+    public RecordCache(int maxSize) {
+        super();
+
+        if (maxSize <= 0) {
+            throw new InvalidParameterException("Record cache size should be positive");
+        }
+
+        this.records = new LruCache<>(maxSize);
+        this.queryResults = new LruCache<String, String[]>(maxSize) {
+            @Override
+            protected int sizeOf(String key, String[] value) {
+                return value.length + 1;
+            }
+        };
+    }
+
+    private static String recordKey(String databaseId, String recordType, String recordId) {
+        return String.format("%s/%s/%s", databaseId, recordType, recordId);
+    }
+
+    private static String queryKey(String databaseId, Query query) {
+        return String.format(
+                "%s/%s|%s|%s|%s|%d|%d",
+                databaseId,
+                query.getType(),
+                query.getPredicateJson().toString(),
+                query.getSortPredicateJson().toString(),
+                query.getTransientPredicateJson().toString(),
+                query.getLimit(),
+                query.getOffset()
+        );
+    }
+
+    /**
+     * Gets a cached record.
+     *
+     * @param databaseId the database id
+     * @param recordType the record type
+     * @param recordId   the record id
+     * @return the record, null if not cached
+     */
+    public Record get(String databaseId, String recordType, String recordId) {
+        return this.records.get(RecordCache.recordKey(databaseId, recordType, recordId));
+    }
+
+    /**
+     * Gets cached records.
+     *
+     * @param databaseId the database id
+     * @param recordType the record type
+     * @param recordIds  the record ids
+     * @return the records, null if any of them is not cached
+     */
+    Record[] get(String databaseId, String recordType, String[] recordIds) {
+        Record[] cachedRecords = new Record[recordIds.length];
+        for (int idx = 0; idx < recordIds.length; idx++) {
+            cachedRecords[idx] = this.get(databaseId, recordType, recordIds[idx]);
+            if (cachedRecords[idx] == null) {
+                return null;
+            }
+        }
+
+        return cachedRecords;
+    }
+
+    /**
+     * Gets the cached result of a query.
+     *
+     * @param databaseId the database id
+     * @param query      the query
+     * @return the records, null if the query result or any of the records is not cached
+     */
+    Record[] get(String databaseId, Query query) {
+        String[] recordIds = this.queryResults.get(RecordCache.queryKey(databaseId, query));
+        if (recordIds == null) {
+            return null;
+        }
+
+        return this.get(databaseId, query.getType(), recordIds);
+    }
+
+    /**
+     * Puts records into the cache.
+     *
+     * @param databaseId the database id
+     * @param records    the records
+     */
+    void put(String databaseId, Record[] records) {
+        for (Record perRecord : records) {
+            if (perRecord.getId() != null) {
+                this.records.put(
+                        RecordCache.recordKey(databaseId, perRecord.getType(), perRecord.getId()),
+                        perRecord
+                );
+            }
+        }
+    }
+
+    /**
+     * Puts the result of a query into the cache.
+     *
+     * @param databaseId the database id
+     * @param query      the query
+     * @param records    the records
+     */
+    void put(String databaseId, Query query, Record[] records) {
+        this.put(databaseId, records);
+
+        String[] recordIds = new String[records.length];
+        for (int idx = 0; idx < records.length; idx++) {
+            recordIds[idx] = records[idx].getId();
+        }
+
+        this.queryResults.put(RecordCache.queryKey(databaseId, query), recordIds);
+    }
+
+    /**
+     * Removes a record from the cache, together with the cached query results
+     * of the record type.
+     *
+     * @param databaseId the database id
+     * @param recordType the record type
+     * @param recordId   the record id
+     */
+    public void remove(String databaseId, String recordType, String recordId) {
+        this.records.remove(RecordCache.recordKey(databaseId, recordType, recordId));
+        this.removeQueryResults(databaseId, recordType);
+    }
+
+    private void removeQueryResults(String databaseId, String recordType) {
+        String queryKeyPrefix = String.format("%s/%s|", databaseId, recordType);
+        for (Map.Entry<String, String[]> perEntry : this.queryResults.snapshot().entrySet()) {
+            if (perEntry.getKey().startsWith(queryKeyPrefix)) {
+                this.queryResults.remove(perEntry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Removes all cached records and query results.
+     */
+    public void clear() {
+        this.records.evictAll();
+        this.queryResults.evictAll();
+    }
+
+    /**
+     * Gets the number of cached records.
+     *
+     * @return the number of cached records
+     */
+    public int size() {
+        return this.records.size();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+/**
+ * The Record Cache Policy.
+ * <p>
+ * Determines how fetch and query operations use the record cache.
+ * </p>
+ */
+public enum RecordCachePolicy {
+    /**
+     * Always send the request. Records received are still put into the cache.
+     */
+    NETWORK_ONLY,
+
+    /**
+     * Use the cached result if available, otherwise send the request.
+     */
+    CACHE_FIRST,
+
+    /**
+     * Use the cached result if available, then send the request and deliver
+     * the result again when the response arrives.
+     */
+    CACHE_THEN_NETWORK
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The Skygear Record Change.
+ * <p>
+ * A change of a record received from a record change channel, see
+ * {@link Database#subscribeRecordChanges(String, RecordChangeHandler)}.
+ * </p>
+ */
+public class RecordChange {
+    static final String EventKey = "event";
+    static final String RecordKey = "record";
+
+    private final Type type;
+    private final Record record;
+
+    /**
+     * Instantiates a new Record Change.
+     *
+     * @param type   the change type
+     * @param record the record
+     */
+    RecordChange(Type type, Record record) {
+        super();
+
+        this.type = type;
+        this.record = record;
+    }
+
+    /**
+     * Gets the change type.
+     *
+     * @return the change type
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * Gets the record.
+     * <p>
+     * For deletions, only the identifiers of the record are guaranteed to be present.
+     * </p>
+     *
+     * @return the record
+     */
+    public Record getRecord() {
+        return this.record;
+    }
+
+    /**
+     * Decodes a record change event.
+     * <p>
+     * The event is in the form of
+     * <code>{"event": "create" | "update" | "delete", "record": {...}}</code>,
+     * where the record is serialized as in record responses.
+     * </p>
+     *
+     * @param data the event data
+     * @return the record change
+     * @throws JSONException the JSON exception
+     */
+    static RecordChange fromJson(JSONObject data) throws JSONException {
+        Type type = Type.fromEvent(data.getString(EventKey));
+        Record record = RecordSerializer.deserialize(data.getJSONObject(RecordKey));
+        if (type == Type.DELETED) {
+            record.deleted = true;
+        }
+
+        return new RecordChange(type, record);
+    }
+
+    /**
+     * The Record Change Type.
+     */
+    public enum Type {
+        /**
+         * The record is created.
+         */
+        INSERTED("create"),
+        /**
+         * The record is updated.
+         */
+        UPDATED("update"),
+        /**
+         * The record is deleted.
+         */
+        DELETED("delete");
+
+        private final String event;
+
+        Type(String event) {
+            this.event = event;
+        }
+
+        /**
+         * Gets the event name in record change events.
+         *
+         * @return the event name
+         */
+        String getEvent() {
+            return this.event;
+        }
+
+        static Type fromEvent(String event) throws JSONException {
+            for (Type perType : Type.values()) {
+                if (perType.event.equals(event)) {
+                    return perType;
+                }
+            }
+
+            throw new JSONException("Unknown record change event: " + event);
+        }
+    }
+}
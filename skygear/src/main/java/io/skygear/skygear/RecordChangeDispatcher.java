@@ -0,0 +1,314 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * The Skygear Record Change Dispatcher.
+ * <p>
+ * This class subscribes to the record change channel of each record type with
+ * registered handlers. Channels of the private database are scoped to the current
+ * user. As any client may publish to a channel, an event is only taken as a hint
+ * that a record has changed: the cached record is evicted, and the record is
+ * fetched again. The handlers are then called on the main thread with the fetched
+ * record, or with a deletion if the record cannot be found, in the order the
+ * fetches complete.
+ * </p>
+ */
+class RecordChangeDispatcher {
+    private static final String TAG = "Skygear SDK";
+    private static final Executor DECODE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final Database database;
+    private final Handler mainHandler;
+
+    /**
+     * The handlers of each record type, only accessed on the main thread.
+     */
+    private final Map<String, Set<RecordChangeHandler>> handlers;
+
+    /**
+     * The pubsub handler of each record type, only accessed on the main thread.
+     */
+    private final Map<String, PubsubHandler> pubsubHandlers;
+
+    /**
+     * The subscribed channel of each record type, only accessed on the main thread.
+     */
+    private final Map<String, String> channels;
+
+    /**
+     * Instantiates a new Record Change Dispatcher.
+     *
+     * @param database the database
+     */
+    RecordChangeDispatcher(Database database) {
+        super();
+
+        this.database = database;
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.handlers = new HashMap<>();
+        this.pubsubHandlers = new HashMap<>();
+        this.channels = new HashMap<>();
+    }
+
+    /**
+     * Gets the name of the record change channel of a record type.
+     *
+     * @param databaseId the database id
+     * @param userId     the user id for the channels of the private database, null otherwise
+     * @param recordType the record type
+     * @return the channel name
+     */
+    static String channelName(String databaseId, String userId, String recordType) {
+        if (userId == null) {
+            return String.format("record-change/%s/%s", databaseId, recordType);
+        }
+
+        return String.format("record-change/%s/%s/%s", databaseId, userId, recordType);
+    }
+
+    /**
+     * Gets the channel of a record type for the current user.
+     *
+     * @param recordType the record type
+     * @return the channel name, null if the private database has no current user
+     */
+    private String channelName(String recordType) {
+        String userId = null;
+        if (Database.PRIVATE_DATABASE_NAME.equals(this.database.getName())) {
+            Record currentUser = this.database.getContainer().getAuth().getCurrentUser();
+            if (currentUser == null) {
+                return null;
+            }
+
+            userId = currentUser.getId();
+        }
+
+        return RecordChangeDispatcher.channelName(this.database.getName(), userId, recordType);
+    }
+
+    /**
+     * Subscribes to the changes of a record type.
+     *
+     * @param recordType the record type
+     * @param handler    the handler
+     */
+    void subscribe(final String recordType, RecordChangeHandler handler) {
+        if (!RecordSerializer.isValidType(recordType)) {
+            throw new InvalidParameterException("Invalid record type");
+        }
+
+        if (handler == null) {
+            throw new InvalidParameterException("Missing record change handler");
+        }
+
+        Set<RecordChangeHandler> typeHandlers = this.handlers.get(recordType);
+        if (typeHandlers == null) {
+            typeHandlers = new LinkedHashSet<>();
+            this.handlers.put(recordType, typeHandlers);
+        }
+        typeHandlers.add(handler);
+
+        if (!this.pubsubHandlers.containsKey(recordType)) {
+            this.pubsubHandlers.put(recordType, new PubsubHandler() {
+                @Override
+                public void handle(JSONObject data) {
+                    RecordChangeDispatcher.this.onEvent(recordType, data);
+                }
+            });
+            this.subscribeChannel(recordType);
+        }
+    }
+
+    /**
+     * Unsubscribes a handler from the changes of a record type.
+     *
+     * @param recordType the record type
+     * @param handler    the handler
+     * @return the boolean indicating whether the handler was subscribed
+     */
+    boolean unsubscribe(String recordType, RecordChangeHandler handler) {
+        Set<RecordChangeHandler> typeHandlers = this.handlers.get(recordType);
+        if (typeHandlers == null || !typeHandlers.remove(handler)) {
+            return false;
+        }
+
+        if (typeHandlers.isEmpty()) {
+            this.handlers.remove(recordType);
+            this.unsubscribeChannel(recordType);
+            this.pubsubHandlers.remove(recordType);
+        }
+
+        return true;
+    }
+
+    /**
+     * Moves the subscriptions to the channels of the current user.
+     * <p>
+     * This is called after the current user is changed. Without a current user,
+     * the private database is unsubscribed from all channels until the next login.
+     * </p>
+     */
+    void resubscribe() {
+        for (String perRecordType : this.pubsubHandlers.keySet()) {
+            this.unsubscribeChannel(perRecordType);
+            this.subscribeChannel(perRecordType);
+        }
+    }
+
+    private void subscribeChannel(String recordType) {
+        String channel = this.channelName(recordType);
+        if (channel == null) {
+            return;
+        }
+
+        this.channels.put(recordType, channel);
+        this.getPubsub().subscribe(channel, this.pubsubHandlers.get(recordType));
+    }
+
+    private void unsubscribeChannel(String recordType) {
+        String channel = this.channels.remove(recordType);
+        if (channel != null) {
+            this.getPubsub().unsubscribe(channel, this.pubsubHandlers.get(recordType));
+        }
+    }
+
+    private PubsubContainer getPubsub() {
+        return this.database.getContainer().getPubsub();
+    }
+
+    /**
+     * Decodes a record change event in background, and then dispatches it on the main thread.
+     *
+     * @param recordType the record type of the channel
+     * @param data       the event data
+     */
+    void onEvent(final String recordType, final JSONObject data) {
+        if (data == null) {
+            return;
+        }
+
+        DECODE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final RecordChange change;
+                try {
+                    change = RecordChange.fromJson(data);
+                } catch (JSONException | InvalidParameterException e) {
+                    Log.w(TAG, "Fail to decode record change event", e);
+                    return;
+                }
+
+                if (!recordType.equals(change.getRecord().getType())) {
+                    Log.w(TAG, String.format(
+                            "Ignore change of %s record from %s channel",
+                            change.getRecord().getType(),
+                            recordType
+                    ));
+                    return;
+                }
+
+                RecordChangeDispatcher.this.mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        RecordChangeDispatcher.this.dispatch(change);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Evicts the changed record from the record cache, and fetches it again for
+     * the handlers of the record type.
+     * <p>
+     * The record in the event is never cached nor passed to the handlers, as the
+     * publisher of the event is not authenticated.
+     * </p>
+     *
+     * @param change the change
+     */
+    void dispatch(final RecordChange change) {
+        final String recordType = change.getRecord().getType();
+        final String recordId = change.getRecord().getId();
+
+        RecordCache recordCache = this.database.getRecordCache();
+        if (recordCache != null) {
+            recordCache.remove(this.database.getName(), recordType, recordId);
+        }
+
+        if (!this.handlers.containsKey(recordType)) {
+            return;
+        }
+
+        this.database.fetchRecordById(recordType, recordId, new RecordFetchResponseHandler() {
+            @Override
+            public void onFetchSuccess(Record result) {
+                RecordChange.Type type = change.getType() == RecordChange.Type.DELETED
+                        ? RecordChange.Type.UPDATED
+                        : change.getType();
+                RecordChangeDispatcher.this.notifyHandlers(new RecordChange(type, result));
+            }
+
+            @Override
+            public void onFetchError(Error error) {
+                if (error.getCode() != Error.Code.RESOURCE_NOT_FOUND) {
+                    Log.w(TAG, "Fail to fetch changed record", error);
+                    return;
+                }
+
+                Record deletedRecord = new Record(recordType, recordId);
+                deletedRecord.deleted = true;
+                RecordChangeDispatcher.this.notifyHandlers(
+                        new RecordChange(RecordChange.Type.DELETED, deletedRecord)
+                );
+            }
+        });
+    }
+
+    private void notifyHandlers(RecordChange change) {
+        Set<RecordChangeHandler> typeHandlers = this.handlers.get(change.getRecord().getType());
+        if (typeHandlers == null) {
+            return;
+        }
+
+        // handlers may unsubscribe themselves
+        List<RecordChangeHandler> snapshot = new ArrayList<>(typeHandlers);
+        for (RecordChangeHandler perHandler : snapshot) {
+            perHandler.onRecordChange(change);
+        }
+    }
+}
@@ -39,6 +39,11 @@ public class RecordDeleteRequest extends Request {
     private String databaseId;
     private List<RecordIdentifier> recordIdentifiers;
 
+    /**
+     * The record cache, null if no cache should be updated.
+     */
+    RecordCache recordCache;
+
     /**
      * Instantiates a new record delete request with default properties.
      */
@@ -57,6 +62,7 @@ public class RecordDeleteRequest extends Request {
     public RecordDeleteRequest(Record[] records, Database database) {
         this();
         this.databaseId = database.getName();
+        this.recordCache = database.getRecordCache();
 
         for (Record perRecord : records) {
             this.recordIdentifiers.add(
@@ -77,6 +83,7 @@ public class RecordDeleteRequest extends Request {
     public RecordDeleteRequest(String recordType, String[] recordIDs, Database database) {
         this();
         this.databaseId = database.getName();
+        this.recordCache = database.getRecordCache();
 
         for (String perRecordID: recordIDs) {
             this.recordIdentifiers.add(
@@ -136,6 +143,21 @@ public class RecordDeleteRequest extends Request {
         this.data.put("atomic", true);
     }
 
+    @Override
+    public void onResponse(JSONObject response) {
+        if (this.recordCache != null) {
+            for (RecordIdentifier perRecordIdentifier : this.recordIdentifiers) {
+                this.recordCache.remove(
+                        this.databaseId,
+                        perRecordIdentifier.type,
+                        perRecordIdentifier.id
+                );
+            }
+        }
+
+        super.onResponse(response);
+    }
+
     @Override
     protected void validate() throws Exception {
         super.validate();
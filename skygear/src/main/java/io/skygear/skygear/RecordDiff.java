@@ -0,0 +1,430 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Skygear Record Diff.
+ * <p>
+ * The differences between two results of a query, as positional updates that turn
+ * the old result into the new one. Records are matched by ID, and a matched record
+ * is changed if its update time differs. Moves are computed from the longest run
+ * of records keeping their relative order, so that the fewest records are moved.
+ * </p>
+ * <p>
+ * The updates follow the semantics of the list update callbacks of
+ * <code>RecyclerView</code>: each position is valid at the time the update is
+ * dispatched.
+ * </p>
+ */
+public class RecordDiff {
+    private static final int INSERTED = 0;
+    private static final int REMOVED = 1;
+    private static final int MOVED = 2;
+    private static final int CHANGED = 3;
+
+    private int[] operations;
+    private int operationCount;
+
+    private int insertedCount;
+    private int removedCount;
+    private int movedCount;
+    private int changedCount;
+
+    private RecordDiff() {
+        super();
+
+        this.operations = new int[48];
+        this.operationCount = 0;
+    }
+
+    /**
+     * Computes the differences between two results of a query.
+     * <p>
+     * This runs in O(n log n) time, and is expected to be called off the main thread
+     * for large results. If either result contains duplicated record IDs, the diff
+     * removes all old records and inserts all new ones.
+     * </p>
+     *
+     * @param oldRecords the old records
+     * @param newRecords the new records
+     * @return the diff
+     */
+    public static RecordDiff compute(Record[] oldRecords, Record[] newRecords) {
+        RecordDiff diff = new RecordDiff();
+
+        Map<String, Integer> oldIndexes = RecordDiff.indexById(oldRecords);
+        Map<String, Integer> newIndexes = RecordDiff.indexById(newRecords);
+        if (oldIndexes == null || newIndexes == null) {
+            diff.add(REMOVED, 0, oldRecords.length);
+            diff.add(INSERTED, 0, newRecords.length);
+
+            return diff;
+        }
+
+        // old index of each new record, -1 if inserted
+        int[] newToOld = new int[newRecords.length];
+        // rank of each old record among the matched ones in the old order, -1 if removed
+        int[] oldRanks = new int[oldRecords.length];
+        Arrays.fill(oldRanks, -1);
+
+        for (int idx = 0; idx < newRecords.length; idx++) {
+            Integer oldIndex = oldIndexes.get(newRecords[idx].getId());
+            newToOld[idx] = oldIndex == null ? -1 : oldIndex;
+            if (oldIndex != null) {
+                oldRanks[oldIndex] = 0;
+            }
+        }
+
+        int matchedCount = 0;
+        for (int idx = 0; idx < oldRecords.length; idx++) {
+            if (oldRanks[idx] == 0) {
+                oldRanks[idx] = matchedCount++;
+            }
+        }
+
+        // removals, from the end so that positions stay valid
+        for (int idx = oldRecords.length - 1; idx >= 0; idx--) {
+            if (!newIndexes.containsKey(oldRecords[idx].getId())) {
+                diff.add(REMOVED, idx, 1);
+            }
+        }
+
+        // old ranks of the matched records in the new order
+        int[] ranks = new int[matchedCount];
+        int rankCount = 0;
+        for (int perOldIndex : newToOld) {
+            if (perOldIndex >= 0) {
+                ranks[rankCount++] = oldRanks[perOldIndex];
+            }
+        }
+        diff.addMoves(ranks);
+
+        for (int idx = 0; idx < newRecords.length; idx++) {
+            if (newToOld[idx] < 0) {
+                diff.add(INSERTED, idx, 1);
+            }
+        }
+
+        for (int idx = 0; idx < newRecords.length; idx++) {
+            if (newToOld[idx] >= 0) {
+                Date oldUpdatedAt = oldRecords[newToOld[idx]].getUpdatedAt();
+                Date newUpdatedAt = newRecords[idx].getUpdatedAt();
+                boolean changed = oldUpdatedAt == null
+                        ? newUpdatedAt != null
+                        : !oldUpdatedAt.equals(newUpdatedAt);
+                if (changed) {
+                    diff.add(CHANGED, idx, 1);
+                }
+            }
+        }
+
+        return diff;
+    }
+
+    private static Map<String, Integer> indexById(Record[] records) {
+        Map<String, Integer> indexes = new HashMap<>(records.length * 2);
+        for (int idx = 0; idx < records.length; idx++) {
+            if (indexes.put(records[idx].getId(), idx) != null) {
+                return null;
+            }
+        }
+
+        return indexes;
+    }
+
+    /**
+     * Adds the moves that reorder the matched records, from their old order to the new one.
+     * <p>
+     * Records in the longest increasing subsequence of old ranks stay. Every other record
+     * is moved, in the new order, to right after the record preceding it in the new order.
+     * The current positions are tracked with a Fenwick tree over the slots that records
+     * occupy before and after they are moved.
+     * </p>
+     *
+     * @param ranks the old ranks of the matched records in the new order
+     */
+    private void addMoves(int[] ranks) {
+        int count = ranks.length;
+        if (count < 2) {
+            return;
+        }
+
+        boolean[] staying = RecordDiff.longestIncreasingSubsequence(ranks);
+
+        int[] positionsByRank = new int[count];
+        for (int idx = 0; idx < count; idx++) {
+            positionsByRank[ranks[idx]] = idx;
+        }
+
+        // records moved before the first staying record come first, and the ones
+        // moved after each staying record follow it
+        int[] stayingSlots = new int[count];
+        int[] movedSlots = new int[count];
+        int slotCount = 0;
+        for (int idx = 0; idx < count && !staying[idx]; idx++) {
+            movedSlots[idx] = slotCount++;
+        }
+        for (int rank = 0; rank < count; rank++) {
+            stayingSlots[rank] = slotCount++;
+
+            int position = positionsByRank[rank];
+            if (staying[position]) {
+                for (int idx = position + 1; idx < count && !staying[idx]; idx++) {
+                    movedSlots[idx] = slotCount++;
+                }
+            }
+        }
+
+        int[] tree = new int[slotCount + 1];
+        for (int rank = 0; rank < count; rank++) {
+            RecordDiff.updateTree(tree, stayingSlots[rank], 1);
+        }
+
+        for (int idx = 0; idx < count; idx++) {
+            if (staying[idx]) {
+                continue;
+            }
+
+            int fromSlot = stayingSlots[ranks[idx]];
+            int from = RecordDiff.countBefore(tree, fromSlot);
+            RecordDiff.updateTree(tree, fromSlot, -1);
+
+            int to = RecordDiff.countBefore(tree, movedSlots[idx]);
+            RecordDiff.updateTree(tree, movedSlots[idx], 1);
+
+            if (from != to) {
+                this.add(MOVED, from, to);
+            }
+        }
+    }
+
+    private static boolean[] longestIncreasingSubsequence(int[] values) {
+        int count = values.length;
+        int[] tails = new int[count];
+        int[] predecessors = new int[count];
+        int length = 0;
+
+        for (int idx = 0; idx < count; idx++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (values[tails[middle]] < values[idx]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            predecessors[idx] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = idx;
+            if (low == length) {
+                length++;
+            }
+        }
+
+        boolean[] members = new boolean[count];
+        for (int idx = length > 0 ? tails[length - 1] : -1; idx >= 0; idx = predecessors[idx]) {
+            members[idx] = true;
+        }
+
+        return members;
+    }
+
+    private static void updateTree(int[] tree, int slot, int delta) {
+        for (int idx = slot + 1; idx < tree.length; idx += idx & -idx) {
+            tree[idx] += delta;
+        }
+    }
+
+    private static int countBefore(int[] tree, int slot) {
+        int count = 0;
+        for (int idx = slot; idx > 0; idx -= idx & -idx) {
+            count += tree[idx];
+        }
+
+        return count;
+    }
+
+    private void add(int type, int first, int second) {
+        if (type != MOVED && second == 0) {
+            return;
+        }
+
+        switch (type) {
+            case INSERTED:
+                this.insertedCount += second;
+                break;
+            case REMOVED:
+                this.removedCount += second;
+                break;
+            case MOVED:
+                this.movedCount++;
+                break;
+            default:
+                this.changedCount += second;
+                break;
+        }
+
+        // merge with the previous update when the ranges are adjacent
+        if (this.operationCount > 0 && type != MOVED) {
+            int last = (this.operationCount - 1) * 3;
+            if (this.operations[last] == type) {
+                int lastPosition = this.operations[last + 1];
+                int lastCount = this.operations[last + 2];
+                if (type == REMOVED && first + second == lastPosition) {
+                    this.operations[last + 1] = first;
+                    this.operations[last + 2] = lastCount + second;
+                    return;
+                } else if (type != REMOVED && lastPosition + lastCount == first) {
+                    this.operations[last + 2] = lastCount + second;
+                    return;
+                }
+            }
+        }
+
+        int offset = this.operationCount * 3;
+        if (offset + 3 > this.operations.length) {
+            this.operations = Arrays.copyOf(this.operations, this.operations.length * 2);
+        }
+        this.operations[offset] = type;
+        this.operations[offset + 1] = first;
+        this.operations[offset + 2] = second;
+        this.operationCount++;
+    }
+
+    /**
+     * Dispatches the updates to a callback, in order.
+     *
+     * @param callback the callback
+     */
+    public void dispatchUpdatesTo(Callback callback) {
+        for (int idx = 0; idx < this.operationCount; idx++) {
+            int offset = idx * 3;
+            int first = this.operations[offset + 1];
+            int second = this.operations[offset + 2];
+
+            switch (this.operations[offset]) {
+                case INSERTED:
+                    callback.onInserted(first, second);
+                    break;
+                case REMOVED:
+                    callback.onRemoved(first, second);
+                    break;
+                case MOVED:
+                    callback.onMoved(first, second);
+                    break;
+                default:
+                    callback.onChanged(first, second);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the results are the same.
+     *
+     * @return the boolean indicating whether there is no update
+     */
+    public boolean isEmpty() {
+        return this.operationCount == 0;
+    }
+
+    /**
+     * Gets the number of inserted records.
+     *
+     * @return the number of inserted records
+     */
+    public int getInsertedCount() {
+        return this.insertedCount;
+    }
+
+    /**
+     * Gets the number of removed records.
+     *
+     * @return the number of removed records
+     */
+    public int getRemovedCount() {
+        return this.removedCount;
+    }
+
+    /**
+     * Gets the number of moved records.
+     *
+     * @return the number of moved records
+     */
+    public int getMovedCount() {
+        return this.movedCount;
+    }
+
+    /**
+     * Gets the number of changed records.
+     *
+     * @return the number of changed records
+     */
+    public int getChangedCount() {
+        return this.changedCount;
+    }
+
+    /**
+     * The Record Diff Callback.
+     * <p>
+     * The methods match <code>ListUpdateCallback</code> of <code>RecyclerView</code>,
+     * so that an adapter can be updated with minimal changes.
+     * </p>
+     */
+    public interface Callback {
+        /**
+         * Records are inserted.
+         *
+         * @param position the position
+         * @param count    the number of records
+         */
+        void onInserted(int position, int count);
+
+        /**
+         * Records are removed.
+         *
+         * @param position the position
+         * @param count    the number of records
+         */
+        void onRemoved(int position, int count);
+
+        /**
+         * A record is moved.
+         *
+         * @param fromPosition the position before the move
+         * @param toPosition   the position after the move
+         */
+        void onMoved(int fromPosition, int toPosition);
+
+        /**
+         * Records are changed.
+         *
+         * @param position the position
+         * @param count    the number of records
+         */
+        void onChanged(int position, int count);
+    }
+}
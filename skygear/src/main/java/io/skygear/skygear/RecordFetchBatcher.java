@@ -0,0 +1,211 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Record Fetch Batcher.
+ * <p>
+ * This class collects record fetch requests of the same record type issued
+ * within a time window, and sends them as a single request with deduplicated
+ * record IDs. The results are then fanned out to the response handlers of the
+ * original requests.
+ * </p>
+ */
+class RecordFetchBatcher {
+    private final Database database;
+    private final Map<String, Batch> pendingBatches;
+    private Handler handler;
+
+    /**
+     * Instantiates a new Record Fetch Batcher.
+     *
+     * @param database the database
+     */
+    RecordFetchBatcher(Database database) {
+        super();
+
+        this.database = database;
+        this.pendingBatches = new HashMap<>();
+    }
+
+    /**
+     * Checks whether a record fetch request can be batched.
+     * <p>
+     * Results of a batch are fanned out by record ID, so only requests without
+     * a response handler or with a {@link RecordFetchResponseBaseHandler} can be
+     * batched.
+     * </p>
+     *
+     * @param request the request
+     * @return the boolean indicating whether the request can be batched
+     */
+    static boolean canBatch(RecordFetchRequest request) {
+        ResponseHandler handler = request.getResponseHandler();
+        return handler == null || handler instanceof RecordFetchResponseBaseHandler;
+    }
+
+    /**
+     * Enqueues a record fetch request.
+     *
+     * @param request the request
+     * @param window  the batching window in milliseconds
+     */
+    void enqueue(RecordFetchRequest request, int window) {
+        if (!RecordFetchBatcher.canBatch(request)) {
+            throw new InvalidParameterException(
+                    "Only requests with a record fetch response handler can be batched"
+            );
+        }
+
+        String recordType = request.fetchingRecordType;
+        boolean isNewBatch;
+
+        synchronized (this.pendingBatches) {
+            Batch batch = this.pendingBatches.get(recordType);
+            isNewBatch = batch == null;
+            if (isNewBatch) {
+                batch = new Batch();
+                this.pendingBatches.put(recordType, batch);
+            }
+
+            batch.add(request);
+        }
+
+        if (isNewBatch) {
+            this.schedule(recordType, window);
+        }
+    }
+
+    /**
+     * Schedules flushing the batch of a record type.
+     *
+     * @param recordType the record type
+     * @param window     the batching window in milliseconds
+     */
+    void schedule(final String recordType, int window) {
+        if (this.handler == null) {
+            this.handler = new Handler(Looper.getMainLooper());
+        }
+
+        this.handler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                RecordFetchBatcher.this.flush(recordType);
+            }
+        }, window);
+    }
+
+    /**
+     * Sends the batch of a record type.
+     *
+     * @param recordType the record type
+     */
+    void flush(String recordType) {
+        Batch batch;
+        synchronized (this.pendingBatches) {
+            batch = this.pendingBatches.remove(recordType);
+        }
+
+        if (batch == null) {
+            return;
+        }
+
+        if (batch.requests.size() == 1) {
+            this.send(batch.requests.get(0));
+            return;
+        }
+
+        String[] recordIds = batch.recordIds.toArray(new String[batch.recordIds.size()]);
+        RecordFetchRequest batchRequest = new RecordFetchRequest(recordType, recordIds, this.database);
+        batchRequest.setResponseHandler(new BatchResponseHandler(batch.requests));
+
+        this.send(batchRequest);
+    }
+
+    /**
+     * Sends a request.
+     *
+     * @param request the request
+     */
+    void send(RecordFetchRequest request) {
+        this.database.getContainer().sendRequest(request);
+    }
+
+    private static class Batch {
+        final Set<String> recordIds = new LinkedHashSet<>();
+        final List<RecordFetchRequest> requests = new ArrayList<>();
+
+        void add(RecordFetchRequest request) {
+            for (String perRecordId : request.fetchingRecordIDs) {
+                this.recordIds.add(perRecordId);
+            }
+            this.requests.add(request);
+        }
+    }
+
+    private static class BatchResponseHandler extends RecordQueryResponseHandler {
+        private final List<RecordFetchRequest> requests;
+
+        BatchResponseHandler(List<RecordFetchRequest> requests) {
+            super();
+            this.requests = requests;
+        }
+
+        @Override
+        public void onQuerySuccess(Record[] records) {
+            Map<String, Record> recordMap = new HashMap<>();
+            for (Record perRecord : records) {
+                recordMap.put(perRecord.getId(), perRecord);
+            }
+
+            for (RecordFetchRequest perRequest : this.requests) {
+                // ensured when the request is enqueued
+                RecordFetchResponseBaseHandler<?> perHandler
+                        = (RecordFetchResponseBaseHandler<?>) perRequest.getResponseHandler();
+                if (perHandler != null) {
+                    perHandler.onFetchResult(
+                            perRequest.fetchingRecordType,
+                            perRequest.fetchingRecordIDs,
+                            recordMap
+                    );
+                }
+            }
+        }
+
+        @Override
+        public void onQueryError(Error error) {
+            for (RecordFetchRequest perRequest : this.requests) {
+                ResponseHandler perHandler = perRequest.getResponseHandler();
+                if (perHandler != null) {
+                    perHandler.onFailure(error);
+                }
+            }
+        }
+    }
+}
@@ -39,4 +39,24 @@ public class RecordFetchRequest extends RecordQueryRequest {
     public RecordFetchRequest(String recordType, String recordID, Database database) {
         this(recordType, new String[]{ recordID }, database);
     }
+
+    @Override
+    Record[] getCachedResult() {
+        if (this.recordCache == null) {
+            return null;
+        }
+
+        return this.recordCache.get(
+                this.getDatabaseId(),
+                this.fetchingRecordType,
+                this.fetchingRecordIDs
+        );
+    }
+
+    @Override
+    void onQueryResult(Record[] records) {
+        if (this.recordCache != null) {
+            this.recordCache.put(this.getDatabaseId(), records);
+        }
+    }
 }
@@ -30,10 +30,28 @@ public abstract class RecordFetchResponseBaseHandler<T> extends RecordQueryRespo
         }
 
         RecordFetchRequest fetchRequest = (RecordFetchRequest)request;
+        this.onFetchResult(
+                fetchRequest.fetchingRecordType,
+                fetchRequest.fetchingRecordIDs,
+                recordMap
+        );
+    }
 
-        String fetchingRecordType = fetchRequest.fetchingRecordType;
-        String[] fetchingRecordIDs = fetchRequest.fetchingRecordIDs;
-
+    /**
+     * Fetch result callback with the fetched records.
+     * <p>
+     * Records missing from the record map are reported as not found.
+     * </p>
+     *
+     * @param fetchingRecordType the fetching record type
+     * @param fetchingRecordIDs  the fetching record IDs
+     * @param recordMap          the fetched records, keyed by record ID
+     */
+    final void onFetchResult(
+            String fetchingRecordType,
+            String[] fetchingRecordIDs,
+            Map<String, Record> recordMap
+    ) {
         RecordResult<Record>[] results = new RecordResult[fetchingRecordIDs.length];
 
         for (int idx = 0; idx < fetchingRecordIDs.length; idx++) {
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.android.volley.VolleyError;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * The Skygear Record Outbox.
+ * <p>
+ * Record saves and deletes are appended to a durable log before they are
+ * sent. Mutations are sent one by one in the order they are appended, and
+ * are removed from the log once the server responds. When a mutation fails
+ * without a response from the server, it is sent again when the connectivity
+ * returns, or after {@link #RETRY_INTERVAL} milliseconds.
+ * </p>
+ * <p>
+ * A save appended right after another save of the same records is merged
+ * into it, unless the earlier save is already being sent.
+ * </p>
+ * <p>
+ * Each mutation belongs to the user appending it. Only the mutations of the
+ * current user are sent. When another user logs in, the mutations of the
+ * previous user are held in the log, and are sent when that user logs in again.
+ * </p>
+ * <p>
+ * All methods are expected to be called on the main thread. The log is
+ * accessed on a background thread.
+ * </p>
+ */
+class RecordOutbox implements ConnectivityMonitor.Listener {
+    private static final String TAG = "Skygear SDK";
+    private static final String SaveAction = "record:save";
+
+    /**
+     * The interval in milliseconds before sending a mutation again after a
+     * network failure.
+     */
+    static final long RETRY_INTERVAL = 10 * 1000;
+
+    private static final Executor LOG_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final RecordOutboxLog log;
+    private final ConnectivityMonitor monitor;
+    private final RequestManager requestManager;
+    private final LinkedList<PendingEntry> entries;
+
+    private String owner;
+    private boolean loaded;
+    private PendingEntry sendingEntry;
+    private Handler mainHandler;
+    private boolean retryScheduled;
+
+    /**
+     * Instantiates a new Record Outbox.
+     * <p>
+     * Mutations of the owner left in the log are sent once the outbox is started.
+     * </p>
+     *
+     * @param log            the log
+     * @param monitor        the connectivity monitor
+     * @param requestManager the request manager
+     * @param owner          the id of the current user, null if there is no user
+     */
+    RecordOutbox(
+            RecordOutboxLog log,
+            ConnectivityMonitor monitor,
+            RequestManager requestManager,
+            String owner
+    ) {
+        super();
+
+        this.log = log;
+        this.monitor = monitor;
+        this.requestManager = requestManager;
+        this.owner = owner;
+        this.entries = new LinkedList<>();
+    }
+
+    /**
+     * Starts sending the mutations in the log.
+     */
+    void start() {
+        this.monitor.addListener(this);
+        this.load();
+    }
+
+    /**
+     * Sets the current user.
+     * <p>
+     * Pending mutations of the previous user are held in the log, and the
+     * mutations of the new user are loaded from the log.
+     * </p>
+     *
+     * @param owner the id of the current user, null if there is no user
+     */
+    void setOwner(String owner) {
+        if (owner == null ? this.owner == null : owner.equals(this.owner)) {
+            return;
+        }
+
+        this.owner = owner;
+        this.entries.clear();
+        this.load();
+    }
+
+    private void load() {
+        final String loadingOwner = this.owner;
+        this.loaded = false;
+        this.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                final List<RecordOutboxLog.Entry> logEntries = RecordOutbox.this.log.load(loadingOwner);
+                RecordOutbox.this.runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        RecordOutbox.this.onLoaded(loadingOwner, logEntries);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onLoaded(String loadedOwner, List<RecordOutboxLog.Entry> logEntries) {
+        if (loadedOwner == null ? this.owner != null : !loadedOwner.equals(this.owner)) {
+            // the user has changed again while loading
+            return;
+        }
+
+        // mutations enqueued while loading are appended to the log after the loaded ones
+        List<PendingEntry> loadedEntries = new ArrayList<>();
+        for (RecordOutboxLog.Entry perEntry : logEntries) {
+            PendingEntry entry = new PendingEntry(perEntry.owner, perEntry.action, perEntry.payload);
+            entry.id = perEntry.id;
+            loadedEntries.add(entry);
+        }
+        this.entries.addAll(0, loadedEntries);
+        this.loaded = true;
+
+        this.drain();
+    }
+
+    /**
+     * Stops sending mutations. The mutations are kept in the log.
+     */
+    void stop() {
+        this.monitor.removeListener(this);
+    }
+
+    /**
+     * Gets the number of pending mutations.
+     *
+     * @return the number of pending mutations
+     */
+    int getPendingCount() {
+        return this.entries.size();
+    }
+
+    /**
+     * Appends a record save or delete request to the outbox.
+     *
+     * @param request the request
+     */
+    void enqueue(Request request) {
+        try {
+            request.validate();
+        } catch (Exception e) {
+            request.onValidationError(e);
+            return;
+        }
+
+        JSONObject payload;
+        try {
+            payload = new JSONObject(RequestBodyWriter.write(request.data));
+        } catch (IOException | JSONException e) {
+            request.onValidationError(e);
+            return;
+        }
+
+        PendingEntry lastEntry = this.entries.peekLast();
+        JSONObject mergedPayload = null;
+        if (lastEntry != null && lastEntry != this.sendingEntry) {
+            mergedPayload = RecordOutbox.mergeSaves(lastEntry, request.action, payload);
+        }
+
+        if (mergedPayload != null) {
+            final PendingEntry mergedEntry = lastEntry;
+            final JSONObject updatedPayload = mergedPayload;
+            this.runInBackground(new Runnable() {
+                @Override
+                public void run() {
+                    RecordOutbox.this.log.update(mergedEntry.id, updatedPayload);
+                }
+            });
+            lastEntry.payload = mergedPayload;
+            lastEntry.requests.add(request);
+        } else {
+            final PendingEntry entry = new PendingEntry(this.owner, request.action, payload);
+            this.runInBackground(new Runnable() {
+                @Override
+                public void run() {
+                    entry.id = RecordOutbox.this.log.append(entry.owner, entry.action, entry.payload).id;
+                }
+            });
+            entry.requests.add(request);
+            this.entries.add(entry);
+        }
+
+        this.drain();
+    }
+
+    /**
+     * Runs a task accessing the log on the background thread.
+     *
+     * @param task the task
+     */
+    void runInBackground(Runnable task) {
+        LOG_EXECUTOR.execute(task);
+    }
+
+    /**
+     * Runs a task on the main thread.
+     *
+     * @param task the task
+     */
+    void runOnMainThread(Runnable task) {
+        this.getMainHandler().post(task);
+    }
+
+    private Handler getMainHandler() {
+        if (this.mainHandler == null) {
+            this.mainHandler = new Handler(Looper.getMainLooper());
+        }
+
+        return this.mainHandler;
+    }
+
+    private void removeFromLog(final PendingEntry entry) {
+        this.runInBackground(new Runnable() {
+            @Override
+            public void run() {
+                RecordOutbox.this.log.remove(entry.id);
+            }
+        });
+    }
+
+    @Override
+    public void onConnectivityChanged(boolean connected) {
+        if (connected) {
+            this.drain();
+        }
+    }
+
+    private void drain() {
+        if (!this.loaded
+                || this.sendingEntry != null
+                || this.entries.isEmpty()
+                || !this.monitor.isConnected()) {
+            return;
+        }
+
+        this.sendingEntry = this.entries.peekFirst();
+        this.sendRequest(new OutboxRequest(this.sendingEntry));
+    }
+
+    /**
+     * Sends a request of a pending mutation.
+     *
+     * @param request the request
+     */
+    void sendRequest(Request request) {
+        this.requestManager.sendRequest(request);
+    }
+
+    /**
+     * Schedules sending the pending mutations again.
+     */
+    void scheduleRetry() {
+        if (this.retryScheduled) {
+            return;
+        }
+
+        this.retryScheduled = true;
+        this.getMainHandler().postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                RecordOutbox.this.retryScheduled = false;
+                RecordOutbox.this.drain();
+            }
+        }, RETRY_INTERVAL);
+    }
+
+    private void onEntryResponse(PendingEntry entry, JSONObject response) {
+        this.removeFromLog(entry);
+        this.entries.remove(entry);
+        this.sendingEntry = null;
+
+        for (Request perRequest : entry.requests) {
+            perRequest.onResponse(response);
+        }
+
+        this.drain();
+    }
+
+    private void onEntryError(PendingEntry entry, VolleyError error) {
+        this.sendingEntry = null;
+
+        if (error.networkResponse == null) {
+            // the server may not have received the mutation, keep it in the log
+            this.scheduleRetry();
+            return;
+        }
+
+        this.removeFromLog(entry);
+        this.entries.remove(entry);
+
+        for (Request perRequest : entry.requests) {
+            perRequest.onErrorResponse(error);
+        }
+
+        this.drain();
+    }
+
+    /**
+     * Merges a save into the payload of a pending save of the same records.
+     *
+     * @return the merged payload, null if they cannot be merged
+     */
+    private static JSONObject mergeSaves(PendingEntry entry, String action, JSONObject payload) {
+        if (!SaveAction.equals(entry.action) || !SaveAction.equals(action)) {
+            return null;
+        }
+
+        JSONObject pendingPayload = entry.payload;
+        if (!pendingPayload.optString("database_id").equals(payload.optString("database_id"))
+                || pendingPayload.optBoolean("atomic") != payload.optBoolean("atomic")) {
+            return null;
+        }
+
+        JSONArray pendingRecords = pendingPayload.optJSONArray("records");
+        JSONArray records = payload.optJSONArray("records");
+        if (pendingRecords == null || records == null) {
+            return null;
+        }
+
+        try {
+            Map<String, JSONObject> pendingRecordsByKey = RecordOutbox.recordsByKey(pendingRecords);
+            Map<String, JSONObject> recordsByKey = RecordOutbox.recordsByKey(records);
+            if (pendingRecordsByKey == null
+                    || recordsByKey == null
+                    || !pendingRecordsByKey.keySet().equals(recordsByKey.keySet())) {
+                return null;
+            }
+
+            // later values override earlier ones, while keys only in the
+            // earlier save are kept
+            JSONArray mergedRecords = new JSONArray();
+            for (int idx = 0; idx < records.length(); idx++) {
+                JSONObject perRecord = records.getJSONObject(idx);
+                JSONObject mergedRecord = new JSONObject(
+                        pendingRecordsByKey.get(RecordOutbox.recordKey(perRecord)).toString()
+                );
+
+                Iterator<String> keys = perRecord.keys();
+                while (keys.hasNext()) {
+                    String perKey = keys.next();
+                    mergedRecord.put(perKey, perRecord.get(perKey));
+                }
+
+                mergedRecords.put(mergedRecord);
+            }
+
+            JSONObject mergedPayload = new JSONObject(payload.toString());
+            mergedPayload.put("records", mergedRecords);
+
+            return mergedPayload;
+        } catch (JSONException e) {
+            Log.w(TAG, "Fail to merge record saves", e);
+            return null;
+        }
+    }
+
+    private static Map<String, JSONObject> recordsByKey(JSONArray records) throws JSONException {
+        Map<String, JSONObject> recordsByKey = new HashMap<>();
+        for (int idx = 0; idx < records.length(); idx++) {
+            JSONObject perRecord = records.getJSONObject(idx);
+            String key = RecordOutbox.recordKey(perRecord);
+            if (key == null || recordsByKey.put(key, perRecord) != null) {
+                return null;
+            }
+        }
+
+        return recordsByKey;
+    }
+
+    private static String recordKey(JSONObject record) {
+        if (record.has("_recordType") && record.has("_recordID")) {
+            return record.optString("_recordType") + "/" + record.optString("_recordID");
+        }
+
+        return record.has("_id") ? record.optString("_id") : null;
+    }
+
+    private static Map<String, Object> toMap(JSONObject payload) {
+        Map<String, Object> map = new HashMap<>();
+        Iterator<String> keys = payload.keys();
+        while (keys.hasNext()) {
+            String perKey = keys.next();
+            map.put(perKey, payload.opt(perKey));
+        }
+
+        return map;
+    }
+
+    /**
+     * A mutation waiting to be sent, with the requests waiting for its response.
+     */
+    private static class PendingEntry {
+        final String owner;
+        final String action;
+        final List<Request> requests;
+        JSONObject payload;
+
+        /**
+         * The id of the log entry, only accessed on the background thread
+         * once the entry is appended to the log.
+         */
+        long id;
+
+        PendingEntry(String owner, String action, JSONObject payload) {
+            this.owner = owner;
+            this.action = action;
+            this.payload = payload;
+            this.requests = new ArrayList<>();
+        }
+    }
+
+    /**
+     * The request sending a pending mutation.
+     */
+    private class OutboxRequest extends Request {
+        private final PendingEntry entry;
+
+        OutboxRequest(PendingEntry entry) {
+            super(entry.action, RecordOutbox.toMap(entry.payload));
+
+            this.entry = entry;
+        }
+
+        @Override
+        public void onResponse(JSONObject response) {
+            RecordOutbox.this.onEntryResponse(this.entry, response);
+        }
+
+        @Override
+        public void onErrorResponse(VolleyError error) {
+            RecordOutbox.this.onEntryError(this.entry, error);
+        }
+    }
+}
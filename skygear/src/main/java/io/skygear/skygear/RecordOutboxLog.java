@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Skygear record outbox log.
+ * <p>
+ * This class keeps the pending record mutations in a SQLite database, in the
+ * order they are appended, together with the id of the user appending them.
+ * Without a context, the mutations are kept in memory only.
+ * </p>
+ * <p>
+ * The methods access the database on the calling thread, so they are not
+ * expected to be called on the main thread.
+ * </p>
+ */
+class RecordOutboxLog {
+    private static final String TAG = "Skygear SDK";
+
+    static final String DATABASE_NAME = "skygear_outbox.db";
+    private static final int DATABASE_VERSION = 2;
+    private static final String TABLE_NAME = "outbox";
+    private static final String COLUMN_ID = "_id";
+    private static final String COLUMN_OWNER = "owner";
+    private static final String COLUMN_ACTION = "action";
+    private static final String COLUMN_PAYLOAD = "payload";
+
+    private final OpenHelper openHelper;
+    private final List<Entry> memoryEntries;
+    private long memoryLastId;
+
+    /**
+     * Instantiates a new record outbox log.
+     *
+     * @param context the context, null to keep the log in memory only
+     */
+    RecordOutboxLog(Context context) {
+        super();
+
+        this.openHelper = context != null ? new OpenHelper(context) : null;
+        this.memoryEntries = new ArrayList<>();
+    }
+
+    /**
+     * Loads the entries of a user in order.
+     *
+     * @param owner the user id, null for entries appended without a user
+     * @return the entries
+     */
+    synchronized List<Entry> load(String owner) {
+        if (this.openHelper == null) {
+            List<Entry> entries = new ArrayList<>();
+            for (Entry perEntry : this.memoryEntries) {
+                if (owner == null ? perEntry.owner == null : owner.equals(perEntry.owner)) {
+                    entries.add(perEntry);
+                }
+            }
+
+            return entries;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+        Cursor cursor = this.openHelper.getReadableDatabase().query(
+                TABLE_NAME,
+                new String[]{COLUMN_ID, COLUMN_ACTION, COLUMN_PAYLOAD},
+                owner == null ? COLUMN_OWNER + " IS NULL" : COLUMN_OWNER + " = ?",
+                owner == null ? null : new String[]{owner},
+                null,
+                null,
+                COLUMN_ID + " ASC"
+        );
+        try {
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                try {
+                    entries.add(new Entry(
+                            id,
+                            owner,
+                            cursor.getString(1),
+                            new JSONObject(cursor.getString(2))
+                    ));
+                } catch (JSONException e) {
+                    Log.w(TAG, "Fail to restore outbox entry, dropping it", e);
+                    this.remove(id);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return entries;
+    }
+
+    /**
+     * Appends an entry.
+     *
+     * @param owner   the id of the user appending the entry, null if there is no user
+     * @param action  the request action
+     * @param payload the request payload
+     * @return the entry
+     */
+    synchronized Entry append(String owner, String action, JSONObject payload) {
+        long id;
+        if (this.openHelper == null) {
+            id = ++this.memoryLastId;
+            this.memoryEntries.add(new Entry(id, owner, action, payload));
+        } else {
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_OWNER, owner);
+            values.put(COLUMN_ACTION, action);
+            values.put(COLUMN_PAYLOAD, payload.toString());
+            id = this.openHelper.getWritableDatabase().insertOrThrow(TABLE_NAME, null, values);
+        }
+
+        return new Entry(id, owner, action, payload);
+    }
+
+    /**
+     * Replaces the payload of an entry.
+     *
+     * @param id      the entry id
+     * @param payload the request payload
+     */
+    synchronized void update(long id, JSONObject payload) {
+        if (this.openHelper == null) {
+            for (int idx = 0; idx < this.memoryEntries.size(); idx++) {
+                Entry perEntry = this.memoryEntries.get(idx);
+                if (perEntry.id == id) {
+                    this.memoryEntries.set(idx, new Entry(id, perEntry.owner, perEntry.action, payload));
+                }
+            }
+            return;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_PAYLOAD, payload.toString());
+        this.openHelper.getWritableDatabase().update(
+                TABLE_NAME,
+                values,
+                COLUMN_ID + " = ?",
+                new String[]{String.valueOf(id)}
+        );
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param id the entry id
+     */
+    synchronized void remove(long id) {
+        if (this.openHelper == null) {
+            for (int idx = 0; idx < this.memoryEntries.size(); idx++) {
+                if (this.memoryEntries.get(idx).id == id) {
+                    this.memoryEntries.remove(idx);
+                    return;
+                }
+            }
+            return;
+        }
+
+        this.openHelper.getWritableDatabase().delete(
+                TABLE_NAME,
+                COLUMN_ID + " = ?",
+                new String[]{String.valueOf(id)}
+        );
+    }
+
+    /**
+     * The Outbox Log Entry.
+     */
+    static class Entry {
+        /**
+         * The Entry ID, increasing in the order of appending.
+         */
+        final long id;
+
+        /**
+         * The ID of the User appending the Entry, null if there is no user.
+         */
+        final String owner;
+
+        /**
+         * The Request Action.
+         */
+        final String action;
+
+        /**
+         * The Request Payload.
+         */
+        final JSONObject payload;
+
+        Entry(long id, String owner, String action, JSONObject payload) {
+            this.id = id;
+            this.owner = owner;
+            this.action = action;
+            this.payload = payload;
+        }
+    }
+
+    private static class OpenHelper extends SQLiteOpenHelper {
+        OpenHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE " + TABLE_NAME + " (" +
+                    COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    COLUMN_OWNER + " TEXT, " +
+                    COLUMN_ACTION + " TEXT NOT NULL, " +
+                    COLUMN_PAYLOAD + " TEXT NOT NULL)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // entries of version 1 have no owner, and cannot be sent safely on behalf of anyone
+            db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+            this.onCreate(db);
+        }
+    }
+}
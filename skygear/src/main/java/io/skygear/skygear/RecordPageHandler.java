@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+/**
+ * The Skygear Record Page Handler.
+ * <p>
+ * Receives the pages walked by a {@link RecordPager}. The next page is only
+ * delivered after {@link RecordPager#next()} is called.
+ * </p>
+ */
+public abstract class RecordPageHandler {
+    /**
+     * Page callback.
+     *
+     * @param records the records of the page
+     * @param pager   the pager, call {@link RecordPager#next()} to receive the next page
+     */
+    public abstract void onPage(Record[] records, RecordPager pager);
+
+    /**
+     * Completion callback, called when there are no more records.
+     */
+    public void onComplete() {}
+
+    /**
+     * Page error callback. The pager stops after an error.
+     *
+     * @param error the error
+     */
+    public abstract void onPageError(Error error);
+}
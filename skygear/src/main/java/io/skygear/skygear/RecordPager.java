@@ -0,0 +1,400 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The Skygear Record Pager.
+ * <p>
+ * This class walks through all records matching a query page by page. The page size
+ * is the limit of the query.
+ * </p>
+ * <p>
+ * Pages after the first one are located by the sort keys of the last record
+ * received (keyset pagination), with the record ID as the tie breaker. If a sort key
+ * cannot be compared in this way, e.g. sorting by distance or a missing value,
+ * the pager falls back to offset pagination.
+ * </p>
+ * <p>
+ * Missing values are ordered as the server database does, i.e. after all other
+ * values in ascending order and before them in descending order. Records with
+ * missing values are therefore still matched after the last record of a page.
+ * </p>
+ * <p>
+ * At most one page is prefetched while the current page is being consumed. No more
+ * queries are sent until {@link #next()} is called, and {@link #cancel()} stops
+ * the pager. Both methods should be called on the main thread.
+ * </p>
+ */
+public class RecordPager {
+    private static final String RecordIdKeypath = "_id";
+    private static final String CreatedAtKeypath = "_created_at";
+    private static final String UpdatedAtKeypath = "_updated_at";
+
+    private final Query query;
+    private final Database database;
+    private final RecordPageHandler handler;
+    private final List<SortKey> sortKeys;
+
+    private Query nextQuery;
+    private Record[] bufferedPage;
+    private Error bufferedError;
+    private Integer overallCount;
+
+    private boolean fetching;
+    private boolean exhausted;
+    private boolean waiting;
+    private boolean cancelled;
+    private boolean finished;
+
+    /**
+     * Instantiates a new Record Pager.
+     *
+     * @param query    the query
+     * @param database the database
+     * @param handler  the page handler
+     */
+    RecordPager(Query query, Database database, RecordPageHandler handler) {
+        super();
+
+        this.query = new Query(query);
+        this.database = database;
+        this.handler = handler;
+        this.sortKeys = RecordPager.parseSortKeys(query.getSortPredicateJson());
+
+        if (!RecordPager.hasSortKeypath(query.getSortPredicateJson(), RecordIdKeypath)) {
+            this.query.addAscending(RecordIdKeypath);
+            if (this.sortKeys != null) {
+                this.sortKeys.add(new SortKey(RecordIdKeypath, true));
+            }
+        }
+    }
+
+    /**
+     * Starts fetching the first page.
+     */
+    void start() {
+        this.waiting = true;
+        this.fetch(this.query);
+    }
+
+    /**
+     * Requests the next page.
+     * <p>
+     * The page is delivered immediately if it is already prefetched.
+     * </p>
+     */
+    public void next() {
+        if (this.finished || this.cancelled || this.waiting) {
+            return;
+        }
+
+        this.waiting = true;
+        if (this.bufferedPage != null
+                || this.bufferedError != null
+                || (this.exhausted && !this.fetching)) {
+            this.deliver();
+        }
+    }
+
+    /**
+     * Stops the pager. No more pages will be delivered.
+     */
+    public void cancel() {
+        this.cancelled = true;
+        this.bufferedPage = null;
+        this.bufferedError = null;
+    }
+
+    /**
+     * Checks whether the pager is cancelled.
+     *
+     * @return the boolean
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Gets the overall count.
+     *
+     * @return the overall count, null if the query does not include overall count
+     */
+    public Integer getOverallCount() {
+        return this.overallCount;
+    }
+
+    /**
+     * Sends a page query.
+     *
+     * @param pageQuery the page query
+     * @param handler   the response handler
+     */
+    void sendQuery(Query pageQuery, RecordQueryResponseHandler handler) {
+        this.database.query(pageQuery, handler);
+    }
+
+    private void fetch(final Query pageQuery) {
+        this.fetching = true;
+        this.sendQuery(pageQuery, new RecordQueryResponseHandler() {
+            @Override
+            public void onQuerySuccess(Record[] records, QueryInfo queryInfo) {
+                RecordPager.this.onPageFetched(pageQuery, records, queryInfo);
+            }
+
+            @Override
+            public void onQueryError(Error error) {
+                RecordPager.this.onPageFailed(error);
+            }
+        });
+    }
+
+    private void onPageFetched(Query pageQuery, Record[] records, QueryInfo queryInfo) {
+        this.fetching = false;
+        if (this.cancelled) {
+            return;
+        }
+
+        if (pageQuery == this.query && queryInfo != null) {
+            this.overallCount = queryInfo.getOverallCount();
+        }
+
+        if (pageQuery.getLimit() <= 0 || records.length < pageQuery.getLimit()) {
+            this.exhausted = true;
+        } else {
+            this.nextQuery = this.nextPageQuery(pageQuery, records[records.length - 1]);
+        }
+
+        if (records.length > 0) {
+            this.bufferedPage = records;
+        }
+
+        if (this.waiting) {
+            this.deliver();
+        }
+    }
+
+    private void onPageFailed(Error error) {
+        this.fetching = false;
+        if (this.cancelled) {
+            return;
+        }
+
+        this.bufferedError = error;
+        if (this.waiting) {
+            this.deliver();
+        }
+    }
+
+    private void deliver() {
+        if (this.bufferedError != null) {
+            Error error = this.bufferedError;
+
+            this.bufferedError = null;
+            this.waiting = false;
+            this.finished = true;
+            this.handler.onPageError(error);
+
+            return;
+        }
+
+        if (this.bufferedPage != null) {
+            Record[] page = this.bufferedPage;
+
+            this.bufferedPage = null;
+            this.waiting = false;
+            if (!this.exhausted) {
+                this.fetch(this.nextQuery);
+            }
+
+            this.handler.onPage(page, this);
+        }
+
+        if (this.exhausted && !this.fetching && this.bufferedPage == null
+                && !this.cancelled && !this.finished) {
+            this.waiting = false;
+            this.finished = true;
+            this.handler.onComplete();
+        }
+    }
+
+    private Query nextPageQuery(Query pageQuery, Record lastRecord) {
+        if (this.sortKeys != null) {
+            JSONArray keysetPredicate = RecordPager.keysetPredicate(this.sortKeys, lastRecord);
+            if (keysetPredicate != null) {
+                Query keysetQuery = new Query(this.query);
+                keysetQuery.addPredicate(keysetPredicate);
+                keysetQuery.setOffset(0);
+                keysetQuery.setOverallCount(false);
+
+                return keysetQuery;
+            }
+        }
+
+        Query offsetQuery = new Query(pageQuery);
+        offsetQuery.setOffset(pageQuery.getOffset() + pageQuery.getLimit());
+        offsetQuery.setOverallCount(false);
+
+        return offsetQuery;
+    }
+
+    /**
+     * Builds the predicate matching records after a record in the order of the sort keys.
+     *
+     * @param sortKeys the sort keys
+     * @param record   the record
+     * @return the predicate, null if any sort value of the record is not comparable
+     */
+    static JSONArray keysetPredicate(List<SortKey> sortKeys, Record record) {
+        Object[] values = new Object[sortKeys.size()];
+        for (int idx = 0; idx < sortKeys.size(); idx++) {
+            values[idx] = RecordPager.comparableValue(record, sortKeys.get(idx).keypath);
+            if (values[idx] == null) {
+                return null;
+            }
+        }
+
+        try {
+            JSONArray orPredicate = new JSONArray();
+            orPredicate.put("or");
+
+            for (int idx = 0; idx < sortKeys.size(); idx++) {
+                JSONArray andPredicate = new JSONArray();
+                andPredicate.put("and");
+
+                for (int eqIdx = 0; eqIdx < idx; eqIdx++) {
+                    andPredicate.put(QueryPredicate.basicPredicate(
+                            QueryPredicate.keypathRepresentation(sortKeys.get(eqIdx).keypath),
+                            "eq",
+                            values[eqIdx]
+                    ));
+                }
+
+                SortKey sortKey = sortKeys.get(idx);
+                JSONArray nullPredicate = null;
+                if (sortKey.ascending && !RecordPager.isMetadataKeypath(sortKey.keypath)) {
+                    // nulls are ordered last in ascending order, so they come after any value
+                    nullPredicate = new JSONArray(andPredicate.toString());
+                    nullPredicate.put(QueryPredicate.basicPredicate(
+                            QueryPredicate.keypathRepresentation(sortKey.keypath),
+                            "eq",
+                            JSONObject.NULL
+                    ));
+                }
+
+                andPredicate.put(QueryPredicate.basicPredicate(
+                        QueryPredicate.keypathRepresentation(sortKey.keypath),
+                        sortKey.ascending ? "gt" : "lt",
+                        values[idx]
+                ));
+
+                orPredicate.put(andPredicate.length() == 2 ? andPredicate.get(1) : andPredicate);
+                if (nullPredicate != null) {
+                    orPredicate.put(nullPredicate.length() == 2 ? nullPredicate.get(1) : nullPredicate);
+                }
+            }
+
+            return orPredicate.length() == 2 ? orPredicate.getJSONArray(1) : orPredicate;
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    private static boolean isMetadataKeypath(String keypath) {
+        return RecordIdKeypath.equals(keypath)
+                || CreatedAtKeypath.equals(keypath)
+                || UpdatedAtKeypath.equals(keypath);
+    }
+
+    private static Object comparableValue(Record record, String keypath) {
+        Object value;
+        if (RecordIdKeypath.equals(keypath)) {
+            value = record.getId();
+        } else if (CreatedAtKeypath.equals(keypath)) {
+            value = record.getCreatedAt();
+        } else if (UpdatedAtKeypath.equals(keypath)) {
+            value = record.getUpdatedAt();
+        } else {
+            value = record.get(keypath);
+        }
+
+        if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value;
+        } else if (value instanceof Date) {
+            return DateSerializer.serialize((Date) value);
+        }
+
+        return null;
+    }
+
+    private static List<SortKey> parseSortKeys(JSONArray sortPredicateJson) {
+        List<SortKey> sortKeys = new ArrayList<>();
+
+        for (int idx = 0; idx < sortPredicateJson.length(); idx++) {
+            JSONArray perSortPredicate = sortPredicateJson.optJSONArray(idx);
+            if (perSortPredicate == null) {
+                return null;
+            }
+
+            JSONObject keypath = perSortPredicate.optJSONObject(0);
+            if (keypath == null || !"keypath".equals(keypath.optString("$type"))) {
+                return null;
+            }
+
+            sortKeys.add(new SortKey(
+                    keypath.optString("$val"),
+                    "asc".equals(perSortPredicate.optString(1))
+            ));
+        }
+
+        return sortKeys;
+    }
+
+    private static boolean hasSortKeypath(JSONArray sortPredicateJson, String keypath) {
+        for (int idx = 0; idx < sortPredicateJson.length(); idx++) {
+            JSONArray perSortPredicate = sortPredicateJson.optJSONArray(idx);
+            JSONObject perKeypath = perSortPredicate == null ? null : perSortPredicate.optJSONObject(0);
+
+            if (perKeypath != null && keypath.equals(perKeypath.optString("$val"))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * The Sort Key.
+     */
+    static class SortKey {
+        final String keypath;
+        final boolean ascending;
+
+        SortKey(String keypath, boolean ascending) {
+            this.keypath = keypath;
+            this.ascending = ascending;
+        }
+    }
+}
@@ -0,0 +1,538 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.location.Location;
+import android.os.Parcel;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * The Skygear Record Parcel Serializer.
+ * <p>
+ * This class writes a record to a parcel field by field. Attribute values are
+ * prefixed with a type tag and written in their native form, so that no JSON is
+ * built or parsed when a record is passed between components.
+ * </p>
+ */
+class RecordParcelSerializer {
+    /**
+     * The format version written at the head of a parcelled record.
+     * <p>
+     * Format versions are negative, so that they never collide with the string length
+     * at the head of a record parcelled as JSON by earlier versions of the SDK.
+     * </p>
+     */
+    static final int FormatVersion = -2;
+
+    private static final long NullDate = Long.MIN_VALUE;
+
+    private static final int NullTag = 0;
+    private static final int JSONNullTag = 1;
+    private static final int StringTag = 2;
+    private static final int IntegerTag = 3;
+    private static final int LongTag = 4;
+    private static final int DoubleTag = 5;
+    private static final int FloatTag = 6;
+    private static final int BooleanTag = 7;
+    private static final int ShortTag = 8;
+    private static final int ByteTag = 9;
+    private static final int CharacterTag = 10;
+    private static final int DateTag = 11;
+    private static final int AssetTag = 12;
+    private static final int ReferenceTag = 13;
+    private static final int LocationTag = 14;
+    private static final int UnknownValueTag = 15;
+    private static final int RecordTag = 16;
+    private static final int JSONObjectTag = 17;
+    private static final int JSONArrayTag = 18;
+    private static final int ArrayTag = 19;
+    private static final int CodecValueTag = 20;
+    private static final int ParcelValueTag = 21;
+    private static final int MapTag = 22;
+    private static final int ListTag = 23;
+
+    private static final AccessControl.Entry.Type[] EntryTypes = AccessControl.Entry.Type.values();
+    private static final AccessControl.Level[] Levels = AccessControl.Level.values();
+
+    private static final Map<Class<?>, Integer> ValueTags = new HashMap<>();
+
+    static {
+        ValueTags.put(String.class, StringTag);
+        ValueTags.put(Integer.class, IntegerTag);
+        ValueTags.put(Long.class, LongTag);
+        ValueTags.put(Double.class, DoubleTag);
+        ValueTags.put(Float.class, FloatTag);
+        ValueTags.put(Boolean.class, BooleanTag);
+        ValueTags.put(Short.class, ShortTag);
+        ValueTags.put(Byte.class, ByteTag);
+        ValueTags.put(Character.class, CharacterTag);
+        ValueTags.put(Date.class, DateTag);
+        ValueTags.put(Asset.class, AssetTag);
+        ValueTags.put(Reference.class, ReferenceTag);
+        ValueTags.put(Location.class, LocationTag);
+        ValueTags.put(UnknownValue.class, UnknownValueTag);
+        ValueTags.put(Record.class, RecordTag);
+        ValueTags.put(JSONObject.class, JSONObjectTag);
+        ValueTags.put(JSONArray.class, JSONArrayTag);
+    }
+
+    /**
+     * Writes a record to a parcel.
+     *
+     * @param dest   the parcel
+     * @param record the record
+     * @param flags  the parcelable flags
+     */
+    static void write(Parcel dest, Record record, int flags) {
+        dest.writeInt(FormatVersion);
+        RecordParcelSerializer.writeRecord(dest, record, flags);
+    }
+
+    /**
+     * Reads a record from a parcel, after its format version has been read.
+     *
+     * @param in the parcel
+     * @return the record
+     * @throws JSONException the JSON exception when a typed value cannot be decoded
+     */
+    static Record read(Parcel in) throws JSONException {
+        String type = in.readString();
+        String id = in.readString();
+        Record record = new Record(type, id);
+
+        record.createdAt = RecordParcelSerializer.readDate(in);
+        record.updatedAt = RecordParcelSerializer.readDate(in);
+        record.creatorId = in.readString();
+        record.updaterId = in.readString();
+        record.ownerId = in.readString();
+        record.deleted = in.readInt() != 0;
+        record.access = RecordParcelSerializer.readAccessControl(in);
+
+        RecordParcelSerializer.readMap(in, record.transientMap);
+        RecordParcelSerializer.readMap(in, record.data);
+
+        Set<String> dirtyKeys = RecordParcelSerializer.readKeys(in);
+        if (dirtyKeys != null) {
+            record.dirtyKeys.addAll(dirtyKeys);
+        }
+        record.undecodedKeys = RecordParcelSerializer.readKeys(in);
+        record.selectedKeys = RecordParcelSerializer.readKeys(in);
+
+        return record;
+    }
+
+    private static void writeRecord(Parcel dest, Record record, int flags) {
+        dest.writeString(record.type);
+        dest.writeString(record.id);
+        RecordParcelSerializer.writeDate(dest, record.createdAt);
+        RecordParcelSerializer.writeDate(dest, record.updatedAt);
+        dest.writeString(record.creatorId);
+        dest.writeString(record.updaterId);
+        dest.writeString(record.ownerId);
+        dest.writeInt(record.deleted ? 1 : 0);
+        RecordParcelSerializer.writeAccessControl(dest, record.access);
+
+        RecordParcelSerializer.writeMap(dest, record.transientMap, flags);
+        RecordParcelSerializer.writeMap(dest, record.data, flags);
+
+        RecordParcelSerializer.writeKeys(dest, record.dirtyKeys);
+        RecordParcelSerializer.writeKeys(dest, record.undecodedKeys);
+        RecordParcelSerializer.writeKeys(dest, record.selectedKeys);
+    }
+
+    private static void writeDate(Parcel dest, Date date) {
+        dest.writeLong(date == null ? NullDate : date.getTime());
+    }
+
+    private static Date readDate(Parcel in) {
+        long time = in.readLong();
+        return time == NullDate ? null : new Date(time);
+    }
+
+    private static void writeKeys(Parcel dest, Set<String> keys) {
+        if (keys == null) {
+            dest.writeInt(-1);
+            return;
+        }
+
+        dest.writeInt(keys.size());
+        for (String perKey : keys) {
+            dest.writeString(perKey);
+        }
+    }
+
+    private static Set<String> readKeys(Parcel in) {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+
+        Set<String> keys = new HashSet<>(size * 2);
+        for (int idx = 0; idx < size; idx++) {
+            keys.add(in.readString());
+        }
+
+        return keys;
+    }
+
+    private static void writeAccessControl(Parcel dest, AccessControl access) {
+        if (access == null) {
+            dest.writeInt(-1);
+            return;
+        }
+
+        // only the highest entry of each queue is kept, as AccessControlSerializer does
+        List<AccessControl.Entry> entries = new ArrayList<>();
+        if (access.publicEntryQueue.size() > 0) {
+            entries.add(access.publicEntryQueue.peek());
+        }
+        for (Queue<AccessControl.Entry> perEntryQueue : access.userEntryMap.values()) {
+            if (perEntryQueue.size() > 0) {
+                entries.add(perEntryQueue.peek());
+            }
+        }
+        for (Queue<AccessControl.Entry> perEntryQueue : access.roleEntryMap.values()) {
+            if (perEntryQueue.size() > 0) {
+                entries.add(perEntryQueue.peek());
+            }
+        }
+
+        dest.writeInt(entries.size());
+        for (AccessControl.Entry perEntry : entries) {
+            AccessControl.Entry.Type type = perEntry.getType();
+            dest.writeInt(type.ordinal());
+            dest.writeInt(perEntry.getLevel().ordinal());
+            if (type == AccessControl.Entry.Type.USER_BASED) {
+                dest.writeString(perEntry.getUserId());
+            } else if (type == AccessControl.Entry.Type.ROLE_BASED) {
+                dest.writeString(perEntry.getRole().getName());
+            }
+        }
+    }
+
+    private static AccessControl readAccessControl(Parcel in) {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+
+        AccessControl access = new AccessControl();
+        for (int idx = 0; idx < size; idx++) {
+            AccessControl.Entry.Type type = EntryTypes[in.readInt()];
+            AccessControl.Level level = Levels[in.readInt()];
+
+            if (type == AccessControl.Entry.Type.USER_BASED) {
+                access.addEntry(new AccessControl.Entry(in.readString(), level));
+            } else if (type == AccessControl.Entry.Type.ROLE_BASED) {
+                access.addEntry(new AccessControl.Entry(new Role(in.readString()), level));
+            } else {
+                access.addEntry(new AccessControl.Entry(level));
+            }
+        }
+
+        return access;
+    }
+
+    private static void writeMap(Parcel dest, Map<String, Object> map, int flags) {
+        dest.writeInt(map.size());
+        for (Map.Entry<String, Object> perEntry : map.entrySet()) {
+            dest.writeString(perEntry.getKey());
+            RecordParcelSerializer.writeValue(dest, perEntry.getValue(), flags);
+        }
+    }
+
+    private static void readMap(Parcel in, Map<String, Object> map) throws JSONException {
+        int size = in.readInt();
+        for (int idx = 0; idx < size; idx++) {
+            String key = in.readString();
+            map.put(key, RecordParcelSerializer.readValue(in));
+        }
+    }
+
+    /**
+     * Writes a value with its type tag.
+     *
+     * @param dest  the parcel
+     * @param value the value
+     * @param flags the parcelable flags
+     */
+    static void writeValue(Parcel dest, Object value, int flags) {
+        if (value == null) {
+            dest.writeInt(NullTag);
+            return;
+        }
+
+        if (value == JSONObject.NULL) {
+            dest.writeInt(JSONNullTag);
+            return;
+        }
+
+        Class<?> valueClass = value.getClass();
+        Integer tag = ValueTags.get(valueClass);
+        if (tag == null) {
+            if (valueClass.isArray() && !valueClass.getComponentType().isPrimitive()) {
+                tag = ArrayTag;
+            } else if (ValueCodecRegistry.forClass(valueClass) != null) {
+                tag = CodecValueTag;
+            } else if (value instanceof Map) {
+                tag = MapTag;
+            } else if (value instanceof List) {
+                tag = ListTag;
+            } else {
+                tag = ParcelValueTag;
+            }
+        }
+
+        dest.writeInt(tag);
+        switch (tag) {
+            case StringTag:
+                dest.writeString((String) value);
+                break;
+            case IntegerTag:
+                dest.writeInt((Integer) value);
+                break;
+            case LongTag:
+                dest.writeLong((Long) value);
+                break;
+            case DoubleTag:
+                dest.writeDouble((Double) value);
+                break;
+            case FloatTag:
+                dest.writeFloat((Float) value);
+                break;
+            case BooleanTag:
+                dest.writeInt((Boolean) value ? 1 : 0);
+                break;
+            case ShortTag:
+                dest.writeInt((Short) value);
+                break;
+            case ByteTag:
+                dest.writeInt((Byte) value);
+                break;
+            case CharacterTag:
+                dest.writeInt((Character) value);
+                break;
+            case DateTag:
+                dest.writeLong(((Date) value).getTime());
+                break;
+            case AssetTag:
+                Asset asset = (Asset) value;
+                dest.writeString(asset.name);
+                dest.writeString(asset.url);
+                dest.writeString(asset.mimeType);
+                break;
+            case ReferenceTag:
+                Reference reference = (Reference) value;
+                dest.writeString(reference.type);
+                dest.writeString(reference.id);
+                break;
+            case LocationTag:
+                ((Location) value).writeToParcel(dest, flags);
+                break;
+            case UnknownValueTag:
+                dest.writeString(((UnknownValue) value).underlyingType);
+                break;
+            case RecordTag:
+                RecordParcelSerializer.writeRecord(dest, (Record) value, flags);
+                break;
+            case JSONObjectTag:
+                RecordParcelSerializer.writeJSONObject(dest, (JSONObject) value, flags);
+                break;
+            case JSONArrayTag:
+                JSONArray array = (JSONArray) value;
+                int length = array.length();
+                dest.writeInt(length);
+                for (int idx = 0; idx < length; idx++) {
+                    RecordParcelSerializer.writeValue(dest, array.opt(idx), flags);
+                }
+                break;
+            case ArrayTag:
+                Object[] items = (Object[]) value;
+                dest.writeString(valueClass.getComponentType().getName());
+                dest.writeInt(items.length);
+                for (Object perItem : items) {
+                    RecordParcelSerializer.writeValue(dest, perItem, flags);
+                }
+                break;
+            case CodecValueTag:
+                try {
+                    RecordParcelSerializer.writeJSONObject(
+                            dest,
+                            ValueCodecRegistry.serialize(value),
+                            flags
+                    );
+                } catch (JSONException e) {
+                    throw new IllegalStateException("Fail to serialize value of " + valueClass, e);
+                }
+                break;
+            case MapTag:
+                // keys and values are tagged, so that values such as assets nested in
+                // the map are written the same way as attribute values
+                Map<?, ?> map = (Map<?, ?>) value;
+                dest.writeInt(map.size());
+                for (Map.Entry<?, ?> perEntry : map.entrySet()) {
+                    RecordParcelSerializer.writeValue(dest, perEntry.getKey(), flags);
+                    RecordParcelSerializer.writeValue(dest, perEntry.getValue(), flags);
+                }
+                break;
+            case ListTag:
+                List<?> list = (List<?>) value;
+                dest.writeInt(list.size());
+                for (Object perItem : list) {
+                    RecordParcelSerializer.writeValue(dest, perItem, flags);
+                }
+                break;
+            default:
+                dest.writeValue(value);
+                break;
+        }
+    }
+
+    /**
+     * Reads a value written by {@link #writeValue(Parcel, Object, int)}.
+     *
+     * @param in the parcel
+     * @return the value
+     * @throws JSONException the JSON exception when a typed value cannot be decoded
+     */
+    static Object readValue(Parcel in) throws JSONException {
+        int tag = in.readInt();
+        switch (tag) {
+            case NullTag:
+                return null;
+            case JSONNullTag:
+                return JSONObject.NULL;
+            case StringTag:
+                return in.readString();
+            case IntegerTag:
+                return in.readInt();
+            case LongTag:
+                return in.readLong();
+            case DoubleTag:
+                return in.readDouble();
+            case FloatTag:
+                return in.readFloat();
+            case BooleanTag:
+                return in.readInt() != 0;
+            case ShortTag:
+                return (short) in.readInt();
+            case ByteTag:
+                return (byte) in.readInt();
+            case CharacterTag:
+                return (char) in.readInt();
+            case DateTag:
+                return new Date(in.readLong());
+            case AssetTag:
+                String assetName = in.readString();
+                String assetUrl = in.readString();
+                String assetMimeType = in.readString();
+                return new Asset(assetName, assetUrl, assetMimeType);
+            case ReferenceTag:
+                String referenceType = in.readString();
+                String referenceId = in.readString();
+                return new Reference(referenceType, referenceId);
+            case LocationTag:
+                return Location.CREATOR.createFromParcel(in);
+            case UnknownValueTag:
+                return new UnknownValue(in.readString());
+            case RecordTag:
+                return RecordParcelSerializer.read(in);
+            case JSONObjectTag:
+                return RecordParcelSerializer.readJSONObject(in);
+            case JSONArrayTag:
+                int length = in.readInt();
+                JSONArray array = new JSONArray();
+                for (int idx = 0; idx < length; idx++) {
+                    array.put(RecordParcelSerializer.readValue(in));
+                }
+                return array;
+            case ArrayTag:
+                Class<?> componentType = RecordParcelSerializer.classForName(in.readString());
+                Object[] items = (Object[]) Array.newInstance(componentType, in.readInt());
+                for (int idx = 0; idx < items.length; idx++) {
+                    items[idx] = RecordParcelSerializer.readValue(in);
+                }
+                return items;
+            case CodecValueTag:
+                return ValueCodecRegistry.deserialize(RecordParcelSerializer.readJSONObject(in));
+            case MapTag:
+                int mapSize = in.readInt();
+                Map<Object, Object> map = new HashMap<>(mapSize * 2);
+                for (int idx = 0; idx < mapSize; idx++) {
+                    Object key = RecordParcelSerializer.readValue(in);
+                    map.put(key, RecordParcelSerializer.readValue(in));
+                }
+                return map;
+            case ListTag:
+                int listSize = in.readInt();
+                List<Object> list = new ArrayList<>(listSize);
+                for (int idx = 0; idx < listSize; idx++) {
+                    list.add(RecordParcelSerializer.readValue(in));
+                }
+                return list;
+            case ParcelValueTag:
+                return in.readValue(Record.class.getClassLoader());
+            default:
+                throw new JSONException("Unknown value tag in parcel: " + tag);
+        }
+    }
+
+    private static void writeJSONObject(Parcel dest, JSONObject object, int flags) {
+        dest.writeInt(object.length());
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String perKey = keys.next();
+            dest.writeString(perKey);
+            RecordParcelSerializer.writeValue(dest, object.opt(perKey), flags);
+        }
+    }
+
+    private static JSONObject readJSONObject(Parcel in) throws JSONException {
+        int size = in.readInt();
+        JSONObject object = new JSONObject();
+        for (int idx = 0; idx < size; idx++) {
+            String key = in.readString();
+            object.put(key, RecordParcelSerializer.readValue(in));
+        }
+
+        return object;
+    }
+
+    private static Class<?> classForName(String name) {
+        try {
+            return Class.forName(name, false, Record.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return Object.class;
+        }
+    }
+}
@@ -20,7 +20,11 @@ package io.skygear.skygear;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * The Skygear Record Query Request.
@@ -29,6 +33,12 @@ public class RecordQueryRequest extends Request {
 
     private Query query;
     private final String databaseId;
+    private boolean lazyDecoding;
+
+    /**
+     * The record cache, null if the result should not be cached.
+     */
+    RecordCache recordCache;
 
     /**
      * Instantiates a new record query request.
@@ -40,6 +50,7 @@ public class RecordQueryRequest extends Request {
         super("record:query");
 
         this.databaseId = database.getName();
+        this.recordCache = database.getRecordCache();
         this.data = new HashMap<>();
 
         this.setQuery(query);
@@ -67,6 +78,7 @@ public class RecordQueryRequest extends Request {
             this.data.remove("sort");
             this.data.remove("predicate");
             this.data.remove("include");
+            this.data.remove("desired_keys");
             this.data.remove("limit");
             this.data.remove("count");
             this.data.remove("offset");
@@ -87,12 +99,122 @@ public class RecordQueryRequest extends Request {
             this.data.put("include", transientPredicateJson);
         }
 
+        List<String> selectedKeys = this.query.getSelectedKeys();
+        if (selectedKeys != null) {
+            this.data.put("desired_keys", selectedKeys);
+        } else {
+            this.data.remove("desired_keys");
+        }
+
         this.data.put("limit",  this.query.getLimit());
         this.data.put("count",  this.query.getOverallCount());
         this.data.put("offset", this.query.getOffset());
     }
 
+    /**
+     * Sets whether typed attribute values of the result records are decoded when first read.
+     *
+     * @param lazyDecoding the boolean indicating whether values are decoded lazily
+     */
+    public void setLazyDecoding(boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+    }
+
+    public boolean isLazyDecoding() {
+        return this.lazyDecoding;
+    }
+
     private void updateData() {
         this.data.put("database_id", this.databaseId);
     }
+
+    @Override
+    public boolean isIdempotent() {
+        return true;
+    }
+
+    /**
+     * Gets the database id.
+     *
+     * @return the database id
+     */
+    String getDatabaseId() {
+        return this.databaseId;
+    }
+
+    /**
+     * Gets the cached result of the request.
+     *
+     * @return the cached records, null if not cached
+     */
+    Record[] getCachedResult() {
+        if (this.recordCache == null || this.query == null || this.isProjected()) {
+            return null;
+        }
+
+        return this.recordCache.get(this.databaseId, this.query);
+    }
+
+    /**
+     * Checks whether the query selects only some of the attributes.
+     *
+     * @return the boolean indicating whether the result records are partial
+     */
+    boolean isProjected() {
+        return this.query != null && this.query.getSelectedKeys() != null;
+    }
+
+    /**
+     * Query result callback, called before the result is delivered to the response handler.
+     * <p>
+     * Partial records are not cached, so that they never replace complete ones.
+     * </p>
+     *
+     * @param records the records
+     */
+    void onQueryResult(Record[] records) {
+        if (this.isProjected()) {
+            Set<String> selectedKeys = Collections.unmodifiableSet(
+                    new HashSet<>(this.query.getSelectedKeys())
+            );
+            for (Record perRecord : records) {
+                perRecord.selectedKeys = selectedKeys;
+            }
+
+            return;
+        }
+
+        if (this.recordCache != null && this.query != null) {
+            this.recordCache.put(this.databaseId, this.query, records);
+        }
+    }
+
+    /**
+     * Decoded response callback.
+     * <p>
+     * This is called instead of {@link #onResponse(JSONObject)} when the response
+     * is decoded in streaming mode.
+     * </p>
+     *
+     * @param result the decoded result
+     */
+    void onDecodedResponse(RecordQueryResponseParser.Result result) {
+        ResponseHandler responseHandler = this.getResponseHandler();
+        if (responseHandler instanceof RecordQueryResponseHandler) {
+            ((RecordQueryResponseHandler) responseHandler).onQueryResult(
+                    result.records,
+                    result.queryInfo
+            );
+        }
+    }
+
+    /**
+     * Malformed response callback for streaming mode.
+     */
+    void onMalformedResponse() {
+        ResponseHandler responseHandler = this.getResponseHandler();
+        if (responseHandler != null) {
+            responseHandler.onFailure(new Error("Malformed server response"));
+        }
+    }
 }
@@ -50,12 +50,16 @@ public abstract class RecordQueryResponseHandler extends ResponseHandler {
     @Override
     public final void onSuccess(JSONObject result) {
         try {
+            Request request = this.getRequest();
+            boolean lazy = request instanceof RecordQueryRequest
+                    && ((RecordQueryRequest) request).isLazyDecoding();
+
             JSONArray results = result.getJSONArray("result");
             Record[] records = new Record[results.length()];
 
             for (int idx = 0; idx < results.length(); idx++) {
                 JSONObject perResult = results.getJSONObject(idx);
-                records[idx] = Record.fromJson(perResult);
+                records[idx] = RecordSerializer.deserialize(perResult, lazy);
             }
 
             QueryInfo queryInfo = null;
@@ -67,13 +71,32 @@ public abstract class RecordQueryResponseHandler extends ResponseHandler {
                 }
                 queryInfo = new QueryInfo(overallCount);
             }
-            this.onQuerySuccess(records);
-            this.onQuerySuccess(records, queryInfo);
+            this.onQueryResult(records, queryInfo);
         } catch (JSONException e) {
             this.onQueryError(new Error("Malformed server response"));
         }
     }
 
+    /**
+     * Query result callback with decoded records.
+     * <p>
+     * This is called by {@link #onSuccess(JSONObject)}, or directly by the request
+     * manager when the response is decoded in streaming mode.
+     * </p>
+     *
+     * @param records   the records
+     * @param queryInfo the query info
+     */
+    final void onQueryResult(Record[] records, QueryInfo queryInfo) {
+        Request request = this.getRequest();
+        if (request instanceof RecordQueryRequest) {
+            ((RecordQueryRequest) request).onQueryResult(records);
+        }
+
+        this.onQuerySuccess(records);
+        this.onQuerySuccess(records, queryInfo);
+    }
+
     @Override
     public final void onFailure(Error error) {
         this.onQueryError(error);
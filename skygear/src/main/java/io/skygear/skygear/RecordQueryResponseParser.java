@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Skygear Record Query Response Parser.
+ * <p>
+ * This class decodes the body of a record query response with a pull parser.
+ * Each element of the result array is converted to a record as soon as it is
+ * read, so that the whole response never exists as a single JSON tree.
+ * </p>
+ */
+class RecordQueryResponseParser {
+    private static final String ResultKey = "result";
+    private static final String InfoKey = "info";
+    private static final String InfoCountKey = "count";
+
+    /**
+     * Parses a record query response.
+     *
+     * @param inputStream the response body
+     * @param charset     the charset of the response body
+     * @return the parse result
+     * @throws IOException   the IO exception
+     * @throws JSONException the JSON exception
+     */
+    static Result parse(InputStream inputStream, String charset)
+            throws IOException, JSONException
+    {
+        return RecordQueryResponseParser.parse(inputStream, charset, false);
+    }
+
+    /**
+     * Parses a record query response.
+     *
+     * @param inputStream the response body
+     * @param charset     the charset of the response body
+     * @param lazy        the boolean indicating whether typed attribute values
+     *                    of the records are decoded when first read
+     * @return the parse result
+     * @throws IOException   the IO exception
+     * @throws JSONException the JSON exception
+     */
+    static Result parse(InputStream inputStream, String charset, boolean lazy)
+            throws IOException, JSONException
+    {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, charset));
+        try {
+            return RecordQueryResponseParser.parse(reader, lazy);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new JSONException(e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Result parse(JsonReader reader, boolean lazy)
+            throws IOException, JSONException
+    {
+        Record[] records = null;
+        QueryInfo queryInfo = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (ResultKey.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                records = RecordQueryResponseParser.readRecords(reader, lazy);
+            } else if (InfoKey.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                queryInfo = RecordQueryResponseParser.readQueryInfo(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (records == null) {
+            throw new JSONException("Missing result array in query response");
+        }
+
+        return new Result(records, queryInfo);
+    }
+
+    private static Record[] readRecords(JsonReader reader, boolean lazy)
+            throws IOException, JSONException
+    {
+        List<Record> records = new ArrayList<>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Object perValue = RecordQueryResponseParser.readValue(reader);
+            if (!(perValue instanceof JSONObject)) {
+                throw new JSONException("Unexpected record format in query response");
+            }
+
+            records.add(RecordSerializer.deserialize((JSONObject) perValue, lazy));
+        }
+        reader.endArray();
+
+        return records.toArray(new Record[records.size()]);
+    }
+
+    private static QueryInfo readQueryInfo(JsonReader reader) throws IOException {
+        Integer overallCount = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (InfoCountKey.equals(name) && reader.peek() == JsonToken.NUMBER) {
+                overallCount = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new QueryInfo(overallCount);
+    }
+
+    /**
+     * Reads the next value from the reader into the same object model as
+     * {@link org.json.JSONTokener}, so that records decoded from either path are identical.
+     */
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    object.put(name, RecordQueryResponseParser.readValue(reader));
+                }
+                reader.endObject();
+
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(RecordQueryResponseParser.readValue(reader));
+                }
+                reader.endArray();
+
+                return array;
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return RecordQueryResponseParser.parseNumber(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                throw new JSONException("Unexpected token in query response: " + reader.peek());
+        }
+    }
+
+    private static Object parseNumber(String literal) {
+        if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1 && literal.indexOf('E') == -1) {
+            try {
+                long longValue = Long.parseLong(literal);
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                    return (int) longValue;
+                }
+
+                return longValue;
+            } catch (NumberFormatException e) {
+                // fall through to parse as double
+            }
+        }
+
+        return Double.valueOf(literal);
+    }
+
+    /**
+     * The Parse Result.
+     */
+    static class Result {
+        /**
+         * The Records.
+         */
+        final Record[] records;
+
+        /**
+         * The Query Info, null if the response does not contain any.
+         */
+        final QueryInfo queryInfo;
+
+        Result(Record[] records, QueryInfo queryInfo) {
+            this.records = records;
+            this.queryInfo = queryInfo;
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -34,6 +35,13 @@ import java.util.Set;
 public class RecordSaveRequest extends Request {
     private String databaseId;
     private List<Record> records;
+    private List<Map<String, Long>> savingKeyVersions;
+    private boolean deltaSave;
+
+    /**
+     * The record cache, null if no cache should be updated.
+     */
+    RecordCache recordCache;
 
     /**
      * Instantiates a record save request with default properties.
@@ -42,6 +50,7 @@ public class RecordSaveRequest extends Request {
         super("record:save");
         this.data = new HashMap<>();
         this.records = new ArrayList<>();
+        this.savingKeyVersions = new ArrayList<>();
     }
 
     /**
@@ -51,9 +60,22 @@ public class RecordSaveRequest extends Request {
      * @param database the database
      */
     public RecordSaveRequest(Record[] records, Database database) {
+        this(records, database, false);
+    }
+
+    /**
+     * Instantiates a record save request.
+     *
+     * @param records   the records
+     * @param database  the database
+     * @param deltaSave the boolean indicating whether only modified attributes are sent
+     */
+    RecordSaveRequest(Record[] records, Database database, boolean deltaSave) {
         this();
         this.databaseId = database.getName();
+        this.recordCache = database.getRecordCache();
         this.records = Arrays.asList(records);
+        this.deltaSave = deltaSave;
         this.updateData();
     }
 
@@ -86,24 +108,97 @@ public class RecordSaveRequest extends Request {
         return (boolean) this.data.get("atomic");
     }
 
-    private void updateData() {
-        JSONArray recordArray = new JSONArray();
-        for (Record perRecord : this.records) {
-            JSONObject perJsonObject = perRecord.toJson();
-            recordArray.put(perJsonObject);
+    /**
+     * Sets whether only the modified attributes of the records are sent.
+     * <p>
+     * Attributes not sent are kept unchanged by the server.
+     * </p>
+     *
+     * @param deltaSave the boolean indicating whether only modified attributes are sent
+     */
+    public void setDeltaSave(boolean deltaSave) {
+        if (this.deltaSave == deltaSave) {
+            return;
         }
 
-        this.data.put("records", recordArray);
+        this.deltaSave = deltaSave;
+        this.updateRecordData();
+    }
+
+    public boolean isDeltaSave() {
+        return this.deltaSave;
+    }
+
+    private void updateData() {
+        this.updateRecordData();
         this.data.put("database_id", this.databaseId);
         this.data.put("atomic", true);
     }
 
+    private void updateRecordData() {
+        // records are written by RequestBodyWriter when the request is sent,
+        // without building JSON objects for them
+        List<Object> recordPayloads = new ArrayList<>(this.records.size());
+        this.savingKeyVersions.clear();
+        for (Record perRecord : this.records) {
+            Set<String> savingKeys;
+            if (this.deltaSave) {
+                savingKeys = new HashSet<>(perRecord.dirtyKeys);
+                recordPayloads.add(new RequestBodyWriter.PartialRecord(perRecord, savingKeys));
+            } else {
+                savingKeys = perRecord.dirtyKeys;
+                recordPayloads.add(perRecord);
+            }
+
+            // only keys not set again since now are no longer modified after saving
+            Map<String, Long> keyVersions = new HashMap<>();
+            for (String perKey : savingKeys) {
+                keyVersions.put(perKey, perRecord.keyVersions.get(perKey));
+            }
+            this.savingKeyVersions.add(keyVersions);
+        }
+
+        this.data.put("records", recordPayloads);
+    }
+
+    private static void clearSavedKeys(Record record, Map<String, Long> savedKeyVersions) {
+        for (Map.Entry<String, Long> perEntry : savedKeyVersions.entrySet()) {
+            Long savedVersion = perEntry.getValue();
+            Long version = record.keyVersions.get(perEntry.getKey());
+            if (savedVersion == null ? version == null : savedVersion.equals(version)) {
+                record.dirtyKeys.remove(perEntry.getKey());
+            }
+        }
+    }
+
+    @Override
+    public void onResponse(JSONObject response) {
+        if (this.recordCache != null) {
+            for (Record perRecord : this.records) {
+                this.recordCache.remove(this.databaseId, perRecord.getType(), perRecord.getId());
+            }
+        }
+
+        // the saved attributes are no longer modified, unless the record
+        // fails to save or they are set again during the save
+        JSONArray results = response.optJSONArray("result");
+        if (results != null) {
+            for (int idx = 0; idx < results.length() && idx < this.records.size(); idx++) {
+                JSONObject perResult = results.optJSONObject(idx);
+                if (perResult != null && !"error".equals(perResult.optString("_type"))) {
+                    RecordSaveRequest.clearSavedKeys(this.records.get(idx), this.savingKeyVersions.get(idx));
+                }
+            }
+        }
+
+        super.onResponse(response);
+    }
+
     @Override
     protected void validate() throws Exception {
         super.validate();
 
-        JSONArray records = (JSONArray)this.data.get("records");
-        if (records.length() == 0) {
+        if (this.records.isEmpty()) {
             throw new InvalidParameterException("No records to be processed");
         }
 
@@ -20,9 +20,6 @@ package io.skygear.skygear;
 import android.location.Location;
 import android.util.Log;
 
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -33,7 +30,6 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -42,21 +38,21 @@ import java.util.Set;
  */
 public class RecordSerializer {
 
-    private static final String RecordSerializationDeprecatedIDKey = "_id";
+    static final String RecordSerializationDeprecatedIDKey = "_id";
     private static final String RecordSerializationResponseTypeKey = "_type";
-    private static final String RecordSerializationRecordTypeKey = "_recordType";
-    private static final String RecordSerializationRecordIDKey = "_recordID";
-    private static final String RecordSerializationCreationDatetimeKey = "_created_at";
-    private static final String RecordSerializationUpdateDatetimeKey = "_updated_at";
-    private static final String RecordSerializationOwnerIDKey = "_ownerID";
-    private static final String RecordSerializationCreatorIDKey = "_created_by";
-    private static final String RecordSerializationUpdaterIDKey = "_updated_by";
-    private static final String RecordSerializationAccessKey = "_access";
-    private static final String RecordSerializationDeletedKey = "_deleted";
-    private static final String RecordSerializationTransientKey = "_transient";
+    static final String RecordSerializationRecordTypeKey = "_recordType";
+    static final String RecordSerializationRecordIDKey = "_recordID";
+    static final String RecordSerializationCreationDatetimeKey = "_created_at";
+    static final String RecordSerializationUpdateDatetimeKey = "_updated_at";
+    static final String RecordSerializationOwnerIDKey = "_ownerID";
+    static final String RecordSerializationCreatorIDKey = "_created_by";
+    static final String RecordSerializationUpdaterIDKey = "_updated_by";
+    static final String RecordSerializationAccessKey = "_access";
+    static final String RecordSerializationDeletedKey = "_deleted";
+    static final String RecordSerializationTransientKey = "_transient";
 
     private static final String TAG = "Skygear SDK";
-    private static List<String> ReservedKeys = Arrays.asList(
+    private static Set<String> ReservedKeys = new HashSet<>(Arrays.asList(
             RecordSerializationDeprecatedIDKey,
             RecordSerializationResponseTypeKey,
             RecordSerializationRecordTypeKey,
@@ -69,7 +65,7 @@ public class RecordSerializer {
             RecordSerializationAccessKey,
             RecordSerializationDeletedKey,
             RecordSerializationTransientKey
-    );
+    ));
 
     private static Set<? extends Class> CompatibleValueClasses = new HashSet<>(Arrays.asList(
             /* Primitive types */
@@ -143,26 +139,38 @@ public class RecordSerializer {
             return true;
         }
 
-        return CompatibleValueClasses.contains(valueClass);
+        return CompatibleValueClasses.contains(valueClass)
+                || ValueCodecRegistry.forClass(valueClass) != null;
+    }
+
+    /**
+     * Check if a class is handled by the SDK without custom value codecs
+     *
+     * @param valueClass the value class
+     * @return the boolean to indicate whether the class is built-in
+     */
+    static boolean isBuiltInValueClass(Class<?> valueClass) {
+        return CompatibleValueClasses.contains(valueClass) || Record.class.equals(valueClass);
     }
 
     public static JSONObject serialize(Map<String, Object> data) {
         HashMap<String, Object> recordData = new HashMap<>(data);
 
-        for (String perKey : recordData.keySet()) {
-            Object perValue = recordData.get(perKey);
-
-            if (perValue instanceof Date) {
-                recordData.put(perKey, DateSerializer.serialize((Date) perValue));
-            } else if (perValue instanceof Asset) {
-                recordData.put(perKey, AssetSerializer.serialize((Asset) perValue));
-            } else if (perValue instanceof Location) {
-                recordData.put(perKey, LocationSerializer.serialize((Location) perValue));
-            } else if (perValue instanceof Reference) {
-                recordData.put(perKey, ReferenceSerializer.serialize((Reference) perValue));
-            } else if (perValue instanceof UnknownValue) {
-                recordData.put(perKey, UnknownValueSerializer.serialize((UnknownValue) perValue));
+        try {
+            for (Map.Entry<String, Object> perEntry : recordData.entrySet()) {
+                Object perValue = perEntry.getValue();
+                if (perValue == null) {
+                    continue;
+                }
+
+                JSONObject perJsonObject = ValueCodecRegistry.serialize(perValue);
+                if (perJsonObject != null) {
+                    perEntry.setValue(perJsonObject);
+                }
             }
+        } catch (JSONException e) {
+            Log.w(TAG, "Fail to serialize record data", e);
+            return null;
         }
 
         return new JSONObject(recordData);
@@ -242,6 +250,47 @@ public class RecordSerializer {
         return null;
     }
 
+    /**
+     * Serializes the modified attributes of a Skygear Record, together with
+     * its identifiers and access control.
+     *
+     * @param record the record
+     * @return the JSON object
+     */
+    static JSONObject serializeDirty(Record record) {
+        Map<String, Object> dirtyData = new HashMap<>();
+        for (String perKey : record.dirtyKeys) {
+            if (record.data.containsKey(perKey)) {
+                dirtyData.put(perKey, record.data.get(perKey));
+            }
+        }
+
+        try {
+            JSONObject jsonObject = RecordSerializer.serialize(dirtyData);
+
+            jsonObject.put(RecordSerializationDeprecatedIDKey, String.format(
+                    "%s/%s",
+                    record.getType(),
+                    record.getId()
+            ));
+            jsonObject.put(RecordSerializationRecordTypeKey, record.getType());
+            jsonObject.put(RecordSerializationRecordIDKey, record.getId());
+
+            if (record.getAccess() != null) {
+                jsonObject.put(
+                        RecordSerializationAccessKey,
+                        AccessControlSerializer.serialize(record.getAccess())
+                );
+            }
+
+            return jsonObject;
+        } catch (JSONException e) {
+            Log.w(TAG, "Fail to serialize record object", e);
+        }
+
+        return null;
+    }
+
     /**
      * Deserialize a Skygear Record.
      *
@@ -250,6 +299,22 @@ public class RecordSerializer {
      * @throws JSONException the JSON exception
      */
     public static Record deserialize(JSONObject jsonObject) throws JSONException {
+        return RecordSerializer.deserialize(jsonObject, false);
+    }
+
+    /**
+     * Deserialize a Skygear Record.
+     * <p>
+     * In lazy mode, typed attribute values such as dates and references are kept
+     * as JSON and decoded when they are first read.
+     * </p>
+     *
+     * @param jsonObject the JSON object
+     * @param lazy       the boolean indicating whether typed values are decoded lazily
+     * @return the Skygear Record
+     * @throws JSONException the JSON exception
+     */
+    static Record deserialize(JSONObject jsonObject, boolean lazy) throws JSONException {
         RecordIdentifier identifier = RecordSerializer.deserializeRecordIdentifer(jsonObject);
         Record record = new Record(identifier.type, identifier.id);
 
@@ -299,7 +364,7 @@ public class RecordSerializer {
                     if (perValue instanceof JSONObject) {
                         record.transientMap.put(
                                 perKey,
-                                RecordSerializer.deserialize((JSONObject) perValue)
+                                RecordSerializer.deserialize((JSONObject) perValue, lazy)
                         );
                     } else {
                         record.transientMap.put(perKey, perValue);
@@ -315,23 +380,28 @@ public class RecordSerializer {
             String nextKey = keys.next();
             if (!ReservedKeys.contains(nextKey)) {
                 Object nextValue = jsonObject.get(nextKey);
+                boolean undecoded = false;
+                if (nextValue instanceof JSONObject) {
+                    JSONObject nextJsonObject = (JSONObject) nextValue;
+                    if (!lazy) {
+                        nextValue = ValueCodecRegistry.deserialize(nextJsonObject);
+                    } else {
+                        undecoded = nextJsonObject.has(ValueCodecRegistry.TypeKey);
+                    }
+                }
 
-                if (DateSerializer.isDateFormat(nextValue)) {
-                    record.set(nextKey, DateSerializer.deserialize((JSONObject) nextValue));
-                } else if (AssetSerializer.isAssetFormat(nextValue)) {
-                    record.set(nextKey, AssetSerializer.deserialize((JSONObject) nextValue));
-                } else if (LocationSerializer.isLocationFormat(nextValue)) {
-                    record.set(nextKey, LocationSerializer.deserialize((JSONObject) nextValue));
-                } else if (ReferenceSerializer.isReferenceFormat(nextValue)) {
-                    record.set(nextKey, ReferenceSerializer.deserialize((JSONObject) nextValue));
-                } else if (UnknownValueSerializer.isUnknownValueFormat(nextValue)) {
-                    record.set(nextKey, UnknownValueSerializer.deserialize((JSONObject) nextValue));
-                } else {
-                    record.set(nextKey, nextValue);
+                record.set(nextKey, nextValue);
+                if (undecoded) {
+                    if (record.undecodedKeys == null) {
+                        record.undecodedKeys = new HashSet<>();
+                    }
+                    record.undecodedKeys.add(nextKey);
                 }
             }
         }
 
+        record.dirtyKeys.clear();
+
         return record;
     }
 
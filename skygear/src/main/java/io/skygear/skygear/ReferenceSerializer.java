@@ -29,12 +29,12 @@ import static io.skygear.skygear.RecordSerializer.RecordIdentifier;
  */
 public class ReferenceSerializer {
 
-    private static final String ReferenceSerializationTypeKey = "$type";
-    private static final String ReferenceSerializationDeprecatedIDKey = "$id";
-    private static final String ReferenceSerializationRecordTypeKey = "$recordType";
-    private static final String ReferenceSerializationRecordIDKey = "$recordID";
+    static final String ReferenceSerializationTypeKey = "$type";
+    static final String ReferenceSerializationDeprecatedIDKey = "$id";
+    static final String ReferenceSerializationRecordTypeKey = "$recordType";
+    static final String ReferenceSerializationRecordIDKey = "$recordID";
 
-    private static final String ReferenceSerializationTypeValue = "ref";
+    static final String ReferenceSerializationTypeValue = "ref";
 
     /**
      * Serializes a record reference
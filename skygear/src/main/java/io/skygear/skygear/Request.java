@@ -100,6 +100,19 @@ public class Request implements Response.Listener<JSONObject>, Response.ErrorLis
         return this.responseHandler;
     }
 
+    /**
+     * Checks whether the request is idempotent.
+     * <p>
+     * Identical idempotent requests in flight at the same time share a single
+     * HTTP request.
+     * </p>
+     *
+     * @return the boolean
+     */
+    public boolean isIdempotent() {
+        return false;
+    }
+
     /**
      * Validation method.
      * This is be called before sending out the request.
@@ -0,0 +1,520 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.location.Location;
+import android.util.JsonWriter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The Skygear Request Body Writer.
+ * <p>
+ * This class writes the data of a request as JSON in a single pass. Values are
+ * dispatched by their class through a lookup table, and records are written
+ * attribute by attribute, so that no intermediate JSON tree is built.
+ * </p>
+ */
+class RequestBodyWriter {
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private static final Map<Class<?>, ValueWriter> ValueWriters = new ConcurrentHashMap<>();
+
+    private static final ValueWriter StringValueWriter = new ValueWriter() {
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(value.toString());
+        }
+    };
+
+    private static final ValueWriter NumberValueWriter = new ValueWriter() {
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value((Number) value);
+        }
+    };
+
+    private static final ValueWriter MapValueWriter = new ValueWriter() {
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.beginObject();
+            for (Map.Entry<?, ?> perEntry : ((Map<?, ?>) value).entrySet()) {
+                writer.name(String.valueOf(perEntry.getKey()));
+                RequestBodyWriter.writeValue(writer, perEntry.getValue());
+            }
+            writer.endObject();
+        }
+    };
+
+    private static final ValueWriter CollectionValueWriter = new ValueWriter() {
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.beginArray();
+            for (Object perValue : (Collection<?>) value) {
+                RequestBodyWriter.writeValue(writer, perValue);
+            }
+            writer.endArray();
+        }
+    };
+
+    private static final ValueWriter ArrayValueWriter = new ValueWriter() {
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.beginArray();
+            for (Object perValue : (Object[]) value) {
+                RequestBodyWriter.writeValue(writer, perValue);
+            }
+            writer.endArray();
+        }
+    };
+
+    private static final ValueWriter CodecValueWriter = new ValueWriter() {
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            JSONObject jsonObject;
+            try {
+                jsonObject = ValueCodecRegistry.serialize(value);
+            } catch (JSONException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+
+            if (jsonObject == null) {
+                // the codec has been unregistered
+                writer.value(value.toString());
+            } else {
+                RequestBodyWriter.writeValue(writer, jsonObject);
+            }
+        }
+    };
+
+    static {
+        ValueWriters.put(String.class, StringValueWriter);
+        ValueWriters.put(Character.class, StringValueWriter);
+        ValueWriters.put(Integer.class, NumberValueWriter);
+        ValueWriters.put(Long.class, NumberValueWriter);
+        ValueWriters.put(Short.class, NumberValueWriter);
+        ValueWriters.put(Byte.class, NumberValueWriter);
+        ValueWriters.put(Double.class, NumberValueWriter);
+        ValueWriters.put(Float.class, NumberValueWriter);
+        ValueWriters.put(Boolean.class, new ValueWriter() {
+            @Override
+            public void write(JsonWriter writer, Object value) throws IOException {
+                writer.value((boolean) value);
+            }
+        });
+        ValueWriters.put(JSONObject.NULL.getClass(), new ValueWriter() {
+            @Override
+            public void write(JsonWriter writer, Object value) throws IOException {
+                writer.nullValue();
+            }
+        });
+        ValueWriters.put(JSONObject.class, new ValueWriter() {
+            @Override
+            public void write(JsonWriter writer, Object value) throws IOException {
+                JSONObject jsonObject = (JSONObject) value;
+
+                writer.beginObject();
+                Iterator<String> keys = jsonObject.keys();
+                while (keys.hasNext()) {
+                    String perKey = keys.next();
+                    writer.name(perKey);
+                    RequestBodyWriter.writeValue(writer, jsonObject.opt(perKey));
+                }
+                writer.endObject();
+            }
+        });
+        ValueWriters.put(JSONArray.class, new ValueWriter() {
+            @Override
+            public void write(JsonWriter writer, Object value) throws IOException {
+                JSONArray jsonArray = (JSONArray) value;
+
+                writer.beginArray();
+                for (int idx = 0; idx < jsonArray.length(); idx++) {
+                    RequestBodyWriter.writeValue(writer, jsonArray.opt(idx));
+                }
+                writer.endArray();
+            }
+        });
+        ValueWriters.put(Date.class, new ValueWriter() {
+            @Override
+            public void write(JsonWriter writer, Object value) throws IOException {
+                writer.beginObject();
+                writer.name("$type").value("date");
+                writer.name("$date").value(DateSerializer.stringFromDate((Date) value));
+                writer.endObject();
+            }
+        });
+        ValueWriters.put(Asset.class, new ValueWriter() {
+            @Override
+            public void write(JsonWriter writer, Object value) throws IOException {
+                Asset asset = (Asset) value;
+
+                writer.beginObject();
+                writer.name("$type").value("asset");
+                writer.name("$name").value(asset.getName());
+                writer.name("$content_type").value(asset.getMimeType());
+                if (asset.getUrl() != null) {
+                    writer.name("$url").value(asset.getUrl());
+                }
+                writer.endObject();
+            }
+        });
+        ValueWriters.put(Reference.class, new ValueWriter() {
+            @Override
+            public void write(JsonWriter writer, Object value) throws IOException {
+                Reference reference = (Reference) value;
+
+                writer.beginObject();
+                writer.name(ReferenceSerializer.ReferenceSerializationTypeKey)
+                        .value(ReferenceSerializer.ReferenceSerializationTypeValue);
+                writer.name(ReferenceSerializer.ReferenceSerializationDeprecatedIDKey)
+                        .value(reference.getType() + '/' + reference.getId());
+                writer.name(ReferenceSerializer.ReferenceSerializationRecordTypeKey)
+                        .value(reference.getType());
+                writer.name(ReferenceSerializer.ReferenceSerializationRecordIDKey)
+                        .value(reference.getId());
+                writer.endObject();
+            }
+        });
+        ValueWriters.put(Location.class, new ValueWriter() {
+            @Override
+            public void write(JsonWriter writer, Object value) throws IOException {
+                RequestBodyWriter.writeValue(writer, LocationSerializer.serialize((Location) value));
+            }
+        });
+        ValueWriters.put(UnknownValue.class, new ValueWriter() {
+            @Override
+            public void write(JsonWriter writer, Object value) throws IOException {
+                RequestBodyWriter.writeValue(
+                        writer,
+                        UnknownValueSerializer.serialize((UnknownValue) value)
+                );
+            }
+        });
+        ValueWriters.put(Record.class, new ValueWriter() {
+            @Override
+            public void write(JsonWriter writer, Object value) throws IOException {
+                RequestBodyWriter.writeRecord(writer, (Record) value, null);
+            }
+        });
+        ValueWriters.put(PartialRecord.class, new ValueWriter() {
+            @Override
+            public void write(JsonWriter writer, Object value) throws IOException {
+                PartialRecord partialRecord = (PartialRecord) value;
+                RequestBodyWriter.writeRecord(writer, partialRecord.record, partialRecord.keys);
+            }
+        });
+    }
+
+    private RequestBodyWriter() {
+        // Do nothing. This class only contains static methods.
+    }
+
+    /**
+     * Writes the request data as a JSON string.
+     *
+     * @param data      the request data
+     * @param extraData the extra data, overriding entries of the request data, could be null
+     * @return the JSON string
+     * @throws IOException the IO exception
+     */
+    static String write(Map<String, Object> data, Map<String, Object> extraData)
+            throws IOException
+    {
+        StringBuilderWriter out = new StringBuilderWriter(INITIAL_BUFFER_SIZE);
+        RequestBodyWriter.write(out, data, extraData);
+
+        return out.toString();
+    }
+
+    /**
+     * Writes the request data as a JSON string.
+     *
+     * @param data the request data
+     * @return the JSON string
+     * @throws IOException the IO exception
+     */
+    static String write(Map<String, Object> data) throws IOException {
+        return RequestBodyWriter.write(data, null);
+    }
+
+    private static void write(
+            Writer out,
+            Map<String, Object> data,
+            Map<String, Object> extraData
+    ) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        try {
+            writer.beginObject();
+            if (data != null) {
+                for (Map.Entry<String, Object> perEntry : data.entrySet()) {
+                    if (extraData != null && extraData.containsKey(perEntry.getKey())) {
+                        continue;
+                    }
+
+                    writer.name(perEntry.getKey());
+                    RequestBodyWriter.writeValue(writer, perEntry.getValue());
+                }
+            }
+            if (extraData != null) {
+                for (Map.Entry<String, Object> perEntry : extraData.entrySet()) {
+                    writer.name(perEntry.getKey());
+                    RequestBodyWriter.writeValue(writer, perEntry.getValue());
+                }
+            }
+            writer.endObject();
+            writer.close();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes a value.
+     * <p>
+     * Values of unknown classes are written as their string representation.
+     * </p>
+     *
+     * @param writer the JSON writer
+     * @param value  the value
+     * @throws IOException the IO exception
+     */
+    static void writeValue(JsonWriter writer, Object value) throws IOException {
+        if (value == null) {
+            writer.nullValue();
+            return;
+        }
+
+        Class<?> valueClass = value.getClass();
+        ValueWriter valueWriter = ValueWriters.get(valueClass);
+        if (valueWriter == null) {
+            valueWriter = RequestBodyWriter.resolveValueWriter(valueClass);
+
+            // a codec may be registered for the class later
+            if (valueWriter != StringValueWriter) {
+                ValueWriters.put(valueClass, valueWriter);
+            }
+        }
+
+        valueWriter.write(writer, value);
+    }
+
+    private static ValueWriter resolveValueWriter(Class<?> valueClass) {
+        // subclasses are written as their nearest supported class
+        if (Record.class.isAssignableFrom(valueClass)) {
+            return ValueWriters.get(Record.class);
+        } else if (Asset.class.isAssignableFrom(valueClass)) {
+            return ValueWriters.get(Asset.class);
+        } else if (Reference.class.isAssignableFrom(valueClass)) {
+            return ValueWriters.get(Reference.class);
+        } else if (Location.class.isAssignableFrom(valueClass)) {
+            return ValueWriters.get(Location.class);
+        } else if (JSONObject.class.isAssignableFrom(valueClass)) {
+            return ValueWriters.get(JSONObject.class);
+        } else if (JSONArray.class.isAssignableFrom(valueClass)) {
+            return ValueWriters.get(JSONArray.class);
+        } else if (Map.class.isAssignableFrom(valueClass)) {
+            return MapValueWriter;
+        } else if (Collection.class.isAssignableFrom(valueClass)) {
+            return CollectionValueWriter;
+        } else if (Object[].class.isAssignableFrom(valueClass)) {
+            return ArrayValueWriter;
+        } else if (Number.class.isAssignableFrom(valueClass)) {
+            return NumberValueWriter;
+        } else if (Date.class.isAssignableFrom(valueClass)) {
+            return ValueWriters.get(Date.class);
+        } else if (ValueCodecRegistry.forClass(valueClass) != null) {
+            return CodecValueWriter;
+        }
+
+        return StringValueWriter;
+    }
+
+    /**
+     * Writes a record in the same format as {@link RecordSerializer#serialize(Record)}.
+     * <p>
+     * If keys are given, only those attributes are written together with the
+     * identifiers and access control, as {@link RecordSerializer#serializeDirty(Record)}.
+     * </p>
+     *
+     * @param writer the JSON writer
+     * @param record the record
+     * @param keys   the attributes to be written, null for all attributes
+     * @throws IOException the IO exception
+     */
+    static void writeRecord(JsonWriter writer, Record record, Set<String> keys)
+            throws IOException
+    {
+        writer.beginObject();
+
+        if (keys == null) {
+            for (Map.Entry<String, Object> perEntry : record.data.entrySet()) {
+                writer.name(perEntry.getKey());
+                RequestBodyWriter.writeValue(writer, perEntry.getValue());
+            }
+        } else {
+            for (String perKey : keys) {
+                if (record.data.containsKey(perKey)) {
+                    writer.name(perKey);
+                    RequestBodyWriter.writeValue(writer, record.data.get(perKey));
+                }
+            }
+        }
+
+        writer.name(RecordSerializer.RecordSerializationDeprecatedIDKey)
+                .value(record.getType() + '/' + record.getId());
+        writer.name(RecordSerializer.RecordSerializationRecordTypeKey).value(record.getType());
+        writer.name(RecordSerializer.RecordSerializationRecordIDKey).value(record.getId());
+
+        if (keys == null) {
+            if (record.createdAt != null) {
+                writer.name(RecordSerializer.RecordSerializationCreationDatetimeKey)
+                        .value(DateSerializer.stringFromDate(record.createdAt));
+            }
+            if (record.updatedAt != null) {
+                writer.name(RecordSerializer.RecordSerializationUpdateDatetimeKey)
+                        .value(DateSerializer.stringFromDate(record.updatedAt));
+            }
+            if (record.creatorId != null) {
+                writer.name(RecordSerializer.RecordSerializationCreatorIDKey)
+                        .value(record.creatorId);
+            }
+            if (record.updaterId != null) {
+                writer.name(RecordSerializer.RecordSerializationUpdaterIDKey)
+                        .value(record.updaterId);
+            }
+            if (record.ownerId != null) {
+                writer.name(RecordSerializer.RecordSerializationOwnerIDKey).value(record.ownerId);
+            }
+            if (record.deleted) {
+                writer.name(RecordSerializer.RecordSerializationDeletedKey).value(true);
+            }
+        }
+
+        if (record.getAccess() != null) {
+            writer.name(RecordSerializer.RecordSerializationAccessKey);
+            RequestBodyWriter.writeValue(
+                    writer,
+                    AccessControlSerializer.serialize(record.getAccess())
+            );
+        }
+
+        if (keys == null && record.transientMap.size() > 0) {
+            writer.name(RecordSerializer.RecordSerializationTransientKey);
+            writer.beginObject();
+            for (Map.Entry<String, Object> perEntry : record.transientMap.entrySet()) {
+                writer.name(perEntry.getKey());
+                RequestBodyWriter.writeValue(writer, perEntry.getValue());
+            }
+            writer.endObject();
+        }
+
+        writer.endObject();
+    }
+
+    /**
+     * The Value Writer.
+     */
+    interface ValueWriter {
+        /**
+         * Writes a value.
+         *
+         * @param writer the JSON writer
+         * @param value  the value, never null
+         * @throws IOException the IO exception
+         */
+        void write(JsonWriter writer, Object value) throws IOException;
+    }
+
+    /**
+     * An unsynchronized writer to a string builder.
+     * <p>
+     * The JSON writer writes strings character by character, which is costly
+     * on synchronized or encoding writers.
+     * </p>
+     */
+    private static class StringBuilderWriter extends Writer {
+        private final StringBuilder builder;
+
+        StringBuilderWriter(int capacity) {
+            this.builder = new StringBuilder(capacity);
+        }
+
+        @Override
+        public void write(int c) {
+            this.builder.append((char) c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int count) {
+            this.builder.append(buffer, offset, count);
+        }
+
+        @Override
+        public void write(String str, int offset, int count) {
+            this.builder.append(str, offset, offset + count);
+        }
+
+        @Override
+        public void flush() {
+            // Do nothing. Nothing is buffered.
+        }
+
+        @Override
+        public void close() {
+            // Do nothing. Nothing is buffered.
+        }
+
+        @Override
+        public String toString() {
+            return this.builder.toString();
+        }
+    }
+
+    /**
+     * A record of which only some attributes are written.
+     */
+    static class PartialRecord {
+        /**
+         * The Record.
+         */
+        final Record record;
+
+        /**
+         * The attributes to be written.
+         */
+        final Set<String> keys;
+
+        PartialRecord(Record record, Set<String> keys) {
+            this.record = record;
+            this.keys = keys;
+        }
+    }
+}
@@ -18,31 +18,33 @@
 package io.skygear.skygear;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 
-import com.android.volley.AuthFailureError;
-import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.ParseError;
 import com.android.volley.RequestQueue;
 import com.android.volley.Response;
-import com.android.volley.toolbox.JsonObjectRequest;
+import com.android.volley.VolleyError;
 import com.android.volley.toolbox.Volley;
-import io.skygear.utils.volley.SimpleMultiPartRequest;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The Skygear request manager.
@@ -52,6 +54,44 @@ public class RequestManager {
     /** Align to iOS SDK timeout 60s */
     public static final int DEFAULT_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(60);
     private static final String TAG = "Skygear SDK";
+    private static final String PROTOCOL_CHARSET = "utf-8";
+
+    private static final Transport.ResponseParser<JSONObject> JsonParser
+            = new Transport.ResponseParser<JSONObject>() {
+        @Override
+        public JSONObject parse(InputStream body, String charset)
+                throws IOException, JSONException
+        {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = body.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, count);
+            }
+
+            return new JSONObject(outputStream.toString(charset));
+        }
+    };
+
+    private static final Transport.ResponseParser<RecordQueryResponseParser.Result>
+            RecordQueryParser = new Transport.ResponseParser<RecordQueryResponseParser.Result>() {
+        @Override
+        public RecordQueryResponseParser.Result parse(InputStream body, String charset)
+                throws IOException, JSONException
+        {
+            return RecordQueryResponseParser.parse(body, charset);
+        }
+    };
+
+    private static final Transport.ResponseParser<RecordQueryResponseParser.Result>
+            LazyRecordQueryParser = new Transport.ResponseParser<RecordQueryResponseParser.Result>() {
+        @Override
+        public RecordQueryResponseParser.Result parse(InputStream body, String charset)
+                throws IOException, JSONException
+        {
+            return RecordQueryResponseParser.parse(body, charset, true);
+        }
+    };
 
     /**
      * The Request Queue.
@@ -75,11 +115,30 @@ public class RequestManager {
      */
     int requestTimeout;
 
+    /**
+     * Boolean indicating whether record query responses are decoded in streaming mode.
+     */
+    boolean streamingQueryDecoding;
+
+    /**
+     * The HTTP transport type.
+     */
+    TransportType transportType;
+
     /**
      * The Access token.
      */
     public String accessToken;
 
+    private VolleyTransport volleyTransport;
+    private OkHttpTransport okHttpTransport;
+    private RetryingAssetUploader retryingUploader;
+    private AssetDigestIndex assetDigestIndex;
+    private Handler mainHandler;
+
+    private final Map<String, RequestGroup> inFlightRequests;
+    private final AtomicLong coalescedRequestCount;
+
     /**
      * Instantiates a new Request manager.
      *
@@ -88,8 +147,11 @@ public class RequestManager {
      */
     public RequestManager(Context context, Configuration config) {
         this.context = context;
-        this.queue = Volley.newRequestQueue(context);
+        this.queue = Volley.newRequestQueue(context, new StreamingHttpStack());
         this.requestTimeout = DEFAULT_TIMEOUT;
+        this.transportType = TransportType.VOLLEY;
+        this.inFlightRequests = new HashMap<>();
+        this.coalescedRequestCount = new AtomicLong();
         if (config != null) {
             this.configure(config);
         }
@@ -107,6 +169,8 @@ public class RequestManager {
 
         this.endpoint = config.endpoint;
         this.apiKey = config.apiKey;
+        this.streamingQueryDecoding = config.streamingQueryDecoding;
+        this.transportType = config.transportType;
     }
 
     /**
@@ -146,8 +210,22 @@ public class RequestManager {
         return extra;
     }
 
+    /**
+     * Gets the number of requests coalesced into identical in-flight requests.
+     *
+     * @return the number of coalesced requests
+     */
+    public long getCoalescedRequestCount() {
+        return this.coalescedRequestCount.get();
+    }
+
     /**
      * Send a request.
+     * <p>
+     * If the request is idempotent and an identical request (same action, payload
+     * and access token) is in flight, the request is not sent. Instead, it receives
+     * the response of the in-flight request.
+     * </p>
      *
      * @param request the request
      */
@@ -166,159 +244,251 @@ public class RequestManager {
         String action = request.action;
         String url = this.endpoint + action.replace(":", "/");
 
-        Map<String, Object> data = new HashMap<>(request.data);
-        data.putAll(this.getExtraData(action));
-
-        JsonObjectRequest jsonRequest = new JsonRequest(
-                url,
-                new JSONObject(data),
-                this.getExtraHeaders(),
-                request,
-                request
-        );
-
-        jsonRequest.setRetryPolicy(new DefaultRetryPolicy(
-                this.requestTimeout,
-                DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
-                DefaultRetryPolicy.DEFAULT_BACKOFF_MULT
-        ));
-
-        this.queue.add(jsonRequest);
-    }
-
-    public void sendAssetPostRequest(final AssetPostRequest request) {
-        if (this.endpoint == null) {
-            throw new IllegalStateException("Endpoint is not configured.");
-        }
-
+        String body;
         try {
-            request.validate();
-        } catch (Exception e) {
+            body = RequestBodyWriter.write(request.data, this.getExtraData(action));
+        } catch (IOException e) {
             request.onValidationError(e);
             return;
         }
 
-        File tempFile;
-        try {
-            tempFile = createTempFileFromAsset(request.getAsset());
-        } catch (IOException e) {
-            Log.e(TAG, "Fail to create temporary file", e);
-            request.onValidationError(e);
-            return;
+        boolean streamingMode = this.shouldDecodeInStreamingMode(request);
+
+        RequestGroup requestGroup;
+        if (request.isIdempotent()) {
+            boolean lazyDecoding = request instanceof RecordQueryRequest
+                    && ((RecordQueryRequest) request).isLazyDecoding();
+            String key = (streamingMode ? "stream:" : "json:")
+                    + (lazyDecoding ? "lazy:" : "")
+                    + action + ":" + body;
+            synchronized (this.inFlightRequests) {
+                RequestGroup inFlightGroup = this.inFlightRequests.get(key);
+                if (inFlightGroup != null) {
+                    inFlightGroup.requests.add(request);
+                    this.coalescedRequestCount.incrementAndGet();
+                    return;
+                }
+
+                requestGroup = new RequestGroup(key, streamingMode, request);
+                this.inFlightRequests.put(key, requestGroup);
+            }
+        } else {
+            requestGroup = new RequestGroup(null, streamingMode, request);
         }
 
-        // support relative URL
-        URI uri;
-        try {
-            uri = new URI(request.getAction());
-        } catch (URISyntaxException e) {
-            Log.e(TAG, "Got malformed URL", e);
-            request.onValidationError(e);
-            return;
+        byte[] bodyBytes = body.getBytes(Charset.forName(PROTOCOL_CHARSET));
+        if (streamingMode) {
+            final RequestGroup streamingGroup = requestGroup;
+            this.getTransport().sendRequest(
+                    url,
+                    this.getExtraHeaders(),
+                    bodyBytes,
+                    this.requestTimeout,
+                    ((RecordQueryRequest) request).isLazyDecoding()
+                            ? LazyRecordQueryParser
+                            : RecordQueryParser,
+                    new Response.Listener<RecordQueryResponseParser.Result>() {
+                        @Override
+                        public void onResponse(RecordQueryResponseParser.Result result) {
+                            streamingGroup.onDecodedResponse(result);
+                        }
+                    },
+                    requestGroup
+            );
+        } else {
+            this.getTransport().sendRequest(
+                    url,
+                    this.getExtraHeaders(),
+                    bodyBytes,
+                    this.requestTimeout,
+                    JsonParser,
+                    requestGroup,
+                    requestGroup
+            );
         }
+    }
 
-        String uriString = uri.toString();
-        if (!uri.isAbsolute()) {
-            uriString = this.endpoint + uriString.substring(1);
+    /**
+     * Gets the transport selected by the configuration.
+     *
+     * @return the transport
+     */
+    Transport getTransport() {
+        if (this.transportType == TransportType.OKHTTP) {
+            if (this.okHttpTransport == null) {
+                // OkHttp is an optional dependency, only touched when it is selected
+                this.okHttpTransport = new OkHttpTransport();
+            }
+
+            return this.okHttpTransport;
         }
 
-        // make multipart request
-        MultiPartRequest multiPartRequest = new MultiPartRequest(
-                uriString,
-                this.getExtraHeaders(),
-                request,
-                request
-        );
+        if (this.volleyTransport == null || this.volleyTransport.queue != this.queue) {
+            this.volleyTransport = new VolleyTransport(this.queue);
+        }
 
-        Map<String, String> extraFields = request.getExtraFields();
-        Set<String> extraFieldKeys = extraFields.keySet();
-        for (String perKey : extraFieldKeys) {
-            String perValue = extraFields.get(perKey);
-            multiPartRequest.addStringParam(perKey, perValue);
+        return this.volleyTransport;
+    }
+
+    private synchronized Handler getMainHandler() {
+        if (this.mainHandler == null) {
+            this.mainHandler = new Handler(Looper.getMainLooper());
         }
 
-        multiPartRequest.addFile("file", tempFile.getAbsolutePath());
-        this.queue.add(multiPartRequest);
+        return this.mainHandler;
     }
 
-    private static File createTempFileFromAsset(Asset asset) throws IOException {
-        File file = File.createTempFile("Skygear", null);
-        OutputStream tempFileStream = new FileOutputStream(file);
-        InputStream inputStream = asset.inputStream;
+    /**
+     * Gets the uploader for asset uploads with a reuse key.
+     *
+     * @return the retrying uploader
+     */
+    synchronized RetryingAssetUploader getRetryingUploader() {
+        if (this.retryingUploader == null) {
+            this.retryingUploader = new RetryingAssetUploader(new AssetUploadStateStore(this.context));
+        }
 
-        int bufferSize = 10 * 1024;
-        byte[] buffer = new byte[bufferSize];
+        return this.retryingUploader;
+    }
 
-        for (int length; (length = inputStream.read(buffer)) != -1; ){
-            tempFileStream.write(buffer, 0, length);
+    /**
+     * Gets the index of uploaded asset digests.
+     *
+     * @return the asset digest index
+     */
+    synchronized AssetDigestIndex getAssetDigestIndex() {
+        if (this.assetDigestIndex == null) {
+            this.assetDigestIndex = new AssetDigestIndex(this.context);
         }
 
-        inputStream.close();
-        tempFileStream.close();
+        return this.assetDigestIndex;
+    }
 
-        return file;
+    private boolean shouldDecodeInStreamingMode(Request request) {
+        return this.streamingQueryDecoding
+                && request instanceof RecordQueryRequest
+                && request.getResponseHandler() instanceof RecordQueryResponseHandler;
     }
 
-    private static class MultiPartRequest extends SimpleMultiPartRequest {
-        private Map<String, String> extraHeaders;
+    /**
+     * The group of identical Skygear requests sharing one HTTP request.
+     */
+    private class RequestGroup implements Response.Listener<JSONObject>, Response.ErrorListener {
+        private final String key;
+        private final boolean streaming;
+        private final List<Request> requests;
+
+        private RequestGroup(String key, boolean streaming, Request request) {
+            this.key = key;
+            this.streaming = streaming;
+            this.requests = new ArrayList<>();
+            this.requests.add(request);
+        }
+
+        private List<Request> finish() {
+            if (this.key == null) {
+                return this.requests;
+            }
 
-        public MultiPartRequest(
-                String url,
-                Map<String, String> extraHeaders,
-                Response.Listener<String> listener,
-                Response.ErrorListener errorListener
-        ) {
-            super(url, listener, errorListener);
+            synchronized (RequestManager.this.inFlightRequests) {
+                if (RequestManager.this.inFlightRequests.get(this.key) == this) {
+                    RequestManager.this.inFlightRequests.remove(this.key);
+                }
 
-            this.extraHeaders = extraHeaders;
+                return new ArrayList<>(this.requests);
+            }
         }
 
         @Override
-        public Map<String, String> getHeaders() throws AuthFailureError {
-            Map<String, String> headers = new HashMap<>(super.getHeaders());
-            headers.putAll(this.extraHeaders);
-
-            return headers;
+        public void onResponse(JSONObject response) {
+            for (Request perRequest : this.finish()) {
+                perRequest.onResponse(response);
+            }
         }
 
         @Override
-        public boolean isFixedStreamingMode() {
-            return true;
+        public void onErrorResponse(VolleyError error) {
+            for (Request perRequest : this.finish()) {
+                if (this.streaming && error instanceof ParseError) {
+                    ((RecordQueryRequest) perRequest).onMalformedResponse();
+                } else {
+                    perRequest.onErrorResponse(error);
+                }
+            }
         }
+
+        /**
+         * Delivers a response decoded in streaming mode. The decoded records
+         * are shared by all requests in the group.
+         */
+        private void onDecodedResponse(RecordQueryResponseParser.Result result) {
+            for (Request perRequest : this.finish()) {
+                ((RecordQueryRequest) perRequest).onDecodedResponse(result);
+            }
+        }
+
     }
 
-    private static class JsonRequest extends JsonObjectRequest {
-        private Map<String, String> extraHeaders;
-
-        private JsonRequest(
-                String url,
-                JSONObject data,
-                Map<String, String> extraHeaders,
-                Response.Listener<JSONObject> listener,
-                Response.ErrorListener errorListener
-        ) {
-            super(
-                    com.android.volley.Request.Method.POST,
-                    url,
-                    data,
-                    listener,
-                    errorListener
-            );
+    public void sendAssetPostRequest(final AssetPostRequest request) {
+        if (this.endpoint == null) {
+            throw new IllegalStateException("Endpoint is not configured.");
+        }
 
-            this.extraHeaders = extraHeaders;
+        try {
+            request.validate();
+        } catch (Exception e) {
+            request.onValidationError(e);
+            return;
         }
 
-        @Override
-        public Map<String, String> getHeaders() throws AuthFailureError {
-            Map<String, String> headers = new HashMap<>(super.getHeaders());
-            headers.putAll(this.extraHeaders);
+        // support relative URL
+        URI uri;
+        try {
+            uri = new URI(request.getAction());
+        } catch (URISyntaxException e) {
+            Log.e(TAG, "Got malformed URL", e);
+            request.onValidationError(e);
+            return;
+        }
 
-            return headers;
+        String uriString = uri.toString();
+        if (!uri.isAbsolute()) {
+            uriString = this.endpoint + uriString.substring(1);
         }
 
-        @Override
-        public String getBodyContentType() {
-            return "application/json";
+        if (request.getReuseKey() != null) {
+            this.getRetryingUploader().upload(
+                    this.getTransport(),
+                    uriString,
+                    this.getExtraHeaders(),
+                    this.requestTimeout,
+                    request
+            );
+            return;
         }
+
+        final Handler progressHandler = this.getMainHandler();
+        Transport.Cancellable cancellable = this.getTransport().sendMultiPartRequest(
+                uriString,
+                this.getExtraHeaders(),
+                request.getExtraFields(),
+                "file",
+                request.getAsset(),
+                this.requestTimeout,
+                new MultiPartBody.ProgressListener() {
+                    @Override
+                    public void onProgress(final long bytesWritten, final long totalBytes) {
+                        progressHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                request.onProgress(bytesWritten, totalBytes);
+                            }
+                        });
+                    }
+                },
+                request,
+                request
+        );
+        request.setCancellable(cancellable);
     }
 }
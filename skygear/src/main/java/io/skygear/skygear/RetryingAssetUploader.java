@@ -0,0 +1,321 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.android.volley.NetworkError;
+import com.android.volley.Response;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The Skygear Retrying Asset Uploader.
+ * <p>
+ * This class uploads an asset with the presigned post request prepared by the
+ * server. An upload failing with a network error or a server error is retried
+ * a few times, if the asset data can be read again.
+ * </p>
+ * <p>
+ * The post request of an upload with a reuse key is saved in an
+ * {@link AssetUploadStateStore} until the upload succeeds, so that uploading an
+ * asset with the same reuse key again, even after the process restarts, skips
+ * the prepare round trip and uploads to the same location. This does not resume
+ * the upload: a presigned post request authorizes a single request only, so the
+ * asset data is always sent from the beginning.
+ * </p>
+ */
+class RetryingAssetUploader {
+    private static final String TAG = "Skygear SDK";
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int RETRY_DELAY_MILLIS = 1000;
+
+    private static final String AssetNameKey = "asset_name";
+    private static final String AssetUrlKey = "asset_url";
+    private static final String AssetMimeTypeKey = "asset_mime_type";
+    private static final String AssetSizeKey = "asset_size";
+    private static final String ActionKey = "action";
+    private static final String ExtraFieldsKey = "extra_fields";
+
+    private final AssetUploadStateStore stateStore;
+    private final Handler mainHandler;
+
+    /**
+     * Instantiates a new Retrying Asset Uploader.
+     *
+     * @param stateStore the upload state store
+     */
+    RetryingAssetUploader(AssetUploadStateStore stateStore) {
+        super();
+
+        this.stateStore = stateStore;
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Saves a prepared post request with its reuse key.
+     *
+     * @param request the post request
+     */
+    void savePostRequest(AssetPostRequest request) {
+        if (request.getReuseKey() == null) {
+            return;
+        }
+
+        Asset asset = request.getAsset();
+        try {
+            JSONObject state = new JSONObject();
+            state.put(AssetNameKey, asset.getName());
+            state.put(AssetUrlKey, asset.getUrl());
+            state.put(AssetMimeTypeKey, asset.getMimeType());
+            state.put(AssetSizeKey, asset.getSize());
+            state.put(ActionKey, request.getAction());
+            state.put(ExtraFieldsKey, new JSONObject(request.getExtraFields()));
+
+            this.stateStore.save(RetryingAssetUploader.stateKey(request.getReuseKey()), state);
+        } catch (JSONException e) {
+            Log.w(TAG, "Fail to save asset post request", e);
+        }
+    }
+
+    /**
+     * Restores a persisted post request of an asset.
+     * <p>
+     * The name and url of the asset are updated as if it is prepared. A post
+     * request persisted for an asset of another MIME type or size is discarded.
+     * </p>
+     *
+     * @param asset     the asset
+     * @param reuseKey the reuse key
+     * @return the post request, null if there is no saved post request
+     */
+    AssetPostRequest restorePostRequest(Asset asset, String reuseKey) {
+        String key = RetryingAssetUploader.stateKey(reuseKey);
+        JSONObject state = this.stateStore.load(key);
+        if (state == null) {
+            return null;
+        }
+
+        try {
+            if (!asset.getMimeType().equals(state.getString(AssetMimeTypeKey))
+                    || asset.getSize() != state.getLong(AssetSizeKey)) {
+                Log.w(TAG, "Asset of reuse key " + reuseKey + " has changed, preparing again");
+                this.stateStore.remove(key);
+                return null;
+            }
+
+            Map<String, String> extraFields = new HashMap<>();
+            JSONObject extraFieldsObject = state.getJSONObject(ExtraFieldsKey);
+            Iterator<String> extraKeys = extraFieldsObject.keys();
+            while (extraKeys.hasNext()) {
+                String perKey = extraKeys.next();
+                extraFields.put(perKey, extraFieldsObject.getString(perKey));
+            }
+
+            String action = state.getString(ActionKey);
+            asset.name = state.getString(AssetNameKey);
+            asset.url = state.getString(AssetUrlKey);
+
+            AssetPostRequest request = new AssetPostRequest(asset, action, extraFields);
+            request.setReuseKey(reuseKey);
+
+            return request;
+        } catch (JSONException e) {
+            Log.w(TAG, "Fail to restore asset post request", e);
+            this.stateStore.remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Removes all saved post requests, e.g. when the current user changes.
+     */
+    void clear() {
+        this.stateStore.clear();
+    }
+
+    private static String stateKey(String reuseKey) {
+        return "post#" + reuseKey;
+    }
+
+    /**
+     * Uploads the asset of a post request, retrying on failures.
+     * <p>
+     * The result is delivered to the request on the main thread.
+     * </p>
+     *
+     * @param transport the transport
+     * @param url       the post action url
+     * @param headers   the extra headers
+     * @param timeout   the timeout in milliseconds
+     * @param request   the post request
+     */
+    void upload(
+            Transport transport,
+            String url,
+            Map<String, String> headers,
+            int timeout,
+            AssetPostRequest request
+    ) {
+        this.send(transport, url, headers, timeout, request, 1);
+    }
+
+    private void send(
+            final Transport transport,
+            final String url,
+            final Map<String, String> headers,
+            final int timeout,
+            final AssetPostRequest request,
+            final int attempt
+    ) {
+        if (request.isCancelled()) {
+            return;
+        }
+
+        Transport.Cancellable cancellable = transport.sendMultiPartRequest(
+                url,
+                headers,
+                request.getExtraFields(),
+                "file",
+                request.getAsset(),
+                timeout,
+                new MultiPartBody.ProgressListener() {
+                    @Override
+                    public void onProgress(final long bytesWritten, final long totalBytes) {
+                        RetryingAssetUploader.this.mainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                request.onProgress(bytesWritten, totalBytes);
+                            }
+                        });
+                    }
+                },
+                new Response.Listener<String>() {
+                    @Override
+                    public void onResponse(String response) {
+                        RetryingAssetUploader.this.removePostRequest(request);
+                        request.onResponse(response);
+                    }
+                },
+                new Response.ErrorListener() {
+                    @Override
+                    public void onErrorResponse(VolleyError error) {
+                        RetryingAssetUploader.this.onError(
+                                transport,
+                                url,
+                                headers,
+                                timeout,
+                                request,
+                                attempt,
+                                error
+                        );
+                    }
+                }
+        );
+        request.setCancellable(cancellable);
+    }
+
+    private void onError(
+            final Transport transport,
+            final String url,
+            final Map<String, String> headers,
+            final int timeout,
+            final AssetPostRequest request,
+            final int attempt,
+            VolleyError error
+    ) {
+        if (!RetryingAssetUploader.isTransientError(error)) {
+            // e.g. the presigned post request is expired, prepare again next time
+            this.removePostRequest(request);
+            request.onErrorResponse(error);
+            return;
+        }
+
+        if (attempt >= MAX_ATTEMPTS || !RetryingAssetUploader.rewind(request.getAsset())) {
+            request.onErrorResponse(error);
+            return;
+        }
+
+        Log.w(TAG, "Fail to upload asset " + request.getAsset().getName() + ", retrying");
+        this.mainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                RetryingAssetUploader.this.send(
+                        transport,
+                        url,
+                        headers,
+                        timeout,
+                        request,
+                        attempt + 1
+                );
+            }
+        }, RETRY_DELAY_MILLIS * attempt);
+    }
+
+    private void removePostRequest(AssetPostRequest request) {
+        if (request.getReuseKey() != null) {
+            this.stateStore.remove(RetryingAssetUploader.stateKey(request.getReuseKey()));
+        }
+    }
+
+    private static boolean isTransientError(VolleyError error) {
+        if (error instanceof ServerError) {
+            return error.networkResponse != null && error.networkResponse.statusCode >= 500;
+        }
+
+        return error instanceof NetworkError || error instanceof TimeoutError;
+    }
+
+    /**
+     * Moves the asset stream back to the beginning of the asset data.
+     * <p>
+     * The asset stream is kept open until the upload is done. Data of a file is
+     * sent through its file channel without moving the stream, so only
+     * in-memory data has to be reset.
+     * </p>
+     *
+     * @return whether the asset data can be sent again
+     */
+    static boolean rewind(Asset asset) {
+        InputStream inputStream = asset.inputStream;
+        if (inputStream instanceof FileInputStream) {
+            return asset.getSize() > 0;
+        }
+
+        if (inputStream instanceof ByteArrayInputStream) {
+            ((ByteArrayInputStream) inputStream).reset();
+            return true;
+        }
+
+        return false;
+    }
+}
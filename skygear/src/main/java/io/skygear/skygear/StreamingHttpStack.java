@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Header;
+import com.android.volley.Request;
+import com.android.volley.toolbox.BaseHttpStack;
+import com.android.volley.toolbox.HttpResponse;
+import com.android.volley.toolbox.HurlStack;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The HTTP stack streaming the body of multipart requests.
+ * <p>
+ * Bodies of {@link VolleyTransport.StreamingMultiPartRequest} are written to the
+ * connection as they are read from the asset, with fixed-length streaming when
+ * the asset size is known. All other requests are performed by {@link HurlStack}.
+ * </p>
+ */
+class StreamingHttpStack extends BaseHttpStack {
+    private static final int CHUNK_LENGTH = 16 * 1024;
+
+    private final BaseHttpStack delegate;
+
+    /**
+     * Instantiates a new Streaming HTTP Stack.
+     */
+    StreamingHttpStack() {
+        this(new HurlStack());
+    }
+
+    /**
+     * Instantiates a new Streaming HTTP Stack with a delegate for non-multipart requests.
+     *
+     * @param delegate the delegate
+     */
+    StreamingHttpStack(BaseHttpStack delegate) {
+        super();
+        this.delegate = delegate;
+    }
+
+    @Override
+    public HttpResponse executeRequest(
+            Request<?> request,
+            Map<String, String> additionalHeaders
+    ) throws IOException, AuthFailureError {
+        if (!(request instanceof VolleyTransport.StreamingMultiPartRequest)) {
+            return this.delegate.executeRequest(request, additionalHeaders);
+        }
+
+        VolleyTransport.StreamingMultiPartRequest multiPartRequest
+                = (VolleyTransport.StreamingMultiPartRequest) request;
+        MultiPartBody body = multiPartRequest.getMultiPartBody();
+
+        Map<String, String> headers = new HashMap<>(request.getHeaders());
+        headers.putAll(additionalHeaders);
+
+        HttpURLConnection connection = this.openConnection(new URL(request.getUrl()));
+        connection.setConnectTimeout(request.getTimeoutMs());
+        connection.setReadTimeout(request.getTimeoutMs());
+        connection.setUseCaches(false);
+        connection.setDoInput(true);
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+
+        for (Map.Entry<String, String> perHeader : headers.entrySet()) {
+            connection.setRequestProperty(perHeader.getKey(), perHeader.getValue());
+        }
+        connection.setRequestProperty("Content-Type", body.getContentType());
+
+        // setFixedLengthStreamingMode(long) is not available before API 19
+        long contentLength = body.getContentLength();
+        if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+            connection.setFixedLengthStreamingMode((int) contentLength);
+        } else {
+            connection.setChunkedStreamingMode(CHUNK_LENGTH);
+        }
+
+        OutputStream outputStream = connection.getOutputStream();
+        try {
+            body.writeTo(outputStream);
+        } finally {
+            outputStream.close();
+        }
+
+        return StreamingHttpStack.toHttpResponse(connection);
+    }
+
+    private HttpURLConnection openConnection(URL url) throws IOException {
+        return (HttpURLConnection) url.openConnection();
+    }
+
+    private static HttpResponse toHttpResponse(HttpURLConnection connection) throws IOException {
+        int responseCode = connection.getResponseCode();
+        if (responseCode == -1) {
+            throw new IOException("Could not retrieve response code from HttpUrlConnection.");
+        }
+
+        List<Header> headers = new ArrayList<>();
+        for (Map.Entry<String, List<String>> perHeader : connection.getHeaderFields().entrySet()) {
+            // the status line has no header name
+            if (perHeader.getKey() == null) {
+                continue;
+            }
+
+            for (String perValue : perHeader.getValue()) {
+                headers.add(new Header(perHeader.getKey(), perValue));
+            }
+        }
+
+        InputStream inputStream;
+        try {
+            inputStream = connection.getInputStream();
+        } catch (IOException e) {
+            inputStream = connection.getErrorStream();
+        }
+
+        return new HttpResponse(responseCode, headers, connection.getContentLength(), inputStream);
+    }
+}
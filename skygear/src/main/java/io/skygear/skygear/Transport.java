@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import com.android.volley.Response;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * The Skygear HTTP Transport.
+ * <p>
+ * A transport sends HTTP requests for the request manager. Responses are parsed
+ * off the main thread, and responses and errors are delivered on the main thread.
+ * Errors are reported as Volley errors, carrying the network response if the
+ * server responds with an error status.
+ * </p>
+ */
+interface Transport {
+    /**
+     * Sends a POST request with a JSON body.
+     *
+     * @param url           the url
+     * @param headers       the extra headers
+     * @param body          the JSON body
+     * @param timeout       the timeout in milliseconds
+     * @param parser        the response body parser
+     * @param listener      the response listener
+     * @param errorListener the error listener
+     * @param <T>           the type of the parsed response
+     */
+    <T> void sendRequest(
+            String url,
+            Map<String, String> headers,
+            byte[] body,
+            int timeout,
+            ResponseParser<T> parser,
+            Response.Listener<T> listener,
+            Response.ErrorListener errorListener
+    );
+
+    /**
+     * Sends a multipart POST request uploading the data of an asset.
+     * <p>
+     * The timeout applies to connecting and to each read or write, so that
+     * uploading a large asset is not limited by it as a whole.
+     * </p>
+     *
+     * @param url           the url
+     * @param headers       the extra headers
+     * @param fields        the form fields, sent before the file
+     * @param fileField     the name of the file field
+     * @param asset            the asset
+     * @param timeout          the timeout in milliseconds
+     * @param progressListener the progress listener, called off the main thread
+     * @param listener         the response listener
+     * @param errorListener    the error listener
+     * @return the handle for cancelling the request
+     */
+    Cancellable sendMultiPartRequest(
+            String url,
+            Map<String, String> headers,
+            Map<String, String> fields,
+            String fileField,
+            Asset asset,
+            int timeout,
+            MultiPartBody.ProgressListener progressListener,
+            Response.Listener<String> listener,
+            Response.ErrorListener errorListener
+    );
+
+    /**
+     * The handle of a request sent by a transport.
+     */
+    interface Cancellable {
+        /**
+         * Cancels the request. No response or error would be delivered afterwards.
+         */
+        void cancel();
+    }
+
+    /**
+     * The Response Body Parser.
+     *
+     * @param <T> the type of the parsed response
+     */
+    interface ResponseParser<T> {
+        /**
+         * Parses a response body.
+         *
+         * @param body    the response body
+         * @param charset the charset of the response body
+         * @return the parsed response
+         * @throws IOException   the IO exception
+         * @throws JSONException the JSON exception
+         */
+        T parse(InputStream body, String charset) throws IOException, JSONException;
+    }
+}
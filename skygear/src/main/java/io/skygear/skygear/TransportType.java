@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+/**
+ * The HTTP Transport Type.
+ */
+public enum TransportType {
+    /**
+     * Volley with its HTTP/1.1 network stack.
+     */
+    VOLLEY,
+
+    /**
+     * OkHttp, which multiplexes concurrent requests over a single HTTP/2 connection
+     * when the server supports HTTP/2, and pools HTTP/1.1 connections otherwise.
+     * <p>
+     * The SDK does not bring OkHttp in, so apps selecting it have to add
+     * {@code com.squareup.okhttp3:okhttp} (3.12 or later) to their dependencies.
+     * </p>
+     */
+    OKHTTP
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The Skygear Value Codec.
+ * <p>
+ * A value codec converts a record attribute value to and from a JSON object
+ * tagged with a <code>$type</code>. Custom codecs are registered through
+ * {@link ValueCodecRegistry#register(ValueCodec)}.
+ * </p>
+ *
+ * @param <T> the value class
+ */
+public interface ValueCodec<T> {
+    /**
+     * Gets the value of <code>$type</code> handled by this codec.
+     *
+     * @return the type
+     */
+    String getType();
+
+    /**
+     * Gets the class of values handled by this codec.
+     *
+     * @return the value class
+     */
+    Class<T> getValueClass();
+
+    /**
+     * Serializes a value. The JSON object should contain <code>$type</code>.
+     *
+     * @param value the value
+     * @return the JSON object
+     * @throws JSONException the JSON exception
+     */
+    JSONObject serialize(T value) throws JSONException;
+
+    /**
+     * Deserializes a value.
+     *
+     * @param jsonObject the JSON object, with <code>$type</code> matching this codec
+     * @return the value, or null if the JSON object is malformed, in which case
+     *         the JSON object is kept as is
+     * @throws JSONException the JSON exception
+     */
+    T deserialize(JSONObject jsonObject) throws JSONException;
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package io.skygear.skygear;
+
+import android.location.Location;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.InvalidParameterException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The Skygear Value Codec Registry.
+ * <p>
+ * Values tagged with <code>$type</code> are decoded by looking up the codec of
+ * the type once, instead of trying every value format in turn.
+ * </p>
+ */
+public final class ValueCodecRegistry {
+    static final String TypeKey = "$type";
+
+    private static final Set<String> BuiltInTypes = new HashSet<>(Arrays.asList(
+            "date", "asset", "geo", "ref", "unknown", "record"
+    ));
+
+    private static final Map<String, ValueCodec<?>> CodecsByType = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, ValueCodec<?>> CodecsByClass = new ConcurrentHashMap<>();
+
+    static {
+        ValueCodecRegistry.put(new ValueCodec<Date>() {
+            @Override
+            public String getType() {
+                return "date";
+            }
+
+            @Override
+            public Class<Date> getValueClass() {
+                return Date.class;
+            }
+
+            @Override
+            public JSONObject serialize(Date value) {
+                return DateSerializer.serialize(value);
+            }
+
+            @Override
+            public Date deserialize(JSONObject jsonObject) throws JSONException {
+                if (!DateSerializer.isDateFormat(jsonObject)) {
+                    return null;
+                }
+
+                return DateSerializer.deserialize(jsonObject);
+            }
+        });
+        ValueCodecRegistry.put(new ValueCodec<Asset>() {
+            @Override
+            public String getType() {
+                return "asset";
+            }
+
+            @Override
+            public Class<Asset> getValueClass() {
+                return Asset.class;
+            }
+
+            @Override
+            public JSONObject serialize(Asset value) {
+                return AssetSerializer.serialize(value);
+            }
+
+            @Override
+            public Asset deserialize(JSONObject jsonObject) throws JSONException {
+                if (!AssetSerializer.isAssetFormat(jsonObject)) {
+                    return null;
+                }
+
+                return AssetSerializer.deserialize(jsonObject);
+            }
+        });
+        ValueCodecRegistry.put(new ValueCodec<Location>() {
+            @Override
+            public String getType() {
+                return "geo";
+            }
+
+            @Override
+            public Class<Location> getValueClass() {
+                return Location.class;
+            }
+
+            @Override
+            public JSONObject serialize(Location value) {
+                return LocationSerializer.serialize(value);
+            }
+
+            @Override
+            public Location deserialize(JSONObject jsonObject) throws JSONException {
+                if (!LocationSerializer.isLocationFormat(jsonObject)) {
+                    return null;
+                }
+
+                return LocationSerializer.deserialize(jsonObject);
+            }
+        });
+        ValueCodecRegistry.put(new ValueCodec<Reference>() {
+            @Override
+            public String getType() {
+                return "ref";
+            }
+
+            @Override
+            public Class<Reference> getValueClass() {
+                return Reference.class;
+            }
+
+            @Override
+            public JSONObject serialize(Reference value) {
+                return ReferenceSerializer.serialize(value);
+            }
+
+            @Override
+            public Reference deserialize(JSONObject jsonObject) throws JSONException {
+                if (!ReferenceSerializer.isReferenceFormat(jsonObject)) {
+                    return null;
+                }
+
+                return ReferenceSerializer.deserialize(jsonObject);
+            }
+        });
+        ValueCodecRegistry.put(new ValueCodec<UnknownValue>() {
+            @Override
+            public String getType() {
+                return "unknown";
+            }
+
+            @Override
+            public Class<UnknownValue> getValueClass() {
+                return UnknownValue.class;
+            }
+
+            @Override
+            public JSONObject serialize(UnknownValue value) {
+                return UnknownValueSerializer.serialize(value);
+            }
+
+            @Override
+            public UnknownValue deserialize(JSONObject jsonObject) throws JSONException {
+                if (!UnknownValueSerializer.isUnknownValueFormat(jsonObject)) {
+                    return null;
+                }
+
+                return UnknownValueSerializer.deserialize(jsonObject);
+            }
+        });
+    }
+
+    private ValueCodecRegistry() {
+        // Do nothing. This class only contains static methods.
+    }
+
+    private static void put(ValueCodec<?> codec) {
+        CodecsByType.put(codec.getType(), codec);
+        CodecsByClass.put(codec.getValueClass(), codec);
+    }
+
+    /**
+     * Registers a custom value codec.
+     * <p>
+     * Values of the codec class can be set as record attributes, and JSON
+     * objects with the codec type are decoded as such values.
+     * </p>
+     *
+     * @param codec the codec
+     */
+    public static void register(ValueCodec<?> codec) {
+        if (codec == null || codec.getType() == null || codec.getValueClass() == null) {
+            throw new InvalidParameterException("Codec type and value class should not be null");
+        }
+
+        if (BuiltInTypes.contains(codec.getType())
+                || RecordSerializer.isBuiltInValueClass(codec.getValueClass())) {
+            throw new InvalidParameterException(String.format(
+                    "Cannot replace the built-in codec of \"%s\"",
+                    codec.getType()
+            ));
+        }
+
+        ValueCodecRegistry.put(codec);
+    }
+
+    /**
+     * Unregisters a custom value codec.
+     *
+     * @param type the codec type
+     */
+    public static void unregister(String type) {
+        if (BuiltInTypes.contains(type)) {
+            throw new InvalidParameterException(String.format(
+                    "Cannot unregister the built-in codec of \"%s\"",
+                    type
+            ));
+        }
+
+        ValueCodec<?> codec = CodecsByType.remove(type);
+        if (codec != null) {
+            CodecsByClass.remove(codec.getValueClass());
+        }
+    }
+
+    /**
+     * Gets the codec of a value class.
+     *
+     * @param valueClass the value class
+     * @return the codec, null if there is none
+     */
+    static ValueCodec<?> forClass(Class<?> valueClass) {
+        return CodecsByClass.get(valueClass);
+    }
+
+    /**
+     * Serializes a value with the codec of its class.
+     *
+     * @param value the value
+     * @return the JSON object, null if there is no codec for the value
+     * @throws JSONException the JSON exception
+     */
+    @SuppressWarnings("unchecked")
+    static JSONObject serialize(Object value) throws JSONException {
+        ValueCodec<Object> codec = (ValueCodec<Object>) CodecsByClass.get(value.getClass());
+        if (codec == null) {
+            return null;
+        }
+
+        return codec.serialize(value);
+    }
+
+    /**
+     * Deserializes a JSON object with the codec of its <code>$type</code>.
+     *
+     * @param jsonObject the JSON object
+     * @return the value, or the JSON object itself if there is no codec for it
+     * @throws JSONException the JSON exception
+     */
+    static Object deserialize(JSONObject jsonObject) throws JSONException {
+        Object type = jsonObject.opt(TypeKey);
+        if (!(type instanceof String)) {
+            return jsonObject;
+        }
+
+        ValueCodec<?> codec = CodecsByType.get(type);
+        if (codec == null) {
+            return jsonObject;
+        }
+
+        Object value = codec.deserialize(jsonObject);
+        return value != null ? value : jsonObject;
+    }
+}
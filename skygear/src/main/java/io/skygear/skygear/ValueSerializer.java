@@ -20,9 +20,6 @@ package io.skygear.skygear;
 import android.location.Location;
 import android.util.Log;
 
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -74,6 +71,8 @@ public class ValueSerializer {
             return ValueSerializer.serialize((UnknownValue) value);
         } else if (value instanceof Record) {
             return ValueSerializer.serialize((Record) value);
+        } else if (ValueCodecRegistry.forClass(value.getClass()) != null) {
+            return ValueCodecRegistry.serialize(value);
         } else {
             throw new JSONException(String.format("Class %s cannot be serialized.",
                     value.getClass().getName()));
@@ -137,17 +136,14 @@ public class ValueSerializer {
     public static Object deserialize(JSONObject jsonObject) throws JSONException {
         if (jsonObject == null) {
             return null;
-        } else if (DateSerializer.isDateFormat(jsonObject)) {
-            return DateSerializer.deserialize(jsonObject);
-        } else if (AssetSerializer.isAssetFormat(jsonObject)) {
-            return AssetSerializer.deserialize(jsonObject);
-        } else if (LocationSerializer.isLocationFormat(jsonObject)) {
-            return LocationSerializer.deserialize(jsonObject);
-        } else if (ReferenceSerializer.isReferenceFormat(jsonObject)) {
-            return ReferenceSerializer.deserialize(jsonObject);
-        } else if (UnknownValueSerializer.isUnknownValueFormat(jsonObject)) {
-            return UnknownValueSerializer.deserialize(jsonObject);
-        } else if (jsonObject.optString("$type").equals("record")) {
+        }
+
+        Object value = ValueCodecRegistry.deserialize(jsonObject);
+        if (value != jsonObject) {
+            return value;
+        }
+
+        if (jsonObject.optString("$type").equals("record")) {
             return RecordSerializer.deserialize(jsonObject.getJSONObject("$record"));
         } else {
             Map<String, Object> result = new HashMap<String, Object>();
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2017 Oursky Ltd.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package io.skygear.skygear;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.RequestQueue;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+import io.skygear.utils.volley.SimpleMultiPartRequest;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Volley Transport.
+ */
+class VolleyTransport implements Transport {
+    private static final String PROTOCOL_CHARSET = "utf-8";
+
+    /**
+     * The Request Queue.
+     */
+    final RequestQueue queue;
+
+    /**
+     * Instantiates a new Volley Transport.
+     *
+     * @param queue the request queue
+     */
+    VolleyTransport(RequestQueue queue) {
+        super();
+        this.queue = queue;
+    }
+
+    @Override
+    public <T> void sendRequest(
+            String url,
+            Map<String, String> headers,
+            byte[] body,
+            int timeout,
+            ResponseParser<T> parser,
+            Response.Listener<T> listener,
+            Response.ErrorListener errorListener
+    ) {
+        ParsedRequest<T> httpRequest = new ParsedRequest<>(
+                url,
+                headers,
+                body,
+                parser,
+                listener,
+                errorListener
+        );
+
+        httpRequest.setRetryPolicy(new DefaultRetryPolicy(
+                timeout,
+                DefaultRetryPolicy.DEFAULT_MAX_RETRIES,
+                DefaultRetryPolicy.DEFAULT_BACKOFF_MULT
+        ));
+
+        this.queue.add(httpRequest);
+    }
+
+    @Override
+    public Cancellable sendMultiPartRequest(
+            String url,
+            Map<String, String> headers,
+            Map<String, String> fields,
+            String fileField,
+            Asset asset,
+            int timeout,
+            MultiPartBody.ProgressListener progressListener,
+            Response.Listener<String> listener,
+            Response.ErrorListener errorListener
+    ) {
+        MultiPartBody body = new MultiPartBody(fields, fileField, asset);
+        body.setProgressListener(progressListener);
+
+        final StreamingMultiPartRequest multiPartRequest = new StreamingMultiPartRequest(
+                url,
+                headers,
+                body,
+                timeout,
+                listener,
+                errorListener
+        );
+
+        this.queue.add(multiPartRequest);
+
+        return new Cancellable() {
+            @Override
+            public void cancel() {
+                multiPartRequest.cancel();
+            }
+        };
+    }
+
+    /**
+     * The Volley request with a JSON body, whose response body is parsed on
+     * the network thread.
+     */
+    private static class ParsedRequest<T> extends com.android.volley.Request<T> {
+        private final Map<String, String> extraHeaders;
+        private final byte[] body;
+        private final ResponseParser<T> parser;
+        private final Response.Listener<T> listener;
+
+        private ParsedRequest(
+                String url,
+                Map<String, String> extraHeaders,
+                byte[] body,
+                ResponseParser<T> parser,
+                Response.Listener<T> listener,
+                Response.ErrorListener errorListener
+        ) {
+            super(com.android.volley.Request.Method.POST, url, errorListener);
+
+            this.extraHeaders = extraHeaders;
+            this.body = body;
+            this.parser = parser;
+            this.listener = listener;
+        }
+
+        @Override
+        public Map<String, String> getHeaders() throws AuthFailureError {
+            Map<String, String> headers = new HashMap<>(super.getHeaders());
+            headers.putAll(this.extraHeaders);
+
+            return headers;
+        }
+
+        @Override
+        public String getBodyContentType() {
+            return "application/json";
+        }
+
+        @Override
+        public byte[] getBody() {
+            return this.body;
+        }
+
+        @Override
+        protected Response<T> parseNetworkResponse(NetworkResponse response) {
+            try {
+                T result = this.parser.parse(
+                        new ByteArrayInputStream(response.data),
+                        HttpHeaderParser.parseCharset(response.headers, PROTOCOL_CHARSET)
+                );
+
+                return Response.success(result, HttpHeaderParser.parseCacheHeaders(response));
+            } catch (IOException | JSONException e) {
+                return Response.error(new ParseError(e));
+            }
+        }
+
+        @Override
+        protected void deliverResponse(T result) {
+            this.listener.onResponse(result);
+        }
+    }
+
+    /**
+     * The multipart request whose body is streamed from the asset by {@link StreamingHttpStack}.
+     */
+    static class StreamingMultiPartRequest extends SimpleMultiPartRequest {
+        private final Map<String, String> extraHeaders;
+        private final MultiPartBody multiPartBody;
+
+        StreamingMultiPartRequest(
+                String url,
+                Map<String, String> extraHeaders,
+                MultiPartBody multiPartBody,
+                int timeout,
+                Response.Listener<String> listener,
+                Response.ErrorListener errorListener
+        ) {
+            super(url, listener, errorListener);
+
+            this.extraHeaders = extraHeaders;
+            this.multiPartBody = multiPartBody;
+
+            for (Map.Entry<String, String> perField : multiPartBody.getFields().entrySet()) {
+                this.addStringParam(perField.getKey(), perField.getValue());
+            }
+
+            // the asset stream can only be read once, so the request cannot be retried
+            this.setRetryPolicy(new DefaultRetryPolicy(
+                    timeout,
+                    0,
+                    DefaultRetryPolicy.DEFAULT_BACKOFF_MULT
+            ));
+        }
+
+        MultiPartBody getMultiPartBody() {
+            return this.multiPartBody;
+        }
+
+        @Override
+        public Map<String, String> getHeaders() throws AuthFailureError {
+            Map<String, String> headers = new HashMap<>(super.getHeaders());
+            headers.putAll(this.extraHeaders);
+
+            return headers;
+        }
+
+        @Override
+        public String getBodyContentType() {
+            return this.multiPartBody.getContentType();
+        }
+
+        @Override
+        public byte[] getBody() throws AuthFailureError {
+            // only reached when the request queue does not use StreamingHttpStack
+            try {
+                return this.multiPartBody.toByteArray();
+            } catch (IOException e) {
+                throw new AuthFailureError("Fail to read asset data", e);
+            }
+        }
+
+        @Override
+        public boolean isFixedStreamingMode() {
+            return true;
+        }
+    }
+}
@@ -21,8 +21,6 @@ import android.util.Log;
 
 import org.java_websocket.exceptions.WebsocketNotConnectedException;
 import org.java_websocket.handshake.ServerHandshake;
-import org.json.JSONException;
-import org.json.JSONObject;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
@@ -122,11 +120,7 @@ class WebSocketClientImpl
     public void onMessage(String message) {
         EventHandler eventHandler = this.getEventHandler();
         if (eventHandler != null) {
-            try {
-                eventHandler.onMessage(new JSONObject(message));
-            } catch (JSONException e) {
-                eventHandler.onError(new Exception(e.getMessage()));
-            }
+            eventHandler.onMessage(message);
         }
     }
 
@@ -176,10 +170,14 @@ class WebSocketClientImpl
 
         /**
          * The Message Receive Callback.
+         * <p>
+         * The message is passed as received, so that it is not decoded on
+         * the socket thread.
+         * </p>
          *
-         * @param eventData the event data
+         * @param message the message text
          */
-        void onMessage(JSONObject eventData);
+        void onMessage(String message);
 
         /**
          * The Error Callback.
@@ -199,7 +197,7 @@ class WebSocketClientImpl
     /**
      * The WebSocket Client Exception.
      */
-    class Exception extends java.lang.Exception {
+    static class Exception extends java.lang.Exception {
         /**
          * Instantiates a new Exception.
          *